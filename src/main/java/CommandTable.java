@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import StorageManager.RespWriter;
+
+/**
+ * Registry of the commands the server understands, like Redis' command table.
+ * Each command has its handler and its metadata: arity, flags and the
+ * positions of its key arguments. HandleClient dispatches through the table,
+ * replication and transactions read the flags, and COMMAND reports it.
+ *
+ * Names are looked up case-insensitively in an open-addressing hash table
+ * that folds ASCII case while hashing, so a lookup from a String or from raw
+ * argument bytes allocates nothing.
+ */
+public final class CommandTable {
+    // Command flags, reported by COMMAND INFO under the same names as in Redis
+    public static final int WRITE = 1;
+    public static final int READONLY = 1 << 1;
+    public static final int BLOCKING = 1 << 2;
+    public static final int ADMIN = 1 << 3;
+    public static final int FAST = 1 << 4;
+    public static final int MOVABLE_KEYS = 1 << 5;
+    // May grow memory, so refused when maxmemory is reached and nothing can be evicted
+    public static final int DENYOOM = 1 << 6;
+
+    private static final String[] FLAG_NAMES = {"write", "readonly", "blocking", "admin", "fast", "movablekeys", "denyoom"};
+
+    /**
+     * Executes one command for a client.
+     */
+    @FunctionalInterface
+    interface Handler {
+        void handle(HandleClient client, List<String> command, RespWriter writer) throws IOException;
+    }
+
+    /**
+     * Finds the keys of a command whose key positions depend on its arguments.
+     */
+    @FunctionalInterface
+    interface KeyFinder {
+        List<String> keys(List<String> command);
+    }
+
+    /**
+     * One command and its metadata.
+     */
+    public static final class Command {
+        public final String name;
+        // Exact argument count including the name when positive, minimum count when negative
+        public final int arity;
+        public final int flags;
+        // Key positions: first and last key index (negative counts from the end) and the step; 0 for no keys
+        public final int firstKey;
+        public final int lastKey;
+        public final int keyStep;
+        final Handler handler;
+        final KeyFinder keyFinder;
+
+        Command(String name, int arity, int flags, int firstKey, int lastKey, int keyStep, Handler handler, KeyFinder keyFinder) {
+            this.name = name;
+            this.arity = arity;
+            this.flags = flags;
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+            this.keyStep = keyStep;
+            this.handler = handler;
+            this.keyFinder = keyFinder;
+        }
+
+        public boolean is(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        /**
+         * Returns true if the command may be called with this many arguments, counting its name.
+         */
+        public boolean acceptsArgumentCount(int argc) {
+            return arity >= 0 ? argc == arity : argc >= -arity;
+        }
+
+        /**
+         * Returns the names of the command's flags.
+         */
+        public List<String> flagNames() {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < FLAG_NAMES.length; i++) {
+                if ((flags & (1 << i)) != 0) {
+                    names.add(FLAG_NAMES[i]);
+                }
+            }
+            return names;
+        }
+
+        /**
+         * Returns the key arguments of a call to this command.
+         *
+         * @param command the command and its arguments, already checked against the arity
+         */
+        public List<String> keys(List<String> command) {
+            if (keyFinder != null) {
+                return keyFinder.keys(command);
+            }
+            if (firstKey == 0) {
+                return Collections.emptyList();
+            }
+            int last = lastKey < 0 ? command.size() + lastKey : lastKey;
+            List<String> keys = new ArrayList<>();
+            for (int i = firstKey; i <= last && i < command.size(); i += keyStep) {
+                keys.add(command.get(i));
+            }
+            return keys;
+        }
+    }
+
+    private final List<Command> commands = new ArrayList<>();
+    private Command[] slots = new Command[64];
+
+    /**
+     * Adds a command whose keys sit at fixed positions.
+     */
+    CommandTable add(String name, int arity, int flags, int firstKey, int lastKey, int keyStep, Handler handler) {
+        return add(new Command(name, arity, flags, firstKey, lastKey, keyStep, handler, null));
+    }
+
+    /**
+     * Adds a command whose keys are found by looking at its arguments.
+     */
+    CommandTable add(String name, int arity, int flags, KeyFinder keyFinder, Handler handler) {
+        return add(new Command(name, arity, flags | MOVABLE_KEYS, 0, 0, 0, handler, keyFinder));
+    }
+
+    private CommandTable add(Command command) {
+        if (lookup(command.name) != null) {
+            throw new IllegalArgumentException("Duplicate command: " + command.name);
+        }
+        commands.add(command);
+        // Keep the table at most half full so probe chains stay short
+        if (commands.size() * 2 > slots.length) {
+            slots = new Command[slots.length * 2];
+            for (Command existing : commands) {
+                insert(existing);
+            }
+        } else {
+            insert(command);
+        }
+        return this;
+    }
+
+    private void insert(Command command) {
+        int mask = slots.length - 1;
+        int slot = hash(command.name) & mask;
+        while (slots[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = command;
+    }
+
+    /**
+     * Finds a command by name, ignoring ASCII case.
+     *
+     * @return the command, or null if there is none by that name
+     */
+    public Command lookup(String name) {
+        Command[] table = slots;
+        int mask = table.length - 1;
+        for (int slot = hash(name) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (equalsIgnoreCase(table[slot].name, name)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a command by its name as raw argument bytes, ignoring ASCII case.
+     *
+     * @return the command, or null if there is none by that name
+     */
+    public Command lookup(byte[] name) {
+        Command[] table = slots;
+        int mask = table.length - 1;
+        for (int slot = hash(name) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (equalsIgnoreCase(table[slot].name, name)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every command, in registration order.
+     */
+    public List<Command> all() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    // ========== Case-insensitive hashing ==========
+
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + fold(name.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0;
+        for (byte b : name) {
+            h = 31 * h + fold(b & 0xFF);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // Registered names are lower case
+    private static boolean equalsIgnoreCase(String registered, String name) {
+        if (registered.length() != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (registered.charAt(i) != fold(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(String registered, byte[] name) {
+        if (registered.length() != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (registered.charAt(i) != fold(name[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
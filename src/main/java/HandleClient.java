@@ -1,32 +1,122 @@
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import StorageManager.*;
 import RdbManager.RdbWriter;
 
 public class HandleClient implements Runnable {
   private Socket clientSocket;
+  // Set instead of clientSocket for Unix domain socket connections, which have no Socket
+  private SocketChannel clientChannel;
   private int clientId;
   private String serverRole;
   private static final String MASTER_REPLID = "8371b4fb1155b71f4a04d3e1bc3e18c4a990aeeb";
   private static final String MASTER_REPL_OFFSET = "0";
-  // Track the replica's OutputStream and connection state
-  private static final List<OutputStream> replicaOutputStreams = new CopyOnWriteArrayList<>();
+  // Redis version reported by HELLO; clients use it to decide which commands they may send
+  private static final String SERVER_VERSION = "7.4.0";
+  // Track the replica's writer and connection state
+  private static final List<RespWriter> replicaWriters = new CopyOnWriteArrayList<>();
+  // Serializes propagation to replicas; a ReentrantLock so virtual threads blocked on replica I/O don't pin
+  private static final ReentrantLock replicaLock = new ReentrantLock();
+  // Connected clients by id, listed by CLIENT LIST
+  private static final Map<Integer, HandleClient> connectedClients = new ConcurrentHashMap<>();
+  // Connections admitted under maxclients and not yet closed
+  private static final AtomicInteger admittedClients = new AtomicInteger();
+  // Sent to a connection refused by maxclients; encoded once since it is sent during connection storms
+  private static final byte[] MAX_CLIENTS_ERROR = "-ERR max number of clients reached\r\n".getBytes(RESPProtocol.CHARSET);
   private boolean inTransaction = false;
+  // Set while EXEC runs the queued commands; blocking commands then reply at once, like Redis
+  private boolean executingTransaction = false;
+  // Set when a command propagated to replicas and the replica streams still need a flush
+  private boolean pendingReplicaFlush = false;
   private List<List<String>> queuedCommands = new ArrayList<>();
+  // Set while the client is registered in connectedClients
+  private String remoteAddress = "";
+  private QueuedRespWriter connectionWriter;
+  // Protocol negotiated with HELLO, and the name it may set
+  private int protocolVersion = RESPProtocol.RESP2;
+  private String clientName = "";
+  
+  // Set when a command queued after MULTI was rejected; EXEC then aborts
+  private boolean transactionFailed = false;
+  // Time of the last read from the client, checked by the idle reaper
+  private volatile long lastInteraction = System.currentTimeMillis();
+  // The last BLPOP or XREAD BLOCK wait; a client still waiting is never idle
+  private volatile BlockedClient blockedOn;
+  // Set while the connection counts against maxclients
+  private final AtomicBoolean admitted = new AtomicBoolean(false);
+  
+  // Every command the server understands, with its arity, flags and key positions
+  static final CommandTable COMMANDS = new CommandTable()
+      .add("ping", -1, CommandTable.FAST, 0, 0, 0, (client, command, writer) -> client.handlePing(writer))
+      .add("echo", 2, CommandTable.FAST, 0, 0, 0, HandleClient::handleEcho)
+      .add("set", -3, CommandTable.WRITE | CommandTable.DENYOOM, 1, 1, 1, HandleClient::handleSet)
+      .add("get", 2, CommandTable.READONLY | CommandTable.FAST, 1, 1, 1, HandleClient::handleGet)
+      .add("incr", 2, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleIncr)
+      .add("decr", 2, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleIncr)
+      .add("incrby", 3, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleIncr)
+      .add("decrby", 3, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleIncr)
+      .add("incrbyfloat", 3, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleIncrByFloat)
+      .add("rpush", -3, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleRpush)
+      .add("lpush", -3, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleLpush)
+      .add("lpop", -2, CommandTable.WRITE | CommandTable.FAST, 1, 1, 1, HandleClient::handleLpop)
+      .add("blpop", -3, CommandTable.WRITE | CommandTable.BLOCKING, 1, -2, 1, HandleClient::handleBlpop)
+      .add("lrange", 4, CommandTable.READONLY, 1, 1, 1, HandleClient::handleLrange)
+      .add("llen", 2, CommandTable.READONLY | CommandTable.FAST, 1, 1, 1, HandleClient::handleLlen)
+      .add("type", 2, CommandTable.READONLY | CommandTable.FAST, 1, 1, 1, HandleClient::handleType)
+      .add("keys", 2, CommandTable.READONLY, 0, 0, 0, HandleClient::handleKeys)
+      .add("scan", -2, CommandTable.READONLY, 0, 0, 0, HandleClient::handleScan)
+      .add("dbsize", 1, CommandTable.READONLY | CommandTable.FAST, 0, 0, 0, HandleClient::handleDbsize)
+      .add("del", -2, CommandTable.WRITE, 1, -1, 1, HandleClient::handleDel)
+      .add("exists", -2, CommandTable.READONLY | CommandTable.FAST, 1, -1, 1, HandleClient::handleExists)
+      .add("expire", 3, CommandTable.WRITE | CommandTable.FAST, 1, 1, 1, HandleClient::handleExpire)
+      .add("pexpire", 3, CommandTable.WRITE | CommandTable.FAST, 1, 1, 1, HandleClient::handleExpire)
+      .add("ttl", 2, CommandTable.READONLY | CommandTable.FAST, 1, 1, 1, HandleClient::handleTtl)
+      .add("pttl", 2, CommandTable.READONLY | CommandTable.FAST, 1, 1, 1, HandleClient::handleTtl)
+      .add("persist", 2, CommandTable.WRITE | CommandTable.FAST, 1, 1, 1, HandleClient::handlePersist)
+      .add("object", -2, CommandTable.READONLY, 2, 2, 1, HandleClient::handleObject)
+      .add("xadd", -5, CommandTable.WRITE | CommandTable.DENYOOM | CommandTable.FAST, 1, 1, 1, HandleClient::handleXadd)
+      .add("xrange", -4, CommandTable.READONLY, 1, 1, 1, HandleClient::handleXrange)
+      .add("xread", -4, CommandTable.READONLY | CommandTable.BLOCKING, HandleClient::xreadKeys, HandleClient::handleXread)
+      .add("multi", 1, CommandTable.FAST, 0, 0, 0, HandleClient::handleMulti)
+      .add("exec", 1, 0, 0, 0, 0, HandleClient::handleExec)
+      .add("discard", 1, CommandTable.FAST, 0, 0, 0, HandleClient::handleDiscard)
+      .add("info", -1, 0, 0, 0, 0, HandleClient::handleInfo)
+      .add("config", -2, CommandTable.ADMIN, 0, 0, 0, HandleClient::handleConfig)
+      .add("save", 1, CommandTable.ADMIN, 0, 0, 0, HandleClient::handleSave)
+      .add("replconf", -1, CommandTable.ADMIN, 0, 0, 0, HandleClient::handleReplconf)
+      .add("replicaof", 3, CommandTable.ADMIN, 0, 0, 0, HandleClient::handleReplicaof)
+      .add("psync", -3, CommandTable.ADMIN, 0, 0, 0, HandleClient::handlePsync)
+      .add("client", -2, CommandTable.ADMIN, 0, 0, 0, HandleClient::handleClient)
+      .add("hello", -1, CommandTable.FAST, 0, 0, 0, HandleClient::handleHello)
+      .add("command", -1, 0, 0, 0, 0, HandleClient::handleCommandInfo);
+  // Transaction control commands, which are never queued
+  private static final CommandTable.Command MULTI = COMMANDS.lookup("multi");
+  private static final CommandTable.Command EXEC = COMMANDS.lookup("exec");
+  private static final CommandTable.Command DISCARD = COMMANDS.lookup("discard");
+  // Propagated by its handler as the SET of its result, so replicas never redo float arithmetic
+  private static final CommandTable.Command INCRBYFLOAT = COMMANDS.lookup("incrbyfloat");
   
   // Storage managers for different data types
   private final StringStorage stringStorage;
   private final ListStorage listStorage;
   private final StreamStorage streamStorage;
+  // The one keyspace the three storages share, where key-level commands look keys up
+  private final Keyspace keyspace;
   
   public HandleClient(Socket clientSocket, int clientId, String serverRole, StringStorage stringStorage, ListStorage listStorage, StreamStorage streamStorage) {
       this.clientSocket = clientSocket;
@@ -35,193 +125,330 @@ public class HandleClient implements Runnable {
       this.stringStorage = stringStorage;
       this.listStorage = listStorage;
       this.streamStorage = streamStorage;
+      this.keyspace = stringStorage.keyspace();
+      // Separate keyspaces would let one key hold a string and a list at once
+      if (listStorage.keyspace() != keyspace || streamStorage.keyspace() != keyspace) {
+        throw new IllegalArgumentException("The storages must share one keyspace");
+      }
+  }
+  
+  /**
+   * Creates a handler for a blocking Unix domain socket channel, which has no Socket.
+   */
+  public static HandleClient forChannel(SocketChannel clientChannel, int clientId, String serverRole, StringStorage stringStorage, ListStorage listStorage, StreamStorage streamStorage) {
+      HandleClient handler = new HandleClient(null, clientId, serverRole, stringStorage, listStorage, streamStorage);
+      handler.clientChannel = clientChannel;
+      return handler;
   }
   
   @Override
   public void run() {
-    System.out.println("Client " + clientId + " connected: " + clientSocket.getRemoteSocketAddress());
-    
+    Log.verbose(() -> "Client " + clientId + " connected: " + remoteAddressOf());
     try {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-      OutputStream outputStream = clientSocket.getOutputStream();
-      
-      String line;
-      while ((line = reader.readLine()) != null) {
-        
-        // Parse RESP array command
-        if (line.startsWith("*")) {
-          List<String> command = RESPProtocol.parseRESPArray(reader, line);
-          if (command != null && !command.isEmpty()) {
-            System.out.println("Client " + clientId + " - Parsed command: " + command);
-            handleCommand(command, outputStream);
-          }
-        }
+      if (clientChannel != null) {
+        serve(Channels.newInputStream(clientChannel), Channels.newOutputStream(clientChannel));
+      } else {
+        serve(clientSocket.getInputStream(), clientSocket.getOutputStream());
       }
-      
-      System.out.println("Client " + clientId + " disconnected");
+      Log.verbose(() -> "Client " + clientId + " disconnected");
     } catch (IOException e) {
-      System.out.println("Client " + clientId + " - IOException: " + e.getMessage());
+      Log.verbose(() -> "Client " + clientId + " - IOException: " + e.getMessage());
     } finally {
+      // Also gives back the maxclients slot if the connection failed before serving
+      detach();
       try {
         if (clientSocket != null) {
           clientSocket.close();
-          System.out.println("Client " + clientId + " - Socket closed");
+          Log.verbose(() -> "Client " + clientId + " - Socket closed");
+        }
+        if (clientChannel != null) {
+          clientChannel.close();
+          Log.verbose(() -> "Client " + clientId + " - Socket closed");
         }
       } catch (IOException e) {
-        System.out.println("Client " + clientId + " - IOException during cleanup: " + e.getMessage());
+        Log.verbose(() -> "Client " + clientId + " - IOException during cleanup: " + e.getMessage());
+      }
+    }
+  }
+  
+  /**
+   * Reads and executes commands until the connection is closed.
+   * Every complete command received by one read is executed in order and the
+   * replies are encoded into the connection's RespWriter, which is flushed once
+   * per batch, or earlier whenever its buffer fills up.
+   * 
+   * @param inputStream the connection's input
+   * @param socketOutputStream the connection's output
+   * @throws IOException if an I/O or protocol error occurs
+   */
+  void serve(InputStream inputStream, OutputStream socketOutputStream) throws IOException {
+    SocketWriter writer = new SocketWriter(socketOutputStream);
+    RESPParser parser = new RESPParser();
+    attach(remoteAddressOf(), writer);
+    
+    try {
+      while (parser.readFrom(inputStream) != -1) {
+        touch();
+        // Execute every complete RESP array command received so far
+        List<byte[]> args;
+        while ((args = parser.next()) != null) {
+          List<String> command = RESPProtocol.decodeArguments(args);
+          Log.debug(() -> "Client " + clientId + " - Parsed command: " + command);
+          handleCommand(command, writer);
+          // Send large replies as they are produced instead of queueing the whole batch
+          if (writer.pendingBytes() >= RespWriter.BUFFER_SIZE) {
+            writer.flush();
+          }
+        }
+        flushBatch(writer);
+      }
+    } finally {
+      detach();
+    }
+  }
+  
+  // Unix socket peers are unnamed, so they are listed by the server's socket path, like Redis does
+  private String remoteAddressOf() {
+    if (clientSocket != null) {
+      return String.valueOf(clientSocket.getRemoteSocketAddress());
+    }
+    if (clientChannel != null) {
+      try {
+        return clientChannel.getLocalAddress() + ":0";
+      } catch (IOException e) {
+        return "";
+      }
+    }
+    return "";
+  }
+  
+  /**
+   * Registers the client for CLIENT LIST.
+   * 
+   * @param remoteAddress the peer address shown in the listing
+   * @param writer the connection's writer, whose pending output is reported
+   */
+  void attach(String remoteAddress, QueuedRespWriter writer) {
+    this.remoteAddress = remoteAddress;
+    this.connectionWriter = writer;
+    connectedClients.put(clientId, this);
+  }
+  
+  /**
+   * Removes the client from CLIENT LIST once its connection is closed.
+   */
+  void detach() {
+    connectedClients.remove(clientId, this);
+    if (admitted.compareAndSet(true, false)) {
+      admittedClients.decrementAndGet();
+    }
+  }
+  
+  /**
+   * Records that the client just sent data.
+   */
+  void touch() {
+    lastInteraction = System.currentTimeMillis();
+  }
+  
+  /**
+   * Counts the connection against maxclients; called once, right after accept.
+   * The slot is given back by detach().
+   * 
+   * @return false if the server already has maxclients connections
+   */
+  boolean admit() {
+    int maxClients = Main.maxClients;
+    int current;
+    do {
+      current = admittedClients.get();
+      if (current >= maxClients) {
+        return false;
+      }
+    } while (!admittedClients.compareAndSet(current, current + 1));
+    admitted.set(true);
+    return true;
+  }
+  
+  /**
+   * Tells a connection over the maxclients limit why it is refused and closes it.
+   */
+  static void reject(Socket socket) {
+    try (socket) {
+      socket.getOutputStream().write(MAX_CLIENTS_ERROR);
+    } catch (IOException e) {
+      Log.verbose(() -> "IOException while refusing a connection: " + e.getMessage());
+    }
+  }
+  
+  static void reject(SocketChannel channel) {
+    try (channel) {
+      channel.write(ByteBuffer.wrap(MAX_CLIENTS_ERROR));
+    } catch (IOException e) {
+      Log.verbose(() -> "IOException while refusing a connection: " + e.getMessage());
+    }
+  }
+  
+  /**
+   * Starts the thread that closes connections idle for longer than the timeout,
+   * like Redis' timeout option. Replicas and clients waiting in BLPOP or
+   * XREAD BLOCK are never idle.
+   * 
+   * @param timeoutSeconds the idle time after which a client is closed
+   */
+  static void startIdleReaper(int timeoutSeconds) {
+    long timeoutMillis = timeoutSeconds * 1000L;
+    // Checking twice per timeout keeps the overshoot under half of it, and once a second is enough
+    long intervalMillis = Math.max(100, Math.min(1000, timeoutMillis / 2));
+    Thread.ofPlatform().name("idle-client-reaper").daemon(true).start(() -> {
+      while (true) {
+        try {
+          Thread.sleep(intervalMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+        closeIdleClients(System.currentTimeMillis(), timeoutMillis);
+      }
+    });
+  }
+  
+  /**
+   * Closes every client that sent nothing for longer than the timeout.
+   * 
+   * @return the number of clients closed
+   */
+  static int closeIdleClients(long now, long timeoutMillis) {
+    int closed = 0;
+    for (HandleClient client : connectedClients.values()) {
+      long idleMillis = now - client.lastInteraction;
+      if (idleMillis > timeoutMillis && !client.isReplica() && !client.isBlocked()) {
+        Log.verbose(() -> "Closing idle client " + client.clientId + " (idle " + idleMillis / 1000 + "s)");
+        client.connectionWriter.disconnect();
+        client.detach();
+        closed++;
       }
     }
+    return closed;
+  }
+  
+  private boolean isReplica() {
+    return connectionWriter.getClientClass() == OutputBufferLimits.ClientClass.REPLICA;
+  }
+  
+  private boolean isBlocked() {
+    BlockedClient blocked = blockedOn;
+    if (blocked == null) {
+      return false;
+    }
+    return blocked.isStreamOperation ? streamStorage.isBlocked(blocked) : listStorage.isBlocked(blocked.listKey, blocked);
   }
   
+  /**
+   * Sends the replies of a pipelined batch, along with the write commands it
+   * propagated to replicas.
+   * 
+   * @param outputStream the writer holding the batch's replies
+   * @throws IOException if an I/O error occurs
+   */
+  public void flushBatch(OutputStream outputStream) throws IOException {
+    outputStream.flush();
+    if (pendingReplicaFlush) {
+      pendingReplicaFlush = false;
+      flushReplicas();
+    }
+  }
   
+  /**
+   * Executes a command, writing the reply to a plain stream. The reply is
+   * handed to the stream without flushing it.
+   * 
+   * @param command the command and its arguments
+   * @param outputStream the stream receiving the reply
+   * @throws IOException if an I/O error occurs
+   */
   public void handleCommand(List<String> command, OutputStream outputStream) throws IOException {
-    String commandName = command.get(0).toUpperCase();
-
-    // If in transaction and not MULTI/EXEC, queue the command
-    if (inTransaction && !commandName.equals("MULTI") && !commandName.equals("EXEC") && !commandName.equals("DISCARD")) {
-      queuedCommands.add(command);
-      outputStream.write(RESPProtocol.formatSimpleString("QUEUED").getBytes());
-      System.out.println("Client " + clientId + " - Queued command: " + command);
-      outputStream.flush();
+    if (outputStream instanceof RespWriter writer) {
+      handleCommand(command, writer);
       return;
     }
-    
-    // List of write commands to propagate
-    boolean isWriteCommand = commandName.equals("SET") ||
-                             commandName.equals("DEL") ||
-                             commandName.equals("RPUSH") ||
-                             commandName.equals("LPUSH") ||
-                             commandName.equals("LPOP") ||
-                             commandName.equals("BLPOP") ||
-                             commandName.equals("XADD");
-
-    if (isWriteCommand) {
-      propagateToReplica(command);
+    RespWriter writer = new RespWriter(outputStream);
+    writer.setProtocolVersion(protocolVersion);
+    handleCommand(command, writer);
+    writer.drain();
+  }
+  
+  /**
+   * Executes a command: looks it up in the command table, checks its arity,
+   * queues it inside MULTI, propagates it to replicas if it writes, and runs
+   * its handler.
+   * 
+   * @param command the command and its arguments
+   * @param writer the connection's writer
+   * @throws IOException if an I/O error occurs
+   */
+  public void handleCommand(List<String> command, RespWriter writer) throws IOException {
+    // A parsed command is looked up by its name's bytes, so dispatch decodes no String
+    CommandTable.Command spec = command instanceof RESPProtocol.Arguments args
+        ? COMMANDS.lookup(args.bytes(0)) : COMMANDS.lookup(command.get(0));
+    if (spec == null) {
+      // Like Redis, a bad command inside MULTI makes the whole transaction fail at EXEC
+      transactionFailed |= inTransaction;
+      handleUnknownCommand(command.get(0).toUpperCase(), writer);
+      return;
+    }
+    if (!spec.acceptsArgumentCount(command.size())) {
+      transactionFailed |= inTransaction;
+      writer.writeRaw(RESPProtocol.getArgumentError(spec.name));
+      Log.debug(() -> "Client " + clientId + " - Sent error: wrong number of arguments for " + spec.name);
+      return;
     }
-    
-    switch (commandName) {
-      case "PING":
-        handlePing(outputStream);
-        break;
-        
-      case "ECHO":
-        handleEcho(command, outputStream);
-        break;
-        
-      case "SET":
-        handleSet(command, outputStream);
-        break;
-        
-      case "GET":
-        handleGet(command, outputStream);
-        break;
-        
-      case "RPUSH":
-        handleRpush(command, outputStream);
-        break;
-        
-      case "LPUSH":
-        handleLpush(command, outputStream);
-        break;
-        
-      case "LPOP":
-        handleLpop(command, outputStream);
-        break;
-        
-      case "BLPOP":
-        handleBlpop(command, outputStream);
-        break;
-        
-      case "LRANGE":
-        handleLrange(command, outputStream);
-        break;
-        
-      case "LLEN":
-        handleLlen(command, outputStream);
-        break;
-        
-      case "TYPE":
-        handleType(command, outputStream);
-        break;
-        
-      case "XADD":
-        handleXadd(command, outputStream);
-        break;
-        
-      case "XRANGE":
-        handleXrange(command, outputStream);
-        break;
-        
-      case "XREAD":
-        handleXread(command, outputStream);
-        break;
-
-      case "INFO":
-        handleInfo(command, outputStream);
-        break;
-
-      case "REPLCONF":
-        handleReplconf(command, outputStream);
-        break;
-      
-      case "REPLICAOF":
-        handleReplicaof(command, outputStream);
-        break;
-
-      case "PSYNC":
-        handlePsync(command, outputStream);
-        break;
-
-      case "CONFIG":
-        handleConfig(command, outputStream);
-        break;
-
-      case "KEYS":
-        handleKeys(command, outputStream);
-        break;
-
-      case "INCR":
-        handleIncr(command, outputStream);
-        break;
-
-      case "MULTI":
-        handleMulti(command, outputStream);
-        break;
 
-      case "EXEC":
-        handleExec(command, outputStream);
-        break;
+    // If in transaction and not MULTI/EXEC/DISCARD, queue the command
+    if (inTransaction && spec != MULTI && spec != EXEC && spec != DISCARD) {
+      queuedCommands.add(command);
+      writer.writeRaw(RespWriter.QUEUED);
+      Log.debug(() -> "Client " + clientId + " - Queued command: " + command);
+      return;
+    }
 
-      case "DISCARD":
-        handleDiscard(command, outputStream);
-        break;
+    // Replicas leave eviction to their master, as with Redis' replica-ignore-maxmemory
+    if (spec.is(CommandTable.DENYOOM) && !"slave".equals(serverRole) && !freeMemoryIfNeeded()) {
+      writer.writeRaw(RESPProtocol.getOomError());
+      Log.debug(() -> "Client " + clientId + " - Sent error: OOM for " + spec.name);
+      return;
+    }
 
-      case "SAVE":
-        handleSave(command, outputStream);
-        break;
+    if (spec.is(CommandTable.WRITE) && spec != INCRBYFLOAT) {
+      propagateToReplica(command);
+    }
 
-      default:
-        handleUnknownCommand(commandName, outputStream);
-        break;
+    try {
+      spec.handler.handle(this, command, writer);
+    } catch (WrongTypeException e) {
+      writer.writeRaw(RESPProtocol.getWrongTypeError());
+      Log.debug(() -> "Client " + clientId + " - Sent error: WRONGTYPE for " + spec.name);
     }
-    
-    outputStream.flush();
   }
   
-  private void handlePing(OutputStream outputStream) throws IOException {
-    outputStream.write(RESPProtocol.PONG_RESPONSE.getBytes());
-    System.out.println("Client " + clientId + " - Sent: +PONG");
+  // Evicts as the policy allows; false if the keyspace stays over maxmemory. Replicas
+  // ignore maxmemory, so as in Redis each evicted key reaches them as a DEL.
+  private boolean freeMemoryIfNeeded() {
+    return keyspace.evictor().freeMemoryIfNeeded(key -> propagateToReplica(List.of("DEL", key)));
+  }
+
+  private void handlePing(RespWriter writer) throws IOException {
+    writer.writePong();
+    Log.debug(() -> "Client " + clientId + " - Sent: +PONG");
   }
   
-  private void handleEcho(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleEcho(List<String> command, RespWriter writer) throws IOException {
     if (command.size() > 1) {
       String echoArg = command.get(1);
-      String response = RESPProtocol.formatBulkString(echoArg);
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - Sent ECHO response: " + echoArg);
+      writer.writeBulk(echoArg);
+      Log.debug(() -> "Client " + clientId + " - Sent ECHO response: " + echoArg);
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("echo").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: ECHO missing argument");
+      writer.writeRaw(RESPProtocol.getArgumentError("echo"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: ECHO missing argument");
     }
   }
 
@@ -229,40 +456,52 @@ public class HandleClient implements Runnable {
   // Store key-value pairs with optional expiry
   //
   // Syntax:
-  // SET key value [PX milliseconds]
+  // SET key value [PX milliseconds | KEEPTTL]
   // 
-  private void handleSet(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleSet(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 3) {
       String key = command.get(1);
-      String value = command.get(2);
+      // Parsed values are stored in the array they were read into, without a String in between
+      byte[] value = command instanceof RESPProtocol.Arguments args
+          ? args.bytes(2) : command.get(2).getBytes(RESPProtocol.CHARSET);
       
-      // Check for PX option (expiry in milliseconds)
+      // Check for PX option (expiry in milliseconds) and KEEPTTL (keep the key's TTL)
       Long expiryTime = null;
-      if (command.size() >= 5) {
-        for (int i = 3; i < command.size() - 1; i++) {
-          if (command.get(i).toUpperCase().equals("PX")) {
-            try {
-              long expiryMs = Long.parseLong(command.get(i + 1));
-              expiryTime = System.currentTimeMillis() + expiryMs;
-              System.out.println("Client " + clientId + " - SET " + key + " with expiry in " + expiryMs + "ms");
-              break;
-            } catch (NumberFormatException e) {
-              outputStream.write(RESPProtocol.formatError("ERR invalid expire time in set").getBytes());
-              System.out.println("Client " + clientId + " - Sent error: invalid PX value");
-              return;
-            }
+      boolean keepTtl = false;
+      for (int i = 3; i < command.size(); i++) {
+        String option = command.get(i).toUpperCase();
+        if (option.equals("KEEPTTL")) {
+          keepTtl = true;
+        } else if (option.equals("PX") && expiryTime == null && i + 1 < command.size()) {
+          try {
+            long expiryMs = Long.parseLong(command.get(++i));
+            expiryTime = System.currentTimeMillis() + expiryMs;
+            Log.debug(() -> "Client " + clientId + " - SET " + key + " with expiry in " + expiryMs + "ms");
+          } catch (NumberFormatException e) {
+            writer.writeError("ERR invalid expire time in set");
+            Log.debug(() -> "Client " + clientId + " - Sent error: invalid PX value");
+            return;
           }
         }
       }
+      if (keepTtl && expiryTime != null) {
+        writer.writeError("ERR syntax error");
+        Log.debug(() -> "Client " + clientId + " - Sent error: SET with both PX and KEEPTTL");
+        return;
+      }
       
       // Store the key-value pair using StringStorage
-      stringStorage.set(key, value, expiryTime);
+      if (keepTtl) {
+        stringStorage.setKeepTtl(key, value);
+      } else {
+        stringStorage.set(key, value, expiryTime);
+      }
       
-      outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
-      System.out.println("Client " + clientId + " - SET " + key + " = " + value);
+      writer.writeOk();
+      Log.debug(() -> "Client " + clientId + " - SET " + key + " = " + new String(value, RESPProtocol.CHARSET));
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("set").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: SET missing arguments");
+      writer.writeRaw(RESPProtocol.getArgumentError("set"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: SET missing arguments");
     }
   }
 
@@ -272,23 +511,22 @@ public class HandleClient implements Runnable {
   // Syntax:
   // GET key
   // 
-  private void handleGet(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleGet(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 2) {
       String key = command.get(1);
       
-      // Get value using StringStorage (handles expiry automatically)
-      String value = stringStorage.get(key);
-      String response = RESPProtocol.formatBulkString(value);
-      outputStream.write(response.getBytes());
+      // Get value using StringStorage (handles expiry automatically); the stored bytes are the reply
+      byte[] value = stringStorage.getBytes(key);
+      writer.writeBulk(value);
       
       if (value != null) {
-        System.out.println("Client " + clientId + " - GET " + key + " = " + value);
+        Log.debug(() -> "Client " + clientId + " - GET " + key + " = " + new String(value, RESPProtocol.CHARSET));
       } else {
-        System.out.println("Client " + clientId + " - GET " + key + " = (null/expired)");
+        Log.debug(() -> "Client " + clientId + " - GET " + key + " = (null/expired)");
       }
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("get").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: GET missing argument");
+      writer.writeRaw(RESPProtocol.getArgumentError("get"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: GET missing argument");
     }
   }
 
@@ -298,7 +536,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // RPUSH key element [element ...]
   // 
-  private void handleRpush(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleRpush(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 3) {
       String listKey = command.get(1);
       
@@ -312,15 +550,13 @@ public class HandleClient implements Runnable {
       int listSize = listStorage.rightPush(listKey, elements);
       
       // Return the number of elements in the list as a RESP integer
-      String response = RESPProtocol.formatInteger(listSize);
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - RPUSH " + listKey + " added " + elements.length + " elements, list size: " + listSize);
-      
+      writer.writeInteger(listSize);
+      Log.debug(() -> "Client " + clientId + " - RPUSH " + listKey + " added " + elements.length + " elements, list size: " + listSize);
       // Notify blocked clients waiting for this list
       notifyBlockedClients(listKey);
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("rpush").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: RPUSH missing arguments");
+      writer.writeRaw(RESPProtocol.getArgumentError("rpush"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: RPUSH missing arguments");
     }
   }
 
@@ -330,7 +566,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // LPUSH key element [element ...]
   // 
-  private void handleLpush(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleLpush(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 3) {
         String listKey = command.get(1);
         
@@ -343,15 +579,13 @@ public class HandleClient implements Runnable {
         // Use ListStorage to push elements
         int listSize = listStorage.leftPush(listKey, elements);
         
-        String response = RESPProtocol.formatInteger(listSize);
-        outputStream.write(response.getBytes());
-        System.out.println("Client " + clientId + " - LPUSH " + listKey + " added " + elements.length + " elements, list size: " + listSize);
-        
+        writer.writeInteger(listSize);
+        Log.debug(() -> "Client " + clientId + " - LPUSH " + listKey + " added " + elements.length + " elements, list size: " + listSize);
         // Notify blocked clients waiting for this list
         notifyBlockedClients(listKey);
     } else {
-        outputStream.write(RESPProtocol.getArgumentError("lpush").getBytes());
-        System.out.println("Client " + clientId + " - Sent error: LPUSH missing arguments");
+        writer.writeRaw(RESPProtocol.getArgumentError("lpush"));
+        Log.debug(() -> "Client " + clientId + " - Sent error: LPUSH missing arguments");
     }
   }
 
@@ -361,7 +595,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // LPOP key [count]
   // 
-  private void handleLpop(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleLpop(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 2) {
       String listKey = command.get(1);
       
@@ -371,47 +605,46 @@ public class HandleClient implements Runnable {
         try {
           count = Integer.parseInt(command.get(2));
           if (count < 0) {
-            outputStream.write(RESPProtocol.getOutOfRangeError().getBytes());
-            System.out.println("Client " + clientId + " - Sent error: LPOP negative count");
+            writer.writeRaw(RESPProtocol.getOutOfRangeError());
+            Log.debug(() -> "Client " + clientId + " - Sent error: LPOP negative count");
             return;
           }
         } catch (NumberFormatException e) {
-          outputStream.write(RESPProtocol.getInvalidIntegerError().getBytes());
-          System.out.println("Client " + clientId + " - Sent error: LPOP invalid count format");
+          writer.writeRaw(RESPProtocol.getInvalidIntegerError());
+          Log.debug(() -> "Client " + clientId + " - Sent error: LPOP invalid count format");
           return;
         }
       }
       
       // Use ListStorage to pop elements
-      List<String> removedElements = listStorage.leftPop(listKey, count);
+      int requested = count;
+      List<String> removedElements = listStorage.leftPop(listKey, requested);
       
       if (removedElements.isEmpty()) {
         if (count == 1) {
           // Single element LPOP on empty/non-existent list returns null bulk string
-          outputStream.write(RESPProtocol.NULL_BULK_STRING.getBytes());
-          System.out.println("Client " + clientId + " - LPOP " + listKey + " (empty/non-existent) -> null");
+          writer.writeNull();
+          Log.debug(() -> "Client " + clientId + " - LPOP " + listKey + " (empty/non-existent) -> null");
         } else {
           // Multiple element LPOP on empty/non-existent list returns empty array
-          outputStream.write(RESPProtocol.EMPTY_ARRAY.getBytes());
-          System.out.println("Client " + clientId + " - LPOP " + listKey + " " + count + " (empty/non-existent) -> empty array");
+          writer.writeEmptyArray();
+          Log.debug(() -> "Client " + clientId + " - LPOP " + listKey + " " + requested + " (empty/non-existent) -> empty array");
         }
       } else {
         if (count == 1) {
           // Single element LPOP returns bulk string
           String element = removedElements.get(0);
-          String response = RESPProtocol.formatBulkString(element);
-          outputStream.write(response.getBytes());
-          System.out.println("Client " + clientId + " - LPOP " + listKey + " -> '" + element + "', remaining: " + listStorage.length(listKey));
+          writer.writeBulk(element);
+          Log.debug(() -> "Client " + clientId + " - LPOP " + listKey + " -> '" + element + "', remaining: " + listStorage.length(listKey));
         } else {
           // Multiple element LPOP returns array
-          String response = RESPProtocol.formatStringArray(removedElements);
-          outputStream.write(response.getBytes());
-          System.out.println("Client " + clientId + " - LPOP " + listKey + " " + count + " -> " + removedElements.size() + " elements: " + removedElements + ", remaining: " + listStorage.length(listKey));
+          writer.writeStringArray(removedElements);
+          Log.debug(() -> "Client " + clientId + " - LPOP " + listKey + " " + requested + " -> " + removedElements.size() + " elements: " + removedElements + ", remaining: " + listStorage.length(listKey));
         }
       }
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("lpop").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: LPOP missing argument");
+      writer.writeRaw(RESPProtocol.getArgumentError("lpop"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: LPOP missing argument");
     }
   }
 
@@ -421,8 +654,8 @@ public class HandleClient implements Runnable {
   // Syntax:
   // BLPOP key timeout
   // 
-  private void handleBlpop(List<String> command, OutputStream outputStream) throws IOException {
-    System.out.println("Started handling BLPOP command for " + clientId);
+  private void handleBlpop(List<String> command, RespWriter writer) throws IOException {
+    Log.debug(() -> "Started handling BLPOP command for " + clientId);
     if (command.size() >= 3) {
       String listKey = command.get(1);
       
@@ -431,13 +664,13 @@ public class HandleClient implements Runnable {
       try {
         timeoutSeconds = Double.parseDouble(command.get(2));
         if (timeoutSeconds < 0) {
-          outputStream.write(RESPProtocol.formatError("ERR timeout is negative").getBytes());
-          System.out.println("Client " + clientId + " - Sent error: BLPOP negative timeout");
+          writer.writeError("ERR timeout is negative");
+          Log.debug(() -> "Client " + clientId + " - Sent error: BLPOP negative timeout");
           return;
         }
       } catch (NumberFormatException e) {
-        outputStream.write(RESPProtocol.formatError("ERR timeout is not a float or out of range").getBytes());
-        System.out.println("Client " + clientId + " - Sent error: BLPOP invalid timeout format");
+        writer.writeError("ERR timeout is not a float or out of range");
+        Log.debug(() -> "Client " + clientId + " - Sent error: BLPOP invalid timeout format");
         return;
       }
       
@@ -449,27 +682,34 @@ public class HandleClient implements Runnable {
       if (!poppedElements.isEmpty()) {
         // List has elements, return immediately
         String element = poppedElements.get(0);
-        String response = RESPProtocol.formatKeyValueArray(listKey, element);
-        outputStream.write(response.getBytes());
-        System.out.println("Client " + clientId + " - BLPOP " + listKey + " -> immediate ['" + listKey + "', '" + element + "'], remaining: " + listStorage.length(listKey));
+        writer.writeKeyValueArray(listKey, element);
+        Log.debug(() -> "Client " + clientId + " - BLPOP " + listKey + " -> immediate ['" + listKey + "', '" + element + "'], remaining: " + listStorage.length(listKey));
+        return;
+      }
+      
+      // Inside EXEC the client can't block, so an empty list replies null right away
+      if (executingTransaction) {
+        writer.writeNull();
+        Log.debug(() -> "Client " + clientId + " - BLPOP " + listKey + " in transaction -> null");
         return;
       }
       
       // List is empty or doesn't exist, need to block the client
-      BlockedClient blockedClient = new BlockedClient(clientId, outputStream, listKey, timeoutMs);
+      BlockedClient blockedClient = new BlockedClient(clientId, writer, listKey, timeoutMs);
       
       // Add the client to the blocked queue
       boolean wasBlocked = listStorage.blockClient(listKey, blockedClient);
       
       if (wasBlocked) {
-        System.out.println("Client " + clientId + " - BLPOP " + listKey + " is blocked (timeout: " + timeoutSeconds + "s), queue size: " + listStorage.getBlockedClientCount(listKey) + ", queue order: " + listStorage.getBlockedClientOrder(listKey));
-        
+        blockedOn = blockedClient;
+        Log.debug(() -> "Client " + clientId + " - BLPOP " + listKey + " is blocked (timeout: " + timeoutSeconds + "s), queue size: " + listStorage.getBlockedClientCount(listKey) + ", queue order: " + listStorage.getBlockedClientOrder(listKey));
         // Start timeout monitoring in a separate thread
         if (timeoutMs > 0) {
           // Capture the blockedClient reference for the timeout thread
           final BlockedClient finalBlockedClient = blockedClient;
           
-          new Thread(() -> {
+          // A virtual thread, so a sleeping timeout costs a few hundred bytes instead of a platform stack
+          Thread.startVirtualThread(() -> {
             try {
               Thread.sleep(timeoutMs);
               
@@ -479,23 +719,23 @@ public class HandleClient implements Runnable {
               if (wasStillBlocked) {
                 // Client timed out, send null response
                 try {
-                  outputStream.write(RESPProtocol.NULL_BULK_STRING.getBytes());
-                  outputStream.flush();
-                  System.out.println("Client " + clientId + " - BLPOP " + listKey + " timed out");
+                  writer.writeNull();
+                  writer.flush();
+                  Log.debug(() -> "Client " + clientId + " - BLPOP " + listKey + " timed out");
                 } catch (IOException e) {
-                  System.out.println("Client " + clientId + " - IOException during timeout response: " + e.getMessage());
+                  Log.verbose(() -> "Client " + clientId + " - IOException during timeout response: " + e.getMessage());
                 }
               }
             } catch (InterruptedException e) {
-              System.out.println("Client " + clientId + " - BLPOP timeout thread interrupted");
+              Log.debug(() -> "Client " + clientId + " - BLPOP timeout thread interrupted");
             }
-          }).start();
+          });
         }
       }
       
     } else {
-      outputStream.write(RESPProtocol.getArgumentError("blpop").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: BLPOP missing arguments");
+      writer.writeRaw(RESPProtocol.getArgumentError("blpop"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: BLPOP missing arguments");
     }
   }
 
@@ -505,7 +745,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // LRANGE key start stop
   // 
-  private void handleLrange(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleLrange(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 4) {
       String listKey = command.get(1);
       try {
@@ -515,16 +755,15 @@ public class HandleClient implements Runnable {
         // Use ListStorage to get range
         List<String> elements = listStorage.range(listKey, startIndex, endIndex);
         
-        String response = RESPProtocol.formatStringArray(elements);
-        outputStream.write(response.getBytes());
-        System.out.println("Client " + clientId + " - LRANGE " + listKey + " [" + startIndex + ":" + endIndex + "] -> " + elements.size() + " elements");
+        writer.writeStringArray(elements);
+        Log.debug(() -> "Client " + clientId + " - LRANGE " + listKey + " [" + startIndex + ":" + endIndex + "] -> " + elements.size() + " elements");
       } catch (NumberFormatException e) {
-        outputStream.write(RESPProtocol.formatError("ERR value is not an integer or out of range").getBytes());
-        System.out.println("Client " + clientId + " - Sent error: LRANGE invalid index format");
+        writer.writeError("ERR value is not an integer or out of range");
+        Log.debug(() -> "Client " + clientId + " - Sent error: LRANGE invalid index format");
       }
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'lrange' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: LRANGE missing arguments");
+      writer.writeError("ERR wrong number of arguments for 'lrange' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: LRANGE missing arguments");
     }
   }
 
@@ -534,7 +773,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // LLEN key
   // 
-  private void handleLlen(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleLlen(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 2) {
       String listKey = command.get(1);
 
@@ -542,12 +781,11 @@ public class HandleClient implements Runnable {
       int listLength = listStorage.length(listKey);
       
       // Return the length as a RESP integer using RESPProtocol
-      String response = RESPProtocol.formatInteger(listLength);
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - LLEN " + listKey + " -> " + listLength);
+      writer.writeInteger(listLength);
+      Log.debug(() -> "Client " + clientId + " - LLEN " + listKey + " -> " + listLength);
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'llen' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: LLEN missing argument");
+      writer.writeError("ERR wrong number of arguments for 'llen' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: LLEN missing argument");
     }
   }
 
@@ -557,47 +795,168 @@ public class HandleClient implements Runnable {
   // Syntax:
   // TYPE key
   //
-  private void handleType(List<String> command, OutputStream outputStream) throws IOException {
-    if (command.size() >= 2) {
-      String key = command.get(1);
+  private void handleType(List<String> command, RespWriter writer) throws IOException {
+    String key = command.get(1);
+    RedisObject object = lookupKey(key);
+    String type = object != null ? object.type.typeName() : "none";
+    writer.writeSimpleString(type);
+    Log.debug(() -> "Client " + clientId + " - TYPE " + key + " -> " + type);
+  }
 
-      // Check if it's a string type using StringStorage
-      if (stringStorage.exists(key)) {
-        outputStream.write(RESPProtocol.formatSimpleString("string").getBytes());
-        System.out.println("Client " + clientId + " - TYPE " + key + " -> string");
-        return;
+  //
+  // Delete keys of any type
+  //
+  // Syntax:
+  // DEL key [key ...]
+  //
+  private void handleDel(List<String> command, RespWriter writer) throws IOException {
+    int deleted = 0;
+    for (int i = 1; i < command.size(); i++) {
+      if (keyspace.delete(command.get(i))) {
+        deleted++;
       }
+    }
+    writer.writeInteger(deleted);
+    int count = deleted;
+    Log.debug(() -> "Client " + clientId + " - DEL -> " + count);
+  }
 
-      // Check if it's a list type using ListStorage
-      if (listStorage.exists(key)) {
-        outputStream.write(RESPProtocol.formatSimpleString("list").getBytes());
-        System.out.println("Client " + clientId + " - TYPE " + key + " -> list");
-        return;
+  //
+  // Count the given keys that exist, a key given twice counting twice
+  //
+  // Syntax:
+  // EXISTS key [key ...]
+  //
+  private void handleExists(List<String> command, RespWriter writer) throws IOException {
+    int existing = 0;
+    for (int i = 1; i < command.size(); i++) {
+      if (lookupKey(command.get(i)) != null) {
+        existing++;
       }
+    }
+    writer.writeInteger(existing);
+  }
+
+  //
+  // Set a timeout on a key of any type
+  //
+  // Syntax:
+  // EXPIRE key seconds
+  // PEXPIRE key milliseconds
+  //
+  private void handleExpire(List<String> command, RespWriter writer) throws IOException {
+    String key = command.get(1);
+    long timeout;
+    try {
+      timeout = Long.parseLong(command.get(2));
+    } catch (NumberFormatException e) {
+      writer.writeRaw(RESPProtocol.getInvalidIntegerError());
+      return;
+    }
+    String name = command.get(0).toLowerCase();
+    long timeoutMs;
+    long expiryTime;
+    try {
+      timeoutMs = name.equals("pexpire") ? timeout : Math.multiplyExact(timeout, 1000);
+      expiryTime = Math.addExact(System.currentTimeMillis(), timeoutMs);
+    } catch (ArithmeticException e) {
+      // A timeout that overflows would wrap to the past and delete the key
+      writer.writeError("ERR invalid expire time in '" + name + "' command");
+      return;
+    }
+    // A timeout in the past deletes the key, as in Redis
+    boolean applied = timeoutMs <= 0 ? keyspace.delete(key) : keyspace.setExpiry(key, expiryTime);
+    writer.writeInteger(applied ? 1 : 0);
+    Log.debug(() -> "Client " + clientId + " - " + command.get(0).toUpperCase() + " " + key + " " + timeout);
+  }
+
+  //
+  // Get the remaining time to live of a key: -2 if it doesn't exist, -1 if it doesn't expire
+  //
+  // Syntax:
+  // TTL key
+  // PTTL key
+  //
+  private void handleTtl(List<String> command, RespWriter writer) throws IOException {
+    RedisObject object = lookupKey(command.get(1));
+    if (object == null) {
+      writer.writeInteger(-2);
+      return;
+    }
+    if (!object.hasExpiry()) {
+      writer.writeInteger(-1);
+      return;
+    }
+    long remainingMs = Math.max(0, object.getExpiryTime() - System.currentTimeMillis());
+    // TTL rounds to the nearest second, like Redis
+    writer.writeInteger(command.get(0).equalsIgnoreCase("pttl") ? remainingMs : (remainingMs + 500) / 1000);
+  }
 
-      // Check if it's a stream type using StreamStorage
-      if (streamStorage.exists(key)) {
-        outputStream.write(RESPProtocol.formatSimpleString("stream").getBytes());
-        System.out.println("Client " + clientId + " - TYPE " + key + " -> stream");
+  //
+  // Remove the timeout of a key
+  //
+  // Syntax:
+  // PERSIST key
+  //
+  private void handlePersist(List<String> command, RespWriter writer) throws IOException {
+    writer.writeInteger(keyspace.removeExpiry(command.get(1)) ? 1 : 0);
+  }
+
+  //
+  // Inspect the object stored at a key
+  //
+  // Syntax:
+  // OBJECT ENCODING key
+  // OBJECT IDLETIME key
+  // OBJECT FREQ key
+  //
+  private void handleObject(List<String> command, RespWriter writer) throws IOException {
+    String subcommand = command.get(1).toUpperCase();
+    if (command.size() != 3 || !(subcommand.equals("ENCODING") || subcommand.equals("IDLETIME") || subcommand.equals("FREQ"))) {
+      writer.writeError("ERR unknown subcommand or wrong number of arguments for '" + command.get(1) + "'. Try OBJECT ENCODING|IDLETIME|FREQ.");
+      return;
+    }
+    RedisObject object = lookupKey(command.get(2));
+    // The access data holds either the LRU clock or the LFU counter, as the policy says
+    boolean lfu = keyspace.evictor().getPolicy().isLfu();
+    if (object == null) {
+      writer.writeNull();
+    } else if (subcommand.equals("ENCODING")) {
+      writer.writeBulk(object.encoding());
+    } else if (subcommand.equals("IDLETIME")) {
+      if (lfu) {
+        writer.writeError("ERR An LFU maxmemory policy is selected, idle time not tracked. Please note that when switching between policies at runtime LRU and LFU data will take some time to adjust.");
         return;
       }
-
-      // Key doesn't exist
-      outputStream.write(RESPProtocol.formatSimpleString("none").getBytes());
-      System.out.println("Client " + clientId + " - TYPE " + key + " -> none");
+      writer.writeInteger(object.getIdleTime() / 1000);
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'type' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: TYPE missing argument");
+      if (!lfu) {
+        writer.writeError("ERR An LFU maxmemory policy is not selected, access frequency not tracked. Please note that when switching between policies at runtime LRU and LFU data will take some time to adjust.");
+        return;
+      }
+      writer.writeInteger(object.getFrequency());
     }
   }
 
+  /**
+   * Finds a key of any type. Like TYPE and OBJECT in Redis, this does not
+   * count as an access to the key.
+   *
+   * @param key the key
+   * @return the key's object, or null if it doesn't exist
+   */
+  private RedisObject lookupKey(String key) {
+    return keyspace.peek(key);
+  }
+
+
   //
   // Add entries to a stream
   //
   // Syntax:
   // XADD key id field value [field value ...]
   //
-  private void handleXadd(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleXadd(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 5 && (command.size() % 2) == 1) {
       String streamKey = command.get(1);
       String entryId = command.get(2);
@@ -615,23 +974,21 @@ public class HandleClient implements Runnable {
         String actualEntryId = streamStorage.addEntry(streamKey, entryId, fields);
         
         // Return the entry ID as a bulk string
-        String response = RESPProtocol.formatBulkString(actualEntryId);
-        outputStream.write(response.getBytes());
-        System.out.println("Client " + clientId + " - XADD " + streamKey + " returned entry ID: " + actualEntryId);
-        
+        writer.writeBulk(actualEntryId);
+        Log.debug(() -> "Client " + clientId + " - XADD " + streamKey + " returned entry ID: " + actualEntryId);
       } catch (IllegalArgumentException e) {
         // Validation error from StreamStorage
-        outputStream.write(e.getMessage().getBytes());
-        System.out.println("Client " + clientId + " - XADD " + streamKey + " validation error: " + e.getMessage());
+        writer.writeRaw(e.getMessage());
+        Log.debug(() -> "Client " + clientId + " - XADD " + streamKey + " validation error: " + e.getMessage());
       }
       
     } else {
       if (command.size() < 5) {
-        outputStream.write(RESPProtocol.getArgumentError("xadd").getBytes());
-        System.out.println("Client " + clientId + " - Sent error: XADD missing arguments");
+        writer.writeRaw(RESPProtocol.getArgumentError("xadd"));
+        Log.debug(() -> "Client " + clientId + " - Sent error: XADD missing arguments");
       } else {
-        outputStream.write(RESPProtocol.getArgumentError("xadd").getBytes());
-        System.out.println("Client " + clientId + " - Sent error: XADD odd number of field-value pairs");
+        writer.writeRaw(RESPProtocol.getArgumentError("xadd"));
+        Log.debug(() -> "Client " + clientId + " - Sent error: XADD odd number of field-value pairs");
       }
     }
   }
@@ -642,7 +999,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // XRANGE key start end
   //
-  private void handleXrange(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleXrange(List<String> command, RespWriter writer) throws IOException {
     if (command.size() >= 4) {
       String streamKey = command.get(1);
       String startId = command.get(2);
@@ -652,12 +1009,11 @@ public class HandleClient implements Runnable {
       List<StreamEntry> matchingEntries = streamStorage.getRange(streamKey, startId, endId);
 
       // Build RESP array response using RESPProtocol
-      String response = RESPProtocol.formatStreamEntryArray(matchingEntries);
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - XRANGE " + streamKey + " [" + startId + ":" + endId + "] -> " + matchingEntries.size() + " entries");
+      writer.writeStreamEntries(matchingEntries);
+      Log.debug(() -> "Client " + clientId + " - XRANGE " + streamKey + " [" + startId + ":" + endId + "] -> " + matchingEntries.size() + " entries");
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'xrange' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: XRANGE missing arguments");
+      writer.writeError("ERR wrong number of arguments for 'xrange' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: XRANGE missing arguments");
     }
   }
 
@@ -667,7 +1023,7 @@ public class HandleClient implements Runnable {
   // Syntax:
   // XREAD [BLOCK timeout] streams key [key ...] id [id ...]
   //
-  private void handleXread(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleXread(List<String> command, RespWriter writer) throws IOException {
     int streamsIndex = -1;
     long blockTimeoutMs = -1; // -1 means non-blocking
     
@@ -675,22 +1031,22 @@ public class HandleClient implements Runnable {
     for (int i = 1; i < command.size(); i++) {
       if (command.get(i).equalsIgnoreCase("block")) {
         if (i + 1 >= command.size()) {
-          outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'xread' command").getBytes());
-          System.out.println("Client " + clientId + " - Sent error: XREAD BLOCK missing timeout");
+          writer.writeError("ERR wrong number of arguments for 'xread' command");
+          Log.debug(() -> "Client " + clientId + " - Sent error: XREAD BLOCK missing timeout");
           return;
         }
         try {
           long timeoutMs = Long.parseLong(command.get(i + 1));
           if (timeoutMs < 0) {
-            outputStream.write(RESPProtocol.formatError("ERR timeout is negative").getBytes());
-            System.out.println("Client " + clientId + " - Sent error: XREAD BLOCK negative timeout");
+            writer.writeError("ERR timeout is negative");
+            Log.debug(() -> "Client " + clientId + " - Sent error: XREAD BLOCK negative timeout");
             return;
           }
           blockTimeoutMs = timeoutMs;
           i++; // Skip the timeout value
         } catch (NumberFormatException e) {
-          outputStream.write(RESPProtocol.formatError("ERR timeout is not an integer or out of range").getBytes());
-          System.out.println("Client " + clientId + " - Sent error: XREAD BLOCK invalid timeout format");
+          writer.writeError("ERR timeout is not an integer or out of range");
+          Log.debug(() -> "Client " + clientId + " - Sent error: XREAD BLOCK invalid timeout format");
           return;
         }
       } else if (command.get(i).equalsIgnoreCase("streams")) {
@@ -701,11 +1057,10 @@ public class HandleClient implements Runnable {
     
     final long finalBlockTimeoutMs = blockTimeoutMs;
 
-    System.out.println("Final timeout: " + finalBlockTimeoutMs);
-    
+    Log.debug(() -> "Final timeout: " + finalBlockTimeoutMs);
     if (streamsIndex == -1) {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'xread' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: XREAD missing 'streams' keyword");
+      writer.writeError("ERR wrong number of arguments for 'xread' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: XREAD missing 'streams' keyword");
       return;
     }
     
@@ -713,8 +1068,8 @@ public class HandleClient implements Runnable {
     // Total arguments after "streams" should be even (N keys + N ids)
     int argsAfterStreams = command.size() - streamsIndex - 1; // Subtract everything before and including "streams"
     if (argsAfterStreams % 2 != 0 || argsAfterStreams < 2) {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'xread' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: XREAD uneven number of stream keys and IDs");
+      writer.writeError("ERR wrong number of arguments for 'xread' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: XREAD uneven number of stream keys and IDs");
       return;
     }
     int numStreams = argsAfterStreams / 2;
@@ -757,12 +1112,14 @@ public class HandleClient implements Runnable {
     
     if (hasNewEntries || finalBlockTimeoutMs == -1) {
       // Non-blocking mode or we have entries, send response immediately
-      String response = RESPProtocol.formatXreadMultiResponse(streamResults);
-      outputStream.write(response.getBytes());
+      writer.writeXreadResponse(streamResults);
       
       int totalEntries = streamResults.values().stream().mapToInt(List::size).sum();
-      System.out.println("Client " + clientId + " - XREAD" + (finalBlockTimeoutMs != -1 ? " BLOCK" : "") + " streams " + streamKeys + " " + afterIds + " -> " + totalEntries + " total entries (immediate)");
-      
+      Log.debug(() -> "Client " + clientId + " - XREAD" + (finalBlockTimeoutMs != -1 ? " BLOCK" : "") + " streams " + streamKeys + " " + afterIds + " -> " + totalEntries + " total entries (immediate)");
+    } else if (executingTransaction) {
+      // Inside EXEC the client can't block, so no new entries means a null reply
+      writer.writeNull();
+      Log.debug(() -> "Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " in transaction -> null");
     } else {
       // Blocking mode and no entries found, block the client
       Map<String, String> lastIdMap = new java.util.LinkedHashMap<>();
@@ -770,10 +1127,13 @@ public class HandleClient implements Runnable {
         lastIdMap.put(streamKeys.get(i), afterIds.get(i));
       }
       
-      BlockedClient blockedClient = new BlockedClient(clientId, outputStream, streamKeys, lastIdMap, finalBlockTimeoutMs);
+      BlockedClient blockedClient = new BlockedClient(clientId, writer, streamKeys, lastIdMap, finalBlockTimeoutMs);
       
       // Try to block the client
       boolean wasBlocked = streamStorage.blockClientOnStreams(blockedClient);
+      if (wasBlocked) {
+        blockedOn = blockedClient;
+      }
       if (!wasBlocked) {
         // Entries were added between our check and blocking attempt, try again
         for (int i = 0; i < numStreams; i++) {
@@ -783,19 +1143,17 @@ public class HandleClient implements Runnable {
           streamResults.put(streamKey, matchingEntries);
         }
         
-        String response = RESPProtocol.formatXreadMultiResponse(streamResults);
-        outputStream.write(response.getBytes());
+        writer.writeXreadResponse(streamResults);
         
         int totalEntries = streamResults.values().stream().mapToInt(List::size).sum();
-        System.out.println("Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " " + afterIds + " -> " + totalEntries + " total entries (race condition)");
+        Log.debug(() -> "Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " " + afterIds + " -> " + totalEntries + " total entries (race condition)");
       } else {
-        System.out.println("Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " " + afterIds + " blocking (timeout: " + (finalBlockTimeoutMs / 1000.0) + "s)");
-        
+        Log.debug(() -> "Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " " + afterIds + " blocking (timeout: " + (finalBlockTimeoutMs / 1000.0) + "s)");
         // Start timeout monitoring in a separate thread
         if (finalBlockTimeoutMs > 0) {
           final BlockedClient finalBlockedClient = blockedClient;
           
-          new Thread(() -> {
+          Thread.startVirtualThread(() -> {
             try {
               Thread.sleep(finalBlockTimeoutMs);
               
@@ -805,42 +1163,140 @@ public class HandleClient implements Runnable {
               if (wasStillBlocked) {
                 // Client timed out, send null response
                 try {
-                  outputStream.write(RESPProtocol.NULL_BULK_STRING.getBytes());
-                  outputStream.flush();
-                  System.out.println("Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " timed out");
+                  writer.writeNull();
+                  writer.flush();
+                  Log.debug(() -> "Client " + clientId + " - XREAD BLOCK streams " + streamKeys + " timed out");
                 } catch (IOException e) {
-                  System.out.println("Client " + clientId + " - IOException during XREAD BLOCK timeout response: " + e.getMessage());
+                  Log.verbose(() -> "Client " + clientId + " - IOException during XREAD BLOCK timeout response: " + e.getMessage());
                 }
               }
             } catch (InterruptedException e) {
-              System.out.println("Client " + clientId + " - XREAD BLOCK timeout thread interrupted");
+              Log.debug(() -> "Client " + clientId + " - XREAD BLOCK timeout thread interrupted");
             }
-          }).start();
+          });
         }
       }
     }
   }
 
-  private void handleInfo(List<String> command, OutputStream outputStream) throws IOException {
-    if (command.size() == 2 && command.get(1).equalsIgnoreCase("replication")) {
-      StringBuilder info = new StringBuilder();
-      info.append("role:").append(serverRole).append("\r\n");
-      if ("master".equals(serverRole)) {
-        info.append("master_replid:").append(MASTER_REPLID).append("\r\n");
-        info.append("master_repl_offset:").append(MASTER_REPL_OFFSET).append("\r\n");
-      }
-      String response = RESPProtocol.formatBulkString(info.toString());
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - INFO replication ->\n" + info);
+  private void handleInfo(List<String> command, RespWriter writer) throws IOException {
+    // No argument means the default sections; several may be named, as in Redis 7
+    java.util.Set<String> requested = new java.util.HashSet<>();
+    for (String arg : command.subList(1, command.size())) {
+      requested.add(arg.toLowerCase());
+    }
+    boolean all = requested.isEmpty() || requested.contains("all") || requested.contains("default")
+        || requested.contains("everything");
+    Map<String, Map<String, String>> sections = new java.util.LinkedHashMap<>();
+    if (all || requested.contains("memory")) {
+      sections.put("Memory", memoryInfo());
+    }
+    if (all || requested.contains("stats")) {
+      sections.put("Stats", statsInfo());
+    }
+    if (all || requested.contains("replication")) {
+      sections.put("Replication", replicationInfo());
+    }
+    if (all || requested.contains("keyspace")) {
+      sections.put("Keyspace", keyspaceInfo());
+    }
+    if (writer.getProtocolVersion() == RESPProtocol.RESP3) {
+      // RESP3 clients get the fields as a map instead of parsing "name:value" lines
+      Map<String, String> fields = new java.util.LinkedHashMap<>();
+      sections.values().forEach(fields::putAll);
+      writer.writeMap(fields);
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR only INFO replication is supported").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: INFO only supports replication section");
+      StringBuilder lines = new StringBuilder();
+      for (Map.Entry<String, Map<String, String>> section : sections.entrySet()) {
+        if (lines.length() > 0) {
+          lines.append("\r\n");
+        }
+        lines.append("# ").append(section.getKey()).append("\r\n");
+        for (Map.Entry<String, String> field : section.getValue().entrySet()) {
+          lines.append(field.getKey()).append(':').append(field.getValue()).append("\r\n");
+        }
+      }
+      writer.writeBulk(lines.toString());
     }
+    Log.debug(() -> "Client " + clientId + " - INFO " + sections.keySet());
   }
 
-  private void handleReplconf(List<String> command, OutputStream outputStream) throws IOException {
-    outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
-    System.out.println("Client " + clientId + " - REPLCONF received, responded with +OK");
+  private Map<String, String> replicationInfo() {
+    Map<String, String> info = new java.util.LinkedHashMap<>();
+    info.put("role", serverRole);
+    if ("master".equals(serverRole)) {
+      info.put("master_replid", MASTER_REPLID);
+      info.put("master_repl_offset", MASTER_REPL_OFFSET);
+    }
+    return info;
+  }
+
+  private Map<String, String> memoryInfo() {
+    long usedMemory = keyspace.getUsedMemory();
+    Evictor evictor = keyspace.evictor();
+    Map<String, String> info = new java.util.LinkedHashMap<>();
+    // The estimated size of the data set, not of the JVM's heap
+    info.put("used_memory", String.valueOf(usedMemory));
+    info.put("used_memory_human", humanBytes(usedMemory));
+    // Native memory held for off-heap string values, slabs included whether used or not
+    OffHeapStore offHeapStore = stringStorage.offHeapStore();
+    long offHeapBytes = offHeapStore != null ? offHeapStore.getAllocatedBytes() : 0;
+    info.put("used_memory_offheap", String.valueOf(offHeapBytes));
+    info.put("used_memory_offheap_human", humanBytes(offHeapBytes));
+    info.put("storage_engine", offHeapStore != null ? "offheap" : "heap");
+    info.put("maxmemory", String.valueOf(evictor.getMaxMemory()));
+    info.put("maxmemory_human", humanBytes(evictor.getMaxMemory()));
+    info.put("maxmemory_policy", evictor.getPolicy().configName());
+    return info;
+  }
+
+  // Formats a size the way Redis' INFO does, e.g. 1.50M
+  private static String humanBytes(long bytes) {
+    String[] units = {"B", "K", "M", "G", "T"};
+    double value = bytes;
+    int unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return unit == 0 ? bytes + "B" : String.format(java.util.Locale.ROOT, "%.2f%s", value, units[unit]);
+  }
+
+  private Map<String, String> statsInfo() {
+    long expiredKeys = keyspace.getExpiredKeys();
+    long evictedKeys = keyspace.evictor().getEvictedKeys();
+    ExpireCycle expireCycle = Main.expireCycle;
+    Map<String, String> info = new java.util.LinkedHashMap<>();
+    info.put("expired_keys", String.valueOf(expiredKeys));
+    info.put("instantaneous_expired_keys_per_sec", String.valueOf(expireCycle.getExpiredPerSecond()));
+    info.put("expired_stale_perc", String.format(java.util.Locale.ROOT, "%.2f", expireCycle.getStalePercent()));
+    info.put("expired_time_cap_reached_count", String.valueOf(expireCycle.getTimeCapReached()));
+    info.put("expire_cycle_cpu_milliseconds", String.valueOf(expireCycle.getCpuMillis()));
+    info.put("evicted_keys", String.valueOf(evictedKeys));
+    return info;
+  }
+
+  private Map<String, String> keyspaceInfo() {
+    long keys = keyspace.keyCount(null);
+    Map<String, String> info = new java.util.LinkedHashMap<>();
+    // Like Redis, an empty database has no line
+    if (keys > 0) {
+      info.put("db0", "keys=" + keys + ",expires=" + keyspace.expiresSize() + ",avg_ttl=" + keyspace.averageTtl());
+      StringBuilder types = new StringBuilder();
+      for (RedisObject.Type type : RedisObject.Type.values()) {
+        if (types.length() > 0) {
+          types.append(',');
+        }
+        types.append(type.typeName()).append('=').append(keyspace.keyCount(type));
+      }
+      info.put("db0_types", types.toString());
+    }
+    return info;
+  }
+
+  private void handleReplconf(List<String> command, RespWriter writer) throws IOException {
+    writer.writeOk();
+    Log.debug(() -> "Client " + clientId + " - REPLCONF received, responded with +OK");
   }
 
   //
@@ -849,150 +1305,311 @@ public class HandleClient implements Runnable {
   // Syntax:
   // REPLICAOF NO ONE
   //
-  private void handleReplicaof(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleReplicaof(List<String> command, RespWriter writer) throws IOException {
     // Note: The original REPLICAOF command has two options: 1, turn the server into master. 2, set the current server to be replica of a server
     // Currently, only 1 is implemented in my code
     if (command.size() == 3 && command.get(1).equalsIgnoreCase("NO") && command.get(2).equalsIgnoreCase("ONE")) {
         // Become master
         Main.serverRole = "master";
         // Optionally: stop any ongoing replication threads/connections here
-        outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
-        System.out.println("Client " + clientId + " - REPLICAOF NO ONE: Now acting as master");
+        writer.writeOk();
+        Log.debug(() -> "Client " + clientId + " - REPLICAOF NO ONE: Now acting as master");
     } else {
-        outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'replicaof' command").getBytes());
+        writer.writeError("ERR wrong number of arguments for 'replicaof' command");
     }
   }
 
-  private void handlePsync(List<String> command, OutputStream outputStream) throws IOException {
+  private void handlePsync(List<String> command, RespWriter writer) throws IOException {
       // Always respond with FULLRESYNC <REPL_ID> 0
       String replid = MASTER_REPLID;
       String offset = MASTER_REPL_OFFSET;
-      String response = "+FULLRESYNC " + replid + " " + offset + "\r\n";
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - PSYNC received, responded with: " + response.trim());
-
+      String response = "FULLRESYNC " + replid + " " + offset;
+      writer.writeSimpleString(response);
+      Log.debug(() -> "Client " + clientId + " - PSYNC received, responded with: +" + response);
       // Send RDB file as a bulk string (no trailing \r\n after binary)
-      RdbWriter writer = new RdbWriter(stringStorage);
-      byte[] rdbFileBytes = writer.serializeToRdb();
-      String bulkHeader = "$" + rdbFileBytes.length + "\r\n";
-      outputStream.write(bulkHeader.getBytes());
-      outputStream.write(rdbFileBytes); // No trailing \r\n
-      outputStream.flush();
-      System.out.println("Client " + clientId + " - Sent RDB file (" + rdbFileBytes.length + " bytes)");
-
-      // Add this replica's OutputStream to the list
-      synchronized (HandleClient.class) {
-        replicaOutputStreams.add(outputStream);
+      RdbWriter rdbWriter = new RdbWriter(stringStorage);
+      byte[] rdbFileBytes = rdbWriter.serializeToRdb();
+      writer.writeRaw("$" + rdbFileBytes.length + "\r\n");
+      writer.write(rdbFileBytes); // No trailing \r\n
+      writer.flush();
+      Log.debug(() -> "Client " + clientId + " - Sent RDB file (" + rdbFileBytes.length + " bytes)");
+      // From now on the replica limits apply to its output; the RDB itself is not counted
+      if (writer instanceof QueuedRespWriter queuedWriter) {
+        queuedWriter.setClientClass(OutputBufferLimits.ClientClass.REPLICA);
+      }
+
+      // Add this replica's writer to the list
+      replicaLock.lock();
+      try {
+        replicaWriters.add(writer);
+      } finally {
+        replicaLock.unlock();
       }
   }
 
-  private void handleConfig(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleConfig(List<String> command, RespWriter writer) throws IOException {
     if (command.size() == 3 && command.get(1).equalsIgnoreCase("GET")) {
       String param = command.get(2);
-      String value = null;
+      String value;
       if (param.equalsIgnoreCase("dir")) {
         value = Main.dir;
       } else if (param.equalsIgnoreCase("dbfilename")) {
         value = Main.dbfilename;
+      } else if (param.equalsIgnoreCase("client-output-buffer-limit")) {
+        value = OutputBufferLimits.describe();
+      } else if (param.equalsIgnoreCase("loglevel")) {
+        value = Log.getLevel().configName();
+      } else if (param.equalsIgnoreCase("accept-threads")) {
+        value = String.valueOf(Main.acceptThreads);
+      } else if (param.equalsIgnoreCase("maxclients")) {
+        value = String.valueOf(Main.maxClients);
+      } else if (param.equalsIgnoreCase("timeout")) {
+        value = String.valueOf(Main.timeout);
+      } else if (param.equalsIgnoreCase("maxmemory")) {
+        value = String.valueOf(keyspace.evictor().getMaxMemory());
+      } else if (param.equalsIgnoreCase("maxmemory-policy")) {
+        value = keyspace.evictor().getPolicy().configName();
       } else {
         value = ""; // Redis returns empty string for unknown config keys
       }
-      List<String> resp = new ArrayList<>();
-      resp.add(RESPProtocol.formatBulkString(param));
-      resp.add(RESPProtocol.formatBulkString(value));
-      String response = "*" + resp.size() + "\r\n" + resp.get(0) + resp.get(1);
-      outputStream.write(response.getBytes());
-      System.out.println("Client " + clientId + " - CONFIG GET " + param + " -> " + value);
+      // A map in RESP3, the flat [param, value] array in RESP2
+      writer.writeMap(java.util.Collections.singletonMap(param, value));
+      Log.debug(() -> "Client " + clientId + " - CONFIG GET " + param + " -> " + value);
+    } else if (command.size() == 4 && command.get(1).equalsIgnoreCase("SET")) {
+      String param = command.get(2);
+      String value = command.get(3);
+      try {
+        if (param.equalsIgnoreCase("maxmemory")) {
+          keyspace.evictor().setMaxMemory(Evictor.parseMemory(value));
+          // A lower limit takes effect at once, as in Redis
+          freeMemoryIfNeeded();
+        } else if (param.equalsIgnoreCase("maxmemory-policy")) {
+          keyspace.evictor().setPolicy(Evictor.Policy.parse(value));
+        } else {
+          writer.writeError("ERR Unknown option or number of arguments for CONFIG SET - '" + param + "'");
+          return;
+        }
+      } catch (IllegalArgumentException e) {
+        writer.writeError("ERR CONFIG SET failed (possibly related to argument '" + param + "') - " + e.getMessage());
+        return;
+      }
+      writer.writeOk();
+      Log.debug(() -> "Client " + clientId + " - CONFIG SET " + param + " " + value);
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR wrong number of arguments for 'config' command").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: CONFIG wrong arguments");
+      writer.writeError("ERR wrong number of arguments for 'config' command");
+      Log.debug(() -> "Client " + clientId + " - Sent error: CONFIG wrong arguments");
     }
   }
 
-  private void handleKeys(List<String> command, OutputStream outputStream) throws IOException {
-    if (command.size() == 2 && command.get(1).equals("*")) {
-      List<String> keys = new ArrayList<>(stringStorage.getAllKeys());
-      String resp = StorageManager.RESPProtocol.formatStringArray(keys);
-      outputStream.write(resp.getBytes());
-      System.out.println("Client " + clientId + " - KEYS * -> " + keys);
-    } else {
-      outputStream.write(StorageManager.RESPProtocol.formatError("ERR only KEYS * is supported").getBytes());
-    }
+  //
+  // List the keys matching a glob-style pattern
+  //
+  // Syntax:
+  // KEYS pattern
+  //
+  private void handleKeys(List<String> command, RespWriter writer) throws IOException {
+    GlobPattern pattern = GlobPattern.compile(command.get(1));
+    List<String> keys = keyspace.keys(pattern, null);
+    writer.writeStringArray(keys);
+    Log.debug(() -> "Client " + clientId + " - KEYS " + command.get(1) + " -> " + keys.size() + " keys");
   }
 
-  private void handleIncr(List<String> command, OutputStream outputStream) throws IOException {
-    if (command.size() == 2) {
-      String key = command.get(1);
-      String value = stringStorage.get(key);
-      if (value != null) {
+  //
+  // Count the keys, from counters kept as keys come and go
+  //
+  // Syntax:
+  // DBSIZE
+  //
+  private void handleDbsize(List<String> command, RespWriter writer) throws IOException {
+    long keys = keyspace.keyCount(null);
+    writer.writeInteger(keys);
+    Log.debug(() -> "Client " + clientId + " - DBSIZE -> " + keys);
+  }
+
+  //
+  // Walk the keyspace a few keys at a time
+  //
+  // Syntax:
+  // SCAN cursor [MATCH pattern] [COUNT count] [TYPE type]
+  //
+  private void handleScan(List<String> command, RespWriter writer) throws IOException {
+    long cursor;
+    try {
+      cursor = Long.parseLong(command.get(1));
+    } catch (NumberFormatException e) {
+      cursor = -1;
+    }
+    if (cursor < 0) {
+      writer.writeError("ERR invalid cursor");
+      return;
+    }
+    GlobPattern pattern = null;
+    int count = 10;
+    RedisObject.Type type = null;
+    for (int i = 2; i < command.size(); i += 2) {
+      String option = command.get(i).toUpperCase();
+      if (i + 1 >= command.size() || !(option.equals("MATCH") || option.equals("COUNT") || option.equals("TYPE"))) {
+        writer.writeError("ERR syntax error");
+        return;
+      }
+      String value = command.get(i + 1);
+      if (option.equals("MATCH")) {
+        pattern = GlobPattern.compile(value);
+      } else if (option.equals("COUNT")) {
         try {
-          long num = Long.parseLong(value);
-          num += 1;
-          stringStorage.set(key, Long.toString(num), null);
-          outputStream.write(RESPProtocol.formatInteger(num).getBytes());
-          System.out.println("Client " + clientId + " - INCR " + key + " -> " + num);
+          count = Integer.parseInt(value);
         } catch (NumberFormatException e) {
-          outputStream.write(RESPProtocol.formatError("ERR value is not an integer or out of range").getBytes());
-          System.out.println("Client " + clientId + " - INCR " + key + " failed: not an integer");
+          writer.writeError("ERR value is not an integer or out of range");
+          return;
+        }
+        if (count < 1) {
+          writer.writeError("ERR syntax error");
+          return;
         }
       } else {
-        // Key does not exist: set to 1 and return 1
-        stringStorage.set(key, "1", null);
-        outputStream.write(RESPProtocol.formatInteger(1).getBytes());
-        System.out.println("Client " + clientId + " - INCR " + key + " (missing) -> 1");
+        type = typeByName(value);
+        if (type == null) {
+          writer.writeError("ERR unknown type name '" + value + "'");
+          return;
+        }
       }
-    } else {
-      outputStream.write(RESPProtocol.getArgumentError("incr").getBytes());
-      System.out.println("Client " + clientId + " - Sent error: INCR missing argument");
+    }
+    List<String> keys = new ArrayList<>();
+    long next = keyspace.scan(cursor, count, pattern, type, keys);
+    writer.writeArrayHeader(2);
+    writer.writeBulk(Long.toString(next));
+    writer.writeStringArray(keys);
+  }
+
+  private static RedisObject.Type typeByName(String name) {
+    for (RedisObject.Type type : RedisObject.Type.values()) {
+      if (type.typeName().equalsIgnoreCase(name)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  //
+  // Add to the integer value of a key, atomically
+  //
+  // Syntax:
+  // INCR key
+  // DECR key
+  // INCRBY key increment
+  // DECRBY key decrement
+  //
+  private void handleIncr(List<String> command, RespWriter writer) throws IOException {
+    String name = command.get(0).toLowerCase();
+    String key = command.get(1);
+    long delta = 1;
+    if (command.size() == 3) {
+      try {
+        delta = Long.parseLong(command.get(2));
+      } catch (NumberFormatException e) {
+        writer.writeRaw(RESPProtocol.getInvalidIntegerError());
+        return;
+      }
+    }
+    if (name.startsWith("decr")) {
+      if (delta == Long.MIN_VALUE) {
+        writer.writeError("ERR decrement would overflow");
+        return;
+      }
+      delta = -delta;
+    }
+    try {
+      long result = stringStorage.incrementBy(key, delta);
+      writer.writeInteger(result);
+      Log.debug(() -> "Client " + clientId + " - " + name.toUpperCase() + " " + key + " -> " + result);
+    } catch (NumberFormatException e) {
+      writer.writeRaw(RESPProtocol.getInvalidIntegerError());
+      Log.debug(() -> "Client " + clientId + " - " + name.toUpperCase() + " " + key + " failed: not an integer");
+    } catch (ArithmeticException e) {
+      writer.writeError("ERR increment or decrement would overflow");
+    }
+  }
+
+  //
+  // Add a floating point increment to the value of a key, atomically
+  //
+  // Syntax:
+  // INCRBYFLOAT key increment
+  //
+  private void handleIncrByFloat(List<String> command, RespWriter writer) throws IOException {
+    String key = command.get(1);
+    try {
+      String increment = command.get(2);
+      if (!increment.matches("[-+0-9.eE]+")) {
+        throw new NumberFormatException(increment);
+      }
+      String result = stringStorage.incrementByFloat(key, Double.parseDouble(increment));
+      // As in Redis, replicas get the result, which keeps them byte for byte equal
+      propagateToReplica(List.of("SET", key, result, "KEEPTTL"));
+      writer.writeBulk(result);
+      Log.debug(() -> "Client " + clientId + " - INCRBYFLOAT " + key + " -> " + result);
+    } catch (NumberFormatException e) {
+      writer.writeError("ERR value is not a valid float");
+    } catch (ArithmeticException e) {
+      writer.writeError("ERR increment would produce NaN or Infinity");
     }
   }
 
-  private void handleMulti(List<String> command, OutputStream outputStream) throws IOException {
+
+  private void handleMulti(List<String> command, RespWriter writer) throws IOException {
     inTransaction = true;
+    transactionFailed = false;
     queuedCommands.clear();
-    outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
-    System.out.println("Client " + clientId + " - MULTI -> OK");
+    writer.writeOk();
+    Log.debug(() -> "Client " + clientId + " - MULTI -> OK");
   }
 
-  private void handleExec(List<String> command, OutputStream outputStream) throws IOException {
-    if (inTransaction) {
-      List<String> responses = new ArrayList<>();
-      for (List<String> queued : queuedCommands) {
-        // Use a temporary buffer to capture the response for each command
-        java.io.ByteArrayOutputStream tempOut = new java.io.ByteArrayOutputStream();
-        // Execute the command as normal, but not as a transaction
-        boolean prevInTransaction = inTransaction;
-        inTransaction = false;
-        handleCommand(queued, tempOut);
-        inTransaction = prevInTransaction;
-        responses.add(tempOut.toString());
+  private void handleExec(List<String> command, RespWriter writer) throws IOException {
+    if (inTransaction && transactionFailed) {
+      inTransaction = false;
+      transactionFailed = false;
+      queuedCommands.clear();
+      writer.writeError("EXECABORT Transaction discarded because of previous errors.");
+      Log.debug(() -> "Client " + clientId + " - EXEC aborted after a rejected command");
+    } else if (inTransaction) {
+      // Each queued command writes its reply straight after the array header
+      List<List<String>> commands = new ArrayList<>(queuedCommands);
+      writer.writeArrayHeader(commands.size());
+      inTransaction = false;
+      executingTransaction = true;
+      try {
+        for (List<String> queued : commands) {
+          // Execute the command as normal, but not as a transaction
+          handleCommand(queued, writer);
+        }
+      } finally {
+        executingTransaction = false;
       }
-      String respArray = RESPProtocol.formatArray(responses);
-      outputStream.write(respArray.getBytes());
-      System.out.println("Client " + clientId + " - EXEC executed " + queuedCommands.size() + " commands");
+      Log.debug(() -> "Client " + clientId + " - EXEC executed " + queuedCommands.size() + " commands");
       inTransaction = false;
       queuedCommands.clear();
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR EXEC without MULTI").getBytes());
-      System.out.println("Client " + clientId + " - EXEC called without MULTI");
+      writer.writeError("ERR EXEC without MULTI");
+      Log.debug(() -> "Client " + clientId + " - EXEC called without MULTI");
     }
   }
 
-  private void handleDiscard(List<String> command, OutputStream outputStream) throws IOException {
+  private void handleDiscard(List<String> command, RespWriter writer) throws IOException {
     if (inTransaction) {
       inTransaction = false;
+      transactionFailed = false;
       queuedCommands.clear();
-      outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
-      System.out.println("Client " + clientId + " - DISCARD -> OK");
+      writer.writeOk();
+      Log.debug(() -> "Client " + clientId + " - DISCARD -> OK");
     } else {
-      outputStream.write(RESPProtocol.formatError("ERR DISCARD without MULTI").getBytes());
-      System.out.println("Client " + clientId + " - DISCARD called without MULTI");
+      writer.writeError("ERR DISCARD without MULTI");
+      Log.debug(() -> "Client " + clientId + " - DISCARD called without MULTI");
     }
   }
 
-  private void handleSave(List<String> command, OutputStream outputStream) throws IOException {
-    RdbWriter writer = new RdbWriter(stringStorage);
-    byte[] rdbFileBytes = writer.serializeToRdb();
+  private void handleSave(List<String> command, RespWriter writer) throws IOException {
+    RdbWriter rdbWriter = new RdbWriter(stringStorage);
+    byte[] rdbFileBytes = rdbWriter.serializeToRdb();
     String currentDir = System.getProperty("user.dir");
     File tempFile = new File(currentDir, "dump.rdb.tmp");
     File rdbFile = new File(currentDir, "dump.rdb");
@@ -1003,14 +1620,216 @@ public class HandleClient implements Runnable {
     if (!tempFile.renameTo(rdbFile)) {
         throw new IOException("Failed to rename temp RDB file");
     }
-    System.out.println("RDB file created at: " + rdbFile.getAbsolutePath());
-    outputStream.write(RESPProtocol.OK_RESPONSE.getBytes());
+    Log.debug(() -> "RDB file created at: " + rdbFile.getAbsolutePath());
+    writer.writeOk();
   }
   
-  private void handleUnknownCommand(String commandName, OutputStream outputStream) throws IOException {
-    String errorMsg = RESPProtocol.formatError("ERR unknown command '" + commandName + "'");
-    outputStream.write(errorMsg.getBytes());
-    System.out.println("Client " + clientId + " - Sent error: unknown command " + commandName);
+  //
+  // Inspect connected clients
+  //
+  // Syntax:
+  // CLIENT LIST
+  //
+  private void handleClient(List<String> command, RespWriter writer) throws IOException {
+    if (command.size() == 2 && command.get(1).equalsIgnoreCase("LIST")) {
+      List<HandleClient> clients = new ArrayList<>(connectedClients.values());
+      clients.sort((a, b) -> Integer.compare(a.clientId, b.clientId));
+      long now = System.currentTimeMillis();
+      StringBuilder list = new StringBuilder();
+      for (HandleClient client : clients) {
+        QueuedRespWriter clientWriter = client.connectionWriter;
+        // obl: bytes in the reply buffer, oll: chunks queued for the socket, omem: all pending bytes
+        list.append("id=").append(client.clientId)
+            .append(" addr=").append(client.remoteAddress)
+            .append(" name=").append(client.clientName)
+            .append(" resp=").append(client.protocolVersion)
+            .append(" idle=").append((now - client.lastInteraction) / 1000)
+            .append(" class=").append(clientWriter.getClientClass().configName())
+            .append(" obl=").append(clientWriter.bufferedBytes())
+            .append(" oll=").append(clientWriter.queuedChunks())
+            .append(" omem=").append(clientWriter.pendingBytes())
+            .append("\n");
+      }
+      writer.writeBulk(list.toString());
+      Log.debug(() -> "Client " + clientId + " - CLIENT LIST -> " + clients.size() + " clients");
+    } else if (command.size() >= 2) {
+      writer.writeError("ERR unknown subcommand '" + command.get(1) + "'. Try CLIENT LIST.");
+      Log.debug(() -> "Client " + clientId + " - Sent error: unsupported CLIENT subcommand");
+    } else {
+      writer.writeRaw(RESPProtocol.getArgumentError("client"));
+      Log.debug(() -> "Client " + clientId + " - Sent error: CLIENT missing subcommand");
+    }
+  }
+  
+  //
+  // Switch the connection's protocol and describe the server
+  //
+  // Syntax:
+  // HELLO [protover [SETNAME clientname]]
+  //
+  private void handleHello(List<String> command, RespWriter writer) throws IOException {
+    int version = protocolVersion;
+    String name = clientName;
+    if (command.size() >= 2) {
+      try {
+        version = Integer.parseInt(command.get(1));
+      } catch (NumberFormatException e) {
+        writer.writeError("ERR Protocol version is not an integer or out of range");
+        Log.debug(() -> "Client " + clientId + " - Sent error: HELLO invalid protocol version");
+        return;
+      }
+      if (version != RESPProtocol.RESP2 && version != RESPProtocol.RESP3) {
+        writer.writeRaw(RESPProtocol.getNoProtocolError());
+        int unsupported = version;
+        Log.debug(() -> "Client " + clientId + " - Sent error: HELLO unsupported protocol version " + unsupported);
+        return;
+      }
+      for (int i = 2; i < command.size(); i++) {
+        String option = command.get(i);
+        if (option.equalsIgnoreCase("SETNAME") && i + 1 < command.size()) {
+          name = command.get(++i);
+        } else if (option.equalsIgnoreCase("AUTH")) {
+          writer.writeError("ERR AUTH is not supported, the server has no users");
+          Log.debug(() -> "Client " + clientId + " - Sent error: HELLO AUTH not supported");
+          return;
+        } else {
+          writer.writeError("ERR Syntax error in HELLO option '" + option + "'");
+          Log.debug(() -> "Client " + clientId + " - Sent error: HELLO syntax error");
+          return;
+        }
+      }
+    }
+
+    // The reply is already encoded with the new protocol
+    protocolVersion = version;
+    clientName = name;
+    writer.setProtocolVersion(protocolVersion);
+
+    writer.writeMapHeader(7);
+    writer.writeBulk("server");
+    writer.writeBulk("redis");
+    writer.writeBulk("version");
+    writer.writeBulk(SERVER_VERSION);
+    writer.writeBulk("proto");
+    writer.writeInteger(protocolVersion);
+    writer.writeBulk("id");
+    writer.writeInteger(clientId);
+    writer.writeBulk("mode");
+    writer.writeBulk("standalone");
+    writer.writeBulk("role");
+    writer.writeBulk("master".equals(serverRole) ? "master" : "replica");
+    writer.writeBulk("modules");
+    writer.writeEmptyArray();
+    Log.debug(() -> "Client " + clientId + " - HELLO -> protocol " + protocolVersion);
+  }
+
+  //
+  // Describe the command table
+  //
+  // Syntax:
+  // COMMAND
+  // COMMAND COUNT
+  // COMMAND INFO [command-name ...]
+  // COMMAND GETKEYS command [arg ...]
+  // COMMAND DOCS [command-name ...]
+  //
+  private void handleCommandInfo(List<String> command, RespWriter writer) throws IOException {
+    String subcommand = command.size() >= 2 ? command.get(1).toUpperCase() : "";
+    switch (subcommand) {
+      case "":
+        writer.writeArrayHeader(COMMANDS.size());
+        for (CommandTable.Command spec : COMMANDS.all()) {
+          writeCommandInfo(spec, writer);
+        }
+        Log.debug(() -> "Client " + clientId + " - COMMAND -> " + COMMANDS.size() + " commands");
+        break;
+        
+      case "COUNT":
+        writer.writeInteger(COMMANDS.size());
+        break;
+        
+      case "INFO":
+        List<CommandTable.Command> specs = new ArrayList<>();
+        if (command.size() == 2) {
+          specs.addAll(COMMANDS.all());
+        } else {
+          for (int i = 2; i < command.size(); i++) {
+            specs.add(COMMANDS.lookup(command.get(i)));
+          }
+        }
+        writer.writeArrayHeader(specs.size());
+        for (CommandTable.Command spec : specs) {
+          if (spec == null) {
+            writer.writeNull();
+          } else {
+            writeCommandInfo(spec, writer);
+          }
+        }
+        Log.debug(() -> "Client " + clientId + " - COMMAND INFO -> " + specs.size() + " commands");
+        break;
+        
+      case "GETKEYS":
+        if (command.size() < 3) {
+          writer.writeRaw(RESPProtocol.getArgumentError("command|getkeys"));
+          return;
+        }
+        List<String> target = command.subList(2, command.size());
+        CommandTable.Command spec = COMMANDS.lookup(target.get(0));
+        if (spec == null) {
+          writer.writeError("ERR Invalid command specified");
+        } else if (!spec.acceptsArgumentCount(target.size())) {
+          writer.writeError("ERR Invalid number of arguments specified for command");
+        } else {
+          List<String> keys = spec.keys(target);
+          if (keys.isEmpty()) {
+            writer.writeError("ERR The command has no key arguments");
+          } else {
+            writer.writeStringArray(keys);
+          }
+        }
+        break;
+        
+      case "DOCS":
+        // No documentation is kept; redis-cli asks for it on startup and copes with an empty reply
+        writer.writeMapHeader(0);
+        break;
+        
+      default:
+        writer.writeError("ERR unknown subcommand '" + command.get(1) + "'. Try COMMAND INFO.");
+        Log.debug(() -> "Client " + clientId + " - Sent error: unsupported COMMAND subcommand");
+        break;
+    }
+  }
+  
+  // [name, arity, flags, first key, last key, key step], the classic COMMAND INFO layout
+  private static void writeCommandInfo(CommandTable.Command spec, RespWriter writer) throws IOException {
+    writer.writeArrayHeader(6);
+    writer.writeBulk(spec.name);
+    writer.writeInteger(spec.arity);
+    List<String> flags = spec.flagNames();
+    writer.writeSetHeader(flags.size());
+    for (String flag : flags) {
+      writer.writeSimpleString(flag);
+    }
+    writer.writeInteger(spec.firstKey);
+    writer.writeInteger(spec.lastKey);
+    writer.writeInteger(spec.keyStep);
+  }
+  
+  // XREAD [BLOCK ms] STREAMS key [key ...] id [id ...]: the keys are the first half after STREAMS
+  private static List<String> xreadKeys(List<String> command) {
+    for (int i = 1; i < command.size(); i++) {
+      if (command.get(i).equalsIgnoreCase("streams")) {
+        int after = command.size() - i - 1;
+        return command.subList(i + 1, i + 1 + after / 2);
+      }
+    }
+    return java.util.Collections.emptyList();
+  }
+  
+  private void handleUnknownCommand(String commandName, RespWriter writer) throws IOException {
+    writer.writeRaw(RESPProtocol.getUnknownCommandError(commandName));
+    Log.debug(() -> "Client " + clientId + " - Sent error: unknown command " + commandName);
   }
   
   private void notifyBlockedClients(String listKey) {
@@ -1019,16 +1838,13 @@ public class HandleClient implements Runnable {
     
     if (result != null) {
       try {
-        // Send response array [listKey, element] using RESPProtocol
-        String response = RESPProtocol.formatKeyValueArray(listKey, result.element);
-        
-        result.client.outputStream.write(response.getBytes());
-        result.client.outputStream.flush();
-        
-        System.out.println("Client " + result.client.clientId + " - BLPOP " + listKey + " unblocked with ['" + listKey + "', '" + result.element + "'], remaining: " + listStorage.length(listKey));
+        // Send response array [listKey, element] to the blocked connection
+        result.client.writer.writeKeyValueArray(listKey, result.element);
+        result.client.writer.flush();
         
+        Log.debug(() -> "Client " + result.client.clientId + " - BLPOP " + listKey + " unblocked with ['" + listKey + "', '" + result.element + "'], remaining: " + listStorage.length(listKey));
       } catch (IOException e) {
-        System.out.println("Client " + result.client.clientId + " - IOException during BLPOP response: " + e.getMessage());
+        Log.verbose(() -> "Client " + result.client.clientId + " - IOException during BLPOP response: " + e.getMessage());
         // Re-add the element back to the list since we couldn't send it
         listStorage.leftPush(listKey, result.element);
       }
@@ -1037,23 +1853,93 @@ public class HandleClient implements Runnable {
 
   // Propagate write command to replica if connected
   private void propagateToReplica(List<String> command) {
-    synchronized (HandleClient.class) {
-      if (!replicaOutputStreams.isEmpty()) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("*").append(command.size()).append("\r\n");
-        for (String arg : command) {
-          sb.append("$").append(arg.length()).append("\r\n").append(arg).append("\r\n");
-        }
-        byte[] resp = sb.toString().getBytes();
-        for (OutputStream out : replicaOutputStreams) {
+    replicaLock.lock();
+    try {
+      // Replicas disconnected for exceeding their output buffer limit are forgotten
+      replicaWriters.removeIf(out -> out instanceof QueuedRespWriter queued && queued.isClosed());
+      if (!replicaWriters.isEmpty()) {
+        for (RespWriter out : replicaWriters) {
           try {
-            out.write(resp);
-            out.flush();
+            // A command is sent as an array of bulk strings, just like a reply
+            out.writeStringArray(command);
           } catch (IOException e) {
-            System.out.println("Failed to propagate to replica: " + e.getMessage());
+            Log.debug(() -> "Failed to propagate to replica: " + e.getMessage());
           }
         }
-        System.out.println("Propagated to replicas: " + command);
+        // Sent along with the replies when the current batch is flushed
+        pendingReplicaFlush = true;
+        Log.debug(() -> "Propagated to replicas: " + command);
+      }
+    } finally {
+      replicaLock.unlock();
+    }
+  }
+
+  // Sends the commands buffered for every replica
+  private static void flushReplicas() {
+    replicaLock.lock();
+    try {
+      for (RespWriter out : replicaWriters) {
+        try {
+          out.flush();
+        } catch (IOException e) {
+          Log.debug(() -> "Failed to flush replica stream: " + e.getMessage());
+        }
+      }
+    } finally {
+      replicaLock.unlock();
+    }
+  }
+
+  /**
+   * Writer for a blocking socket. The connection's own thread writes its
+   * replies itself when it flushes, so a slow reader only holds up its own
+   * connection. Flushes from other threads (blocked-client wake-ups, replica
+   * propagation) hand the queue to a virtual thread instead of waiting.
+   */
+  private static class SocketWriter extends QueuedRespWriter {
+    private final OutputStream socketOutputStream;
+    private final Thread owner = Thread.currentThread();
+    private final AtomicBoolean drainerRunning = new AtomicBoolean(false);
+
+    SocketWriter(OutputStream socketOutputStream) {
+      this.socketOutputStream = socketOutputStream;
+    }
+
+    @Override
+    protected void requestWrite() throws IOException {
+      if (Thread.currentThread() == owner) {
+        writeTo(socketOutputStream);
+        return;
+      }
+      if (drainerRunning.compareAndSet(false, true)) {
+        Thread.startVirtualThread(this::drainInBackground);
+      }
+    }
+
+    private void drainInBackground() {
+      boolean more = true;
+      while (more) {
+        try {
+          writeTo(socketOutputStream);
+        } catch (IOException e) {
+          Log.verbose(() -> "IOException while sending queued replies: " + e.getMessage());
+          drainerRunning.set(false);
+          return;
+        }
+        drainerRunning.set(false);
+        // Chunks queued after the last poll need another pass unless someone else took over
+        more = hasQueuedChunks() && drainerRunning.compareAndSet(false, true);
+      }
+    }
+
+    @Override
+    protected void closeConnection() {
+      try {
+        // Closing a socket's stream closes the socket and ends the connection's read loop
+        socketOutputStream.close();
+      } catch (IOException e) {
+        Log.verbose(() -> "IOException while closing connection: " + e.getMessage());
       }
     }
   }
@@ -1,23 +1,21 @@
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.util.List;
 import StorageManager.StringStorage;
 import StorageManager.ListStorage;
+import StorageManager.Log;
 import StorageManager.StreamStorage;
+import StorageManager.RESPParser;
+import StorageManager.RESPProtocol;
+import StorageManager.RespWriter;
 
 public class HandleReplica {
     public static void startReplica(String masterHost, int masterPort, int port, StringStorage stringStorage, ListStorage listStorage, StreamStorage streamStorage) {
-        new Thread(() -> {
+        Main.newConnectionThread("replica-of-" + masterHost + ":" + masterPort).start(() -> {
             try (Socket masterSocket = new Socket(masterHost, masterPort)) {
                 OutputStream out = masterSocket.getOutputStream();
                 InputStream in = masterSocket.getInputStream();
-                // InputStreamReader: converts a byte stream into a text stream
-                // BufferedReader: wraps a reader and adds buffering for efficient reading
-                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
                 // Send RESP array: *1\r\n$4\r\nPING\r\n
                 String pingResp = "*1\r\n$4\r\nPING\r\n";
                 out.write(pingResp.getBytes());
@@ -27,8 +25,7 @@ public class HandleReplica {
                 byte[] buffer = new byte[1024];
                 int len = in.read(buffer);
                 String response = new String(buffer, 0, len);
-                System.out.println("Raw String replica received from master: " + response.trim());
-
+                Log.verbose("Raw String replica received from master: " + response.trim());
                 // Send REPLCONF listening-port <PORT>
                 String portStr = String.valueOf(port);
                 String replconfListeningPort =
@@ -39,8 +36,7 @@ public class HandleReplica {
                 // Wait for +OK from master
                 len = in.read(buffer);
                 response = new String(buffer, 0, len);
-                System.out.println("Raw String replica received from master: " + response.trim());
-
+                Log.verbose("Raw String replica received from master: " + response.trim());
                 // Send REPLCONF capa psync2
                 String replconfCapa =
                         "*3\r\n$8\r\nREPLCONF\r\n$4\r\ncapa\r\n$6\r\npsync2\r\n";
@@ -50,8 +46,7 @@ public class HandleReplica {
                 // Wait for +OK from master
                 len = in.read(buffer);
                 response = new String(buffer, 0, len);
-                System.out.println("Raw String replica received from master: " + response.trim());
-
+                Log.verbose("Raw String replica received from master: " + response.trim());
                 // Send PSYNC ? -1
                 String psyncCmd = "*3\r\n$5\r\nPSYNC\r\n$1\r\n?\r\n$2\r\n-1\r\n";
                 out.write(psyncCmd.getBytes());
@@ -60,8 +55,7 @@ public class HandleReplica {
                 // Wait for +FULLRESYNC from master (can be ignored for now)
                 len = in.read(buffer);
                 response = new String(buffer, 0, len);
-                System.out.println("Raw String replica received from master: " + response.trim());
-
+                Log.verbose("Raw String replica received from master: " + response.trim());
                 // Read and discard the RDB file (parse RESP bulk string header, then read N bytes)
                 String bulkHeader = "";
                 int b;
@@ -79,30 +73,29 @@ public class HandleReplica {
                     }
                 }
 
-                System.out.println("Replica handshake with master complete.");
-
+                Log.notice("Replica handshake with master complete.");
                 // Create a persistent StringStorage and HandleClient for the replica
                 HandleClient dummyClient = new HandleClient(null, -1, "slave", stringStorage, listStorage, streamStorage);
-                OutputStream devNull = new OutputStream(){
+                RespWriter devNull = new RespWriter(new OutputStream(){
                     public void write(int b) {}
-                };
+                    public void write(byte[] b, int off, int len) {}
+                });
 
                 // Now process propagated commands from master
-                while (true) {
-                    String line = reader.readLine();
-                    if (line == null) break;
-                    if (line.startsWith("*")) {
-                        List<String> command = StorageManager.RESPProtocol.parseRESPArray(reader, line);
-                        if (command != null && !command.isEmpty()) {
-                            System.out.println("Replica - Received propagated command: " + command);
-                            // Process the command, but do NOT send a response to master
-                            dummyClient.handleCommand(command, devNull);
-                        }
+                RESPParser parser = new RESPParser();
+                while (parser.readFrom(in) != -1) {
+                    List<byte[]> args;
+                    while ((args = parser.next()) != null) {
+                        List<String> command = RESPProtocol.decodeArguments(args);
+                        Log.debug(() -> "Replica - Received propagated command: " + command);
+                        // Process the command, but do NOT send a response to master
+                        dummyClient.handleCommand(command, devNull);
                     }
+                    devNull.flush();
                 }
             } catch (Exception e) {
-                System.out.println("Failed to connect/send handshake to master: " + e.getMessage());
+                Log.warning("Failed to connect/send handshake to master: " + e.getMessage());
             }
-        }).start();
+        });
     }
 }
\ No newline at end of file
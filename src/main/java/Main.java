@@ -1,11 +1,27 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import StorageManager.Evictor;
+import StorageManager.ExpireCycle;
+import StorageManager.Keyspace;
 import StorageManager.ListStorage;
+import StorageManager.Log;
+import StorageManager.OffHeapStore;
+import StorageManager.OutputBufferLimits;
+import StorageManager.RESPProtocol;
 import StorageManager.StreamStorage;
 import StorageManager.StringStorage;
 import RdbManager.RdbStringResult;
@@ -17,67 +33,143 @@ public class Main {
   private static int masterPort = -1;
   public static String dir = "/tmp";
   public static String dbfilename = "dump.rdb";
-  public static final StringStorage stringStorage = new StringStorage();
-  public static final ListStorage listStorage = new ListStorage();
-  public static final StreamStorage streamStorage = new StreamStorage();
+  // Connection handling mode: "thread" (one platform thread per client), "virtual" (one virtual
+  // thread per client), "nio" (selector event loops) or "threaded-io" (event loops for I/O and
+  // parsing, one thread executing every command)
+  public static String ioMode = "thread";
+  public static int ioThreads = Runtime.getRuntime().availableProcessors();
+  // Threads accepting TCP connections, each on its own SO_REUSEPORT listener when more than one
+  public static int acceptThreads = 1;
+  // Connections beyond this many are refused, like Redis' maxclients
+  public static int maxClients = 10000;
+  // Seconds a client may stay idle before it is closed, 0 to never close idle clients
+  public static int timeout = 0;
+  // Path of the Unix domain socket to listen on besides the TCP port, null for TCP only
+  public static String unixSocket = null;
+  // Client ids are shared by the TCP and Unix socket listeners
+  private static final AtomicInteger clientCounter = new AtomicInteger();
+  // One keyspace holds the keys of every type
+  public static final Keyspace keyspace = new Keyspace();
+  public static final StringStorage stringStorage = new StringStorage(keyspace);
+  public static final ListStorage listStorage = new ListStorage(keyspace);
+  public static final StreamStorage streamStorage = new StreamStorage(keyspace);
+  public static final ExpireCycle expireCycle = new ExpireCycle(keyspace);
 
   public static void main(String[] args) {
-    // You can use print statements as follows for debugging, they'll be visible
-    // when running tests.
-    System.out.println("Logs from your program will appear here!");
-
-    ServerSocket serverSocket = null;
-    int port = getPortFromArgs(args);
     parseConfigFlags(args);
+    int port = getPortFromArgs(args);
     parseReplicaOfFlag(args);
+    parseIoModeFlags(args);
+    if (timeout > 0) {
+      HandleClient.startIdleReaper(timeout);
+    }
+    expireCycle.start();
     // Load RDB file if it exists
     loadRdbFile();
-    int clientCounter = 0;
     
     // If replica, connect to master and send PING, then REPLCONF commands
     if ("slave".equals(serverRole) && masterHost != null && masterPort > 0) {
       HandleReplica.startReplica(masterHost, masterPort, port, stringStorage, listStorage, streamStorage);
     }
 
-    try {
-      serverSocket = new ServerSocket(port);
-      // Since the tester restarts your program quite often, setting
-      // SO_REUSEADDR ensures that we don't run into 'Address already in use'
-      // errors
-      serverSocket.setReuseAddress(true);
-      System.out.println("Redis server started on port " + port);
+    if ("nio".equals(ioMode) || "threaded-io".equals(ioMode)) {
+      try {
+        NioServer server = new NioServer(port, ioThreads, "threaded-io".equals(ioMode), stringStorage, listStorage, streamStorage);
+        server.setUnixSocket(unixSocket);
+        server.setAcceptThreads(acceptThreads);
+        server.run();
+      } catch (IOException e) {
+        Log.warning("IOException: " + e.getMessage());
+      }
+      return;
+    }
 
-      // Continuously accept new client connections
-      while (true) {
-        try {
-          // Wait for connection from client.
-          Socket clientSocket = serverSocket.accept();
-          clientCounter++;
+    ServerSocket[] serverSockets = new ServerSocket[acceptThreads];
+    try {
+      for (int i = 0; i < acceptThreads; i++) {
+        serverSockets[i] = openTcpListener(port, acceptThreads > 1);
+      }
+      Log.notice("Redis server started on port " + port
+          + (acceptThreads > 1 ? " (" + acceptThreads + " acceptor threads)" : ""));
+      if (unixSocket != null) {
+        startUnixSocketListener(unixSocket);
+      }
 
-          // Create a new thread to handle this client
-          Thread clientThread = new Thread(new HandleClient(clientSocket, clientCounter, serverRole, stringStorage, listStorage, streamStorage));
-          clientThread.start();
+      // The extra listeners get their own threads, the first one is served here
+      for (int i = 1; i < acceptThreads; i++) {
+        ServerSocket listener = serverSockets[i];
+        Thread.ofPlatform().name("acceptor-" + i).daemon(true).start(() -> acceptLoop(listener));
+      }
+      acceptLoop(serverSockets[0]);
 
-          System.out.println("Started thread for client " + clientCounter);
+    } catch (IOException e) {
+      Log.warning("IOException: " + e.getMessage());
+    } finally {
+      for (ServerSocket serverSocket : serverSockets) {
+        try {
+          if (serverSocket != null) {
+            serverSocket.close();
+            Log.verbose("Server socket closed");
+          }
         } catch (IOException e) {
-          System.out.println("Error accepting client connection: " + e.getMessage());
+          Log.warning("IOException during server cleanup: " + e.getMessage());
         }
       }
+    }
+  }
 
-    } catch (IOException e) {
-      System.out.println("IOException: " + e.getMessage());
-    } finally {
+  // Continuously accepts new client connections, one thread per client
+  private static void acceptLoop(ServerSocket serverSocket) {
+    while (!serverSocket.isClosed()) {
       try {
-        if (serverSocket != null) {
-          serverSocket.close();
-          System.out.println("Server socket closed");
+        // Wait for connection from client.
+        Socket clientSocket = serverSocket.accept();
+        int clientId = nextClientId();
+
+        // Create a new thread to handle this client
+        HandleClient handler = new HandleClient(clientSocket, clientId, serverRole, stringStorage, listStorage, streamStorage);
+        if (!handler.admit()) {
+          HandleClient.reject(clientSocket);
+          continue;
         }
+        newConnectionThread("client-" + clientId).start(handler);
+
+        Log.verbose(() -> "Started " + ioMode + " thread for client " + clientId);
       } catch (IOException e) {
-        System.out.println("IOException during server cleanup: " + e.getMessage());
+        Log.warning("Error accepting client connection: " + e.getMessage());
       }
     }
   }
 
+  /**
+   * Opens a listening TCP socket on the port. With reusePort, SO_REUSEPORT is
+   * set before binding so several listeners can share the port and the kernel
+   * spreads incoming connections across them.
+   */
+  static ServerSocket openTcpListener(int port, boolean reusePort) throws IOException {
+    ServerSocket serverSocket = new ServerSocket();
+    // Since the tester restarts your program quite often, setting
+    // SO_REUSEADDR ensures that we don't run into 'Address already in use'
+    // errors
+    serverSocket.setReuseAddress(true);
+    if (reusePort) {
+      serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    }
+    serverSocket.bind(new InetSocketAddress(port));
+    return serverSocket;
+  }
+
+  /**
+   * Returns true if listeners can share a port with SO_REUSEPORT on this platform.
+   */
+  static boolean reusePortSupported() {
+    try (ServerSocket probe = new ServerSocket()) {
+      return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   private static int getPortFromArgs(String[] args) {
     int port = 6379;
     for (int i = 0; i < args.length; i++) {
@@ -85,7 +177,7 @@ public class Main {
         try {
           port = Integer.parseInt(args[i + 1]);
         } catch (NumberFormatException e) {
-          System.out.println("Invalid port number: " + args[i + 1] + ", using default 6379");
+          Log.warning("Invalid port number: " + args[i + 1] + ", using default 6379");
           port = 6379;
         }
         break;
@@ -95,34 +187,182 @@ public class Main {
   }
 
   private static void parseConfigFlags(String[] args) {
+    // The log level goes first so it applies to the other flags' messages
+    for (int i = 0; i < args.length; i++) {
+      if ("--loglevel".equals(args[i]) && i + 1 < args.length) {
+        try {
+          Log.setLevel(Log.parseLevel(args[i + 1]));
+        } catch (IllegalArgumentException e) {
+          Log.warning(e.getMessage() + ", using " + Log.getLevel().configName());
+        }
+      }
+    }
     for (int i = 0; i < args.length; i++) {
       if ("--dir".equals(args[i]) && i + 1 < args.length) {
         dir = args[i + 1];
-        System.out.println("RDB file in directory: " + dir);
+        Log.notice("RDB file in directory: " + dir);
       }
       if ("--dbfilename".equals(args[i]) && i + 1 < args.length) {
         dbfilename = args[i + 1];
-        System.out.println("RDB file name: " + dbfilename);
+        Log.notice("RDB file name: " + dbfilename);
+      }
+      if ("--unixsocket".equals(args[i]) && i + 1 < args.length) {
+        unixSocket = args[i + 1];
+        Log.notice("Unix socket: " + unixSocket);
+      }
+      if ("--maxclients".equals(args[i]) && i + 1 < args.length) {
+        try {
+          maxClients = Math.max(1, Integer.parseInt(args[i + 1]));
+          Log.notice("Max clients: " + maxClients);
+        } catch (NumberFormatException e) {
+          Log.warning("Invalid maxclients: " + args[i + 1] + ", using default " + maxClients);
+        }
+      }
+      if ("--timeout".equals(args[i]) && i + 1 < args.length) {
+        try {
+          timeout = Math.max(0, Integer.parseInt(args[i + 1]));
+          Log.notice("Idle client timeout: " + timeout + "s");
+        } catch (NumberFormatException e) {
+          Log.warning("Invalid timeout: " + args[i + 1] + ", using default " + timeout);
+        }
+      }
+      if ("--maxmemory".equals(args[i]) && i + 1 < args.length) {
+        try {
+          keyspace.evictor().setMaxMemory(Evictor.parseMemory(args[i + 1]));
+          Log.notice("Max memory: " + keyspace.evictor().getMaxMemory() + " bytes");
+        } catch (IllegalArgumentException e) {
+          Log.warning(e.getMessage() + ", using no limit");
+        }
+      }
+      if ("--maxmemory-policy".equals(args[i]) && i + 1 < args.length) {
+        try {
+          keyspace.evictor().setPolicy(Evictor.Policy.parse(args[i + 1]));
+          Log.notice("Max memory policy: " + keyspace.evictor().getPolicy().configName());
+        } catch (IllegalArgumentException e) {
+          Log.warning(e.getMessage() + ", using " + keyspace.evictor().getPolicy().configName());
+        }
+      }
+      if ("--storage-engine".equals(args[i]) && i + 1 < args.length) {
+        if ("offheap".equalsIgnoreCase(args[i + 1])) {
+          stringStorage.useOffHeapStore(new OffHeapStore());
+          Log.notice("Storage engine: offheap, string values of " + OffHeapStore.MIN_VALUE_SIZE + " bytes or more in native memory");
+        } else if (!"heap".equalsIgnoreCase(args[i + 1])) {
+          Log.warning("Invalid storage-engine: " + args[i + 1] + ", using heap");
+        }
+      }
+      // --client-output-buffer-limit <normal|replica|pubsub> <hard> <soft> <soft seconds>
+      if ("--client-output-buffer-limit".equals(args[i]) && i + 4 < args.length) {
+        try {
+          OutputBufferLimits.set(args[i + 1], args[i + 2], args[i + 3], args[i + 4]);
+          Log.notice("Client output buffer limits: " + OutputBufferLimits.describe());
+        } catch (IllegalArgumentException e) {
+          Log.warning("Invalid client-output-buffer-limit: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens a listening Unix domain socket at the given path. A socket file left
+   * by a previous run is removed first, and the new one when the server exits.
+   */
+  static ServerSocketChannel openUnixSocket(String path) throws IOException {
+    Path socketPath = Path.of(path);
+    Files.deleteIfExists(socketPath);
+    ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+    socketPath.toFile().deleteOnExit();
+    return serverChannel;
+  }
+
+  // Accepts Unix socket clients on their own thread, served exactly like TCP clients
+  private static void startUnixSocketListener(String path) throws IOException {
+    ServerSocketChannel serverChannel = openUnixSocket(path);
+    Log.notice("Redis server listening on Unix socket " + path);
+    Thread.ofPlatform().name("unix-acceptor").daemon(true).start(() -> {
+      while (serverChannel.isOpen()) {
+        try {
+          SocketChannel clientChannel = serverChannel.accept();
+          int clientId = nextClientId();
+          HandleClient handler = HandleClient.forChannel(clientChannel, clientId, serverRole, stringStorage, listStorage, streamStorage);
+          if (!handler.admit()) {
+            HandleClient.reject(clientChannel);
+            continue;
+          }
+          newConnectionThread("client-" + clientId).start(handler);
+          Log.verbose(() -> "Started " + ioMode + " thread for Unix socket client " + clientId);
+        } catch (IOException e) {
+          Log.warning("Error accepting Unix socket connection: " + e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the next client id, shared by every listener.
+   */
+  static int nextClientId() {
+    return clientCounter.incrementAndGet();
+  }
+
+  /**
+   * Returns a builder for threads that serve a connection, virtual in "virtual" io mode.
+   */
+  static Thread.Builder newConnectionThread(String name) {
+    if ("virtual".equals(ioMode)) {
+      return Thread.ofVirtual().name(name);
+    }
+    return Thread.ofPlatform().name(name);
+  }
+
+  private static void parseIoModeFlags(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      if ("--io-mode".equals(args[i]) && i + 1 < args.length) {
+        String mode = args[i + 1].toLowerCase();
+        if (mode.equals("thread") || mode.equals("virtual") || mode.equals("nio") || mode.equals("threaded-io")) {
+          ioMode = mode;
+        } else {
+          Log.warning("Invalid io mode: " + args[i + 1] + ", using default " + ioMode);
+        }
+      }
+      if ("--io-threads".equals(args[i]) && i + 1 < args.length) {
+        try {
+          ioThreads = Math.max(1, Integer.parseInt(args[i + 1]));
+        } catch (NumberFormatException e) {
+          Log.warning("Invalid io thread count: " + args[i + 1] + ", using default " + ioThreads);
+        }
+      }
+      if ("--accept-threads".equals(args[i]) && i + 1 < args.length) {
+        try {
+          acceptThreads = Math.max(1, Integer.parseInt(args[i + 1]));
+        } catch (NumberFormatException e) {
+          Log.warning("Invalid accept thread count: " + args[i + 1] + ", using default " + acceptThreads);
+        }
       }
     }
+    if (acceptThreads > 1 && !reusePortSupported()) {
+      Log.warning("SO_REUSEPORT is not supported on this platform, using one acceptor thread");
+      acceptThreads = 1;
+    }
+    Log.notice("IO mode: " + ioMode);
   }
 
   private static void parseReplicaOfFlag(String[] args) {
       for (int i = 0; i < args.length; i++) {
           if ("--replicaof".equals(args[i])) {
               serverRole = "slave";
-              System.out.println("Server role set to: " + serverRole);
+              Log.notice("Server role set to: " + serverRole);
               // Support both --replicaof "host port" and --replicaof host port
               if (i + 2 < args.length) {
                   // Try the two-argument form: --replicaof host port
                   masterHost = args[i + 1];
                   try {
                       masterPort = Integer.parseInt(args[i + 2]);
-                      System.out.println("Master Host set to: " + masterHost);
-                      System.out.println("Master Port set to: " + masterPort);
+                      Log.notice("Master Host set to: " + masterHost);
+                      Log.notice("Master Port set to: " + masterPort);
                   } catch (NumberFormatException e) {
                       masterPort = -1;
-                      System.out.println("Sent error: invalid port value");
+                      Log.warning("Sent error: invalid port value");
                   }
               } else if (i + 1 < args.length) {
                   // Try the single-argument form: --replicaof "host port"
@@ -131,33 +371,33 @@ public class Main {
                       masterHost = parts[0];
                       try {
                           masterPort = Integer.parseInt(parts[1]);
-                          System.out.println("Master Host set to: " + masterHost);
-                          System.out.println("Master Port set to: " + masterPort);
+                          Log.notice("Master Host set to: " + masterHost);
+                          Log.notice("Master Port set to: " + masterPort);
                       } catch (NumberFormatException e) {
                           masterPort = -1;
-                          System.out.println("Sent error: invalid port value");
+                          Log.warning("Sent error: invalid port value");
                       }
                   }
               }
               break;
           }
       }
-      System.out.println("Server Role: " + serverRole);
+      Log.notice("Server Role: " + serverRole);
   }
 
   private static void loadRdbFile() {
     File rdbFile = new File(dir, dbfilename);
     if (!rdbFile.exists()) {
-      System.out.println("RDB file not found: " + rdbFile.getAbsolutePath());
+      Log.notice("RDB file not found: " + rdbFile.getAbsolutePath());
       return;
     }
     try (FileInputStream in = new FileInputStream(rdbFile)) {
       byte[] data = in.readAllBytes();
       parseRdb(data, stringStorage);
     } catch (IOException e) {
-      System.out.println("Failed to load RDB: " + e.getMessage());
+      Log.warning("Failed to load RDB: " + e.getMessage());
     }
-    System.out.println("RDB file loaded successfully");
+    Log.notice("RDB file loaded successfully");
   }
 
   private static void parseRdb(byte[] data, StringStorage storage) {
@@ -166,7 +406,7 @@ public class Main {
 
     // Check header
     if (data.length < 9 || !new String(Arrays.copyOfRange(data, 0, 9)).equals("REDIS0012")) {
-        System.out.println("Invalid RDB header");
+        Log.warning("Invalid RDB header");
         return;
     }
     i = 9;
@@ -174,7 +414,7 @@ public class Main {
         int b = data[i] & 0xFF;
         if (b == 0xFA) { // Metadata subsection
             // Skip metadata section
-            System.out.println("RDB: Metadata subsection found, skipping...");
+            Log.debug("RDB: Metadata subsection found, skipping...");
             i++; // Move past 0xFA
             // Read metadata name
             RdbStringResult metaNameRes = readRdbString(data, i);
@@ -185,23 +425,23 @@ public class Main {
             continue;
         }
         if (b == 0xFE) { // DB selector
-            System.out.println("RDB: DB selector found");
+            Log.debug("RDB: DB selector found");
             i++;
             RdbSizeResult dbIndex = readSize(data, i);
-            System.out.println("RDB: DB index = " + dbIndex.value);
+            Log.debug(() -> "RDB: DB index = " + dbIndex.value);
             i += dbIndex.bytesRead;
         } else if (b == 0xFB) { // hash table sizes
-            System.out.println("RDB: Hash table sizes found");
+            Log.debug("RDB: Hash table sizes found");
             i++;
             RdbSizeResult hashTableSize = readSize(data, i);
-            System.out.println("RDB: Hash table size = " + hashTableSize.value);
+            Log.debug(() -> "RDB: Hash table size = " + hashTableSize.value);
             i += hashTableSize.bytesRead;
             RdbSizeResult expiresHashTableSize = readSize(data, i);
-            System.out.println("RDB: Expires hash table size = " + expiresHashTableSize.value);
+            Log.debug(() -> "RDB: Expires hash table size = " + expiresHashTableSize.value);
             i += expiresHashTableSize.bytesRead;
         } else if (b == 0xFC || b == 0xFD) { // expire info
             boolean ms = (b == 0xFC);
-            System.out.println("RDB: Expire info found, ms=" + ms);
+            Log.debug(() -> "RDB: Expire info found, ms=" + ms);
             i++;
             long expiry;
             if (ms) {
@@ -220,7 +460,7 @@ public class Main {
             }
             pendingExpiry = expiry;
         } else if (b == 0xFF) {
-            System.out.println("RDB: End of file marker found");
+            Log.debug("RDB: End of file marker found");
             break;
         } else {
             int valueType = data[i++] & 0xFF;
@@ -228,25 +468,22 @@ public class Main {
                 // Key
                 RdbStringResult keyRes = readRdbString(data, i);
                 String key = keyRes.value;
-                System.out.println("RDB: Key = " + key);
+                Log.debug(() -> "RDB: Key = " + key);
                 i += keyRes.bytesRead;
                 // Value
                 RdbStringResult valRes = readRdbString(data, i);
                 String value = valRes.value;
-                System.out.println("RDB: Value = " + value);
+                Log.debug(() -> "RDB: Value = " + value);
                 i += valRes.bytesRead;
 
-                Long expiryToSet = null;
-                if (pendingExpiry != null) {
-                    expiryToSet = pendingExpiry;
-                    pendingExpiry = null;
-                }
+                Long expiryToSet = pendingExpiry;
+                pendingExpiry = null;
                 // Only set expiry if it's in the future
                 if (expiryToSet != null && expiryToSet <= System.currentTimeMillis()) {
-                    System.out.println("RDB: Key " + key + " expired at load time, skipping");
+                    Log.debug(() -> "RDB: Key " + key + " expired at load time, skipping");
                 } else {
                     storage.set(key, value, expiryToSet);
-                    System.out.println("RDB: Added key from RDB to String Storage: " + key + " = " + value + (expiryToSet != null ? (" (expiry: " + expiryToSet + ")") : ""));
+                    Log.debug(() -> "RDB: Added key from RDB to String Storage: " + key + " = " + value + (expiryToSet != null ? (" (expiry: " + expiryToSet + ")") : ""));
                 }
             }
         }
@@ -271,7 +508,7 @@ public class Main {
     int type = (b & 0xC0) >> 6;
     if (type == 0 || type == 1 || type == 2) {
       int len = sizeRes.value;
-      String s = new String(data, i + sizeRes.bytesRead, len);
+      String s = new String(data, i + sizeRes.bytesRead, len, RESPProtocol.CHARSET);
       return new RdbStringResult(s, sizeRes.bytesRead + len);
     }
     // Integer encodings (0xC0, 0xC1, 0xC2)
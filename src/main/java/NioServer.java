@@ -0,0 +1,426 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import StorageManager.ListStorage;
+import StorageManager.Log;
+import StorageManager.RESPParser;
+import StorageManager.RESPProtocol;
+import StorageManager.QueuedRespWriter;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+/**
+ * Non-blocking server mode built on a java.nio Selector.
+ * A small fixed set of event-loop threads own all client channels, parse RESP
+ * commands with a per-connection RESPParser and drive HandleClient.handleCommand, so an
+ * idle connection costs a few buffers instead of a whole thread.
+ *
+ * With a dedicated command executor ("threaded-io" mode) the event loops only do
+ * socket reads, RESP parsing and socket writes; every client command runs on
+ * one executor thread, in the order each connection sent it. The storages still
+ * take their locks: BLPOP and XREAD timeouts, the active expire cycle and the
+ * replication link reach them from their own threads.
+ */
+public class NioServer {
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  private final int port;
+  private final int eventLoopCount;
+  private final StringStorage stringStorage;
+  private final ListStorage listStorage;
+  private final StreamStorage streamStorage;
+  // Runs all commands in order when set; null runs them on the event loops
+  private final ExecutorService commandExecutor;
+  // Unix domain socket accepted alongside the TCP port, null for TCP only
+  private String unixSocket;
+  // Threads accepting TCP connections, each on its own SO_REUSEPORT listener when more than one
+  private int acceptThreads = 1;
+
+  public NioServer(int port, int eventLoopCount, StringStorage stringStorage, ListStorage listStorage, StreamStorage streamStorage) {
+    this(port, eventLoopCount, false, stringStorage, listStorage, streamStorage);
+  }
+
+  /**
+   * @param singleCommandThread true to execute commands on one dedicated thread
+   *        while the event loops only do I/O and parsing
+   */
+  public NioServer(int port, int eventLoopCount, boolean singleCommandThread, StringStorage stringStorage, ListStorage listStorage, StreamStorage streamStorage) {
+    this.port = port;
+    this.eventLoopCount = Math.max(1, eventLoopCount);
+    this.commandExecutor = singleCommandThread
+        ? Executors.newSingleThreadExecutor(task -> new Thread(task, "command-executor"))
+        : null;
+    this.stringStorage = stringStorage;
+    this.listStorage = listStorage;
+    this.streamStorage = streamStorage;
+  }
+
+  /**
+   * Also accepts clients on a Unix domain socket at the given path; call before run().
+   *
+   * @param path the socket file path, or null for TCP only
+   */
+  public void setUnixSocket(String path) {
+    this.unixSocket = path;
+  }
+
+  /**
+   * Accepts TCP clients on this many threads, each with its own listening
+   * channel bound with SO_REUSEPORT so the kernel spreads connections across
+   * them; call before run().
+   */
+  public void setAcceptThreads(int acceptThreads) {
+    this.acceptThreads = Math.max(1, acceptThreads);
+  }
+
+  /**
+   * Starts the event loops and accepts connections on the calling thread,
+   * handing each new channel to the loops in round-robin order. Unix socket
+   * clients and the extra SO_REUSEPORT listeners are accepted on their own
+   * threads and share the same loops.
+   */
+  public void run() throws IOException {
+    EventLoop[] eventLoops = new EventLoop[eventLoopCount];
+    for (int i = 0; i < eventLoopCount; i++) {
+      eventLoops[i] = new EventLoop(i);
+      Thread loopThread = new Thread(eventLoops[i], "event-loop-" + i);
+      eventLoops[i].thread = loopThread;
+      loopThread.start();
+    }
+
+    if (unixSocket != null) {
+      ServerSocketChannel unixChannel = Main.openUnixSocket(unixSocket);
+      Log.notice("Redis server listening on Unix socket " + unixSocket);
+      Thread.ofPlatform().name("unix-acceptor").daemon(true).start(() -> acceptLoop(unixChannel, eventLoops));
+    }
+
+    ServerSocketChannel[] serverChannels = new ServerSocketChannel[acceptThreads];
+    try {
+      for (int i = 0; i < acceptThreads; i++) {
+        serverChannels[i] = openTcpChannel(acceptThreads > 1);
+      }
+      Log.notice("Redis server started on port " + port + " (nio, " + eventLoopCount + " event loops"
+          + (commandExecutor != null ? ", single command thread" : "")
+          + (acceptThreads > 1 ? ", " + acceptThreads + " acceptor threads)" : ")"));
+
+      for (int i = 1; i < acceptThreads; i++) {
+        ServerSocketChannel listener = serverChannels[i];
+        Thread.ofPlatform().name("acceptor-" + i).daemon(true).start(() -> acceptLoop(listener, eventLoops));
+      }
+      acceptLoop(serverChannels[0], eventLoops);
+    } finally {
+      for (ServerSocketChannel serverChannel : serverChannels) {
+        if (serverChannel != null) {
+          serverChannel.close();
+        }
+      }
+    }
+  }
+
+  private ServerSocketChannel openTcpChannel(boolean reusePort) throws IOException {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    // Since the tester restarts your program quite often, setting
+    // SO_REUSEADDR ensures that we don't run into 'Address already in use'
+    // errors
+    serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+    if (reusePort) {
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    }
+    serverChannel.bind(new InetSocketAddress(port));
+    return serverChannel;
+  }
+
+  private void acceptLoop(ServerSocketChannel serverChannel, EventLoop[] eventLoops) {
+    while (serverChannel.isOpen()) {
+      try {
+        SocketChannel channel = serverChannel.accept();
+        int clientId = Main.nextClientId();
+        EventLoop eventLoop = eventLoops[clientId % eventLoopCount];
+        Connection connection = new Connection(eventLoop, channel, clientId);
+        // Refused while the channel is still blocking, so the error is written in one call
+        if (!connection.handler.admit()) {
+          HandleClient.reject(channel);
+          continue;
+        }
+        try {
+          eventLoop.register(connection);
+        } catch (IOException e) {
+          connection.close();
+          throw e;
+        }
+      } catch (IOException e) {
+        Log.warning("Error accepting client connection: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * One selector thread owning a subset of the client channels.
+   */
+  private class EventLoop implements Runnable {
+    private final int index;
+    private final Selector selector;
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+
+    EventLoop(int index) throws IOException {
+      this.index = index;
+      this.selector = Selector.open();
+    }
+
+    void register(Connection connection) throws IOException {
+      SocketChannel channel = connection.channel;
+      channel.configureBlocking(false);
+      // Unix domain sockets have no Nagle delay to turn off
+      if (!(channel.getLocalAddress() instanceof UnixDomainSocketAddress)) {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      }
+      pendingRegistrations.add(connection);
+      selector.wakeup();
+    }
+
+    // Called by any thread that flushed output for a connection owned by this loop
+    void requestWrite(Connection connection) {
+      if (!connection.writeRequested.compareAndSet(false, true)) {
+        return; // Already queued, the pending write will pick up the new bytes
+      }
+      pendingWrites.add(connection);
+      if (Thread.currentThread() != thread) {
+        selector.wakeup();
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        try {
+          selector.select();
+          registerPendingConnections();
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Connection connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+              continue;
+            }
+            try {
+              if (key.isReadable()) {
+                connection.onReadable();
+              }
+              if (key.isValid() && key.isWritable()) {
+                connection.writePending();
+              }
+            } catch (RuntimeException e) {
+              drop(connection, e);
+            }
+          }
+
+          Connection connection;
+          while ((connection = pendingWrites.poll()) != null) {
+            try {
+              connection.writePending();
+            } catch (RuntimeException e) {
+              drop(connection, e);
+            }
+          }
+        } catch (IOException e) {
+          Log.warning("Event loop " + index + " - IOException: " + e.getMessage());
+        }
+      }
+    }
+
+    // A failure handling one client closes that client only, not the loop and every client on it
+    private void drop(Connection connection, RuntimeException e) {
+      Log.warning("Event loop " + index + " - Client " + connection.clientId + " - " + e + ", closing the connection");
+      connection.close();
+    }
+
+    private void registerPendingConnections() {
+      Connection pending;
+      while ((pending = pendingRegistrations.poll()) != null) {
+        Connection connection = pending;
+        try {
+          connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+          String remoteAddress = remoteAddressOf(connection.channel);
+          connection.handler.attach(remoteAddress, connection.writer);
+          Log.verbose(() -> "Client " + connection.clientId + " connected on event loop " + index + ": " + remoteAddress);
+        } catch (IOException e) {
+          Log.verbose(() -> "Client " + connection.clientId + " - IOException during registration: " + e.getMessage());
+          connection.close();
+        }
+      }
+    }
+  }
+
+  // Unix socket peers are unnamed, so they are listed by the server's socket path, like Redis does
+  private static String remoteAddressOf(SocketChannel channel) throws IOException {
+    if (channel.getLocalAddress() instanceof UnixDomainSocketAddress local) {
+      return local + ":0";
+    }
+    return String.valueOf(channel.getRemoteAddress());
+  }
+
+  /**
+   * Per-channel state: the read buffer, the queued replies and the command handler.
+   */
+  private class Connection {
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private final int clientId;
+    private final HandleClient handler;
+    private final ChannelWriter writer;
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private final RESPParser parser = new RESPParser(READ_BUFFER_SIZE);
+    private SelectionKey key;
+
+    Connection(EventLoop eventLoop, SocketChannel channel, int clientId) {
+      this.eventLoop = eventLoop;
+      this.channel = channel;
+      this.clientId = clientId;
+      this.handler = new HandleClient(null, clientId, Main.serverRole, stringStorage, listStorage, streamStorage);
+      this.writer = new ChannelWriter(this);
+    }
+
+    void onReadable() {
+      try {
+        int read = parser.readFrom(channel);
+        if (read == -1) {
+          Log.verbose(() -> "Client " + clientId + " disconnected");
+          close();
+          return;
+        }
+        handler.touch();
+
+        List<byte[]> args;
+        if (commandExecutor == null) {
+          while ((args = parser.next()) != null) {
+            List<String> command = RESPProtocol.decodeArguments(args);
+            Log.debug(() -> "Client " + clientId + " - Parsed command: " + command);
+            handler.handleCommand(command, writer);
+          }
+          // One write per batch of pipelined commands
+          handler.flushBatch(writer);
+          return;
+        }
+
+        // Parse the whole batch here and hand it to the command thread in one task;
+        // the executor's FIFO queue keeps each connection's batches in order
+        List<List<String>> batch = new ArrayList<>();
+        while ((args = parser.next()) != null) {
+          List<String> command = RESPProtocol.decodeArguments(args);
+          Log.debug(() -> "Client " + clientId + " - Parsed command: " + command);
+          batch.add(command);
+        }
+        if (!batch.isEmpty()) {
+          commandExecutor.execute(() -> executeBatch(batch));
+        }
+      } catch (IOException e) {
+        Log.verbose(() -> "Client " + clientId + " - " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        close();
+      }
+    }
+
+    // Runs on the command thread; the flush hands the replies back to the event loop
+    void executeBatch(List<List<String>> batch) {
+      if (!channel.isOpen()) {
+        return;
+      }
+      try {
+        for (List<String> command : batch) {
+          handler.handleCommand(command, writer);
+        }
+        handler.flushBatch(writer);
+      } catch (IOException e) {
+        Log.verbose(() -> "Client " + clientId + " - " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        close();
+      } catch (RuntimeException e) {
+        // The command thread serves every client, so it must survive; the reply stream
+        // may stop mid-command, so the client cannot be answered and is closed instead
+        Log.warning("Client " + clientId + " - " + e + " on the command thread, closing the connection");
+        close();
+      }
+    }
+
+    void writePending() {
+      writeRequested.set(false);
+      if (key == null || !key.isValid()) {
+        return;
+      }
+      try {
+        boolean drained = writer.writeTo(channel);
+        int interestOps = drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (key.interestOps() != interestOps) {
+          key.interestOps(interestOps);
+        }
+      } catch (IOException e) {
+        Log.verbose(() -> "Client " + clientId + " - IOException during write: " + e.getMessage());
+        close();
+      }
+    }
+
+    void close() {
+      handler.detach();
+      try {
+        if (key != null) {
+          key.cancel();
+        }
+        channel.close();
+        Log.verbose(() -> "Client " + clientId + " - Socket closed");
+      } catch (IOException e) {
+        Log.verbose(() -> "Client " + clientId + " - IOException during cleanup: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Writer handed to HandleClient and BlockedClient for a channel.
+   * Replies are encoded into pooled buffers; when a buffer fills up or the
+   * writer is flushed the buffer itself is queued for the socket, without
+   * another copy, and the owning event loop is asked to send it. Blocked-client
+   * replies and replica propagation from other threads go through the same
+   * queue. Sent buffers go back to the pool.
+   */
+  private static class ChannelWriter extends QueuedRespWriter {
+    private final Connection connection;
+
+    ChannelWriter(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    protected void requestWrite() throws IOException {
+      if (!connection.channel.isOpen()) {
+        throw new ClosedChannelException();
+      }
+      connection.eventLoop.requestWrite(connection);
+    }
+
+    @Override
+    protected void closeConnection() {
+      connection.close();
+    }
+
+    // Writes as much queued output as the socket accepts, returns true when nothing is left
+    boolean writeTo(SocketChannel channel) throws IOException {
+      return super.writeTo(channel);
+    }
+  }
+}
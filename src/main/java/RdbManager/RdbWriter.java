@@ -66,7 +66,7 @@ public class RdbWriter {
 
     private void writeRdbString(ByteArrayOutputStream out, String s) {
         writeRdbSize(out, s.length());
-        out.writeBytes(s.getBytes());
+        out.writeBytes(s.getBytes(RESPProtocol.CHARSET));
     }
 
     private void writeRdbSize(ByteArrayOutputStream out, int size) {
@@ -1,11 +1,10 @@
 package StorageManager;
-import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 public class BlockedClient {
   public final int clientId;
-  public final OutputStream outputStream;
+  public final RespWriter writer; // Connection the reply is written to once unblocked
   public final String listKey; // For list operations (BLPOP)
   public final long timeoutMs; // 0 means wait indefinitely
   public final long blockStartTime;
@@ -16,9 +15,9 @@ public class BlockedClient {
   public final boolean isStreamOperation;
   
   // Constructor for list operations (existing BLPOP functionality)
-  public BlockedClient(int clientId, OutputStream outputStream, String listKey, long timeoutMs) {
+  public BlockedClient(int clientId, RespWriter writer, String listKey, long timeoutMs) {
     this.clientId = clientId;
-    this.outputStream = outputStream;
+    this.writer = writer;
     this.listKey = listKey;
     this.timeoutMs = timeoutMs;
     this.blockStartTime = System.currentTimeMillis();
@@ -28,10 +27,10 @@ public class BlockedClient {
   }
   
   // Constructor for stream operations (new XREAD BLOCK functionality)
-  public BlockedClient(int clientId, OutputStream outputStream, List<String> streamKeys, 
+  public BlockedClient(int clientId, RespWriter writer, List<String> streamKeys, 
                       Map<String, String> lastIds, long timeoutMs) {
     this.clientId = clientId;
-    this.outputStream = outputStream;
+    this.writer = writer;
     this.listKey = null;
     this.timeoutMs = timeoutMs;
     this.blockStartTime = System.currentTimeMillis();
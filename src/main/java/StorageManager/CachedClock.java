@@ -0,0 +1,46 @@
+package StorageManager;
+
+/**
+ * A millisecond clock kept in a volatile field that a background thread
+ * refreshes every RESOLUTION_MS, for timestamps that need not be exact, like
+ * a key's last access time. It plays the part of the time Redis caches in
+ * serverCron.
+ *
+ * Reading it is a plain memory load, where System.currentTimeMillis() reads
+ * the system clock: on a lookup that misses the CPU caches, that clock read
+ * cost more than the hash lookup itself. Expiry checks still use the exact
+ * clock, and only for keys that have a TTL.
+ */
+public final class CachedClock {
+
+    public static final long RESOLUTION_MS = 10;
+
+    private static volatile long millis = System.currentTimeMillis();
+
+    static {
+        Thread updater = new Thread(CachedClock::updateLoop, "cached-clock");
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    private CachedClock() {
+    }
+
+    /**
+     * Gets the current time in milliseconds, at most about RESOLUTION_MS old.
+     */
+    public static long millis() {
+        return millis;
+    }
+
+    private static void updateLoop() {
+        while (true) {
+            try {
+                Thread.sleep(RESOLUTION_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            millis = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package StorageManager;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * The keyspace's dictionary, split into SEGMENTS concurrent maps by the
+ * key's hash. A key always lives in the same segment, so SCAN walks the
+ * segments one after another and its cursor is just the next segment to
+ * visit: the server keeps nothing per walk, and any cursor can be used
+ * again, by any client, at any time.
+ *
+ * The segment comes from the top bits of the key's hash mixed with a
+ * Fibonacci multiplier, while each ConcurrentHashMap picks its buckets from
+ * the low bits of the plain hash, so the keys of one segment still spread
+ * over that segment's table.
+ */
+final class Dict implements Iterable<Map.Entry<String, RedisObject>> {
+    static final int SEGMENT_BITS = 10;
+    static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int FIBONACCI_MULTIPLIER = 0x9E3779B9;
+
+    private final ConcurrentHashMap<String, RedisObject>[] segments;
+
+    @SuppressWarnings("unchecked")
+    Dict() {
+        segments = new ConcurrentHashMap[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Gets the segment a key lives in.
+     */
+    static int segmentOf(String key) {
+        return (key.hashCode() * FIBONACCI_MULTIPLIER) >>> (Integer.SIZE - SEGMENT_BITS);
+    }
+
+    /**
+     * Gets the segment a walk visits after the given one. The segment number
+     * is incremented from its top bit down, like Redis' reverse binary
+     * cursor, so a walk visits every segment once and ends back at 0.
+     *
+     * @param segment The segment just visited
+     * @return The next segment, 0 once the walk is complete
+     */
+    static int nextSegment(int segment) {
+        int reversed = Integer.reverse(segment | ~(SEGMENTS - 1));
+        return Integer.reverse(reversed + 1) & (SEGMENTS - 1);
+    }
+
+    /**
+     * Gets one segment's keys and objects, e.g. for a SCAN call.
+     */
+    Map<String, RedisObject> segment(int segment) {
+        return segments[segment];
+    }
+
+    private ConcurrentHashMap<String, RedisObject> segmentFor(String key) {
+        return segments[segmentOf(key)];
+    }
+
+    RedisObject get(String key) {
+        return segmentFor(key).get(key);
+    }
+
+    RedisObject put(String key, RedisObject object) {
+        return segmentFor(key).put(key, object);
+    }
+
+    RedisObject putIfAbsent(String key, RedisObject object) {
+        return segmentFor(key).putIfAbsent(key, object);
+    }
+
+    boolean replace(String key, RedisObject expected, RedisObject object) {
+        return segmentFor(key).replace(key, expected, object);
+    }
+
+    RedisObject computeIfPresent(String key, BiFunction<String, RedisObject, RedisObject> remapping) {
+        return segmentFor(key).computeIfPresent(key, remapping);
+    }
+
+    RedisObject remove(String key) {
+        return segmentFor(key).remove(key);
+    }
+
+    boolean remove(String key, RedisObject object) {
+        return segmentFor(key).remove(key, object);
+    }
+
+    /**
+     * Iterates over every segment in turn, as weakly consistent as a
+     * ConcurrentHashMap's own iterator.
+     */
+    @Override
+    public Iterator<Map.Entry<String, RedisObject>> iterator() {
+        return new Iterator<>() {
+            private int nextSegment = 0;
+            private Iterator<Map.Entry<String, RedisObject>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && nextSegment < SEGMENTS) {
+                    current = segments[nextSegment++].entrySet().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, RedisObject> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,267 @@
+package StorageManager;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The maxmemory eviction engine of a keyspace, after Redis' evict.c. Before a
+ * command that may add data runs, freeMemoryIfNeeded evicts keys by the
+ * configured policy until the keyspace's estimated used memory is back under
+ * maxmemory, or reports that it cannot.
+ *
+ * LRU is approximated as in Redis: each object keeps a 24-bit access clock
+ * rather than a place in a linked list, so a read only writes a field and
+ * stays lock-free. To evict, SAMPLES keys are sampled and offered to a small
+ * pool of the best candidates seen so far, and the best of the pool goes.
+ * The sample comes from a cursor over the keyspace (or over the keys with a
+ * TTL, for the volatile policies) that continues where the last one stopped;
+ * hash order is unrelated to access order, which makes it a fair sample.
+ *
+ * The LFU policies use the same sampling and pool, scoring keys by their
+ * decayed logarithmic access counter (RedisObject) instead of idle time, so
+ * a one-off scan over cold keys does not push out the keys read all the time.
+ */
+public class Evictor {
+
+    /**
+     * The maxmemory policies, with the names CONFIG uses.
+     */
+    public enum Policy {
+        NOEVICTION("noeviction", false, false),
+        ALLKEYS_LRU("allkeys-lru", false, false),
+        ALLKEYS_LFU("allkeys-lfu", false, true),
+        VOLATILE_LRU("volatile-lru", true, false),
+        VOLATILE_LFU("volatile-lfu", true, true),
+        ALLKEYS_RANDOM("allkeys-random", false, false),
+        VOLATILE_RANDOM("volatile-random", true, false),
+        VOLATILE_TTL("volatile-ttl", true, false);
+
+        private final String configName;
+        // Evicts only keys with a TTL
+        final boolean volatileOnly;
+        private final boolean lfu;
+
+        Policy(String configName, boolean volatileOnly, boolean lfu) {
+            this.configName = configName;
+            this.volatileOnly = volatileOnly;
+            this.lfu = lfu;
+        }
+
+        /**
+         * Returns true if the policy tracks access frequency rather than the
+         * last access time.
+         */
+        public boolean isLfu() {
+            return lfu;
+        }
+
+        public String configName() {
+            return configName;
+        }
+
+        /**
+         * Parses a policy name as CONFIG and the command line give it.
+         *
+         * @throws IllegalArgumentException if the name is not a policy
+         */
+        public static Policy parse(String name) {
+            for (Policy policy : values()) {
+                if (policy.configName.equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid maxmemory-policy: " + name);
+        }
+    }
+
+    // Keys sampled per eviction, as Redis' default maxmemory-samples
+    public static final int SAMPLES = 5;
+    private static final int POOL_SIZE = 16;
+
+    private final Keyspace keyspace;
+    // 0 means no limit
+    private volatile long maxMemory = 0;
+    private volatile Policy policy = Policy.NOEVICTION;
+    private final LongAdder evictedKeys = new LongAdder();
+
+    // One evicting thread at a time; guards the pool
+    private final ReentrantLock lock = new ReentrantLock();
+    // The eviction pool, as Redis' EvictionPoolLRU: candidates by ascending score, the best last
+    private final String[] poolKeys = new String[POOL_SIZE];
+    private final long[] poolScores = new long[POOL_SIZE];
+    private int poolSize = 0;
+
+    Evictor(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the memory limit in bytes, 0 for none.
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = Math.max(maxMemory, 0);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Gets the number of keys evicted.
+     */
+    public long getEvictedKeys() {
+        return evictedKeys.sum();
+    }
+
+    /**
+     * Evicts keys until used memory is within maxmemory.
+     *
+     * @return true if used memory is within maxmemory, false if the policy is
+     *         noeviction or there is nothing left it may evict
+     */
+    public boolean freeMemoryIfNeeded() {
+        return freeMemoryIfNeeded(null);
+    }
+
+    /**
+     * Evicts keys until used memory is within maxmemory, passing each evicted
+     * key on, e.g. so a master can send its replicas a DEL for it.
+     *
+     * @param evicted Receives each evicted key in order, or null
+     * @return true if used memory is within maxmemory, false if the policy is
+     *         noeviction or there is nothing left it may evict
+     */
+    public boolean freeMemoryIfNeeded(Consumer<String> evicted) {
+        long limit = maxMemory;
+        if (limit == 0 || keyspace.getUsedMemory() <= limit) {
+            return true;
+        }
+        if (policy == Policy.NOEVICTION) {
+            return false;
+        }
+        lock.lock();
+        try {
+            while (keyspace.getUsedMemory() > limit) {
+                String victim = selectVictim(policy, limit);
+                if (victim == null) {
+                    // Expired keys removed while selecting may have freed enough
+                    return keyspace.getUsedMemory() <= limit;
+                }
+                if (keyspace.delete(victim)) {
+                    evictedKeys.increment();
+                }
+                // Even a victim found expired is gone here, so replicas drop it too
+                if (evicted != null) {
+                    evicted.accept(victim);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Picks the key to evict, or null if the policy has none or used memory fell within the limit
+    private String selectVictim(Policy policy, long limit) {
+        if (policy == Policy.ALLKEYS_RANDOM || policy == Policy.VOLATILE_RANDOM) {
+            String[] victim = new String[1];
+            keyspace.sample(policy.volatileOnly, 1, (key, object) -> victim[0] = key);
+            return victim[0];
+        }
+        while (true) {
+            int sampled = keyspace.sample(policy.volatileOnly, SAMPLES, (key, object) -> offer(key, score(policy, object)));
+            // Pool entries may have been deleted, or lost their TTL, since they were sampled
+            while (poolSize > 0) {
+                String key = poolKeys[--poolSize];
+                poolKeys[poolSize] = null;
+                RedisObject object = keyspace.peek(key);
+                if (object != null && (!policy.volatileOnly || object.hasExpiry())) {
+                    return key;
+                }
+                // Peek removes a candidate found expired, which may be all the memory needed
+                if (keyspace.getUsedMemory() <= limit) {
+                    return null;
+                }
+            }
+            if (sampled == 0) {
+                return null;
+            }
+        }
+    }
+
+    // Higher is a better candidate
+    private static long score(Policy policy, RedisObject object) {
+        if (policy == Policy.VOLATILE_TTL) {
+            return Long.MAX_VALUE - object.getExpiryTime();
+        }
+        if (policy.lfu) {
+            return RedisObject.LFU_COUNTER_MAX - object.getFrequency();
+        }
+        return object.getIdleTime();
+    }
+
+    // Adds a sampled key to the pool if it beats the worst candidate there
+    private void offer(String key, long score) {
+        for (int i = 0; i < poolSize; i++) {
+            if (poolKeys[i].equals(key)) {
+                return;
+            }
+        }
+        if (poolSize == POOL_SIZE) {
+            if (score <= poolScores[0]) {
+                return;
+            }
+            // Drop the worst to make room
+            System.arraycopy(poolKeys, 1, poolKeys, 0, POOL_SIZE - 1);
+            System.arraycopy(poolScores, 1, poolScores, 0, POOL_SIZE - 1);
+            poolSize--;
+        }
+        int position = poolSize;
+        while (position > 0 && poolScores[position - 1] > score) {
+            poolKeys[position] = poolKeys[position - 1];
+            poolScores[position] = poolScores[position - 1];
+            position--;
+        }
+        poolKeys[position] = key;
+        poolScores[position] = score;
+        poolSize++;
+    }
+
+    /**
+     * Parses a memory size as CONFIG and the command line give it: bytes, or
+     * a number with a k, kb, m, mb, g or gb unit (k is 1000, kb is 1024).
+     *
+     * @throws IllegalArgumentException if the size is not valid
+     */
+    public static long parseMemory(String size) {
+        String lower = size.trim().toLowerCase();
+        long unit = 1;
+        String[][] units = {{"kb", "1024"}, {"mb", "1048576"}, {"gb", "1073741824"},
+            {"k", "1000"}, {"m", "1000000"}, {"g", "1000000000"}, {"b", "1"}};
+        for (String[] candidate : units) {
+            if (lower.endsWith(candidate[0])) {
+                unit = Long.parseLong(candidate[1]);
+                lower = lower.substring(0, lower.length() - candidate[0].length());
+                break;
+            }
+        }
+        try {
+            long value = Long.parseLong(lower);
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid memory size: " + size);
+            }
+            return Math.multiplyExact(value, unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid memory size: " + size);
+        }
+    }
+}
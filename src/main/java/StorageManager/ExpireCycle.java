@@ -0,0 +1,163 @@
+package StorageManager;
+
+/**
+ * The active expire cycle. Lazy expiry only frees keys that are read again,
+ * so a background thread runs HZ times a second and removes expired keys that
+ * nobody reads, within TIME_PERCENT of the cycle period so it never takes
+ * over a core.
+ *
+ * With the TIMING_WHEEL strategy, the default, the keyspace schedules every
+ * TTL in a TimingWheel and a cycle advances the wheel to now, removing the
+ * keys that came due: no key is checked before its time, and a key is freed
+ * within a cycle period of expiring however many keys have a TTL.
+ *
+ * The SAMPLING strategy is Redis' activeExpireCycle. A cycle checks
+ * KEYS_PER_LOOP keys at a time and keeps going while more than
+ * ACCEPTABLE_STALE_PERCENT of a sample had expired, since then many more
+ * are likely waiting. The sampling continues across cycles from where the
+ * last one stopped, so every key with a TTL is eventually checked, but with
+ * many such keys an expired one can wait a long time.
+ */
+public class ExpireCycle {
+    public enum Strategy {
+        TIMING_WHEEL,
+        SAMPLING
+    }
+
+    // Cycles per second, like Redis' default hz
+    public static final int HZ = 10;
+    private static final int KEYS_PER_LOOP = 20;
+    private static final int ACCEPTABLE_STALE_PERCENT = 10;
+    // Share of each cycle period the cycle may use
+    private static final int TIME_PERCENT = 25;
+    private static final long TIME_BUDGET_NANOS = 1_000_000_000L / HZ * TIME_PERCENT / 100;
+
+    private final Keyspace keyspace;
+    private final Strategy strategy;
+
+    // Statistics for INFO, written by the cycle's thread
+    private volatile long cpuNanos = 0;
+    private volatile long timeCapReached = 0;
+    private volatile double stalePercent = 0;
+    private volatile long expiredPerSecond = 0;
+    private long rateWindowStart = System.nanoTime();
+    private long rateWindowExpiredKeys = 0;
+
+    public ExpireCycle(Keyspace keyspace) {
+        this(keyspace, Strategy.TIMING_WHEEL);
+    }
+
+    public ExpireCycle(Keyspace keyspace, Strategy strategy) {
+        this.keyspace = keyspace;
+        this.strategy = strategy;
+        if (strategy == Strategy.TIMING_WHEEL) {
+            keyspace.useTimingWheel();
+        }
+    }
+
+    /**
+     * Starts the background thread running a cycle HZ times a second.
+     */
+    public void start() {
+        Thread.ofPlatform().name("active-expire").daemon(true).start(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(1000 / HZ);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                runCycle();
+                updateRate();
+            }
+        });
+    }
+
+    /**
+     * Runs one cycle within the default time budget.
+     *
+     * @return The number of keys the cycle removed
+     */
+    public int runCycle() {
+        return runCycle(TIME_BUDGET_NANOS);
+    }
+
+    /**
+     * Runs one cycle.
+     *
+     * @param timeBudgetNanos The time after which the cycle stops
+     * @return The number of keys the cycle removed
+     */
+    public int runCycle(long timeBudgetNanos) {
+        if (strategy == Strategy.TIMING_WHEEL) {
+            long start = System.nanoTime();
+            int[] due = keyspace.expireDue(System.currentTimeMillis(), timeBudgetNanos);
+            if (due[2] == 1) {
+                timeCapReached++;
+            }
+            cpuNanos += System.nanoTime() - start;
+            return due[1];
+        }
+        long start = System.nanoTime();
+        int checked = 0;
+        int expired = 0;
+        while (true) {
+            int[] sample = keyspace.expireNext(KEYS_PER_LOOP, System.currentTimeMillis());
+            checked += sample[0];
+            expired += sample[1];
+            if (sample[0] == 0 || sample[1] * 100 <= sample[0] * ACCEPTABLE_STALE_PERCENT) {
+                break;
+            }
+            if (System.nanoTime() - start > timeBudgetNanos) {
+                timeCapReached++;
+                break;
+            }
+        }
+        cpuNanos += System.nanoTime() - start;
+        if (checked > 0) {
+            // A moving average, as Redis' expired_stale_perc
+            stalePercent = stalePercent * 0.95 + expired * 100.0 / checked * 0.05;
+        }
+        return expired;
+    }
+
+    // Recomputes the expired keys per second about once a second
+    private void updateRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 1_000_000_000L) {
+            long expiredKeys = keyspace.getExpiredKeys();
+            expiredPerSecond = (expiredKeys - rateWindowExpiredKeys) * 1_000_000_000L / elapsed;
+            rateWindowExpiredKeys = expiredKeys;
+            rateWindowStart = now;
+        }
+    }
+
+    /**
+     * Gets the keys expired per second, lazily or actively, over the last second or so.
+     */
+    public long getExpiredPerSecond() {
+        return expiredPerSecond;
+    }
+
+    /**
+     * Gets the time spent in cycles in milliseconds.
+     */
+    public long getCpuMillis() {
+        return cpuNanos / 1_000_000;
+    }
+
+    /**
+     * Gets the number of cycles that stopped at their time budget.
+     */
+    public long getTimeCapReached() {
+        return timeCapReached;
+    }
+
+    /**
+     * Gets the estimated percentage of keys with a TTL that have expired but
+     * not been removed. Sampling only; the timing wheel leaves none behind.
+     */
+    public double getStalePercent() {
+        return stalePercent;
+    }
+}
@@ -0,0 +1,173 @@
+package StorageManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A glob-style pattern as KEYS and SCAN MATCH take it, with the syntax of
+ * Redis' stringmatchlen: '*' matches any run of characters, '?' any one,
+ * '[abc]', '[a-z]' and '[^a-z]' one character of a set, and '\' makes the
+ * next character literal, also inside brackets.
+ *
+ * The pattern is parsed once into tokens, so matching many keys does not
+ * parse it again per key. Matching walks the key once, going back only to
+ * the last '*' on a mismatch, so it takes O(key length * tokens) at worst
+ * rather than the exponential time of naive recursion.
+ */
+public final class GlobPattern {
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte STAR = 2;
+    private static final byte SET = 3;
+
+    private static final class Token {
+        final byte kind;
+        // The character of a LITERAL
+        final char literal;
+        // The ranges of a SET, as pairs of first and last character, and whether it is negated
+        final char[] ranges;
+        final boolean negated;
+
+        Token(byte kind, char literal, char[] ranges, boolean negated) {
+            this.kind = kind;
+            this.literal = literal;
+            this.ranges = ranges;
+            this.negated = negated;
+        }
+    }
+
+    private final Token[] tokens;
+    // "*", which matches everything without looking at the key
+    private final boolean matchesAll;
+
+    private GlobPattern(List<Token> tokens) {
+        this.tokens = tokens.toArray(new Token[0]);
+        this.matchesAll = this.tokens.length == 1 && this.tokens[0].kind == STAR;
+    }
+
+    /**
+     * Parses a pattern. Every string is a valid pattern: an unclosed '['
+     * runs to the end of the pattern and a trailing '\' is literal, as in Redis.
+     *
+     * @param pattern The pattern
+     * @return The compiled pattern
+     */
+    public static GlobPattern compile(String pattern) {
+        List<Token> tokens = new ArrayList<>();
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            char c = pattern.charAt(i);
+            switch (c) {
+                case '*':
+                    // Consecutive stars match what one does
+                    if (tokens.isEmpty() || tokens.get(tokens.size() - 1).kind != STAR) {
+                        tokens.add(new Token(STAR, '\0', null, false));
+                    }
+                    i++;
+                    break;
+                case '?':
+                    tokens.add(new Token(ANY, '\0', null, false));
+                    i++;
+                    break;
+                case '[':
+                    i = parseSet(pattern, i + 1, tokens);
+                    break;
+                case '\\':
+                    if (i + 1 < length) {
+                        i++;
+                    }
+                    tokens.add(new Token(LITERAL, pattern.charAt(i), null, false));
+                    i++;
+                    break;
+                default:
+                    tokens.add(new Token(LITERAL, c, null, false));
+                    i++;
+            }
+        }
+        return new GlobPattern(tokens);
+    }
+
+    // Parses a set after its '[' and returns the index after its ']'
+    private static int parseSet(String pattern, int i, List<Token> tokens) {
+        int length = pattern.length();
+        boolean negate = i < length && pattern.charAt(i) == '^';
+        if (negate) {
+            i++;
+        }
+        StringBuilder pairs = new StringBuilder();
+        while (i < length && pattern.charAt(i) != ']') {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                c = pattern.charAt(++i);
+                pairs.append(c).append(c);
+            } else if (i + 2 < length && pattern.charAt(i + 1) == '-') {
+                char end = pattern.charAt(i + 2);
+                // A range given backwards covers the same characters, as in Redis
+                pairs.append((char) Math.min(c, end)).append((char) Math.max(c, end));
+                i += 2;
+            } else {
+                pairs.append(c).append(c);
+            }
+            i++;
+        }
+        tokens.add(new Token(SET, '\0', pairs.toString().toCharArray(), negate));
+        return i + 1;
+    }
+
+    /**
+     * Matches a whole string against the pattern.
+     *
+     * @param s The string, e.g. a key
+     * @return true if the pattern matches all of it
+     */
+    public boolean matches(String s) {
+        if (matchesAll) {
+            return true;
+        }
+        int tokenCount = tokens.length;
+        int length = s.length();
+        int token = 0;
+        int position = 0;
+        // The token after the last star and where in s it began to match, to go back to
+        int starToken = -1;
+        int starPosition = 0;
+        while (position < length) {
+            if (token < tokenCount && tokens[token].kind == STAR) {
+                starToken = ++token;
+                starPosition = position;
+            } else if (token < tokenCount && matchesOne(token, s.charAt(position))) {
+                token++;
+                position++;
+            } else if (starToken >= 0) {
+                // Let the last star take one more character and retry from there
+                token = starToken;
+                position = ++starPosition;
+            } else {
+                return false;
+            }
+        }
+        while (token < tokenCount && tokens[token].kind == STAR) {
+            token++;
+        }
+        return token == tokenCount;
+    }
+
+    private boolean matchesOne(int index, char c) {
+        Token token = tokens[index];
+        switch (token.kind) {
+            case LITERAL:
+                return token.literal == c;
+            case ANY:
+                return true;
+            case SET:
+                boolean found = false;
+                for (int i = 0; i < token.ranges.length && !found; i += 2) {
+                    found = c >= token.ranges[i] && c <= token.ranges[i + 1];
+                }
+                return found != token.negated;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,706 @@
+package StorageManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The database: a concurrent dictionary (Dict) from key to a typed RedisObject.
+ * StringStorage, ListStorage and StreamStorage all keep their values here, so a
+ * command finds its key, type, expiry and access time with one hash lookup, and
+ * DEL, EXISTS, TYPE, KEYS and expiry work the same way for every type.
+ *
+ * Expired keys are removed lazily, when a lookup finds them, and actively by
+ * ExpireCycle. The keys that have a TTL are indexed in a second map, like
+ * Redis' expires dict. A writer updates the index after changing a key, from
+ * the key's state at that moment, so whichever writer comes last leaves the
+ * index matching the dictionary. Once a cycle asks for it, every TTL set is
+ * also scheduled in a TimingWheel, which finds each key when it comes due.
+ *
+ * Each object is charged its estimated size (MemoryUsage) when it is stored
+ * and released once when it is removed, so used memory is the sum over the
+ * live keys; the Evictor compares it with maxmemory.
+ *
+ * Keys are also counted per type as they are charged and released, and the
+ * expires index keeps the sum of its expiry times, so DBSIZE and INFO keyspace
+ * read counters instead of walking the keys. An expiry only changes inside
+ * the index's compute for its key, so the sum always holds the times indexed.
+ *
+ * SCAN walks the dictionary's fixed segments in reverse binary order, whole
+ * segments at a time, and its cursor is the next segment to visit. A key
+ * never changes segment, so every key present from the start to the end of
+ * a walk is returned, as with Redis' cursor, and since the server keeps no
+ * state per walk, an abandoned walk costs nothing and a cursor can be
+ * retried.
+ */
+public class Keyspace {
+    private final Dict dict = new Dict();
+    // The keys with a TTL, mapped to the object that has it
+    private final Map<String, RedisObject> expires = new ConcurrentHashMap<>();
+    // Where the active expire cycle continues in expires; used by that cycle's thread only
+    private Iterator<Map.Entry<String, RedisObject>> expireCursor;
+    // Keys removed because they expired, lazily or by the active cycle
+    private final LongAdder expiredKeys = new LongAdder();
+    // Schedules the TTLs for an ExpireCycle that advances it; null until one does
+    private volatile TimingWheel wheel;
+    // Estimated bytes held by the stored keys and values
+    private final LongAdder usedMemory = new LongAdder();
+    private final Evictor evictor = new Evictor(this);
+    // Where eviction sampling continues in dict and in expires; used under the Evictor's lock
+    private Iterator<Map.Entry<String, RedisObject>> evictionCursor;
+    private Iterator<Map.Entry<String, RedisObject>> volatileEvictionCursor;
+    // Stored keys by RedisObject.Type ordinal, counted in charge and release
+    private final LongAdder[] keysByType = Stream.generate(LongAdder::new)
+        .limit(RedisObject.Type.values().length)
+        .toArray(LongAdder[]::new);
+    // The sum of the indexed expiry times, each less ttlBase so the sum doesn't overflow
+    private final long ttlBase = System.currentTimeMillis();
+    private final LongAdder expiryTimeSum = new LongAdder();
+
+    /**
+     * Looks up a key and records the access.
+     *
+     * @param key The key to look up
+     * @return The object, or null if the key doesn't exist or has expired
+     */
+    public RedisObject lookup(String key) {
+        RedisObject object = live(key);
+        if (object != null) {
+            object.touch(evictor.getPolicy().isLfu());
+        }
+        return object;
+    }
+
+    /**
+     * Looks up a key that must hold the given type.
+     *
+     * @param key The key to look up
+     * @param type The type the caller operates on
+     * @return The object, or null if the key doesn't exist or has expired
+     * @throws WrongTypeException if the key holds another type
+     */
+    public RedisObject lookup(String key, RedisObject.Type type) {
+        RedisObject object = lookup(key);
+        if (object != null && object.type != type) {
+            throw new WrongTypeException();
+        }
+        return object;
+    }
+
+    /**
+     * Looks up a key without recording an access, e.g. for OBJECT IDLETIME.
+     *
+     * @param key The key to look up
+     * @return The object, or null if the key doesn't exist or has expired
+     */
+    public RedisObject peek(String key) {
+        return live(key);
+    }
+
+    /**
+     * Gets the object at a key, creating an empty one of the given type if the
+     * key doesn't exist.
+     *
+     * @param key The key
+     * @param type The type the caller operates on
+     * @param emptyValue Creates the value of a new key
+     * @return The existing or new object
+     * @throws WrongTypeException if the key holds another type
+     */
+    public RedisObject getOrCreate(String key, RedisObject.Type type, Supplier<?> emptyValue) {
+        RedisObject object = lookup(key, type);
+        while (object == null) {
+            RedisObject created = new RedisObject(type, emptyValue.get());
+            RedisObject existing = dict.putIfAbsent(key, created);
+            if (existing == null) {
+                charge(key, created);
+                afterWrite(key, created);
+                return created;
+            }
+            // Lost a race with another writer, or found an expired key to replace
+            object = lookup(key, type);
+        }
+        return object;
+    }
+
+    /**
+     * Stores an object at a key, replacing whatever the key held, of any type.
+     *
+     * @param key The key
+     * @param object The new object
+     */
+    public void put(String key, RedisObject object) {
+        charge(key, object);
+        RedisObject replaced = dict.put(key, object);
+        if (replaced != null) {
+            if (evictor.getPolicy().isLfu()) {
+                object.inheritAccess(replaced);
+            }
+            release(replaced);
+        }
+        afterWrite(key, object);
+    }
+
+    /**
+     * Stores an object at a key that doesn't exist yet.
+     *
+     * @param key The key
+     * @param object The new object
+     * @return true if the object was stored, false if the key is taken (an
+     *         expired key counts as taken until a lookup removes it)
+     */
+    public boolean add(String key, RedisObject object) {
+        if (dict.putIfAbsent(key, object) != null) {
+            return false;
+        }
+        charge(key, object);
+        afterWrite(key, object);
+        return true;
+    }
+
+    /**
+     * Stores an object at a key only if the key still holds the given one,
+     * e.g. to keep a TTL read from it.
+     *
+     * @param key The key
+     * @param expected The object the key must hold
+     * @param object The new object
+     * @return true if the object was stored, false if the key changed meanwhile
+     */
+    public boolean replace(String key, RedisObject expected, RedisObject object) {
+        if (!dict.replace(key, expected, object)) {
+            return false;
+        }
+        charge(key, object);
+        if (evictor.getPolicy().isLfu()) {
+            object.inheritAccess(expected);
+        }
+        release(expected);
+        afterWrite(key, object);
+        return true;
+    }
+
+    /**
+     * Changes a string value in place if the key still holds the object, the
+     * object has not expired and its value is still the expected one, and
+     * charges the change in size. The compare-and-set runs under the key's
+     * dictionary entry, so no delete or overwrite of the key slips in between
+     * and a new value never lands in an object that already left the keyspace.
+     *
+     * @param key The key
+     * @param object The object read from the key
+     * @param expected The value read from the object
+     * @param newValue The new value
+     * @return true if the value was changed, false if the caller must read the key again
+     */
+    boolean replaceValue(String key, RedisObject object, Object expected, Object newValue) {
+        boolean[] replaced = new boolean[1];
+        dict.computeIfPresent(key, (k, current) -> {
+            if (current == object && !(object.hasExpiry() && object.isExpired(System.currentTimeMillis()))) {
+                replaced[0] = object.compareAndSetValue(expected, newValue);
+            }
+            return current;
+        });
+        if (!replaced[0]) {
+            return false;
+        }
+        resize(object, MemoryUsage.stringValue(newValue) - MemoryUsage.stringValue(expected));
+        return true;
+    }
+
+    /**
+     * Removes a key only if it still holds the given object, e.g. a list that
+     * the last pop emptied.
+     *
+     * @param key The key
+     * @param object The object expected at the key
+     * @return true if the key was removed
+     */
+    public boolean remove(String key, RedisObject object) {
+        if (!dict.remove(key, object)) {
+            return false;
+        }
+        release(object);
+        afterWrite(key, null);
+        return true;
+    }
+
+    /**
+     * Deletes a key of any type.
+     *
+     * @param key The key to delete
+     * @return true if the key existed and had not expired
+     */
+    public boolean delete(String key) {
+        RedisObject object = dict.remove(key);
+        if (object == null) {
+            return false;
+        }
+        release(object);
+        afterWrite(key, null);
+        return !object.isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks if a key exists (and is not expired), without recording an access.
+     *
+     * @param key The key to check
+     * @return true if the key exists
+     */
+    public boolean exists(String key) {
+        return peek(key) != null;
+    }
+
+    /**
+     * Gets the type of the value at a key.
+     *
+     * @param key The key
+     * @return The type, or null if the key doesn't exist
+     */
+    public RedisObject.Type type(String key) {
+        RedisObject object = peek(key);
+        return object != null ? object.type : null;
+    }
+
+    /**
+     * Gets all live keys, removing the expired ones found along the way.
+     *
+     * @return The keys, in no particular order
+     */
+    public List<String> keys() {
+        return keys(null);
+    }
+
+    /**
+     * Gets the live keys holding one type.
+     *
+     * @param type The type, or null for every type
+     * @return The keys, in no particular order
+     */
+    public List<String> keys(RedisObject.Type type) {
+        return keys(null, type);
+    }
+
+    /**
+     * Gets the live keys matching a pattern, as KEYS does.
+     *
+     * @param pattern The pattern, or null for every key
+     * @param type The type, or null for every type
+     * @return The keys, in no particular order
+     */
+    public List<String> keys(GlobPattern pattern, RedisObject.Type type) {
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, RedisObject> entry : dict) {
+            collect(entry, now, pattern, type, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Walks part of the keyspace, as SCAN does. A walk returns every key that
+     * exists all along at least once; keys added or removed meanwhile may or
+     * may not be returned. Each call visits whole dictionary segments until
+     * it has looked at count keys, so it may return more than count.
+     *
+     * @param cursor 0 to start a walk, or the cursor a previous call returned;
+     *        any other number is taken modulo the number of segments
+     * @param count The number of keys to look at; fewer may match
+     * @param pattern Only keys matching this, or null for every key
+     * @param type Only keys of this type, or null for every type
+     * @param keys Receives the keys found
+     * @return The cursor to continue from, 0 once the walk is complete
+     */
+    public long scan(long cursor, int count, GlobPattern pattern, RedisObject.Type type, List<String> keys) {
+        long now = System.currentTimeMillis();
+        int segment = (int) (cursor & (Dict.SEGMENTS - 1));
+        int examined = 0;
+        do {
+            for (Map.Entry<String, RedisObject> entry : dict.segment(segment).entrySet()) {
+                collect(entry, now, pattern, type, keys);
+                examined++;
+            }
+            segment = Dict.nextSegment(segment);
+        } while (segment != 0 && examined < count);
+        return segment;
+    }
+
+    // Adds a live key that passes the filters; an expired key is removed instead
+    private void collect(Map.Entry<String, RedisObject> entry, long now, GlobPattern pattern, RedisObject.Type type, List<String> keys) {
+        RedisObject object = entry.getValue();
+        if (object.isExpired(now)) {
+            removeExpired(entry.getKey(), object);
+        } else if ((type == null || object.type == type) && (pattern == null || pattern.matches(entry.getKey()))) {
+            keys.add(entry.getKey());
+        }
+    }
+
+    /**
+     * Gets the number of keys holding one type, from the counters. As in
+     * Redis, a key that expired counts until a lookup or the expire cycle
+     * removes it.
+     *
+     * @param type The type, or null for every type
+     * @return The number of keys
+     */
+    public int size(RedisObject.Type type) {
+        return (int) keyCount(type);
+    }
+
+    /**
+     * Gets the number of stored keys holding one type, in constant time. Like
+     * Redis' DBSIZE, this counts keys that expired but were not removed yet.
+     *
+     * @param type The type, or null for every type
+     * @return The number of keys
+     */
+    public long keyCount(RedisObject.Type type) {
+        if (type != null) {
+            return keysByType[type.ordinal()].sum();
+        }
+        long count = 0;
+        for (LongAdder keys : keysByType) {
+            count += keys.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the average time to live of the keys with a TTL, as INFO keyspace
+     * reports it.
+     *
+     * @return The average in milliseconds, 0 if no key has a TTL
+     */
+    public long averageTtl() {
+        long count = expires.size();
+        if (count == 0) {
+            return 0;
+        }
+        return Math.max(0, ttlBase + expiryTimeSum.sum() / count - System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the expiry time of a key.
+     *
+     * @param key The key
+     * @return The expiry time in milliseconds, or null if the key doesn't exist or doesn't expire
+     */
+    public Long getExpiry(String key) {
+        RedisObject object = peek(key);
+        return object != null && object.hasExpiry() ? object.getExpiryTime() : null;
+    }
+
+    /**
+     * Sets the expiry time of an existing key.
+     *
+     * @param key The key
+     * @param expiryTimeMs The absolute expiry time in milliseconds
+     * @return true if the key exists and the expiry was set
+     */
+    public boolean setExpiry(String key, long expiryTimeMs) {
+        RedisObject object = peek(key);
+        if (object == null) {
+            return false;
+        }
+        syncExpires(key, () -> object.setExpiryTime(expiryTimeMs));
+        schedule(key, object);
+        return true;
+    }
+
+    /**
+     * Removes the expiry of a key, making it persistent.
+     *
+     * @param key The key
+     * @return true if the key exists and had an expiry
+     */
+    public boolean removeExpiry(String key) {
+        RedisObject object = peek(key);
+        if (object == null || !object.hasExpiry()) {
+            return false;
+        }
+        syncExpires(key, object::removeExpiry);
+        return true;
+    }
+
+    /**
+     * Removes every expired key.
+     */
+    public void cleanupExpiredKeys() {
+        long now = System.currentTimeMillis();
+        if (wheel != null) {
+            expireDue(now, Long.MAX_VALUE);
+            return;
+        }
+        for (Map.Entry<String, RedisObject> entry : expires.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                removeExpired(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Checks the next keys with a TTL, continuing where the previous call
+     * stopped, and removes the expired ones. Called by ExpireCycle only.
+     *
+     * @param count The number of keys to check
+     * @param now The current time in milliseconds
+     * @return {keys checked, keys expired}; fewer than count are checked when
+     *         the pass over the keys with a TTL ends
+     */
+    int[] expireNext(int count, long now) {
+        int checked = 0;
+        int expired = 0;
+        boolean restarted = false;
+        while (checked < count) {
+            if (expireCursor == null || !expireCursor.hasNext()) {
+                // Start a new pass, at most once per call so a small index isn't checked twice
+                if (restarted || expires.isEmpty()) {
+                    break;
+                }
+                expireCursor = expires.entrySet().iterator();
+                restarted = true;
+                continue;
+            }
+            Map.Entry<String, RedisObject> entry = expireCursor.next();
+            String key = entry.getKey();
+            RedisObject object = entry.getValue();
+            checked++;
+            if (dict.get(key) != object || !object.hasExpiry()) {
+                syncExpires(key); // Replaced or persisted since it was indexed
+            } else if (object.isExpired(now) && removeExpired(key, object)) {
+                expired++;
+            }
+        }
+        return new int[] {checked, expired};
+    }
+
+    /**
+     * Starts scheduling TTLs in a timing wheel, including those already set.
+     * Called by the ExpireCycle that will advance the wheel; without one the
+     * scheduled timers would only pile up.
+     */
+    synchronized void useTimingWheel() {
+        if (wheel != null) {
+            return;
+        }
+        // Set first, so a TTL written during the loop is either seen here or scheduled by its writer
+        wheel = new TimingWheel(System.currentTimeMillis());
+        for (Map.Entry<String, RedisObject> entry : expires.entrySet()) {
+            wheel.schedule(entry.getKey(), entry.getValue().getExpiryTime());
+        }
+    }
+
+    /**
+     * Checks if TTLs are scheduled in a timing wheel.
+     */
+    boolean hasTimingWheel() {
+        return wheel != null;
+    }
+
+    /**
+     * Advances the timing wheel and removes the keys that came due. Called
+     * by ExpireCycle only.
+     *
+     * @param now The current time in milliseconds
+     * @param budgetNanos The time after which to stop
+     * @return {timers fired, keys expired, 1 if the budget ran out else 0}
+     */
+    int[] expireDue(long now, long budgetNanos) {
+        TimingWheel timingWheel = wheel;
+        return timingWheel.advance(now, budgetNanos, (key, expiryTimeMs) -> {
+            while (true) {
+                RedisObject object = dict.get(key);
+                if (object == null || !object.hasExpiry()) {
+                    return false; // Deleted or persisted
+                }
+                if (!object.isExpired(now)) {
+                    // TTL moved later, or came due early after the clock stepped back
+                    timingWheel.schedule(key, object.getExpiryTime());
+                    return false;
+                }
+                if (removeExpired(key, object)) {
+                    return true;
+                }
+                // Replaced meanwhile, so look at the new object
+            }
+        });
+    }
+
+    /**
+     * Gets the estimated bytes held by the stored keys and values.
+     */
+    public long getUsedMemory() {
+        return usedMemory.sum();
+    }
+
+    /**
+     * Gets the eviction engine that keeps this keyspace within maxmemory.
+     */
+    public Evictor evictor() {
+        return evictor;
+    }
+
+    /**
+     * Charges a change in the size of a stored value, e.g. a list push.
+     *
+     * @param object The object whose value changed
+     * @param bytes The change in bytes, negative when the value shrank
+     */
+    void resize(RedisObject object, long bytes) {
+        usedMemory.add(object.charge(bytes));
+    }
+
+    /**
+     * Passes the next keys to a sink, continuing where the previous call
+     * stopped, for eviction. Called under the Evictor's lock only.
+     *
+     * @param volatileOnly Samples only keys with a TTL
+     * @param count The number of keys to sample
+     * @param sink Receives each key and its object
+     * @return The number of keys sampled; fewer than count when the keyspace is small
+     */
+    int sample(boolean volatileOnly, int count, BiConsumer<String, RedisObject> sink) {
+        Iterable<Map.Entry<String, RedisObject>> source = volatileOnly ? expires.entrySet() : dict;
+        Iterator<Map.Entry<String, RedisObject>> cursor = volatileOnly ? volatileEvictionCursor : evictionCursor;
+        int sampled = 0;
+        boolean restarted = false;
+        while (sampled < count) {
+            if (cursor == null || !cursor.hasNext()) {
+                // Wrap around, at most once per call so a small keyspace isn't sampled twice
+                if (restarted) {
+                    break;
+                }
+                cursor = source.iterator();
+                restarted = true;
+                continue;
+            }
+            Map.Entry<String, RedisObject> entry = cursor.next();
+            sink.accept(entry.getKey(), entry.getValue());
+            sampled++;
+        }
+        if (volatileOnly) {
+            volatileEvictionCursor = cursor;
+        } else {
+            evictionCursor = cursor;
+        }
+        return sampled;
+    }
+
+    /**
+     * Gets the number of keys with a TTL.
+     *
+     * @return The number of keys in the expires index
+     */
+    public int expiresSize() {
+        return expires.size();
+    }
+
+    /**
+     * Gets the number of TTL timers not yet fired in the timing wheel.
+     *
+     * @return The count, or 0 without a timing wheel
+     */
+    public int timerCount() {
+        TimingWheel timingWheel = wheel;
+        return timingWheel == null ? 0 : timingWheel.size();
+    }
+
+    /**
+     * Gets the number of keys removed because they expired.
+     *
+     * @return The count since the keyspace was created
+     */
+    public long getExpiredKeys() {
+        return expiredKeys.sum();
+    }
+
+    // Gets the object at a key, removing it if it has expired. Only keys with a TTL read the clock.
+    private RedisObject live(String key) {
+        RedisObject object = dict.get(key);
+        if (object != null && object.hasExpiry() && object.isExpired(System.currentTimeMillis())) {
+            removeExpired(key, object);
+            return null;
+        }
+        return object;
+    }
+
+    // Called once as each object is stored
+    private void charge(String key, RedisObject object) {
+        keysByType[object.type.ordinal()].increment();
+        object.initAccess(evictor.getPolicy().isLfu());
+        usedMemory.add(object.charge(MemoryUsage.entry(key, object)));
+    }
+
+    private void release(RedisObject object) {
+        keysByType[object.type.ordinal()].decrement();
+        usedMemory.add(-object.release());
+        if (object.value() instanceof OffHeapValue offHeap) {
+            offHeap.releaseOwner();
+        }
+    }
+
+    // Removes a key that expired, unless it was replaced meanwhile
+    private boolean removeExpired(String key, RedisObject object) {
+        if (!dict.remove(key, object)) {
+            return false;
+        }
+        release(object);
+        expiredKeys.increment();
+        // Only this object's entry: a writer that replaced it syncs the index itself
+        expires.computeIfPresent(key, (k, indexed) -> indexed == object ? unindex(indexed) : indexed);
+        return true;
+    }
+
+    // Keeps the expires index in step after the key was written (object) or removed (null)
+    private void afterWrite(String key, RedisObject object) {
+        // Keys without a TTL that were never indexed skip the index entirely
+        if (object != null && object.hasExpiry()) {
+            syncExpires(key);
+            schedule(key, object);
+        } else if (expires.containsKey(key)) {
+            syncExpires(key);
+        }
+    }
+
+    private void schedule(String key, RedisObject object) {
+        TimingWheel timingWheel = wheel;
+        if (timingWheel != null) {
+            timingWheel.schedule(key, object.getExpiryTime());
+        }
+    }
+
+    // Sets the key's index entry from the key's current state in the dictionary
+    private void syncExpires(String key) {
+        syncExpires(key, null);
+    }
+
+    // The same, first applying a change to the expiry of the key's object under the entry's lock
+    private void syncExpires(String key, Runnable expiryChange) {
+        expires.compute(key, (k, indexed) -> {
+            if (indexed != null) {
+                unindex(indexed);
+            }
+            if (expiryChange != null) {
+                expiryChange.run();
+            }
+            RedisObject current = dict.get(k);
+            if (current == null || !current.hasExpiry()) {
+                return null;
+            }
+            expiryTimeSum.add(current.getExpiryTime() - ttlBase);
+            return current;
+        });
+    }
+
+    // Takes an object's expiry out of the sum as its index entry goes; returns null for compute
+    private RedisObject unindex(RedisObject indexed) {
+        expiryTimeSum.add(ttlBase - indexed.getExpiryTime());
+        return null;
+    }
+}
@@ -5,18 +5,46 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Queue;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Storage manager for Redis list data type.
  * Handles list operations including LPUSH, RPUSH, LPOP, LRANGE, LLEN, and BLPOP.
+ * Operations on a key holding another type throw WrongTypeException.
  */
 public class ListStorage {
-    // Storage for lists (key -> list of elements)
-    private final Map<String, List<String>> lists = new HashMap<>();
+    // The keyspace holding the lists, shared with the other storages in the server
+    private final Keyspace keyspace;
     // Storage for blocked clients waiting for list elements (listKey -> queue of blocked clients)
     private final Map<String, Queue<BlockedClient>> blockedClients = new HashMap<>();
-    // Global lock for all list operations to ensure consistency with blocking operations
-    private final Object listOperationsLock = new Object();
+    // Global lock for all list operations to ensure consistency with blocking operations.
+    // A ReentrantLock rather than a monitor so virtual threads waiting on it do not pin their carrier.
+    private final ReentrantLock listOperationsLock = new ReentrantLock();
+    
+    /**
+     * Creates a list storage with a keyspace of its own.
+     */
+    public ListStorage() {
+        this(new Keyspace());
+    }
+    
+    /**
+     * Creates a list storage over a shared keyspace.
+     * 
+     * @param keyspace The keyspace to keep lists in
+     */
+    public ListStorage(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+    
+    /**
+     * Gets the keyspace the lists are kept in.
+     * 
+     * @return The keyspace
+     */
+    public Keyspace keyspace() {
+        return keyspace;
+    }
     
     /**
      * Pushes elements to the left (beginning) of a list.
@@ -26,18 +54,23 @@ public class ListStorage {
      * @return The new size of the list
      */
     public int leftPush(String key, String... elements) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.computeIfAbsent(key, _ -> new ArrayList<>());
+        listOperationsLock.lock();
+        try {
+            RedisObject object = keyspace.getOrCreate(key, RedisObject.Type.LIST, ArrayList::new);
+            List<String> list = object.value();
             
             // Insert elements at the beginning (reverse order to maintain command semantics)
             for (String element : elements) {
                 list.add(0, element);
+                keyspace.resize(object, MemoryUsage.listElement(element));
             }
             
             // Notify blocked clients waiting for this list
             notifyBlockedClients(key);
             
             return list.size();
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -49,18 +82,23 @@ public class ListStorage {
      * @return The new size of the list
      */
     public int rightPush(String key, String... elements) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.computeIfAbsent(key, _ -> new ArrayList<>());
+        listOperationsLock.lock();
+        try {
+            RedisObject object = keyspace.getOrCreate(key, RedisObject.Type.LIST, ArrayList::new);
+            List<String> list = object.value();
             
             // Add elements to the end
             for (String element : elements) {
                 list.add(element);
+                keyspace.resize(object, MemoryUsage.listElement(element));
             }
             
             // Notify blocked clients waiting for this list
             notifyBlockedClients(key);
             
             return list.size();
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -72,26 +110,32 @@ public class ListStorage {
      * @return The popped elements, or empty list if key doesn't exist or list is empty
      */
     public List<String> leftPop(String key, int count) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.get(key);
+        listOperationsLock.lock();
+        try {
+            RedisObject object = keyspace.lookup(key, RedisObject.Type.LIST);
             List<String> result = new ArrayList<>();
 
-            if (list == null || list.isEmpty()) {
+            if (object == null) {
                 return result; // Empty result
             }
 
+            List<String> list = object.value();
             int elementsToRemove = Math.min(count, list.size());
 
             for (int i = 0; i < elementsToRemove; i++) {
-                result.add(list.remove(0));
+                String element = list.remove(0);
+                keyspace.resize(object, -MemoryUsage.listElement(element));
+                result.add(element);
             }
 
             // Clean up empty list
             if (list.isEmpty()) {
-                lists.remove(key);
+                keyspace.remove(key, object);
             }
 
             return result;
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -104,8 +148,9 @@ public class ListStorage {
      * @return The elements in the specified range, or empty list if key doesn't exist
      */
     public List<String> range(String key, int start, int end) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.get(key);
+        listOperationsLock.lock();
+        try {
+            List<String> list = list(key);
 
             if (list == null) {
                 return new ArrayList<>(); // Empty result
@@ -133,6 +178,8 @@ public class ListStorage {
             }
 
             return result;
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -143,14 +190,17 @@ public class ListStorage {
      * @return The length of the list, or 0 if key doesn't exist
      */
     public int length(String key) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.get(key);
+        listOperationsLock.lock();
+        try {
+            List<String> list = list(key);
 
             if (list == null) {
                 return 0;
             }
 
             return list.size();
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -161,9 +211,11 @@ public class ListStorage {
      * @return true if the list exists and has elements
      */
     public boolean exists(String key) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.get(key);
-            return list != null && !list.isEmpty();
+        listOperationsLock.lock();
+        try {
+            return keyspace.type(key) == RedisObject.Type.LIST;
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -175,8 +227,9 @@ public class ListStorage {
      * @return true if client was blocked, false if list has elements (client should pop immediately)
      */
     public boolean blockClient(String key, BlockedClient blockedClient) {
-        synchronized (listOperationsLock) {
-            List<String> list = lists.get(key);
+        listOperationsLock.lock();
+        try {
+            List<String> list = list(key);
             
             // Check if list exists and has elements
             if (list != null && !list.isEmpty()) {
@@ -188,6 +241,8 @@ public class ListStorage {
             clientQueue.offer(blockedClient);
             
             return true; // Client was blocked
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -199,7 +254,8 @@ public class ListStorage {
      * @return true if the client was found and removed from the queue
      */
     public boolean unblockClient(String key, BlockedClient blockedClient) {
-        synchronized (listOperationsLock) {
+        listOperationsLock.lock();
+        try {
             Queue<BlockedClient> queue = blockedClients.get(key);
             if (queue != null) {
                 boolean removed = queue.remove(blockedClient);
@@ -212,6 +268,8 @@ public class ListStorage {
                 return removed;
             }
             return false;
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -222,7 +280,8 @@ public class ListStorage {
      * @return The popped element and client, or null if no elements or no blocked clients
      */
     public BlockedClientResult popForBlockedClient(String key) {
-        synchronized (listOperationsLock) {
+        listOperationsLock.lock();
+        try {
             // Get the first blocked client
             Queue<BlockedClient> clientQueue = blockedClients.get(key);
             if (clientQueue == null || clientQueue.isEmpty()) {
@@ -230,14 +289,16 @@ public class ListStorage {
             }
             
             // Get the list
-            List<String> list = lists.get(key);
-            if (list == null || list.isEmpty()) {
+            RedisObject object = keyspace.lookup(key, RedisObject.Type.LIST);
+            if (object == null) {
                 return null;
             }
+            List<String> list = object.value();
             
             // Pop client and element
             BlockedClient client = clientQueue.poll();
             String element = list.remove(0);
+            keyspace.resize(object, -MemoryUsage.listElement(element));
             
             // Clean up empty queue
             if (clientQueue.isEmpty()) {
@@ -246,10 +307,12 @@ public class ListStorage {
             
             // Clean up empty list
             if (list.isEmpty()) {
-                lists.remove(key);
+                keyspace.remove(key, object);
             }
             
             return new BlockedClientResult(client, element);
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -260,7 +323,8 @@ public class ListStorage {
      * @return A string representation of the client queue order
      */
     public String getBlockedClientOrder(String key) {
-        synchronized (listOperationsLock) {
+        listOperationsLock.lock();
+        try {
             Queue<BlockedClient> queue = blockedClients.get(key);
             if (queue == null || queue.isEmpty()) {
                 return "[]";
@@ -278,6 +342,25 @@ public class ListStorage {
             }
             sb.append("]");
             return sb.toString();
+        } finally {
+            listOperationsLock.unlock();
+        }
+    }
+    
+    /**
+     * Returns true while a client is still waiting on a list.
+     *
+     * @param key The list key
+     * @param blockedClient The client that blocked
+     * @return true if the client is in the list's blocked queue
+     */
+    public boolean isBlocked(String key, BlockedClient blockedClient) {
+        listOperationsLock.lock();
+        try {
+            Queue<BlockedClient> queue = blockedClients.get(key);
+            return queue != null && queue.contains(blockedClient);
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
@@ -288,12 +371,28 @@ public class ListStorage {
      * @return The number of blocked clients
      */
     public int getBlockedClientCount(String key) {
-        synchronized (listOperationsLock) {
+        listOperationsLock.lock();
+        try {
             Queue<BlockedClient> queue = blockedClients.get(key);
             return queue != null ? queue.size() : 0;
+        } finally {
+            listOperationsLock.unlock();
         }
     }
     
+    /**
+     * Gets the list at a key. Lists are removed when their last element is
+     * popped, so a list in the keyspace is never empty.
+     * 
+     * @param key The list key
+     * @return The list, or null if the key doesn't exist
+     * @throws WrongTypeException if the key holds another type
+     */
+    private List<String> list(String key) {
+        RedisObject object = keyspace.lookup(key, RedisObject.Type.LIST);
+        return object != null ? object.value() : null;
+    }
+    
     /**
      * Converts negative index to positive index.
      * 
@@ -315,7 +414,7 @@ public class ListStorage {
     
     /**
      * Notifies blocked clients when elements are added to a list.
-     * This method should be called within the listOperationsLock.
+     * This method should be called while holding the listOperationsLock.
      * 
      * @param key The list key that received new elements
      */
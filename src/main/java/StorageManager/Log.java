@@ -0,0 +1,252 @@
+package StorageManager;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Level-gated asynchronous logging, with the levels of Redis' loglevel option.
+ *
+ * Messages below the configured level cost a single volatile read: the
+ * Supplier variants build the message only when the level is enabled, so
+ * per-command logging can stay in the code at no cost in production.
+ *
+ * Enabled messages go into a bounded lock-free ring buffer and one
+ * background thread formats and writes them, so client threads never wait on
+ * the stdout lock. When the buffer is full, messages are dropped and counted
+ * rather than stalling a client; the writer reports how many were lost.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG('.'), VERBOSE('-'), NOTICE('*'), WARNING('#');
+
+        // Marker printed before the message, as in Redis' log lines
+        final char mark;
+
+        Level(char mark) {
+            this.mark = mark;
+        }
+
+        public String configName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm:ss.SSS", Locale.ROOT).withZone(ZoneId.systemDefault());
+    private static final long PID = ProcessHandle.current().pid();
+
+    private static volatile int minimumLevel = Level.NOTICE.ordinal();
+    private static volatile PrintStream output = System.out;
+
+    // Ring buffer: producers claim a sequence number from head, the writer thread consumes at tail
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLong tail = new AtomicLong();
+    // Sequence numbers below this have been written to the output
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile boolean writerParked = false;
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "log-flush"));
+    }
+
+    private static final class Entry {
+        final long timeMillis;
+        final Level level;
+        final String message;
+
+        Entry(long timeMillis, Level level, String message) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    private Log() {
+    }
+
+    // ========== Configuration ==========
+
+    public static Level getLevel() {
+        return Level.values()[minimumLevel];
+    }
+
+    public static void setLevel(Level level) {
+        minimumLevel = level.ordinal();
+    }
+
+    /**
+     * Parses a loglevel name: debug, verbose, notice or warning.
+     *
+     * @throws IllegalArgumentException if the name is not a level
+     */
+    public static Level parseLevel(String name) {
+        for (Level level : Level.values()) {
+            if (level.configName().equalsIgnoreCase(name)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Invalid log level: " + name);
+    }
+
+    /**
+     * Redirects log lines, e.g. to capture them in tests. Lines already queued
+     * may still go to the previous stream.
+     */
+    public static void setOutput(PrintStream stream) {
+        output = stream;
+    }
+
+    /**
+     * Returns the number of messages dropped because the buffer was full.
+     */
+    public static long droppedMessages() {
+        return dropped.get();
+    }
+
+    // ========== Logging ==========
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= minimumLevel;
+    }
+
+    public static boolean isDebugEnabled() {
+        return minimumLevel == 0;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (minimumLevel == 0) {
+            append(Level.DEBUG, message.get());
+        }
+    }
+
+    public static void verbose(String message) {
+        log(Level.VERBOSE, message);
+    }
+
+    public static void verbose(Supplier<String> message) {
+        if (isEnabled(Level.VERBOSE)) {
+            append(Level.VERBOSE, message.get());
+        }
+    }
+
+    public static void notice(String message) {
+        log(Level.NOTICE, message);
+    }
+
+    public static void warning(String message) {
+        log(Level.WARNING, message);
+    }
+
+    public static void log(Level level, String message) {
+        if (isEnabled(level)) {
+            append(level, message);
+        }
+    }
+
+    /**
+     * Waits until every message logged so far has been written.
+     *
+     * @param timeoutMillis the longest time to wait
+     * @return true if everything was written in time
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = head.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (written.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    // ========== Ring buffer ==========
+
+    private static void append(Level level, String message) {
+        Entry entry = new Entry(System.currentTimeMillis(), level, message);
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail.get() >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        ring.set((int) sequence & MASK, entry);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void writeLoop() {
+        StringBuilder batch = new StringBuilder(8192);
+        long reportedDrops = 0;
+        while (true) {
+            long sequence = tail.get();
+            if (sequence == head.get()) {
+                if (batch.length() > 0) {
+                    writeBatch(batch, sequence);
+                }
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    batch.append(format(System.currentTimeMillis(), Level.WARNING,
+                        (drops - reportedDrops) + " log messages dropped, the log buffer was full"));
+                    reportedDrops = drops;
+                    writeBatch(batch, sequence);
+                }
+                writerParked = true;
+                if (sequence == head.get()) {
+                    LockSupport.parkNanos(100_000_000L);
+                }
+                writerParked = false;
+                continue;
+            }
+            int slot = (int) sequence & MASK;
+            Entry entry = ring.get(slot);
+            if (entry == null) {
+                Thread.onSpinWait(); // Claimed but not yet published
+                continue;
+            }
+            ring.set(slot, null);
+            tail.set(sequence + 1);
+            batch.append(format(entry.timeMillis, entry.level, entry.message));
+            if (batch.length() >= 8192) {
+                writeBatch(batch, sequence + 1);
+            }
+        }
+    }
+
+    private static void writeBatch(StringBuilder batch, long writtenUpTo) {
+        PrintStream stream = output;
+        stream.print(batch);
+        stream.flush();
+        batch.setLength(0);
+        written.set(writtenUpTo);
+    }
+
+    // "<pid> 17 Oct 2026 23:15:27.123 * message", like a Redis log line
+    private static String format(long timeMillis, Level level, String message) {
+        return PID + " " + TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis)) + " " + level.mark + " " + message + "\n";
+    }
+}
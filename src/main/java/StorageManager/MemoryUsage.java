@@ -0,0 +1,94 @@
+package StorageManager;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates of the heap a key and its value take, for maxmemory. They count
+ * the objects the keyspace allocates, sized for a 64-bit JVM with compressed
+ * references, so used memory follows the data set rather than the whole
+ * heap, which also holds garbage, connection buffers and the JVM's own
+ * structures. The numbers are approximate by design, like Redis' own
+ * used_memory is an allocator's view rather than the process size.
+ */
+final class MemoryUsage {
+    private static final long STRING_HEADER = 24;
+    private static final long ARRAY_HEADER = 16;
+    // A ConcurrentHashMap node plus its share of the table
+    private static final long DICT_ENTRY = 32 + 8;
+    private static final long OBJECT = 40;
+    private static final long BOXED_LONG = 16;
+    // An ArrayList and its array
+    private static final long LIST = 24 + ARRAY_HEADER;
+    // The list array's slot, with room to grow
+    private static final long LIST_SLOT = 6;
+    // The stream's own object, its entry list and its lock
+    private static final long STREAM = 16 + LIST + 32;
+    // A StreamEntry and its HashMap with a table
+    private static final long STREAM_ENTRY = 16 + 48 + ARRAY_HEADER;
+    private static final long HASH_MAP_NODE = 32 + 8;
+    private static final long OFF_HEAP_VALUE = 40;
+
+    private MemoryUsage() {
+    }
+
+    /**
+     * Estimates a key with its object, as stored.
+     */
+    static long entry(String key, RedisObject object) {
+        return DICT_ENTRY + string(key) + OBJECT + value(object);
+    }
+
+    /**
+     * Estimates one list element.
+     */
+    static long listElement(String element) {
+        return LIST_SLOT + string(element);
+    }
+
+    /**
+     * Estimates one stream entry.
+     */
+    static long streamEntry(StreamEntry entry) {
+        long bytes = LIST_SLOT + STREAM_ENTRY + string(entry.id);
+        for (Map.Entry<String, String> field : entry.fields.entrySet()) {
+            bytes += HASH_MAP_NODE + string(field.getKey()) + string(field.getValue());
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates a string value, in any of its encodings.
+     */
+    static long stringValue(Object value) {
+        if (value instanceof Long) {
+            return BOXED_LONG;
+        }
+        if (value instanceof OffHeapValue offHeap) {
+            // Native memory counts toward maxmemory like the heap
+            return OFF_HEAP_VALUE + offHeap.allocatedSize();
+        }
+        return ARRAY_HEADER + ((byte[]) value).length;
+    }
+
+    private static long value(RedisObject object) {
+        switch (object.type) {
+            case STRING:
+                return stringValue(object.value());
+            case LIST:
+                long bytes = LIST;
+                for (Object element : (List<?>) object.value()) {
+                    bytes += listElement((String) element);
+                }
+                return bytes;
+            default:
+                // Streams are created empty; StreamStorage charges each entry it adds
+                return STREAM;
+        }
+    }
+
+    // Strings from the protocol are Latin-1, so one byte per character
+    private static long string(String s) {
+        return STRING_HEADER + ARRAY_HEADER + s.length();
+    }
+}
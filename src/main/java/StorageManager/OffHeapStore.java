@@ -0,0 +1,196 @@
+package StorageManager;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Native memory for large string values, so a big data set does not live on
+ * the Java heap and the collector never has to trace or copy it. The heap
+ * keeps only a small OffHeapValue per value.
+ *
+ * Memory is handed out by a slab allocator, after memcached: SLAB_SIZE slabs
+ * are allocated from one shared Arena and carved into chunks of one size
+ * class each, the classes growing by GROWTH_FACTOR from MIN_VALUE_SIZE. A
+ * value takes a chunk of the smallest class it fits, and a freed chunk goes
+ * on its class's free list, threaded through the chunks themselves, so
+ * allocation and free are O(1) and create no garbage. Slabs are not given
+ * back while the store is open, as in memcached. Values larger than a slab
+ * get an Arena of their own, closed when they are freed.
+ */
+public final class OffHeapStore {
+    // Smaller values stay on the heap, where an array costs less than the reference to a chunk
+    public static final int MIN_VALUE_SIZE = 64;
+    static final int SLAB_SIZE = 1 << 20;
+    private static final double GROWTH_FACTOR = 1.25;
+    // Chunk sizes of the size classes, ascending, the last a whole slab
+    private static final int[] CHUNK_SIZES;
+    private static final long NO_CHUNK = -1;
+
+    static {
+        List<Integer> sizes = new ArrayList<>();
+        int size = MIN_VALUE_SIZE;
+        while (size < SLAB_SIZE / 2) {
+            sizes.add(size);
+            // Multiples of 8 keep the free list links aligned
+            size = (int) Math.ceil(size * GROWTH_FACTOR + 7) & ~7;
+        }
+        sizes.add(SLAB_SIZE);
+        CHUNK_SIZES = sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // A size class: its free list and the slab it is carving
+    private static final class SizeClass {
+        final int chunkSize;
+        final ReentrantLock lock = new ReentrantLock();
+        long freeHead = NO_CHUNK;
+        // The slab being carved and the offset of its next chunk; a slab is carved at most once
+        long carveAddress = NO_CHUNK;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private final Arena arena = Arena.ofShared();
+    private final SizeClass[] classes = new SizeClass[CHUNK_SIZES.length];
+    // Slabs by index, replaced by a larger copy when full so readers need no lock
+    private volatile MemorySegment[] slabs = new MemorySegment[16];
+    private volatile int slabCount;
+    private final ReentrantLock slabLock = new ReentrantLock();
+    private final LongAdder largeBytes = new LongAdder();
+
+    public OffHeapStore() {
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(CHUNK_SIZES[i]);
+        }
+    }
+
+    /**
+     * Copies a value into native memory.
+     *
+     * @param bytes The value's bytes
+     * @return The value, owned by the caller until it calls releaseOwner
+     */
+    OffHeapValue store(byte[] bytes) {
+        if (bytes.length > SLAB_SIZE) {
+            Arena own = Arena.ofShared();
+            MemorySegment segment = own.allocate(bytes.length);
+            MemorySegment.copy(bytes, 0, segment, ValueLayout.JAVA_BYTE, 0, bytes.length);
+            largeBytes.add(bytes.length);
+            return new OffHeapValue(this, NO_CHUNK, bytes.length, own, segment);
+        }
+        SizeClass sizeClass = classes[classOf(bytes.length)];
+        long address = allocate(sizeClass);
+        MemorySegment.copy(bytes, 0, slab(address), ValueLayout.JAVA_BYTE, offset(address), bytes.length);
+        return new OffHeapValue(this, address, bytes.length, null, null);
+    }
+
+    /**
+     * Copies a stored value back onto the heap.
+     */
+    void read(OffHeapValue value, byte[] destination) {
+        if (value.segment != null) {
+            MemorySegment.copy(value.segment, ValueLayout.JAVA_BYTE, 0, destination, 0, value.length);
+        } else {
+            MemorySegment.copy(slab(value.address), ValueLayout.JAVA_BYTE, offset(value.address), destination, 0, value.length);
+        }
+    }
+
+    /**
+     * Returns a value's memory, once nothing reads it any more.
+     */
+    void free(OffHeapValue value) {
+        if (value.arena != null) {
+            value.arena.close();
+            largeBytes.add(-value.length);
+            return;
+        }
+        SizeClass sizeClass = classes[classOf(value.length)];
+        sizeClass.lock.lock();
+        try {
+            slab(value.address).set(ValueLayout.JAVA_LONG_UNALIGNED, offset(value.address), sizeClass.freeHead);
+            sizeClass.freeHead = value.address;
+        } finally {
+            sizeClass.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the native memory a value takes: its chunk, or its own segment.
+     */
+    static long allocatedSize(int length) {
+        return length > SLAB_SIZE ? length : CHUNK_SIZES[classOf(length)];
+    }
+
+    /**
+     * Gets the native memory the store holds: every slab, used or not, and
+     * the values larger than a slab.
+     */
+    public long getAllocatedBytes() {
+        return (long) slabCount * SLAB_SIZE + largeBytes.sum();
+    }
+
+    /**
+     * Frees all native memory. Values still stored must not be read afterwards.
+     */
+    public void close() {
+        arena.close();
+    }
+
+    private long allocate(SizeClass sizeClass) {
+        sizeClass.lock.lock();
+        try {
+            long address = sizeClass.freeHead;
+            if (address != NO_CHUNK) {
+                sizeClass.freeHead = slab(address).get(ValueLayout.JAVA_LONG_UNALIGNED, offset(address));
+                return address;
+            }
+            if (sizeClass.carveAddress == NO_CHUNK || offset(sizeClass.carveAddress) + sizeClass.chunkSize > SLAB_SIZE) {
+                sizeClass.carveAddress = (long) newSlab() << 32;
+            }
+            address = sizeClass.carveAddress;
+            sizeClass.carveAddress += sizeClass.chunkSize;
+            return address;
+        } finally {
+            sizeClass.lock.unlock();
+        }
+    }
+
+    // Allocates a slab and returns its index
+    private int newSlab() {
+        slabLock.lock();
+        try {
+            MemorySegment slab = arena.allocate(SLAB_SIZE, 8);
+            MemorySegment[] current = slabs;
+            if (slabCount == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[slabCount] = slab;
+            slabs = current;
+            return slabCount++;
+        } finally {
+            slabLock.unlock();
+        }
+    }
+
+    // The smallest size class a value of this length fits
+    private static int classOf(int length) {
+        int index = Arrays.binarySearch(CHUNK_SIZES, Math.max(length, MIN_VALUE_SIZE));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // A chunk's address is its slab's index in the high 32 bits and its offset in the low
+    private MemorySegment slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static long offset(long address) {
+        return address & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,94 @@
+package StorageManager;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A string value kept in an OffHeapStore: the heap's whole share of it is
+ * this object, whatever the value's length.
+ *
+ * The memory is reference counted, since a GET may still be copying a value
+ * out when a SET replaces it: the key holds one reference, given up by
+ * releaseOwner when the key is removed or overwritten, and each read holds
+ * one while it copies. The last to let go frees the chunk, so a reader never
+ * sees a chunk another value has reused.
+ */
+final class OffHeapValue {
+    private static final VarHandle REFS;
+    private static final VarHandle OWNED;
+
+    static {
+        try {
+            REFS = MethodHandles.lookup().findVarHandle(OffHeapValue.class, "refs", int.class);
+            OWNED = MethodHandles.lookup().findVarHandle(OffHeapValue.class, "owned", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final OffHeapStore store;
+    // The chunk's address in the store's slabs, unused for a value with its own segment
+    final long address;
+    final int length;
+    // A value larger than a slab has its own arena and segment; null otherwise
+    final Arena arena;
+    final MemorySegment segment;
+    private volatile int refs = 1;
+    private volatile boolean owned = true;
+
+    OffHeapValue(OffHeapStore store, long address, int length, Arena arena, MemorySegment segment) {
+        this.store = store;
+        this.address = address;
+        this.length = length;
+        this.arena = arena;
+        this.segment = segment;
+    }
+
+    /**
+     * Copies the value onto the heap.
+     *
+     * @return The value's bytes, or null if it was freed meanwhile and the
+     *         caller should look the key up again
+     */
+    byte[] read() {
+        int current;
+        do {
+            current = refs;
+            if (current == 0) {
+                return null;
+            }
+        } while (!REFS.compareAndSet(this, current, current + 1));
+        try {
+            byte[] bytes = new byte[length];
+            store.read(this, bytes);
+            return bytes;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Gives up the key's reference. Safe to call more than once, e.g. when
+     * removing a key races with replacing its value.
+     */
+    void releaseOwner() {
+        if (OWNED.compareAndSet(this, true, false)) {
+            release();
+        }
+    }
+
+    /**
+     * Gets the native memory the value takes.
+     */
+    long allocatedSize() {
+        return OffHeapStore.allocatedSize(length);
+    }
+
+    private void release() {
+        if ((int) REFS.getAndAdd(this, -1) == 1) {
+            store.free(this);
+        }
+    }
+}
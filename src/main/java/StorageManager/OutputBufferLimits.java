@@ -0,0 +1,138 @@
+package StorageManager;
+import java.util.Locale;
+
+/**
+ * Output buffer limits per client class, like Redis' client-output-buffer-limit.
+ * A client whose queued replies reach the hard limit, or stay above the soft
+ * limit for longer than the soft period, is disconnected. A limit of 0 disables
+ * the check.
+ */
+public final class OutputBufferLimits {
+
+    public enum ClientClass {
+        NORMAL, REPLICA, PUBSUB;
+
+        public String configName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Limits for one client class.
+     */
+    public static final class Limit {
+        public final long hardLimitBytes;
+        public final long softLimitBytes;
+        public final int softLimitSeconds;
+
+        public Limit(long hardLimitBytes, long softLimitBytes, int softLimitSeconds) {
+            this.hardLimitBytes = hardLimitBytes;
+            this.softLimitBytes = softLimitBytes;
+            this.softLimitSeconds = softLimitSeconds;
+        }
+    }
+
+    // Indexed by ClientClass ordinal; replaced as a whole so readers never lock
+    private static volatile Limit[] limits = {
+        new Limit(0, 0, 0),                                   // normal: unlimited, as in Redis
+        new Limit(256L * 1024 * 1024, 64L * 1024 * 1024, 60), // replica
+        new Limit(32L * 1024 * 1024, 8L * 1024 * 1024, 60),   // pubsub
+    };
+
+    private OutputBufferLimits() {
+    }
+
+    public static Limit get(ClientClass clientClass) {
+        return limits[clientClass.ordinal()];
+    }
+
+    public static synchronized void set(ClientClass clientClass, Limit limit) {
+        Limit[] updated = limits.clone();
+        updated[clientClass.ordinal()] = limit;
+        limits = updated;
+    }
+
+    /**
+     * Applies one "class hard soft seconds" group of the config option.
+     *
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static void set(String className, String hard, String soft, String seconds) {
+        ClientClass clientClass;
+        switch (className.toLowerCase(Locale.ROOT)) {
+            case "normal":
+                clientClass = ClientClass.NORMAL;
+                break;
+            case "replica":
+            case "slave":
+                clientClass = ClientClass.REPLICA;
+                break;
+            case "pubsub":
+                clientClass = ClientClass.PUBSUB;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid client class: " + className);
+        }
+        int softSeconds;
+        try {
+            softSeconds = Integer.parseInt(seconds);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid soft limit seconds: " + seconds);
+        }
+        if (softSeconds < 0) {
+            throw new IllegalArgumentException("Invalid soft limit seconds: " + seconds);
+        }
+        set(clientClass, new Limit(parseMemory(hard), parseMemory(soft), softSeconds));
+    }
+
+    /**
+     * Parses a memory size such as "1024", "64kb", "256mb" or "1gb".
+     *
+     * @throws IllegalArgumentException if the value is not a valid size
+     */
+    public static long parseMemory(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        if (lower.endsWith("kb")) {
+            multiplier = 1024;
+        } else if (lower.endsWith("mb")) {
+            multiplier = 1024 * 1024;
+        } else if (lower.endsWith("gb")) {
+            multiplier = 1024L * 1024 * 1024;
+        } else if (lower.endsWith("k")) {
+            multiplier = 1000;
+        } else if (lower.endsWith("m")) {
+            multiplier = 1000 * 1000;
+        } else if (lower.endsWith("g")) {
+            multiplier = 1000L * 1000 * 1000;
+        }
+        String digits = lower.replaceAll("[kmgb]+$", "");
+        try {
+            long number = Long.parseLong(digits);
+            if (number < 0) {
+                throw new IllegalArgumentException("Invalid memory size: " + value);
+            }
+            return number * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid memory size: " + value);
+        }
+    }
+
+    /**
+     * Returns the limits in config syntax, e.g. "normal 0 0 0 replica 268435456 67108864 60 ...".
+     */
+    public static String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (ClientClass clientClass : ClientClass.values()) {
+            Limit limit = get(clientClass);
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(clientClass.configName()).append(' ')
+              .append(limit.hardLimitBytes).append(' ')
+              .append(limit.softLimitBytes).append(' ')
+              .append(limit.softLimitSeconds);
+        }
+        return sb.toString();
+    }
+}
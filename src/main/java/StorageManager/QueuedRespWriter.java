@@ -0,0 +1,273 @@
+package StorageManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RespWriter for a client connection whose replies are queued and sent
+ * asynchronously. Filled buffers are queued as they are, and a subclass moves
+ * them to the socket when asked through requestWrite(), so a thread replying to
+ * a slow reader (a blocked-client wake-up, replica propagation) never waits
+ * for that reader.
+ *
+ * The queued bytes are checked against the OutputBufferLimits of the client's
+ * class after every append; a client over its hard limit, or over its soft
+ * limit for too long, is disconnected and further replies are dropped.
+ */
+public abstract class QueuedRespWriter extends RespWriter {
+    // Replies smaller than this are copied out when they have to wait behind others
+    private static final int SMALL_CHUNK_SIZE = 4 * 1024;
+
+    // Guarded by the writer's lock
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+    private final Queue<Boolean> pooled = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private long softLimitSince = -1;
+    // Serializes blocking drains so chunks reach the stream in order
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    private volatile OutputBufferLimits.ClientClass clientClass = OutputBufferLimits.ClientClass.NORMAL;
+    private volatile boolean closed = false;
+
+    protected QueuedRespWriter() {
+        super(null);
+    }
+
+    /**
+     * Asks for the queued chunks to be written. Called without the lock held.
+     */
+    protected abstract void requestWrite() throws IOException;
+
+    /**
+     * Closes the connection after it went over its output buffer limit or was
+     * disconnected by the server.
+     */
+    protected abstract void closeConnection();
+
+    public OutputBufferLimits.ClientClass getClientClass() {
+        return clientClass;
+    }
+
+    public void setClientClass(OutputBufferLimits.ClientClass clientClass) {
+        this.clientClass = clientClass;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the connection from any thread, e.g. when the client has been
+     * idle too long. Replies not yet sent are dropped.
+     */
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (!closed) {
+                discardAndClose();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the reply bytes not yet written to the socket, buffered or queued.
+     */
+    public long pendingBytes() {
+        lock.lock();
+        try {
+            return queuedBytes + bufferedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of chunks waiting for the socket.
+     */
+    public int queuedChunks() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected boolean emit(byte[] buf, int length) {
+        if (closed) {
+            return false; // Dropped, the connection is going away
+        }
+        boolean kept;
+        if (!pending.isEmpty() && length < SMALL_CHUNK_SIZE) {
+            // Don't park a whole pooled buffer behind a few bytes
+            pending.add(ByteBuffer.wrap(Arrays.copyOf(buf, length)));
+            pooled.add(Boolean.FALSE);
+            kept = false;
+        } else {
+            pending.add(ByteBuffer.wrap(buf, 0, length));
+            pooled.add(Boolean.TRUE);
+            kept = true;
+        }
+        queuedBytes += length;
+        checkLimits();
+        return kept;
+    }
+
+    @Override
+    protected void emitLarge(byte[] b, int off, int len, boolean retainable) {
+        if (closed) {
+            return;
+        }
+        // Arrays the caller may reuse are copied, immutable payloads are queued as they are
+        pending.add(retainable ? ByteBuffer.wrap(b, off, len) : ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+        pooled.add(Boolean.FALSE);
+        queuedBytes += len;
+        checkLimits();
+    }
+
+    /**
+     * Queues the buffered replies and asks for them to be written.
+     *
+     * @throws IOException if the connection was closed for exceeding its limit
+     */
+    @Override
+    public void flush() throws IOException {
+        boolean hasPending;
+        lock.lock();
+        try {
+            drain();
+            hasPending = !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+        if (closed) {
+            throw new IOException("Client output buffer limit reached");
+        }
+        if (hasPending) {
+            requestWrite();
+        }
+    }
+
+    /**
+     * Writes queued chunks to a non-blocking channel until it stops accepting bytes.
+     *
+     * @return true when nothing is left to write
+     */
+    protected boolean writeTo(WritableByteChannel channel) throws IOException {
+        lock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                ByteBuffer head = pending.peek();
+                int written = channel.write(head);
+                queuedBytes -= written;
+                if (head.hasRemaining()) {
+                    checkLimits();
+                    return false;
+                }
+                pending.poll();
+                if (pooled.poll()) {
+                    releaseToPool(head.array());
+                }
+            }
+            softLimitSince = -1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every queued chunk to a blocking stream. The lock is only held to
+     * take the next chunk, so replies can still be queued while this thread
+     * waits on the socket.
+     */
+    protected void writeTo(OutputStream out) throws IOException {
+        drainLock.lock();
+        try {
+            while (true) {
+                ByteBuffer chunk;
+                boolean isPooled;
+                lock.lock();
+                try {
+                    chunk = pending.poll();
+                    if (chunk == null) {
+                        break;
+                    }
+                    isPooled = pooled.poll();
+                } finally {
+                    lock.unlock();
+                }
+                int length = chunk.remaining();
+                out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+                lock.lock();
+                try {
+                    // Never below zero: a limit close may have cleared the queue meanwhile
+                    queuedBytes = Math.max(0, queuedBytes - length);
+                    if (queuedBytes == 0) {
+                        softLimitSince = -1;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (isPooled) {
+                    releaseToPool(chunk.array());
+                }
+            }
+            out.flush();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if chunks are waiting for the socket.
+     */
+    protected boolean hasQueuedChunks() {
+        lock.lock();
+        try {
+            return !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held whenever the queue grew
+    private void checkLimits() {
+        OutputBufferLimits.Limit limit = OutputBufferLimits.get(clientClass);
+        boolean exceeded = false;
+        if (limit.hardLimitBytes > 0 && queuedBytes >= limit.hardLimitBytes) {
+            exceeded = true;
+        } else if (limit.softLimitBytes > 0 && queuedBytes >= limit.softLimitBytes) {
+            long now = System.currentTimeMillis();
+            if (softLimitSince < 0) {
+                softLimitSince = now;
+            } else if (now - softLimitSince >= limit.softLimitSeconds * 1000L) {
+                exceeded = true;
+            }
+        } else {
+            softLimitSince = -1;
+        }
+        if (exceeded && !closed) {
+            Log.warning("Closing " + clientClass.configName() + " client for overcoming of output buffer limits ("
+                + queuedBytes + " bytes queued)");
+            discardAndClose();
+        }
+    }
+
+    // Called with the lock held
+    private void discardAndClose() {
+        closed = true;
+        pending.clear();
+        pooled.clear();
+        queuedBytes = 0;
+        closeConnection();
+    }
+}
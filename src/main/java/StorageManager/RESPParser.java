@@ -0,0 +1,291 @@
+package StorageManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental, binary-safe parser for RESP command arrays.
+ * Each connection owns one parser and its reusable ByteBuffer. Bytes are read
+ * into the buffer as they arrive and next() returns every complete command,
+ * keeping partially received frames (even across many reads) for later calls.
+ * Bulk payloads are copied out by their declared length, so values may contain
+ * any byte including \r\n.
+ *
+ * Bulk arguments of at least bigArgThreshold bytes (32 KB by default, like
+ * Redis' PROTO_MBULK_BIG_ARG) are not accumulated in the buffer: once their
+ * length is known the parser allocates an array of exactly that size and the
+ * following reads go straight into it. A multi-megabyte value is then held
+ * once instead of twice, and the connection buffer stays small.
+ */
+public class RESPParser {
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    // Same limits as Redis' proto-max-bulk-len and multibulk length checks
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+    private static final int MAX_ARRAY_LENGTH = 1024 * 1024;
+    private static final int MAX_INLINE_LENGTH = 64 * 1024;
+    public static final int DEFAULT_BIG_ARG_THRESHOLD = 32 * 1024;
+    // Channel reads into a heap array go through a temporary direct buffer of the
+    // read's size, so reads into a big argument are done in slices of this size
+    private static final int MAX_DIRECT_READ = 256 * 1024;
+
+    // Buffer is kept in write mode: [readPosition, buffer.position()) holds unparsed bytes
+    private ByteBuffer buffer;
+    private int readPosition = 0;
+
+    // State of the command currently being parsed, kept across reads
+    private List<byte[]> pendingArgs = null;
+    private int remainingArgs = 0;
+    private int pendingBulkLength = -1;
+    // Right-sized array receiving the pending bulk argument, when it is a big one
+    private ByteBuffer bigArg = null;
+
+    private final int initialBufferSize;
+    private final int bigArgThreshold;
+
+    public RESPParser() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public RESPParser(int initialBufferSize) {
+        this(initialBufferSize, DEFAULT_BIG_ARG_THRESHOLD);
+    }
+
+    /**
+     * @param initialBufferSize the starting size of the read buffer
+     * @param bigArgThreshold the size from which bulk arguments are read
+     *        straight into their own array
+     */
+    public RESPParser(int initialBufferSize, int bigArgThreshold) {
+        this.initialBufferSize = initialBufferSize;
+        this.bigArgThreshold = bigArgThreshold;
+        this.buffer = ByteBuffer.allocate(initialBufferSize);
+    }
+
+    /**
+     * Reads available bytes from a blocking stream into the buffer.
+     *
+     * @param in the stream to read from
+     * @return the number of bytes read, or -1 at end of stream
+     * @throws IOException if an I/O error occurs
+     */
+    public int readFrom(InputStream in) throws IOException {
+        if (bigArg != null && bigArg.hasRemaining()) {
+            int read = in.read(bigArg.array(), bigArg.position(), bigArg.remaining());
+            if (read > 0) {
+                bigArg.position(bigArg.position() + read);
+            }
+            return read;
+        }
+        ensureWritable();
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * Reads available bytes from a channel into the buffer.
+     *
+     * @param channel the channel to read from (blocking or not)
+     * @return the number of bytes read, 0 if none were available, or -1 at end of stream
+     * @throws IOException if an I/O error occurs
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        if (bigArg != null && bigArg.hasRemaining()) {
+            bigArg.limit(Math.min(bigArg.capacity(), bigArg.position() + MAX_DIRECT_READ));
+            int read = channel.read(bigArg);
+            bigArg.limit(bigArg.capacity());
+            return read;
+        }
+        ensureWritable();
+        return channel.read(buffer);
+    }
+
+    /**
+     * Returns the next complete command in the buffer.
+     * Lines that are not RESP arrays are skipped, like the line-based reader did.
+     *
+     * @return the command arguments as byte arrays, or null if more bytes are needed
+     * @throws ProtocolException if the input is not valid RESP
+     */
+    public List<byte[]> next() throws ProtocolException {
+        while (true) {
+            if (pendingArgs == null) {
+                if (readPosition == buffer.position()) {
+                    return null;
+                }
+                if (buffer.get(readPosition) != '*') {
+                    if (!skipLine()) {
+                        return null;
+                    }
+                    continue;
+                }
+                long arrayLength = readLengthLine('*', MAX_ARRAY_LENGTH);
+                if (arrayLength < 0) {
+                    return null;
+                }
+                pendingArgs = new ArrayList<>((int) arrayLength);
+                remainingArgs = (int) arrayLength;
+            }
+
+            while (remainingArgs > 0) {
+                if (pendingBulkLength < 0) {
+                    long length = readLengthLine('$', MAX_BULK_LENGTH);
+                    if (length < 0) {
+                        return null;
+                    }
+                    pendingBulkLength = (int) length;
+                    if (pendingBulkLength >= bigArgThreshold) {
+                        bigArg = ByteBuffer.allocate(pendingBulkLength);
+                    }
+                }
+                if (bigArg != null) {
+                    if (!fillBigArg()) {
+                        return null;
+                    }
+                    pendingArgs.add(bigArg.array());
+                    bigArg = null;
+                    pendingBulkLength = -1;
+                    remainingArgs--;
+                    continue;
+                }
+                if (buffer.position() - readPosition < pendingBulkLength + 2) {
+                    return null; // Payload not fully received yet
+                }
+                int end = readPosition + pendingBulkLength;
+                if (buffer.get(end) != '\r' || buffer.get(end + 1) != '\n') {
+                    throw new ProtocolException("Protocol error: bulk length mismatch");
+                }
+                byte[] arg = new byte[pendingBulkLength];
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + readPosition, arg, 0, pendingBulkLength);
+                readPosition = end + 2;
+                pendingArgs.add(arg);
+                pendingBulkLength = -1;
+                remainingArgs--;
+            }
+
+            List<byte[]> command = pendingArgs;
+            pendingArgs = null;
+            if (readPosition == buffer.position()) {
+                resetBuffer();
+            }
+            if (!command.isEmpty()) {
+                return command;
+            }
+        }
+    }
+
+    /**
+     * Checks whether unparsed bytes are left in the buffer.
+     *
+     * @return true if the buffer holds the start of an incomplete command
+     */
+    public boolean hasPendingInput() {
+        return readPosition < buffer.position() || pendingArgs != null;
+    }
+
+    // Moves buffered payload bytes into the big argument, then checks its CRLF;
+    // returns true once the argument is complete
+    private boolean fillBigArg() throws ProtocolException {
+        if (bigArg.hasRemaining()) {
+            int count = Math.min(bigArg.remaining(), buffer.position() - readPosition);
+            bigArg.put(buffer.array(), buffer.arrayOffset() + readPosition, count);
+            readPosition += count;
+            if (readPosition == buffer.position()) {
+                resetBuffer();
+            }
+            if (bigArg.hasRemaining()) {
+                return false; // The rest is read straight into the argument
+            }
+        }
+        if (buffer.position() - readPosition < 2) {
+            return false;
+        }
+        if (buffer.get(readPosition) != '\r' || buffer.get(readPosition + 1) != '\n') {
+            throw new ProtocolException("Protocol error: bulk length mismatch");
+        }
+        readPosition += 2;
+        return true;
+    }
+
+    // Everything consumed: reuse the buffer from the start, and give back what a
+    // burst of large commands made it grow to
+    private void resetBuffer() {
+        if (buffer.capacity() > Math.max(initialBufferSize, bigArgThreshold) * 4L) {
+            buffer = ByteBuffer.allocate(initialBufferSize);
+        } else {
+            buffer.clear();
+        }
+        readPosition = 0;
+    }
+
+    // Parses "<prefix><digits>\r\n" at readPosition, returning -1 if the line is incomplete
+    private long readLengthLine(char prefix, int maxValue) throws ProtocolException {
+        int limit = buffer.position();
+        if (readPosition >= limit) {
+            return -1;
+        }
+        if (buffer.get(readPosition) != prefix) {
+            throw new ProtocolException("Protocol error: expected '" + prefix + "', got '" + (char) buffer.get(readPosition) + "'");
+        }
+        long value = 0;
+        for (int i = readPosition + 1; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\r') {
+                if (i + 1 >= limit) {
+                    return -1;
+                }
+                if (buffer.get(i + 1) != '\n' || i == readPosition + 1) {
+                    throw new ProtocolException("Protocol error: invalid " + prefix + " line");
+                }
+                readPosition = i + 2;
+                return value;
+            }
+            if (b < '0' || b > '9') {
+                throw new ProtocolException("Protocol error: invalid length");
+            }
+            value = value * 10 + (b - '0');
+            if (value > maxValue) {
+                throw new ProtocolException("Protocol error: length out of range");
+            }
+        }
+        return -1;
+    }
+
+    // Skips a non-RESP line, returning false if its end has not arrived yet
+    private boolean skipLine() throws ProtocolException {
+        for (int i = readPosition; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n') {
+                readPosition = i + 1;
+                return true;
+            }
+        }
+        if (buffer.position() - readPosition > MAX_INLINE_LENGTH) {
+            throw new ProtocolException("Protocol error: too big inline request");
+        }
+        return false;
+    }
+
+    // Makes room for the next read: drops consumed bytes and grows for large bulk payloads
+    private void ensureWritable() {
+        int unread = buffer.position() - readPosition;
+        // A big argument is read into its own array, only its CRLF comes through the buffer
+        int needed = pendingBulkLength >= 0 && bigArg == null ? pendingBulkLength + 2 : unread + 1;
+        if (readPosition > 0 && (buffer.remaining() == 0 || buffer.capacity() - readPosition < needed)) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + readPosition, buffer.array(), buffer.arrayOffset(), unread);
+            buffer.position(unread);
+            readPosition = 0;
+        }
+        if (buffer.capacity() < needed || buffer.remaining() == 0) {
+            int newCapacity = Math.max(needed, buffer.capacity() * 2);
+            ByteBuffer larger = ByteBuffer.allocate(newCapacity);
+            larger.put(buffer.array(), buffer.arrayOffset(), buffer.position());
+            buffer = larger;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package StorageManager;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 /**
  * Utility class for handling Redis Serialization Protocol (RESP) parsing and formatting.
@@ -19,14 +23,83 @@ public class RESPProtocol {
     private static final String ARRAY_PREFIX = "*";
     private static final String CRLF = "\r\n";
     
+    // RESP3 data type prefixes, used once a connection switched protocols with HELLO 3
+    private static final String MAP_PREFIX = "%";
+    private static final String SET_PREFIX = "~";
+    private static final String DOUBLE_PREFIX = ",";
+    private static final String PUSH_PREFIX = ">";
+    private static final String ATTRIBUTE_PREFIX = "|";
+    
+    // Protocol versions accepted by HELLO
+    public static final int RESP2 = 2;
+    public static final int RESP3 = 3;
+    
     // Common responses
     public static final String NULL_BULK_STRING = "$-1\r\n";
     public static final String EMPTY_ARRAY = "*0\r\n";
     public static final String OK_RESPONSE = "+OK\r\n";
     public static final String PONG_RESPONSE = "+PONG\r\n";
+    public static final String RESP3_NULL = "_\r\n";
+    
+    // Charset used between RESP bytes and Java Strings. ISO-8859-1 maps every byte to one
+    // char and back, so arguments and replies stay binary safe and String.length() is the
+    // byte length used in bulk string headers.
+    public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+    
+    /**
+     * Converts raw command arguments from RESPParser into Strings for the command handlers.
+     * 
+     * @param args the argument byte arrays
+     * @return the arguments as byte-per-char Strings, backed by the arrays
+     */
+    public static List<String> decodeArguments(List<byte[]> args) {
+        return new Arguments(args);
+    }
+    
+    /**
+     * Command arguments read as Strings, decoded from the parser's arrays on
+     * first access. A handler storing a value takes its array with bytes()
+     * instead, so a big value is never copied into a String and back.
+     */
+    public static final class Arguments extends AbstractList<String> implements RandomAccess {
+        private final List<byte[]> args;
+        private final String[] decoded;
+        
+        private Arguments(List<byte[]> args) {
+            this.args = args;
+            this.decoded = new String[args.size()];
+        }
+        
+        @Override
+        public String get(int index) {
+            String arg = decoded[index];
+            if (arg == null) {
+                arg = new String(args.get(index), CHARSET);
+                decoded[index] = arg;
+            }
+            return arg;
+        }
+        
+        /**
+         * Gets an argument's bytes as the parser read them.
+         * The array is not copied and must not be modified.
+         * 
+         * @param index the argument's index
+         * @return the argument's bytes
+         */
+        public byte[] bytes(int index) {
+            return args.get(index);
+        }
+        
+        @Override
+        public int size() {
+            return args.size();
+        }
+    }
     
     /**
      * Parses a RESP array command from the BufferedReader.
+     * Line based and not binary safe; connections use RESPParser instead.
      * 
      * @param reader the BufferedReader to read from
      * @param arrayLine the initial array line (e.g., "*3\r\n")
@@ -155,6 +228,94 @@ public class RESPProtocol {
         return response.toString();
     }
     
+    /**
+     * Formats a RESP3 map of bulk strings (e.g. "%1\r\n$3\r\ndir\r\n$4\r\n/tmp\r\n").
+     * 
+     * @param map the field-value pairs, written in iteration order
+     * @return formatted RESP3 map
+     */
+    public static String formatMap(Map<String, String> map) {
+        StringBuilder response = new StringBuilder();
+        response.append(MAP_PREFIX).append(map.size()).append(CRLF);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            response.append(formatBulkString(entry.getKey()));
+            response.append(formatBulkString(entry.getValue()));
+        }
+        return response.toString();
+    }
+    
+    /**
+     * Formats a RESP3 set of bulk strings (e.g. "~2\r\n$1\r\na\r\n$1\r\nb\r\n").
+     * 
+     * @param members the set members
+     * @return formatted RESP3 set
+     */
+    public static String formatSet(List<String> members) {
+        StringBuilder response = new StringBuilder();
+        response.append(SET_PREFIX).append(members.size()).append(CRLF);
+        for (String member : members) {
+            response.append(formatBulkString(member));
+        }
+        return response.toString();
+    }
+    
+    /**
+     * Formats a RESP3 double (e.g. ",3.14\r\n", ",inf\r\n", ",nan\r\n").
+     * 
+     * @param value the double value
+     * @return formatted RESP3 double
+     */
+    public static String formatDouble(double value) {
+        return DOUBLE_PREFIX + doubleToString(value) + CRLF;
+    }
+    
+    /**
+     * Formats a RESP3 push message of bulk strings, sent outside the request/reply flow
+     * (e.g. ">2\r\n$10\r\ninvalidate\r\n$3\r\nkey\r\n").
+     * 
+     * @param elements the message kind followed by its data
+     * @return formatted RESP3 push message
+     */
+    public static String formatPush(List<String> elements) {
+        StringBuilder response = new StringBuilder();
+        response.append(PUSH_PREFIX).append(elements.size()).append(CRLF);
+        for (String element : elements) {
+            response.append(formatBulkString(element));
+        }
+        return response.toString();
+    }
+    
+    /**
+     * Formats a RESP3 attribute of bulk strings. Attributes precede the reply they
+     * describe and can be skipped by clients that don't use them.
+     * 
+     * @param attributes the attribute field-value pairs
+     * @return formatted RESP3 attribute
+     */
+    public static String formatAttribute(Map<String, String> attributes) {
+        return ATTRIBUTE_PREFIX + formatMap(attributes).substring(MAP_PREFIX.length());
+    }
+    
+    /**
+     * Converts a double to its RESP text form: "inf", "-inf" and "nan" for the
+     * special values, and integral values without a trailing ".0" (like Redis).
+     * 
+     * @param value the double value
+     * @return the RESP representation
+     */
+    public static String doubleToString(double value) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e17) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+    
     /**
      * Formats a two-element array response [key, value] commonly used in blocking operations.
      * 
@@ -366,7 +527,9 @@ public class RESPProtocol {
         
         char firstChar = resp.charAt(0);
         return (firstChar == '+' || firstChar == '-' || firstChar == ':' || 
-                firstChar == '$' || firstChar == '*') && resp.endsWith(CRLF);
+                firstChar == '$' || firstChar == '*' || firstChar == '%' ||
+                firstChar == '~' || firstChar == ',' || firstChar == '>' ||
+                firstChar == '|' || firstChar == '_') && resp.endsWith(CRLF);
     }
     
     /**
@@ -389,6 +552,15 @@ public class RESPProtocol {
         return formatError("ERR unknown command '" + commandName + "'");
     }
     
+    /**
+     * Gets the error message for a HELLO protocol version the server doesn't speak.
+     * 
+     * @return formatted error response
+     */
+    public static String getNoProtocolError() {
+        return formatError("NOPROTO unsupported protocol version");
+    }
+    
     /**
      * Gets the error message for invalid integer values.
      * 
@@ -406,4 +578,23 @@ public class RESPProtocol {
     public static String getOutOfRangeError() {
         return formatError("ERR value is out of range, must be positive");
     }
+    
+    /**
+     * Gets the error message for a command run against a key of another type.
+     * 
+     * @return formatted error response
+     */
+    public static String getWrongTypeError() {
+        return formatError(WrongTypeException.MESSAGE);
+    }
+
+    /**
+     * Gets the error for a command refused because used memory is over
+     * maxmemory and the policy cannot evict.
+     *
+     * @return formatted error response
+     */
+    public static String getOomError() {
+        return formatError("OOM command not allowed when used memory > 'maxmemory'.");
+    }
 }
@@ -0,0 +1,287 @@
+package StorageManager;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A value in the keyspace: its type, the value itself, and the metadata every
+ * type shares, namely the expiry time, the access data eviction compares and
+ * the memory the keyspace charged for it.
+ *
+ * The access data is one 24-bit field, as Redis' robj.lru. Under an LRU
+ * policy it is the LRU clock at the last access. Under an LFU policy it is
+ * the minutes clock of the last decrement in the high 16 bits and an 8-bit
+ * logarithmic access counter in the low 8: each access increments the
+ * counter with a probability that falls as it grows (a Morris counter), so
+ * 255 stands for about a million accesses, and it loses one for every
+ * LFU_DECAY_MINUTES that pass, so a key hot in the past cools down.
+ */
+public class RedisObject {
+
+    /**
+     * The data types a key can hold, with the names TYPE reports.
+     */
+    public enum Type {
+        STRING("string"),
+        LIST("list"),
+        STREAM("stream");
+
+        private final String typeName;
+
+        Type(String typeName) {
+            this.typeName = typeName;
+        }
+
+        public String typeName() {
+            return typeName;
+        }
+    }
+
+    // Limits of the compact encodings OBJECT ENCODING reports, as in Redis
+    private static final int EMBSTR_SIZE_LIMIT = 44;
+    private static final int LISTPACK_MAX_ENTRIES = 128;
+
+    // The access clock, as Redis' LRU clock: seconds in 24 bits, wrapping every 194 days
+    static final int LRU_BITS = 24;
+    static final int LRU_CLOCK_MAX = (1 << LRU_BITS) - 1;
+    static final long LRU_CLOCK_RESOLUTION_MS = 1000;
+
+    // The LFU counter, with Redis' defaults for lfu-log-factor and lfu-decay-time
+    static final int LFU_INIT_VAL = 5;
+    static final int LFU_COUNTER_MAX = 255;
+    static final int LFU_LOG_FACTOR = 10;
+    static final int LFU_DECAY_MINUTES = 1;
+    private static final int LFU_MINUTES_MAX = (1 << 16) - 1;
+
+    private static final VarHandle VALUE;
+    private static final VarHandle MEMORY;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(RedisObject.class, "value", Object.class);
+            MEMORY = MethodHandles.lookup().findVarHandle(RedisObject.class, "memory", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The expiry time of a key that does not expire. As the largest time, it
+     * lets isExpired test any key with one comparison.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    public final Type type;
+    // Only string values change in place, by compareAndSetValue
+    private volatile Object value;
+    // Absolute expiry time in milliseconds, NO_EXPIRY when the key does not expire
+    private volatile long expiryTime;
+    // The LRU clock at the last access, or the LFU minutes and counter
+    private volatile int lru;
+    // Bytes charged to the keyspace's used memory for this object, -1 once released
+    private volatile long memory;
+
+    public RedisObject(Type type, Object value) {
+        this(type, value, NO_EXPIRY);
+    }
+
+    public RedisObject(Type type, Object value, long expiryTime) {
+        this.type = type;
+        this.value = value;
+        this.expiryTime = expiryTime;
+        this.lru = lruClock();
+    }
+
+    /**
+     * Gets the value, typed by the caller: a Long, the raw bytes or an
+     * OffHeapValue for STRING, the storage's own structures for LIST and STREAM.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T value() {
+        return (T) value;
+    }
+
+    /**
+     * Replaces the value if it is still the given instance, keeping the
+     * object's expiry and access time, e.g. for INCR.
+     *
+     * @return true if the value was replaced
+     */
+    boolean compareAndSetValue(Object expected, Object newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    /**
+     * Gets the absolute expiry time in milliseconds, NO_EXPIRY if the key does not expire.
+     */
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public boolean hasExpiry() {
+        return expiryTime != NO_EXPIRY;
+    }
+
+    // Expiry changes go through Keyspace, which keeps its index of keys with a TTL
+    void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    void removeExpiry() {
+        this.expiryTime = NO_EXPIRY;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiryTime;
+    }
+
+    /**
+     * Gets the current LRU clock, from CachedClock.
+     */
+    static int lruClock() {
+        return (int) (CachedClock.millis() / LRU_CLOCK_RESOLUTION_MS) & LRU_CLOCK_MAX;
+    }
+
+    /**
+     * Gets the time since the last access in milliseconds, at the LRU clock's
+     * resolution, as OBJECT IDLETIME and LRU eviction see it.
+     */
+    public long getIdleTime() {
+        int clock = lruClock();
+        int last = lru;
+        // The clock wraps, as Redis' estimateObjectIdleTime allows for
+        long ticks = clock >= last ? clock - last : clock + (LRU_CLOCK_MAX - last);
+        return ticks * LRU_CLOCK_RESOLUTION_MS;
+    }
+
+    /**
+     * Records an access. The field is only written when it changes, so
+     * readers of a hot key on many threads do not keep invalidating its cache
+     * line. Concurrent accesses may lose a counter increment, which an
+     * approximate counter can afford.
+     *
+     * @param lfu Whether the keyspace's policy counts access frequency rather than recency
+     */
+    void touch(boolean lfu) {
+        int current = lru;
+        int updated;
+        if (lfu) {
+            int counter = lfuLogIncr(lfuDecrAndReturn(current));
+            updated = (lfuMinutes() << 8) | counter;
+        } else {
+            updated = lruClock();
+        }
+        if (current != updated) {
+            lru = updated;
+        }
+    }
+
+    /**
+     * Starts the access data of a newly stored object: the LRU clock, or the
+     * LFU counter at LFU_INIT_VAL so a new key is not evicted before it has
+     * had the chance to be accessed again.
+     *
+     * @param lfu Whether the keyspace's policy counts access frequency
+     */
+    void initAccess(boolean lfu) {
+        lru = lfu ? (lfuMinutes() << 8) | LFU_INIT_VAL : lruClock();
+    }
+
+    /**
+     * Takes over the access data of the object this one replaces, so
+     * overwriting a key keeps its frequency, as in Redis.
+     */
+    void inheritAccess(RedisObject replaced) {
+        lru = replaced.lru;
+    }
+
+    /**
+     * Gets the logarithmic access frequency, decayed to now, as OBJECT FREQ
+     * and LFU eviction see it. Only meaningful under an LFU policy.
+     */
+    public int getFrequency() {
+        return lfuDecrAndReturn(lru);
+    }
+
+    // The minutes clock of the LFU data, wrapping every 45 days
+    static int lfuMinutes() {
+        return (int) (CachedClock.millis() / 60_000) & LFU_MINUTES_MAX;
+    }
+
+    // Increments a counter with probability 1 / ((counter - LFU_INIT_VAL) * LFU_LOG_FACTOR + 1)
+    static int lfuLogIncr(int counter) {
+        if (counter == LFU_COUNTER_MAX) {
+            return counter;
+        }
+        double baseValue = Math.max(counter - LFU_INIT_VAL, 0);
+        double probability = 1.0 / (baseValue * LFU_LOG_FACTOR + 1);
+        return ThreadLocalRandom.current().nextDouble() < probability ? counter + 1 : counter;
+    }
+
+    // The counter less one for every LFU_DECAY_MINUTES since its last decrement
+    static int lfuDecrAndReturn(int lfuData) {
+        int lastMinutes = lfuData >>> 8;
+        int counter = lfuData & 0xFF;
+        int now = lfuMinutes();
+        // The minutes clock wraps, as in Redis' LFUTimeElapsed
+        int elapsed = now >= lastMinutes ? now - lastMinutes : LFU_MINUTES_MAX - lastMinutes + now;
+        int periods = elapsed / LFU_DECAY_MINUTES;
+        return periods > counter ? 0 : counter - periods;
+    }
+
+    /**
+     * Gets the bytes charged to the keyspace for this object.
+     */
+    public long getMemoryUsage() {
+        return Math.max(memory, 0);
+    }
+
+    /**
+     * Adds to the bytes charged for this object, unless it was released, so a
+     * change racing with the key's removal cannot leave the total off.
+     *
+     * @return The bytes added, 0 if the object was released
+     */
+    long charge(long bytes) {
+        long current;
+        do {
+            current = memory;
+            if (current < 0) {
+                return 0;
+            }
+        } while (!MEMORY.compareAndSet(this, current, current + bytes));
+        return bytes;
+    }
+
+    /**
+     * Releases the object's charge, once.
+     *
+     * @return The bytes the object was charged, 0 if already released
+     */
+    long release() {
+        return Math.max((long) MEMORY.getAndSet(this, -1L), 0);
+    }
+
+    /**
+     * Gets the encoding OBJECT ENCODING reports for the value.
+     */
+    public String encoding() {
+        switch (type) {
+            case STRING:
+                Object string = value;
+                if (string instanceof Long) {
+                    return "int";
+                }
+                if (string instanceof OffHeapValue offHeap) {
+                    return offHeap.length <= EMBSTR_SIZE_LIMIT ? "embstr" : "raw";
+                }
+                return ((byte[]) string).length <= EMBSTR_SIZE_LIMIT ? "embstr" : "raw";
+            case LIST:
+                return ((List<?>) value).size() <= LISTPACK_MAX_ENTRIES ? "listpack" : "quicklist";
+            default:
+                return "stream";
+        }
+    }
+}
@@ -0,0 +1,719 @@
+package StorageManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Encodes RESP replies straight into a byte buffer owned by one connection.
+ * Replies are written without building intermediate Strings: common replies are
+ * precomputed byte arrays and numbers are written digit by digit. The buffer is
+ * taken from a shared pool on the first write and returned when the writer is
+ * flushed, so idle connections don't hold on to one.
+ *
+ * Every write method takes the writer's lock, so blocked-client replies and
+ * replica propagation from other threads never interleave inside one reply.
+ *
+ * The writer also carries the protocol version the client negotiated with
+ * HELLO. Maps, sets, doubles, nulls and push messages are written as RESP3
+ * types once the client switched to RESP3, and as their RESP2 equivalents
+ * (flat arrays, bulk strings, null bulk strings) before that.
+ */
+public class RespWriter extends OutputStream {
+    public static final int BUFFER_SIZE = 64 * 1024;
+    // Buffers kept around for reuse; anything above this is left to the GC
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+
+    // Precomputed replies
+    public static final byte[] OK = ascii("+OK\r\n");
+    public static final byte[] PONG = ascii("+PONG\r\n");
+    public static final byte[] QUEUED = ascii("+QUEUED\r\n");
+    public static final byte[] NULL_BULK = ascii("$-1\r\n");
+    public static final byte[] EMPTY_ARRAY = ascii("*0\r\n");
+    public static final byte[] RESP3_NULL = ascii("_\r\n");
+    private static final byte[] CRLF = ascii("\r\n");
+
+    // Integer replies and length headers below these sizes are precomputed
+    private static final int SHARED_INTEGERS = 256;
+    private static final int SHARED_HEADERS = 32;
+    private static final byte[][] integerReplies = sharedLines(':', SHARED_INTEGERS);
+    private static final byte[][] bulkHeaders = sharedLines('$', SHARED_HEADERS);
+    private static final byte[][] arrayHeaders = sharedLines('*', SHARED_HEADERS);
+    private static final byte[][] mapHeaders = sharedLines('%', SHARED_HEADERS);
+
+    // Longest "<prefix><long>\r\n" line
+    private static final int MAX_NUMBER_LINE = 1 + 20 + 2;
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    private final OutputStream target;
+    private byte[] buffer;
+    private int count;
+    // Read by threads replying on behalf of the client (blocked-client wake-ups)
+    private volatile int protocolVersion = RESPProtocol.RESP2;
+
+    /**
+     * Creates a writer that sends its buffered replies to the given stream.
+     *
+     * @param target the stream receiving the encoded bytes
+     */
+    public RespWriter(OutputStream target) {
+        this.target = target;
+    }
+
+    /**
+     * Returns the protocol version replies are encoded with, 2 or 3.
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Switches the encoding of later replies; called when the client sends HELLO.
+     *
+     * @param protocolVersion RESPProtocol.RESP2 or RESPProtocol.RESP3
+     */
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    private boolean resp3() {
+        return protocolVersion == RESPProtocol.RESP3;
+    }
+
+    // ========== Reply encoding ==========
+
+    public void writeOk() throws IOException {
+        writeRaw(OK);
+    }
+
+    public void writePong() throws IOException {
+        writeRaw(PONG);
+    }
+
+    /**
+     * Writes a null reply: "_\r\n" in RESP3, a null bulk string in RESP2.
+     */
+    public void writeNull() throws IOException {
+        writeRaw(resp3() ? RESP3_NULL : NULL_BULK);
+    }
+
+    public void writeEmptyArray() throws IOException {
+        writeRaw(EMPTY_ARRAY);
+    }
+
+    /**
+     * Writes a simple string reply (e.g. "+OK\r\n").
+     *
+     * @param message the message, which must not contain \r or \n
+     */
+    public void writeSimpleString(String message) throws IOException {
+        lock.lock();
+        try {
+            putByte('+');
+            putChars(message);
+            putBytes(CRLF, 0, CRLF.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an error reply (e.g. "-ERR message\r\n").
+     *
+     * @param message the error message including its code
+     */
+    public void writeError(String message) throws IOException {
+        lock.lock();
+        try {
+            putByte('-');
+            putChars(message);
+            putBytes(CRLF, 0, CRLF.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an integer reply (e.g. ":42\r\n").
+     *
+     * @param value the integer value
+     */
+    public void writeInteger(long value) throws IOException {
+        lock.lock();
+        try {
+            if (value >= 0 && value < SHARED_INTEGERS) {
+                byte[] line = integerReplies[(int) value];
+                putBytes(line, 0, line.length);
+            } else {
+                putNumberLine(':', value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an array header (e.g. "*3\r\n"); the elements are written next.
+     *
+     * @param length the number of elements
+     */
+    public void writeArrayHeader(int length) throws IOException {
+        lock.lock();
+        try {
+            putLengthLine(arrayHeaders, '*', length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a map header for the given number of field-value pairs; the pairs
+     * are written next. In RESP2 this is an array header of twice the size.
+     *
+     * @param pairs the number of field-value pairs
+     */
+    public void writeMapHeader(int pairs) throws IOException {
+        lock.lock();
+        try {
+            if (resp3()) {
+                putLengthLine(mapHeaders, '%', pairs);
+            } else {
+                putLengthLine(arrayHeaders, '*', pairs * 2);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a set header; the members are written next. In RESP2 this is an array header.
+     *
+     * @param members the number of members
+     */
+    public void writeSetHeader(int members) throws IOException {
+        lock.lock();
+        try {
+            if (resp3()) {
+                putNumberLine('~', members);
+            } else {
+                putLengthLine(arrayHeaders, '*', members);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a push message header; the elements are written next, starting
+     * with the message kind. In RESP2 this is an array header.
+     *
+     * @param elements the number of elements
+     */
+    public void writePushHeader(int elements) throws IOException {
+        lock.lock();
+        try {
+            if (resp3()) {
+                putNumberLine('>', elements);
+            } else {
+                putLengthLine(arrayHeaders, '*', elements);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a double reply (e.g. ",3.14\r\n"). In RESP2 this is a bulk string.
+     *
+     * @param value the double value
+     */
+    public void writeDouble(double value) throws IOException {
+        String text = RESPProtocol.doubleToString(value);
+        if (!resp3()) {
+            writeBulk(text);
+            return;
+        }
+        lock.lock();
+        try {
+            putByte(',');
+            putChars(text);
+            putBytes(CRLF, 0, CRLF.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a map of bulk strings, in the map's iteration order.
+     *
+     * @param map the field-value pairs
+     */
+    public void writeMap(Map<String, String> map) throws IOException {
+        lock.lock();
+        try {
+            writeMapHeader(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeBulk(entry.getKey());
+                writeBulk(entry.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a set of bulk strings.
+     *
+     * @param members the set members
+     */
+    public void writeSet(List<String> members) throws IOException {
+        lock.lock();
+        try {
+            writeSetHeader(members.size());
+            for (String member : members) {
+                writeBulk(member);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a push message of bulk strings, such as ["invalidate", key]. It may
+     * be written between replies at any time, since the lock keeps it whole.
+     *
+     * @param elements the message kind followed by its data
+     */
+    public void writePush(List<String> elements) throws IOException {
+        lock.lock();
+        try {
+            writePushHeader(elements.size());
+            for (String element : elements) {
+                writeBulk(element);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes attributes describing the reply written next. RESP2 has no
+     * attributes, so nothing is written for RESP2 clients.
+     *
+     * @param attributes the attribute field-value pairs
+     */
+    public void writeAttribute(Map<String, String> attributes) throws IOException {
+        if (!resp3()) {
+            return;
+        }
+        lock.lock();
+        try {
+            putNumberLine('|', attributes.size());
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                writeBulk(entry.getKey());
+                writeBulk(entry.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a bulk string reply from raw bytes. Large payloads go to the
+     * destination without being copied into the buffer, so the array must not
+     * be modified afterwards.
+     *
+     * @param value the payload, or null for a null bulk string
+     */
+    public void writeBulk(byte[] value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        lock.lock();
+        try {
+            putLengthLine(bulkHeaders, '$', value.length);
+            if (value.length >= BUFFER_SIZE) {
+                emitBuffered();
+                emitLarge(value, 0, value.length, true);
+            } else {
+                putBytes(value, 0, value.length);
+            }
+            putBytes(CRLF, 0, CRLF.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a bulk string reply; each char is one byte (see RESPProtocol.CHARSET).
+     *
+     * @param value the content, or null for a null bulk string
+     */
+    public void writeBulk(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        lock.lock();
+        try {
+            putLengthLine(bulkHeaders, '$', value.length());
+            putChars(value);
+            putBytes(CRLF, 0, CRLF.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an array of bulk strings.
+     *
+     * @param values the elements; null or empty writes an empty array
+     */
+    public void writeStringArray(List<String> values) throws IOException {
+        if (values == null || values.isEmpty()) {
+            writeEmptyArray();
+            return;
+        }
+        lock.lock();
+        try {
+            writeArrayHeader(values.size());
+            for (String value : values) {
+                writeBulk(value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the two-element [key, value] array used by blocking pops.
+     */
+    public void writeKeyValueArray(String key, String value) throws IOException {
+        lock.lock();
+        try {
+            writeArrayHeader(2);
+            writeBulk(key);
+            writeBulk(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes stream entries as an array of [id, fields] arrays, where fields is
+     * a map in RESP3 and a flat [field, value, ...] array in RESP2.
+     *
+     * @param entries the entries; null or empty writes an empty array
+     */
+    public void writeStreamEntries(List<StreamEntry> entries) throws IOException {
+        if (entries == null || entries.isEmpty()) {
+            writeEmptyArray();
+            return;
+        }
+        lock.lock();
+        try {
+            writeArrayHeader(entries.size());
+            for (StreamEntry entry : entries) {
+                writeArrayHeader(2);
+                writeBulk(entry.id);
+                writeMapHeader(entry.fields.size());
+                for (Map.Entry<String, String> field : entry.fields.entrySet()) {
+                    writeBulk(field.getKey());
+                    writeBulk(field.getValue());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes an XREAD reply for the streams that have entries: a map of key to
+     * entries in RESP3, an array of [key, entries] arrays in RESP2.
+     *
+     * @param streamResults map of stream keys to their new entries
+     */
+    public void writeXreadResponse(Map<String, List<StreamEntry>> streamResults) throws IOException {
+        int nonEmptyStreams = 0;
+        if (streamResults != null) {
+            for (List<StreamEntry> entries : streamResults.values()) {
+                if (entries != null && !entries.isEmpty()) {
+                    nonEmptyStreams++;
+                }
+            }
+        }
+        if (nonEmptyStreams == 0) {
+            writeEmptyArray();
+            return;
+        }
+        lock.lock();
+        try {
+            boolean asMap = resp3();
+            if (asMap) {
+                writeMapHeader(nonEmptyStreams);
+            } else {
+                writeArrayHeader(nonEmptyStreams);
+            }
+            for (Map.Entry<String, List<StreamEntry>> stream : streamResults.entrySet()) {
+                if (stream.getValue() == null || stream.getValue().isEmpty()) {
+                    continue;
+                }
+                if (!asMap) {
+                    writeArrayHeader(2);
+                }
+                writeBulk(stream.getKey());
+                writeStreamEntries(stream.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes already encoded RESP bytes, such as the precomputed replies.
+     */
+    public void writeRaw(byte[] reply) throws IOException {
+        write(reply, 0, reply.length);
+    }
+
+    /**
+     * Writes an already formatted RESP reply, such as RESPProtocol's error helpers.
+     */
+    public void writeRaw(String reply) throws IOException {
+        lock.lock();
+        try {
+            putChars(reply);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ========== OutputStream ==========
+
+    @Override
+    public void write(int b) throws IOException {
+        lock.lock();
+        try {
+            putByte(b);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            if (len >= BUFFER_SIZE) {
+                emitBuffered();
+                emitLarge(b, off, len, false);
+            } else {
+                putBytes(b, off, len);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the buffered replies to the destination without flushing it and
+     * returns the buffer to the pool.
+     */
+    public void drain() throws IOException {
+        lock.lock();
+        try {
+            emitBuffered();
+            releaseBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the buffered replies and flushes the destination. The buffer goes
+     * back to the pool until the next reply is written.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            emitBuffered();
+            releaseBuffer();
+            target.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of encoded bytes not yet handed to the destination.
+     */
+    public int bufferedBytes() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ========== Destination hooks ==========
+
+    /**
+     * Passes a filled buffer to the destination. Called with the lock held.
+     *
+     * @param buf the buffer
+     * @param length the number of valid bytes
+     * @return true if the destination keeps the buffer (and later releases it
+     *         with {@link #releaseToPool}), false if it may be reused right away
+     */
+    protected boolean emit(byte[] buf, int length) throws IOException {
+        target.write(buf, 0, length);
+        return false;
+    }
+
+    /**
+     * Passes a payload larger than the buffer to the destination. Called with the lock held.
+     *
+     * @param retainable true if the caller promised not to modify the array,
+     *        so the destination may keep a reference instead of copying it
+     */
+    protected void emitLarge(byte[] b, int off, int len, boolean retainable) throws IOException {
+        target.write(b, off, len);
+    }
+
+    /**
+     * Takes a buffer from the shared pool, allocating one if the pool is empty.
+     */
+    protected static byte[] acquireFromPool() {
+        byte[] buf = bufferPool.poll();
+        return buf != null ? buf : new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #emit} to the shared pool.
+     */
+    protected static void releaseToPool(byte[] buf) {
+        if (buf.length == BUFFER_SIZE && bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buf);
+        }
+    }
+
+    // ========== Buffer management (lock held) ==========
+
+    private void emitBuffered() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        boolean kept = emit(buffer, count);
+        count = 0;
+        if (kept) {
+            buffer = null;
+        }
+    }
+
+    private void releaseBuffer() {
+        if (buffer != null && count == 0) {
+            releaseToPool(buffer);
+            buffer = null;
+        }
+    }
+
+    // Makes room for at least n bytes (n <= BUFFER_SIZE)
+    private void ensureCapacity(int n) throws IOException {
+        if (buffer == null) {
+            buffer = acquireFromPool();
+        } else if (BUFFER_SIZE - count < n) {
+            emitBuffered();
+            if (buffer == null) {
+                buffer = acquireFromPool();
+            }
+        }
+    }
+
+    private void putByte(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void putBytes(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureCapacity(1);
+            int n = Math.min(len, BUFFER_SIZE - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void putChars(String s) throws IOException {
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            ensureCapacity(1);
+            int end = Math.min(length, i + BUFFER_SIZE - count);
+            byte[] buf = buffer;
+            int pos = count;
+            for (; i < end; i++) {
+                buf[pos++] = (byte) s.charAt(i);
+            }
+            count = pos;
+        }
+    }
+
+    private void putLengthLine(byte[][] shared, char prefix, int length) throws IOException {
+        if (length >= 0 && length < shared.length) {
+            byte[] line = shared[length];
+            putBytes(line, 0, line.length);
+        } else {
+            putNumberLine(prefix, length);
+        }
+    }
+
+    // Writes "<prefix><value>\r\n" without going through a String
+    private void putNumberLine(char prefix, long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            putByte(prefix);
+            putChars(Long.toString(value));
+            putBytes(CRLF, 0, CRLF.length);
+            return;
+        }
+        ensureCapacity(MAX_NUMBER_LINE);
+        byte[] buf = buffer;
+        buf[count++] = (byte) prefix;
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = count + digits;
+        do {
+            buf[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        count += digits;
+        buf[count++] = '\r';
+        buf[count++] = '\n';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(RESPProtocol.CHARSET);
+    }
+
+    private static byte[][] sharedLines(char prefix, int size) {
+        byte[][] lines = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            lines[i] = ascii(prefix + Integer.toString(i) + "\r\n");
+        }
+        return lines;
+    }
+}
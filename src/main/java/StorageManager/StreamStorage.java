@@ -1,17 +1,55 @@
 package StorageManager;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Storage manager for Redis stream data type.
  * Handles stream operations including XADD and XRANGE.
+ * Operations on a key holding another type throw WrongTypeException.
  */
 public class StreamStorage {
-    // Storage for streams (key -> list of stream entries)
-    private final Map<String, List<StreamEntry>> streams = new ConcurrentHashMap<>();
+    // The keyspace holding the streams, shared with the other storages in the server
+    private final Keyspace keyspace;
+    // Guards the blocked client lists, which are shared between XREAD and XADD threads
+    private final ReentrantLock blockedClientsLock = new ReentrantLock();
+    
+    /**
+     * Entries of a single stream guarded by a ReentrantLock, so a virtual thread
+     * writing an XREAD BLOCK reply while holding it does not pin its carrier.
+     */
+    private static class Stream {
+        final List<StreamEntry> entries = new ArrayList<>();
+        final ReentrantLock lock = new ReentrantLock();
+    }
+    
+    /**
+     * Creates a stream storage with a keyspace of its own.
+     */
+    public StreamStorage() {
+        this(new Keyspace());
+    }
+    
+    /**
+     * Creates a stream storage over a shared keyspace.
+     * 
+     * @param keyspace The keyspace to keep streams in
+     */
+    public StreamStorage(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+    
+    /**
+     * Gets the keyspace the streams are kept in.
+     * 
+     * @return The keyspace
+     */
+    public Keyspace keyspace() {
+        return keyspace;
+    }
     
     /**
      * Adds an entry to a stream.
@@ -23,28 +61,48 @@ public class StreamStorage {
      * @throws IllegalArgumentException if the entry ID is invalid
      */
     public String addEntry(String key, String entryId, Map<String, String> fields) throws IllegalArgumentException {
-        // Get or create the stream
-        List<StreamEntry> stream = streams.computeIfAbsent(key, _ -> new ArrayList<>());
-        
-        synchronized (stream) {
-            // Auto-generate sequence number if needed
-            String actualEntryId = StreamIdHelper.generateEntryId(entryId, key, stream);
+        String actualEntryId;
+        while (true) {
+            // Get or create the stream
+            RedisObject object = keyspace.getOrCreate(key, RedisObject.Type.STREAM, Stream::new);
+            Stream stream = object.value();
             
-            // Validate entry ID format and value
-            String validationError = StreamIdHelper.validateEntryId(actualEntryId, stream);
-            if (validationError != null) {
-                throw new IllegalArgumentException(validationError);
+            stream.lock.lock();
+            try {
+                // A rejected first XADD may have removed the stream before this one locked it;
+                // an entry added to it then would be lost, so use the stream the key holds now
+                if (keyspace.peek(key) != object) {
+                    continue;
+                }
+                
+                // Auto-generate sequence number if needed
+                actualEntryId = StreamIdHelper.generateEntryId(entryId, key, stream.entries);
+                
+                // Validate entry ID format and value
+                String validationError = StreamIdHelper.validateEntryId(actualEntryId, stream.entries);
+                if (validationError != null) {
+                    // A rejected first entry leaves no stream behind
+                    if (stream.entries.isEmpty()) {
+                        keyspace.remove(key, object);
+                    }
+                    throw new IllegalArgumentException(validationError);
+                }
+                
+                // Create and add stream entry
+                StreamEntry entry = new StreamEntry(actualEntryId, fields);
+                stream.entries.add(entry);
+                keyspace.resize(object, MemoryUsage.streamEntry(entry));
+                break;
+            } finally {
+                stream.lock.unlock();
             }
-            
-            // Create and add stream entry
-            StreamEntry entry = new StreamEntry(actualEntryId, fields);
-            stream.add(entry);
-            
-            // Notify blocked clients after adding the entry
-            notifyBlockedClients(key);
-            
-            return actualEntryId;
         }
+        
+        // Notify blocked clients after adding the entry. This runs outside the stream
+        // lock since the replies may read other streams and write to client sockets.
+        notifyBlockedClients(key);
+        
+        return actualEntryId;
     }
     
     /**
@@ -56,22 +114,25 @@ public class StreamStorage {
      * @return List of matching stream entries, or empty list if stream doesn't exist
      */
     public List<StreamEntry> getRange(String key, String startId, String endId) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
-        if (stream == null || stream.isEmpty()) {
+        if (stream == null || stream.entries.isEmpty()) {
             return new ArrayList<>(); // Empty result
         }
         
-        synchronized (stream) {
+        stream.lock.lock();
+        try {
             List<StreamEntry> matchingEntries = new ArrayList<>();
             
-            for (StreamEntry entry : stream) {
+            for (StreamEntry entry : stream.entries) {
                 if (StreamIdHelper.isEntryInRange(entry.id, startId, endId)) {
                     matchingEntries.add(entry);
                 }
             }
             
             return matchingEntries;
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -84,16 +145,17 @@ public class StreamStorage {
      * @return List of matching stream entries, or empty list if stream doesn't exist
      */
     public List<StreamEntry> getEntriesAfter(String key, String afterId) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
-        if (stream == null || stream.isEmpty()) {
+        if (stream == null || stream.entries.isEmpty()) {
             return new ArrayList<>(); // Empty result
         }
         
-        synchronized (stream) {
+        stream.lock.lock();
+        try {
             List<StreamEntry> matchingEntries = new ArrayList<>();
             
-            for (StreamEntry entry : stream) {
+            for (StreamEntry entry : stream.entries) {
                 // Only include entries with ID greater than afterId (exclusive)
                 if (StreamIdHelper.compareStreamIds(entry.id, afterId) > 0) {
                     matchingEntries.add(entry);
@@ -101,6 +163,8 @@ public class StreamStorage {
             }
             
             return matchingEntries;
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -111,8 +175,12 @@ public class StreamStorage {
      * @return true if the stream exists and has entries
      */
     public boolean exists(String key) {
-        List<StreamEntry> stream = streams.get(key);
-        return stream != null && !stream.isEmpty();
+        RedisObject object = keyspace.peek(key);
+        if (object == null || object.type != RedisObject.Type.STREAM) {
+            return false;
+        }
+        Stream stream = object.value();
+        return !stream.entries.isEmpty();
     }
     
     /**
@@ -122,14 +190,17 @@ public class StreamStorage {
      * @return The number of entries, or 0 if stream doesn't exist
      */
     public int length(String key) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
         if (stream == null) {
             return 0;
         }
         
-        synchronized (stream) {
-            return stream.size();
+        stream.lock.lock();
+        try {
+            return stream.entries.size();
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -140,17 +211,20 @@ public class StreamStorage {
      * @return The last entry ID, or null if stream doesn't exist or is empty
      */
     public String getLastEntryId(String key) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
-        if (stream == null || stream.isEmpty()) {
+        if (stream == null || stream.entries.isEmpty()) {
             return null;
         }
         
-        synchronized (stream) {
-            if (stream.isEmpty()) {
+        stream.lock.lock();
+        try {
+            if (stream.entries.isEmpty()) {
                 return null;
             }
-            return stream.get(stream.size() - 1).id;
+            return stream.entries.get(stream.entries.size() - 1).id;
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -161,17 +235,20 @@ public class StreamStorage {
      * @return The first entry ID, or null if stream doesn't exist or is empty
      */
     public String getFirstEntryId(String key) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
-        if (stream == null || stream.isEmpty()) {
+        if (stream == null || stream.entries.isEmpty()) {
             return null;
         }
         
-        synchronized (stream) {
-            if (stream.isEmpty()) {
+        stream.lock.lock();
+        try {
+            if (stream.entries.isEmpty()) {
                 return null;
             }
-            return stream.get(0).id;
+            return stream.entries.get(0).id;
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -182,14 +259,17 @@ public class StreamStorage {
      * @return All entries in the stream, or empty list if stream doesn't exist
      */
     public List<StreamEntry> getAllEntries(String key) {
-        List<StreamEntry> stream = streams.get(key);
+        Stream stream = stream(key);
         
         if (stream == null) {
             return new ArrayList<>();
         }
         
-        synchronized (stream) {
-            return new ArrayList<>(stream); // Return a copy to avoid concurrent modification
+        stream.lock.lock();
+        try {
+            return new ArrayList<>(stream.entries); // Return a copy to avoid concurrent modification
+        } finally {
+            stream.lock.unlock();
         }
     }
     
@@ -200,7 +280,8 @@ public class StreamStorage {
      * @return true if the stream existed and was removed
      */
     public boolean removeStream(String key) {
-        return streams.remove(key) != null;
+        RedisObject object = keyspace.peek(key);
+        return object != null && object.type == RedisObject.Type.STREAM && keyspace.remove(key, object);
     }
     
     /**
@@ -209,7 +290,7 @@ public class StreamStorage {
      * @return The total number of streams
      */
     public int getStreamCount() {
-        return streams.size();
+        return keyspace.size(RedisObject.Type.STREAM);
     }
     
     /**
@@ -218,19 +299,26 @@ public class StreamStorage {
      * @return A list of all stream keys
      */
     public List<String> getAllStreamKeys() {
-        return new ArrayList<>(streams.keySet());
+        return keyspace.keys(RedisObject.Type.STREAM);
     }
     
     /**
      * Clears all streams (for testing or reset).
      */
     public void clear() {
-        streams.clear();
-        blockedClients.clear();
+        for (String key : getAllStreamKeys()) {
+            removeStream(key);
+        }
+        blockedClientsLock.lock();
+        try {
+            blockedClients.clear();
+        } finally {
+            blockedClientsLock.unlock();
+        }
     }
     
     // Blocking operations support
-    private final Map<String, List<BlockedClient>> blockedClients = new ConcurrentHashMap<>();
+    private final Map<String, List<BlockedClient>> blockedClients = new HashMap<>();
     
     /**
      * Blocks a client waiting for new entries on any of the specified streams.
@@ -243,24 +331,29 @@ public class StreamStorage {
             throw new IllegalArgumentException("Client is not configured for stream operations");
         }
         
-        // First check if any of the streams already have new entries
-        for (int i = 0; i < client.streamKeys.size(); i++) {
-            String streamKey = client.streamKeys.get(i);
-            String lastId = client.lastIds.get(streamKey);
+        blockedClientsLock.lock();
+        try {
+            // First check if any of the streams already have new entries
+            for (int i = 0; i < client.streamKeys.size(); i++) {
+                String streamKey = client.streamKeys.get(i);
+                String lastId = client.lastIds.get(streamKey);
+                
+                List<StreamEntry> newEntries = getEntriesAfter(streamKey, lastId);
+                if (!newEntries.isEmpty()) {
+                    // There are already new entries, don't block
+                    return false;
+                }
+            }
             
-            List<StreamEntry> newEntries = getEntriesAfter(streamKey, lastId);
-            if (!newEntries.isEmpty()) {
-                // There are already new entries, don't block
-                return false;
+            // No new entries found, block the client on all streams
+            for (String streamKey : client.streamKeys) {
+                blockedClients.computeIfAbsent(streamKey, _ -> new ArrayList<>()).add(client);
             }
+            
+            return true;
+        } finally {
+            blockedClientsLock.unlock();
         }
-        
-        // No new entries found, block the client on all streams
-        for (String streamKey : client.streamKeys) {
-            blockedClients.computeIfAbsent(streamKey, _ -> new ArrayList<>()).add(client);
-        }
-        
-        return true;
     }
     
     /**
@@ -273,16 +366,21 @@ public class StreamStorage {
         boolean wasBlocked = false;
         
         if (client.isStreamOperation && client.streamKeys != null) {
-            for (String streamKey : client.streamKeys) {
-                List<BlockedClient> clients = blockedClients.get(streamKey);
-                if (clients != null) {
-                    if (clients.remove(client)) {
-                        wasBlocked = true;
-                    }
-                    if (clients.isEmpty()) {
-                        blockedClients.remove(streamKey);
+            blockedClientsLock.lock();
+            try {
+                for (String streamKey : client.streamKeys) {
+                    List<BlockedClient> clients = blockedClients.get(streamKey);
+                    if (clients != null) {
+                        if (clients.remove(client)) {
+                            wasBlocked = true;
+                        }
+                        if (clients.isEmpty()) {
+                            blockedClients.remove(streamKey);
+                        }
                     }
                 }
+            } finally {
+                blockedClientsLock.unlock();
             }
         }
         
@@ -296,14 +394,20 @@ public class StreamStorage {
      * @param streamKey The stream that received new entries
      */
     public void notifyBlockedClients(String streamKey) {
-        List<BlockedClient> clients = blockedClients.get(streamKey);
-        if (clients == null || clients.isEmpty()) {
-            return;
+        List<BlockedClient> clientsCopy;
+        blockedClientsLock.lock();
+        try {
+            List<BlockedClient> clients = blockedClients.get(streamKey);
+            if (clients == null || clients.isEmpty()) {
+                return;
+            }
+            
+            // Create a copy to avoid concurrent modification
+            clientsCopy = new ArrayList<>(clients);
+        } finally {
+            blockedClientsLock.unlock();
         }
         
-        // Create a copy to avoid concurrent modification
-        List<BlockedClient> clientsCopy = new ArrayList<>(clients);
-        
         for (BlockedClient client : clientsCopy) {
             // Check if this client has new entries available
             Map<String, List<StreamEntry>> results = new java.util.LinkedHashMap<>();
@@ -312,30 +416,66 @@ public class StreamStorage {
             for (int i = 0; i < client.streamKeys.size(); i++) {
                 String key = client.streamKeys.get(i);
                 String lastId = client.lastIds.get(key);
-                List<StreamEntry> newEntries = getEntriesAfter(key, lastId);
+                List<StreamEntry> newEntries;
+                try {
+                    newEntries = getEntriesAfter(key, lastId);
+                } catch (WrongTypeException e) {
+                    // The key was overwritten with another type while the client waited
+                    newEntries = new ArrayList<>();
+                }
                 results.put(key, newEntries);
                 if (!newEntries.isEmpty()) {
                     hasNewEntries = true;
                 }
             }
             
-            if (hasNewEntries) {
-                // Unblock this client from all streams
-                unblockClient(client);
-                
+            // Unblock this client from all streams; only the thread that removed it replies
+            if (hasNewEntries && unblockClient(client)) {
                 // Send the response
                 try {
-                    String response = RESPProtocol.formatXreadMultiResponse(results);
-                    client.outputStream.write(response.getBytes());
-                    client.outputStream.flush();
-                    System.out.println("Client " + client.clientId + " - XREAD BLOCK unblocked with new entries");
+                    client.writer.writeXreadResponse(results);
+                    client.writer.flush();
+                    Log.debug(() -> "Client " + client.clientId + " - XREAD BLOCK unblocked with new entries");
                 } catch (Exception e) {
-                    System.out.println("Client " + client.clientId + " - IOException during XREAD BLOCK response: " + e.getMessage());
+                    Log.verbose(() -> "Client " + client.clientId + " - IOException during XREAD BLOCK response: " + e.getMessage());
                 }
             }
         }
     }
     
+    /**
+     * Gets the stream at a key.
+     * 
+     * @param key The stream key
+     * @return The stream, or null if the key doesn't exist
+     * @throws WrongTypeException if the key holds another type
+     */
+    private Stream stream(String key) {
+        RedisObject object = keyspace.lookup(key, RedisObject.Type.STREAM);
+        return object != null ? object.value() : null;
+    }
+    
+    /**
+     * Returns true while a client is still waiting on its streams.
+     * 
+     * @param client The client that blocked
+     * @return true if the client is in a stream's blocked list
+     */
+    public boolean isBlocked(BlockedClient client) {
+        blockedClientsLock.lock();
+        try {
+            for (String streamKey : client.streamKeys) {
+                List<BlockedClient> clients = blockedClients.get(streamKey);
+                if (clients != null && clients.contains(client)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            blockedClientsLock.unlock();
+        }
+    }
+    
     /**
      * Gets the number of blocked clients waiting on a specific stream.
      * 
@@ -343,7 +483,12 @@ public class StreamStorage {
      * @return The number of blocked clients
      */
     public int getBlockedClientCount(String streamKey) {
-        List<BlockedClient> clients = blockedClients.get(streamKey);
-        return clients != null ? clients.size() : 0;
+        blockedClientsLock.lock();
+        try {
+            List<BlockedClient> clients = blockedClients.get(streamKey);
+            return clients != null ? clients.size() : 0;
+        } finally {
+            blockedClientsLock.unlock();
+        }
     }
 }
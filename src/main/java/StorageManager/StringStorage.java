@@ -1,35 +1,136 @@
 package StorageManager;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Storage manager for Redis string data type with expiry support.
  * Handles key-value operations including SET, GET, and expiry management.
+ *
+ * Values are kept as their raw bytes (the ISO-8859-1 encoding of the String
+ * API), which saves the String wrapper per value and lets GET write the
+ * stored bytes straight into the reply. Values that are integers in canonical
+ * form are kept as a Long instead, shared for small values, and the INCR
+ * family updates them with a compare-and-swap on the key's object.
+ *
+ * With an OffHeapStore in use, values of at least OffHeapStore.MIN_VALUE_SIZE
+ * bytes are copied into native memory instead, and GET copies them back out.
  */
 public class StringStorage {
-    // Storage for key-value pairs
-    private final Map<String, String> storage = new ConcurrentHashMap<>();
-    // Storage for expiry times (key -> expiry timestamp in milliseconds)
-    private final Map<String, Long> expiryTimes = new ConcurrentHashMap<>();
+    // Integers 0 to 9999 share one Long each, like Redis' shared integers
+    private static final int SHARED_INTEGERS = 10000;
+    private static final Long[] sharedIntegers = new Long[SHARED_INTEGERS];
+    
+    static {
+        for (int i = 0; i < SHARED_INTEGERS; i++) {
+            sharedIntegers[i] = (long) i;
+        }
+    }
+    
+    // The keyspace holding the strings, shared with the other storages in the server
+    private final Keyspace keyspace;
+    // Where large values go, or null to keep every value on the heap
+    private volatile OffHeapStore offHeapStore;
+    
+    /**
+     * Creates a string storage with a keyspace of its own.
+     */
+    public StringStorage() {
+        this(new Keyspace());
+    }
+    
+    /**
+     * Creates a string storage over a shared keyspace.
+     * 
+     * @param keyspace The keyspace to keep strings in
+     */
+    public StringStorage(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+    
+    /**
+     * Gets the keyspace the strings are kept in.
+     * 
+     * @return The keyspace
+     */
+    public Keyspace keyspace() {
+        return keyspace;
+    }
+    
+    /**
+     * Keeps the large values stored from now on in native memory.
+     * 
+     * @param store The store to keep them in
+     */
+    public void useOffHeapStore(OffHeapStore store) {
+        this.offHeapStore = store;
+    }
+    
+    /**
+     * Gets the store large values are kept in.
+     * 
+     * @return The store, or null if values are kept on the heap
+     */
+    public OffHeapStore offHeapStore() {
+        return offHeapStore;
+    }
     
     /**
      * Sets a key-value pair with optional expiry time.
+     * Like SET, this replaces whatever the key held, whatever its type.
      * 
      * @param key The key to set
      * @param value The value to set
      * @param expiryTimeMs Optional expiry time in milliseconds (null for no expiry)
      */
     public void set(String key, String value, Long expiryTimeMs) {
-        storage.put(key, value);
-        
-        if (expiryTimeMs != null) {
-            expiryTimes.put(key, expiryTimeMs);
-        } else {
-            // Remove any existing expiry for this key
-            expiryTimes.remove(key);
+        set(key, value.getBytes(RESPProtocol.CHARSET), expiryTimeMs);
+    }
+    
+    /**
+     * Sets a key to a raw byte value with optional expiry time.
+     * The array is stored as is and must not be modified afterwards.
+     * 
+     * @param key The key to set
+     * @param value The value's bytes
+     * @param expiryTimeMs Optional expiry time in milliseconds (null for no expiry)
+     */
+    public void set(String key, byte[] value, Long expiryTimeMs) {
+        long expiryTime = expiryTimeMs != null ? expiryTimeMs : RedisObject.NO_EXPIRY;
+        keyspace.put(key, new RedisObject(RedisObject.Type.STRING, encode(value), expiryTime));
+    }
+    
+    /**
+     * Sets a key to a raw byte value, keeping the TTL the key has, as SET
+     * KEEPTTL does. The array is stored as is and must not be modified afterwards.
+     * 
+     * @param key The key to set
+     * @param value The value's bytes
+     */
+    public void setKeepTtl(String key, byte[] value) {
+        Object stored = encode(value);
+        while (true) {
+            RedisObject current = keyspace.peek(key);
+            if (current == null) {
+                if (keyspace.add(key, new RedisObject(RedisObject.Type.STRING, stored))) {
+                    return;
+                }
+            } else if (keyspace.replace(key, current, new RedisObject(RedisObject.Type.STRING, stored, current.getExpiryTime()))) {
+                return;
+            }
+            // Written by another client meanwhile; read its TTL again
+        }
+    }
+    
+    // Picks a value's encoding: a Long for an integer, off-heap for a big value, else the array
+    private Object encode(byte[] value) {
+        Long integer = parseInteger(value);
+        OffHeapStore store = offHeapStore;
+        if (integer != null) {
+            return integer(integer);
         }
+        if (store != null && value.length >= OffHeapStore.MIN_VALUE_SIZE) {
+            return store.store(value);
+        }
+        return value;
     }
     
     /**
@@ -37,81 +138,148 @@ public class StringStorage {
      * 
      * @param key The key to get
      * @return The value, or null if key doesn't exist or has expired
+     * @throws WrongTypeException if the key holds another type
      */
     public String get(String key) {
-        if (isKeyExpired(key)) {
-            return null; // Key has expired
+        byte[] value = getBytes(key);
+        return value != null ? new String(value, RESPProtocol.CHARSET) : null;
+    }
+    
+    /**
+     * Gets the raw bytes of a value, checking for expiry.
+     * The returned array may be the stored one and must not be modified.
+     * 
+     * @param key The key to get
+     * @return The value's bytes, or null if key doesn't exist or has expired
+     * @throws WrongTypeException if the key holds another type
+     */
+    public byte[] getBytes(String key) {
+        while (true) {
+            RedisObject object = keyspace.lookup(key, RedisObject.Type.STRING);
+            if (object == null) {
+                return null;
+            }
+            byte[] bytes = toBytes(object.value());
+            if (bytes != null) {
+                return bytes;
+            }
+            // An off-heap value freed by a concurrent write; read the new one
+        }
+    }
+    
+    /**
+     * Atomically adds to the integer value of a key, as INCR, DECR, INCRBY and
+     * DECRBY do. A missing key counts as 0; the key keeps its expiry.
+     * 
+     * @param key The key
+     * @param delta The amount to add
+     * @return The new value
+     * @throws NumberFormatException if the value is not an integer
+     * @throws ArithmeticException if the result overflows a long
+     * @throws WrongTypeException if the key holds another type
+     */
+    public long incrementBy(String key, long delta) {
+        while (true) {
+            RedisObject object = keyspace.lookup(key, RedisObject.Type.STRING);
+            if (object == null) {
+                if (keyspace.add(key, new RedisObject(RedisObject.Type.STRING, integer(delta)))) {
+                    return delta;
+                }
+                continue; // Another client created the key first, or it had just expired
+            }
+            Object current = object.value();
+            long result = Math.addExact(toLong(current), delta);
+            if (keyspace.replaceValue(key, object, current, integer(result))) {
+                return result;
+            }
+        }
+    }
+    
+    /**
+     * Atomically adds a floating point increment to the value of a key, as
+     * INCRBYFLOAT does. A missing key counts as 0; the key keeps its expiry.
+     * 
+     * @param key The key
+     * @param delta The amount to add
+     * @return The new value, formatted the way it is stored
+     * @throws NumberFormatException if the value is not a number
+     * @throws ArithmeticException if the result is NaN or infinite
+     * @throws WrongTypeException if the key holds another type
+     */
+    public String incrementByFloat(String key, double delta) {
+        while (true) {
+            RedisObject object = keyspace.lookup(key, RedisObject.Type.STRING);
+            Object current = object != null ? object.value() : null;
+            double value;
+            if (current == null) {
+                value = 0;
+            } else if (current instanceof Long integer) {
+                value = integer;
+            } else {
+                byte[] currentBytes = toBytes(current);
+                if (currentBytes == null) {
+                    continue; // An off-heap value freed by a concurrent write
+                }
+                value = parseDouble(currentBytes);
+            }
+            double result = value + delta;
+            if (Double.isNaN(result) || Double.isInfinite(result)) {
+                throw new ArithmeticException("increment would produce NaN or Infinity");
+            }
+            String formatted = formatDouble(result);
+            byte[] bytes = formatted.getBytes(RESPProtocol.CHARSET);
+            Long integer = parseInteger(bytes);
+            Object newValue = integer != null ? integer(integer) : bytes;
+            boolean stored = object == null
+                ? keyspace.add(key, new RedisObject(RedisObject.Type.STRING, newValue))
+                : keyspace.replaceValue(key, object, current, newValue);
+            if (stored) {
+                if (current instanceof OffHeapValue offHeap) {
+                    offHeap.releaseOwner();
+                }
+                return formatted;
+            }
         }
-        return storage.get(key);
     }
 
     /**
-     * Gets all the keys and remove all expired keys. 
+     * Gets all the string keys and remove all expired keys. 
      * 
      * @return An array of all the keys
      */
     public List<String> getAllKeys() {
-        cleanupExpiredKeys();
-        return new ArrayList<>(storage.keySet());
+        return keyspace.keys(RedisObject.Type.STRING);
     }
     
     /**
-     * Checks if a key exists (and is not expired).
+     * Checks if a string key exists (and is not expired).
      * 
      * @param key The key to check
-     * @return true if key exists and is not expired
+     * @return true if key exists, holds a string and is not expired
      */
     public boolean exists(String key) {
-        if (isKeyExpired(key)) {
-            return false;
-        }
-        return storage.containsKey(key);
+        return keyspace.type(key) == RedisObject.Type.STRING;
     }
     
     /**
-     * Removes a key and its expiry.
+     * Removes a string key and its expiry.
      * 
      * @param key The key to remove
-     * @return true if the key was removed, false if it didn't exist
+     * @return true if the key was removed, false if it didn't exist or holds another type
      */
     public boolean remove(String key) {
-        boolean existed = storage.remove(key) != null;
-        expiryTimes.remove(key);
-        return existed;
+        RedisObject object = string(key);
+        return object != null && keyspace.remove(key, object);
     }
     
     /**
-     * Gets the number of keys (excluding expired ones).
+     * Gets the number of string keys, in constant time. Like DBSIZE, this
+     * counts an expired key until a lookup or the expire cycle removes it.
      * 
-     * @return The number of valid keys
+     * @return The number of keys
      */
     public int size() {
-        // Clean up expired keys and return count
-        cleanupExpiredKeys();
-        return storage.size();
-    }
-    
-    /**
-     * Checks if a key has expired and removes it if so.
-     * 
-     * @param key The key to check
-     * @return true if the key has expired (and was removed)
-     */
-    private boolean isKeyExpired(String key) {
-        Long expiryTime = expiryTimes.get(key);
-        if (expiryTime == null) {
-            return false; // No expiry set
-        }
-        
-        long currentTime = System.currentTimeMillis();
-        if (currentTime >= expiryTime) {
-            // Key has expired, remove it from both maps
-            storage.remove(key);
-            expiryTimes.remove(key);
-            return true;
-        }
-        
-        return false;
+        return keyspace.size(RedisObject.Type.STRING);
     }
     
     /**
@@ -119,17 +287,7 @@ public class StringStorage {
      * This can be called periodically to free memory.
      */
     public void cleanupExpiredKeys() {
-        long currentTime = System.currentTimeMillis();
-        
-        // Find expired keys
-        expiryTimes.entrySet().removeIf(entry -> {
-            if (currentTime >= entry.getValue()) {
-                // Remove from storage as well
-                storage.remove(entry.getKey());
-                return true;
-            }
-            return false;
-        });
+        keyspace.cleanupExpiredKeys();
     }
     
     /**
@@ -139,7 +297,8 @@ public class StringStorage {
      * @return The expiry time in milliseconds, or null if no expiry is set
      */
     public Long getExpiryTime(String key) {
-        return expiryTimes.get(key);
+        RedisObject object = string(key);
+        return object != null && object.hasExpiry() ? object.getExpiryTime() : null;
     }
     
     /**
@@ -150,11 +309,8 @@ public class StringStorage {
      * @return true if the key exists and expiry was set
      */
     public boolean setExpiry(String key, long expiryTimeMs) {
-        if (storage.containsKey(key) && !isKeyExpired(key)) {
-            expiryTimes.put(key, expiryTimeMs);
-            return true;
-        }
-        return false;
+        RedisObject object = string(key);
+        return object != null && keyspace.setExpiry(key, expiryTimeMs);
     }
     
     /**
@@ -164,10 +320,100 @@ public class StringStorage {
      * @return true if the key exists and expiry was removed
      */
     public boolean removeExpiry(String key) {
-        if (storage.containsKey(key) && !isKeyExpired(key)) {
-            expiryTimes.remove(key);
+        RedisObject object = string(key);
+        if (object != null) {
+            keyspace.removeExpiry(key);
             return true;
         }
         return false;
     }
+    
+    /**
+     * Gets the object holding an integer, the shared one for small values.
+     */
+    private static Long integer(long value) {
+        return value >= 0 && value < SHARED_INTEGERS ? sharedIntegers[(int) value] : Long.valueOf(value);
+    }
+    
+    /**
+     * Parses a value that is an integer in canonical form, the form Redis
+     * stores as an integer: no sign but '-', no leading zeros, in range.
+     * 
+     * @return The integer, or null if the bytes are not one
+     */
+    private static Long parseInteger(byte[] bytes) {
+        int length = bytes.length;
+        if (length == 0 || length > 20) {
+            return null;
+        }
+        boolean negative = bytes[0] == '-';
+        int start = negative ? 1 : 0;
+        if (start == length || (bytes[start] == '0' && (length - start > 1 || negative))) {
+            return null;
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            // Accumulate negatively so Long.MIN_VALUE parses too
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                return null;
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                return null;
+            }
+            value = -value;
+        }
+        return value;
+    }
+    
+    private static long toLong(Object value) {
+        if (value instanceof Long integer) {
+            return integer;
+        }
+        throw new NumberFormatException("value is not an integer or out of range");
+    }
+    
+    private static double parseDouble(byte[] bytes) {
+        String string = new String(bytes, RESPProtocol.CHARSET);
+        // Double.parseDouble trims whitespace and accepts "NaN", "Infinity" and a trailing 'd' or 'f'
+        if (string.isEmpty() || !string.equals(string.strip()) || !string.matches("[-+0-9.eE]+")) {
+            throw new NumberFormatException("value is not a valid float");
+        }
+        return Double.parseDouble(string);
+    }
+    
+    /**
+     * Formats a double without exponent or trailing zeros, e.g. 10.5, 3 or 0.0001.
+     */
+    private static String formatDouble(double value) {
+        return new java.math.BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+    
+    // Null for an off-heap value that was freed meanwhile
+    private static byte[] toBytes(Object value) {
+        if (value instanceof Long integer) {
+            return Long.toString(integer).getBytes(RESPProtocol.CHARSET);
+        }
+        if (value instanceof OffHeapValue offHeap) {
+            return offHeap.read();
+        }
+        return (byte[]) value;
+    }
+    
+    /**
+     * Gets the live string object at a key without recording an access.
+     * 
+     * @param key The key
+     * @return The object, or null if the key doesn't exist or holds another type
+     */
+    private RedisObject string(String key) {
+        RedisObject object = keyspace.peek(key);
+        return object != null && object.type == RedisObject.Type.STRING ? object : null;
+    }
 }
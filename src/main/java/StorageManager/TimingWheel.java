@@ -0,0 +1,261 @@
+package StorageManager;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel (Varghese and Lauck) of key expiry times, so a
+ * key with a TTL is found when its time comes instead of by scanning or
+ * sampling the keys with a TTL.
+ *
+ * There are LEVELS wheels of SLOTS slots each. A slot of level 0 holds the
+ * timers due in one tick; a slot of level n covers SLOTS^n ticks. A timer goes
+ * into the level whose span fits its distance from now, and when the clock
+ * reaches a higher-level slot its timers cascade down into the finer levels.
+ * Scheduling and firing a timer are O(1); each timer cascades at most once
+ * per level. Times beyond the top level's span park in its furthest slot and
+ * are placed again when reached.
+ *
+ * A slot keeps its timers as parallel arrays of keys and expiry times, so a
+ * cascade reads them sequentially rather than chasing a node per timer.
+ * Writers push timers onto a lock-free pending stack; the one thread that
+ * advances the wheel moves them into their slots.
+ *
+ * A key has at most one live timer, recorded with its time in a map. A TTL
+ * moved later keeps the earlier timer, and the handler schedules the key
+ * again when it fires; a TTL moved earlier replaces the timer, and the one
+ * it replaced is dropped when reached. So rewriting a TTL over and over
+ * does not pile up timers. A timer holds only the key, so a timer left over
+ * for a deleted key never keeps a value alive.
+ */
+final class TimingWheel {
+    static final long TICK_MS = 1;
+    private static final int LEVEL_BITS = 6;
+    private static final int SLOTS = 1 << LEVEL_BITS;
+    private static final int LEVELS = 5;
+    // 64^5 ticks of a millisecond is about 12 days
+    private static final long SPAN_TICKS = 1L << (LEVEL_BITS * LEVELS);
+    // How many ticks or timers to handle between checks of the time budget
+    private static final int BUDGET_CHECK_INTERVAL = 64;
+
+    /**
+     * Handles a timer that came due.
+     */
+    interface DueHandler {
+        /**
+         * @param key The timer's key
+         * @param expiryTimeMs The expiry time the timer was scheduled for
+         * @return true if the key expired
+         */
+        boolean onDue(String key, long expiryTimeMs);
+    }
+
+    // A scheduled timer until the wheel's thread moves it into a slot
+    private static final class PendingTimer {
+        final String key;
+        final long expiryTimeMs;
+        PendingTimer next;
+
+        PendingTimer(String key, long expiryTimeMs) {
+            this.key = key;
+            this.expiryTimeMs = expiryTimeMs;
+        }
+    }
+
+    private static final class Slot {
+        String[] keys = new String[0];
+        long[] expiryTimes = new long[0];
+        int size;
+
+        void add(String key, long expiryTimeMs) {
+            if (size == keys.length) {
+                int capacity = Math.max(8, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                expiryTimes = Arrays.copyOf(expiryTimes, capacity);
+            }
+            keys[size] = key;
+            expiryTimes[size] = expiryTimeMs;
+            size++;
+        }
+    }
+
+    private final Slot[][] slots = new Slot[LEVELS][SLOTS];
+    private final AtomicReference<PendingTimer> pending = new AtomicReference<>();
+    // The time of each key's live timer; any other timer for the key is dropped when reached
+    private final ConcurrentHashMap<String, Long> live = new ConcurrentHashMap<>();
+    // Timers pending or in slots, live or not
+    private final AtomicInteger size = new AtomicInteger();
+    // Guards the slots and currentTick; held by the thread advancing the wheel
+    private final ReentrantLock lock = new ReentrantLock();
+    private long currentTick;
+    // Timers in each level's slots, so the clock can skip over empty stretches
+    private final int[] levelSizes = new int[LEVELS];
+
+    TimingWheel(long nowMs) {
+        this.currentTick = nowMs / TICK_MS;
+        for (Slot[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Schedules a key to be checked at its expiry time, unless its live timer
+     * fires no later. Safe from any thread.
+     *
+     * @param key The key
+     * @param expiryTimeMs The absolute expiry time in milliseconds
+     */
+    void schedule(String key, long expiryTimeMs) {
+        boolean[] added = new boolean[1];
+        live.compute(key, (k, liveTimeMs) -> {
+            if (liveTimeMs != null && liveTimeMs <= expiryTimeMs) {
+                return liveTimeMs;
+            }
+            added[0] = true;
+            return expiryTimeMs;
+        });
+        if (!added[0]) {
+            return;
+        }
+        size.incrementAndGet();
+        PendingTimer timer = new PendingTimer(key, expiryTimeMs);
+        PendingTimer head;
+        do {
+            head = pending.get();
+            timer.next = head;
+        } while (!pending.compareAndSet(head, timer));
+    }
+
+    /**
+     * Gets the number of timers not yet fired, including replaced ones.
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Advances the wheel to the given time, passing every live timer that
+     * comes due to the handler. The key has no timer during the call, so the
+     * handler schedules it again if it is still to expire.
+     *
+     * @param nowMs The current time in milliseconds
+     * @param budgetNanos The time after which to stop, leaving the rest for the next call
+     * @param handler Handles the due timers
+     * @return {timers fired, keys expired, 1 if the budget ran out before reaching nowMs else 0}
+     */
+    int[] advance(long nowMs, long budgetNanos, DueHandler handler) {
+        long start = System.nanoTime();
+        int fired = 0;
+        int expired = 0;
+        lock.lock();
+        try {
+            // Timers already due fire now, since their slot may have passed
+            PendingTimer timer = pending.getAndSet(null);
+            while (timer != null) {
+                if (timer.expiryTimeMs / TICK_MS <= currentTick) {
+                    fired++;
+                    if (fire(timer.key, timer.expiryTimeMs, handler)) {
+                        expired++;
+                    }
+                } else {
+                    insert(timer.key, timer.expiryTimeMs);
+                }
+                timer = timer.next;
+            }
+
+            long targetTick = nowMs / TICK_MS;
+            int work = 0;
+            while (currentTick < targetTick) {
+                // With the finer levels empty nothing happens before the next
+                // slot of the lowest occupied level, so jump to just before it
+                int lowest = 0;
+                while (lowest < LEVELS && levelSizes[lowest] == 0) {
+                    lowest++;
+                }
+                if (lowest == LEVELS) {
+                    currentTick = targetTick;
+                    break;
+                }
+                if (lowest > 0) {
+                    int shift = LEVEL_BITS * lowest;
+                    long beforeNextSlot = (((currentTick >>> shift) + 1) << shift) - 1;
+                    currentTick = Math.min(beforeNextSlot, targetTick);
+                    if (currentTick == targetTick) {
+                        break;
+                    }
+                }
+                if (++work >= BUDGET_CHECK_INTERVAL) {
+                    if (System.nanoTime() - start > budgetNanos) {
+                        return new int[] {fired, expired, 1};
+                    }
+                    work = 0;
+                }
+                currentTick++;
+                // Cascade every level whose slot the clock has just entered
+                for (int level = 1; level < LEVELS; level++) {
+                    int shift = LEVEL_BITS * level;
+                    if ((currentTick & ((1L << shift) - 1)) != 0) {
+                        break;
+                    }
+                    Slot slot = slots[level][(int) ((currentTick >>> shift) & (SLOTS - 1))];
+                    // Detached first, since a timer a full rotation away lands back in this slot
+                    String[] keys = slot.keys;
+                    long[] expiryTimes = slot.expiryTimes;
+                    int size = slot.size;
+                    slot.keys = new String[0];
+                    slot.expiryTimes = new long[0];
+                    slot.size = 0;
+                    levelSizes[level] -= size;
+                    for (int i = 0; i < size; i++) {
+                        insert(keys[i], expiryTimes[i]);
+                    }
+                }
+                // Fired timers never return to a slot, so this one is handled in place
+                Slot due = slots[0][(int) (currentTick & (SLOTS - 1))];
+                for (int i = 0; i < due.size; i++) {
+                    fired++;
+                    if (fire(due.keys[i], due.expiryTimes[i], handler)) {
+                        expired++;
+                    }
+                    due.keys[i] = null;
+                }
+                levelSizes[0] -= due.size;
+                work += due.size;
+                due.size = 0;
+            }
+            return new int[] {fired, expired, 0};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Passes a timer that came due to the handler if it is still the key's live one
+    private boolean fire(String key, long expiryTimeMs, DueHandler handler) {
+        size.decrementAndGet();
+        return live.remove(key, expiryTimeMs) && handler.onDue(key, expiryTimeMs);
+    }
+
+    // Puts a timer in the slot of the level that covers its distance from now
+    private void insert(String key, long expiryTimeMs) {
+        long tick = expiryTimeMs / TICK_MS;
+        long delta = tick - currentTick;
+        int level;
+        if (delta <= 0) {
+            // Cascaded into the current tick, whose level-0 slot is handled next
+            tick = currentTick;
+            level = 0;
+        } else {
+            if (delta >= SPAN_TICKS) {
+                tick = currentTick + SPAN_TICKS - 1;
+            }
+            level = (63 - Long.numberOfLeadingZeros(tick - currentTick)) / LEVEL_BITS;
+        }
+        slots[level][(int) ((tick >>> (LEVEL_BITS * level)) & (SLOTS - 1))].add(key, expiryTimeMs);
+        levelSizes[level]++;
+    }
+}
@@ -0,0 +1,14 @@
+package StorageManager;
+
+/**
+ * Thrown when a command operates on a key that holds a value of another type,
+ * e.g. LPUSH on a string. HandleClient turns it into a WRONGTYPE error reply.
+ */
+public class WrongTypeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public static final String MESSAGE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    public WrongTypeException() {
+        super(MESSAGE, null, false, false);
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the TCP listeners opened by Main.
+ * Tests that SO_REUSEPORT listeners share a port and all receive connections.
+ */
+@DisplayName("Acceptor Tests")
+class AcceptorTest {
+
+    private final List<ServerSocket> listeners = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Assumptions.assumeTrue(Main.reusePortSupported(), "SO_REUSEPORT is not supported here");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (ServerSocket listener : listeners) {
+            listener.close();
+        }
+    }
+
+    private ServerSocket open(int port, boolean reusePort) throws IOException {
+        ServerSocket listener = Main.openTcpListener(port, reusePort);
+        listeners.add(listener);
+        return listener;
+    }
+
+    // ========== Listener Tests ==========
+
+    @Test
+    @DisplayName("Several SO_REUSEPORT listeners bind the same port")
+    void testListenersShareAPort() throws IOException {
+        ServerSocket first = open(0, true);
+        int port = first.getLocalPort();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(port, open(port, true).getLocalPort());
+        }
+    }
+
+    @Test
+    @DisplayName("A listener without SO_REUSEPORT keeps the port to itself")
+    void testPlainListenerIsExclusive() throws IOException {
+        int port = open(0, false).getLocalPort();
+
+        assertThrows(IOException.class, () -> open(port, true));
+    }
+
+    @Test
+    @DisplayName("Connections are spread across the listeners")
+    void testConnectionsAreSpread() throws Exception {
+        int port = open(0, true).getLocalPort();
+        for (int i = 1; i < 4; i++) {
+            open(port, true);
+        }
+        AtomicIntegerArray accepted = new AtomicIntegerArray(listeners.size());
+        for (int i = 0; i < listeners.size(); i++) {
+            final int index = i;
+            ServerSocket listener = listeners.get(i);
+            Thread.ofPlatform().daemon(true).start(() -> {
+                while (!listener.isClosed()) {
+                    try (Socket socket = listener.accept()) {
+                        accepted.incrementAndGet(index);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        int connections = 200;
+        for (int i = 0; i < connections; i++) {
+            try (Socket client = new Socket()) {
+                client.connect(new InetSocketAddress("localhost", port));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        int total;
+        do {
+            total = 0;
+            for (int i = 0; i < accepted.length(); i++) {
+                total += accepted.get(i);
+            }
+            Thread.sleep(10);
+        } while (total < connections && System.currentTimeMillis() < deadline);
+
+        assertEquals(connections, total);
+        int busyListeners = 0;
+        for (int i = 0; i < accepted.length(); i++) {
+            if (accepted.get(i) > 0) {
+                busyListeners++;
+            }
+        }
+        // The kernel hashes each connection's source port, so more than one listener gets some
+        assertTrue(busyListeners > 1, "Connections per listener: " + accepted);
+    }
+}
@@ -0,0 +1,158 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.OutputBufferLimits.ClientClass;
+import StorageManager.QueuedRespWriter;
+import StorageManager.RESPProtocol;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the maxclients limit and the idle client reaper.
+ */
+@DisplayName("Client Limits Tests")
+class ClientLimitsTest {
+
+    private int savedMaxClients;
+    private final List<HandleClient> clients = new ArrayList<>();
+    private Keyspace keyspace;
+    private ListStorage listStorage;
+
+    /**
+     * Writer that only records whether the server closed its connection.
+     */
+    private static class RecordingWriter extends QueuedRespWriter {
+        boolean connectionClosed = false;
+
+        @Override
+        protected void requestWrite() {
+        }
+
+        @Override
+        protected void closeConnection() {
+            connectionClosed = true;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        savedMaxClients = Main.maxClients;
+        keyspace = new Keyspace();
+        listStorage = new ListStorage(keyspace);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (HandleClient client : clients) {
+            client.detach();
+        }
+        Main.maxClients = savedMaxClients;
+    }
+
+    private HandleClient newClient(int id) {
+        HandleClient client = new HandleClient(null, id, "master", new StringStorage(keyspace), listStorage, new StreamStorage(keyspace));
+        clients.add(client);
+        return client;
+    }
+
+    private RecordingWriter attach(HandleClient client) {
+        RecordingWriter writer = new RecordingWriter();
+        client.attach("127.0.0.1:0", writer);
+        return writer;
+    }
+
+    // ========== maxclients Tests ==========
+
+    @Test
+    @DisplayName("Connections beyond maxclients are not admitted until one leaves")
+    void testMaxClients() {
+        Main.maxClients = 2;
+
+        HandleClient first = newClient(-101);
+        HandleClient second = newClient(-102);
+        assertTrue(first.admit());
+        assertTrue(second.admit());
+        assertFalse(newClient(-103).admit());
+
+        first.detach();
+        first.detach(); // A second close gives nothing back
+        assertTrue(newClient(-104).admit());
+        assertFalse(newClient(-105).admit());
+    }
+
+    @Test
+    @DisplayName("A refused connection gets the error and is closed")
+    void testReject() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                HandleClient.reject(server.accept());
+
+                InputStream in = Channels.newInputStream(client);
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                in.transferTo(received);
+                assertEquals("-ERR max number of clients reached\r\n", received.toString(RESPProtocol.CHARSET));
+            }
+        }
+    }
+
+    // ========== Idle Reaper Tests ==========
+
+    @Test
+    @DisplayName("Only clients idle longer than the timeout are closed")
+    void testIdleClientsClosed() throws InterruptedException {
+        HandleClient idle = newClient(-201);
+        RecordingWriter idleWriter = attach(idle);
+        Thread.sleep(300);
+        HandleClient active = newClient(-202);
+        RecordingWriter activeWriter = attach(active);
+        active.touch();
+
+        HandleClient.closeIdleClients(System.currentTimeMillis(), 10_000);
+        assertFalse(idleWriter.connectionClosed);
+
+        HandleClient.closeIdleClients(System.currentTimeMillis(), 150);
+        assertTrue(idleWriter.connectionClosed);
+        assertTrue(idleWriter.isClosed());
+        assertFalse(activeWriter.connectionClosed);
+    }
+
+    @Test
+    @DisplayName("Replicas and blocked clients are never idle")
+    void testExemptClients() throws IOException {
+        HandleClient replica = newClient(-301);
+        RecordingWriter replicaWriter = attach(replica);
+        replicaWriter.setClientClass(ClientClass.REPLICA);
+        HandleClient blocked = newClient(-302);
+        RecordingWriter blockedWriter = attach(blocked);
+        blocked.handleCommand(Arrays.asList("BLPOP", "idle:list", "0"), blockedWriter);
+        long later = System.currentTimeMillis() + 60_000;
+
+        HandleClient.closeIdleClients(later, 1_000);
+        assertFalse(replicaWriter.connectionClosed);
+        assertFalse(blockedWriter.connectionClosed);
+
+        // Once served, the client is idle again
+        newClient(-303).handleCommand(Arrays.asList("RPUSH", "idle:list", "a"), new ByteArrayOutputStream());
+        HandleClient.closeIdleClients(later, 1_000);
+        assertTrue(blockedWriter.connectionClosed);
+    }
+}
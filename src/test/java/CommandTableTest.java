@@ -0,0 +1,194 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RESPProtocol;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the command table.
+ * Tests name lookup, command metadata, dispatch checks and the COMMAND command.
+ */
+@DisplayName("Command Table Tests")
+class CommandTableTest {
+
+    private ByteArrayOutputStream outputStream;
+    private StringStorage stringStorage;
+    private HandleClient client;
+
+    @BeforeEach
+    void setUp() {
+        outputStream = new ByteArrayOutputStream();
+        Keyspace keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        client = new HandleClient(null, 1, "master", stringStorage, new ListStorage(keyspace), new StreamStorage(keyspace));
+    }
+
+    private String run(String... command) throws IOException {
+        outputStream.reset();
+        client.handleCommand(Arrays.asList(command), outputStream);
+        return outputStream.toString(RESPProtocol.CHARSET);
+    }
+
+    private static byte[] bytes(String arg) {
+        return arg.getBytes(RESPProtocol.CHARSET);
+    }
+
+    // ========== Lookup Tests ==========
+
+    @Test
+    @DisplayName("Names are looked up ignoring case")
+    void testLookupIgnoresCase() {
+        CommandTable.Command get = HandleClient.COMMANDS.lookup("get");
+
+        assertNotNull(get);
+        assertSame(get, HandleClient.COMMANDS.lookup("GET"));
+        assertSame(get, HandleClient.COMMANDS.lookup("gEt"));
+        assertSame(get, HandleClient.COMMANDS.lookup("GeT".getBytes(RESPProtocol.CHARSET)));
+        assertNull(HandleClient.COMMANDS.lookup("gets"));
+        assertNull(HandleClient.COMMANDS.lookup("ge"));
+        assertNull(HandleClient.COMMANDS.lookup("nosuchcommand".getBytes(RESPProtocol.CHARSET)));
+    }
+
+    @Test
+    @DisplayName("Every registered command can be found")
+    void testAllCommandsFound() {
+        for (CommandTable.Command command : HandleClient.COMMANDS.all()) {
+            assertSame(command, HandleClient.COMMANDS.lookup(command.name.toUpperCase()));
+            assertSame(command, HandleClient.COMMANDS.lookup(command.name.getBytes(RESPProtocol.CHARSET)));
+        }
+    }
+
+    @Test
+    @DisplayName("A table grows and rejects duplicates")
+    void testTableGrowth() {
+        CommandTable table = new CommandTable();
+        for (int i = 0; i < 200; i++) {
+            table.add("cmd" + i, 1, 0, 0, 0, 0, (c, command, writer) -> { });
+        }
+
+        assertEquals(200, table.size());
+        assertEquals("cmd123", table.lookup("CMD123").name);
+        assertThrows(IllegalArgumentException.class, () -> table.add("CMD7", 1, 0, 0, 0, 0, (c, command, writer) -> { }));
+    }
+
+    // ========== Metadata Tests ==========
+
+    @Test
+    @DisplayName("Arity accepts exact and minimum argument counts")
+    void testArity() {
+        CommandTable.Command get = HandleClient.COMMANDS.lookup("get");
+        CommandTable.Command set = HandleClient.COMMANDS.lookup("set");
+
+        assertTrue(get.acceptsArgumentCount(2));
+        assertFalse(get.acceptsArgumentCount(3));
+        assertFalse(set.acceptsArgumentCount(2));
+        assertTrue(set.acceptsArgumentCount(3));
+        assertTrue(set.acceptsArgumentCount(5));
+    }
+
+    @Test
+    @DisplayName("Write commands are flagged and never read-only")
+    void testWriteFlags() {
+        for (String name : new String[] {"set", "incr", "rpush", "lpush", "lpop", "blpop", "xadd"}) {
+            assertTrue(HandleClient.COMMANDS.lookup(name).is(CommandTable.WRITE), name);
+        }
+        for (CommandTable.Command command : HandleClient.COMMANDS.all()) {
+            assertFalse(command.is(CommandTable.WRITE) && command.is(CommandTable.READONLY), command.name);
+        }
+        assertEquals(List.of("write", "blocking"), HandleClient.COMMANDS.lookup("blpop").flagNames());
+    }
+
+    @Test
+    @DisplayName("Key positions find the key arguments")
+    void testKeyPositions() {
+        assertEquals(List.of("a"), HandleClient.COMMANDS.lookup("set").keys(Arrays.asList("SET", "a", "1", "PX", "100")));
+        assertEquals(List.of("l1", "l2"), HandleClient.COMMANDS.lookup("blpop").keys(Arrays.asList("BLPOP", "l1", "l2", "0")));
+        assertEquals(List.of("s1", "s2"), HandleClient.COMMANDS.lookup("xread")
+                .keys(Arrays.asList("XREAD", "BLOCK", "0", "STREAMS", "s1", "s2", "0-0", "$")));
+        assertTrue(HandleClient.COMMANDS.lookup("ping").keys(Arrays.asList("PING")).isEmpty());
+    }
+
+    // ========== Dispatch Tests ==========
+
+    @Test
+    @DisplayName("Commands dispatch regardless of case")
+    void testDispatchIgnoresCase() throws IOException {
+        assertEquals("+OK\r\n", run("sEt", "k", "v"));
+        assertEquals("$1\r\nv\r\n", run("get", "k"));
+    }
+
+    @Test
+    @DisplayName("Parsed commands dispatch on their raw name bytes")
+    void testDispatchParsedArguments() throws IOException {
+        List<String> set = RESPProtocol.decodeArguments(List.of(bytes("sEt"), bytes("k"), bytes("v")));
+        client.handleCommand(set, outputStream);
+        assertEquals("+OK\r\n", outputStream.toString(RESPProtocol.CHARSET));
+        assertEquals("v", stringStorage.get("k"));
+
+        outputStream.reset();
+        client.handleCommand(RESPProtocol.decodeArguments(List.of(bytes("foo"))), outputStream);
+        assertEquals("-ERR unknown command 'FOO'\r\n", outputStream.toString(RESPProtocol.CHARSET));
+    }
+
+    @Test
+    @DisplayName("Unknown commands and wrong arity are rejected before the handler")
+    void testDispatchErrors() throws IOException {
+        assertEquals("-ERR unknown command 'FOO'\r\n", run("foo"));
+        assertEquals("-ERR wrong number of arguments for 'get' command\r\n", run("GET", "a", "b"));
+        assertEquals("-ERR wrong number of arguments for 'set' command\r\n", run("SET", "a"));
+        assertNull(stringStorage.get("a"));
+    }
+
+    @Test
+    @DisplayName("A rejected command inside MULTI aborts EXEC")
+    void testExecAbort() throws IOException {
+        run("MULTI");
+        assertEquals("+QUEUED\r\n", run("SET", "a", "1"));
+        assertTrue(run("SET", "b").startsWith("-ERR wrong number"));
+        assertEquals("-EXECABORT Transaction discarded because of previous errors.\r\n", run("EXEC"));
+        assertNull(stringStorage.get("a"));
+
+        // The next transaction starts clean
+        run("MULTI");
+        run("SET", "a", "1");
+        assertEquals("*1\r\n+OK\r\n", run("EXEC"));
+    }
+
+    // ========== COMMAND Tests ==========
+
+    @Test
+    @DisplayName("COMMAND COUNT and COMMAND list the table")
+    void testCommandCount() throws IOException {
+        int count = HandleClient.COMMANDS.size();
+
+        assertEquals(":" + count + "\r\n", run("COMMAND", "COUNT"));
+        assertTrue(run("COMMAND").startsWith("*" + count + "\r\n"));
+    }
+
+    @Test
+    @DisplayName("COMMAND INFO describes commands")
+    void testCommandInfo() throws IOException {
+        assertEquals("*2\r\n*6\r\n$3\r\nget\r\n:2\r\n*2\r\n+readonly\r\n+fast\r\n:1\r\n:1\r\n:1\r\n$-1\r\n",
+                run("COMMAND", "INFO", "GET", "nosuch"));
+    }
+
+    @Test
+    @DisplayName("COMMAND GETKEYS uses the key positions")
+    void testCommandGetkeys() throws IOException {
+        assertEquals("*2\r\n$2\r\nl1\r\n$2\r\nl2\r\n", run("COMMAND", "GETKEYS", "BLPOP", "l1", "l2", "0"));
+        assertEquals("-ERR The command has no key arguments\r\n", run("COMMAND", "GETKEYS", "PING"));
+        assertEquals("-ERR Invalid command specified\r\n", run("COMMAND", "GETKEYS", "NOSUCH", "a"));
+        assertEquals("-ERR Invalid number of arguments specified for command\r\n", run("COMMAND", "GETKEYS", "GET"));
+    }
+}
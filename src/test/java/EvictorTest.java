@@ -0,0 +1,304 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import StorageManager.Evictor;
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for maxmemory: used memory accounting, the eviction policies
+ * and the OOM error.
+ */
+@DisplayName("Evictor Tests")
+class EvictorTest {
+
+    private Keyspace keyspace;
+    private StringStorage stringStorage;
+    private ListStorage listStorage;
+    private StreamStorage streamStorage;
+    private Evictor evictor;
+    private HandleClient client;
+
+    @BeforeEach
+    void setUp() {
+        keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
+        evictor = keyspace.evictor();
+        client = new HandleClient(null, 1, "master", stringStorage, listStorage, streamStorage);
+    }
+
+    private String run(String... command) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        client.handleCommand(Arrays.asList(command), output);
+        return output.toString();
+    }
+
+    // Stores keys named prefix0..prefix(count-1) with 100-byte values
+    private void fill(String prefix, int count, Long expiryTimeMs) {
+        for (int i = 0; i < count; i++) {
+            stringStorage.set(prefix + i, "x".repeat(100), expiryTimeMs);
+        }
+    }
+
+    // ========== Used Memory Tests ==========
+
+    @Test
+    @DisplayName("Used memory follows writes, overwrites and deletes of every type")
+    void testUsedMemoryAccounting() {
+        assertEquals(0, keyspace.getUsedMemory());
+
+        stringStorage.set("s", "x".repeat(1000), null);
+        long oneString = keyspace.getUsedMemory();
+        assertTrue(oneString > 1000);
+        stringStorage.set("s", "short", null);
+        assertTrue(keyspace.getUsedMemory() < oneString);
+
+        listStorage.rightPush("l", "a".repeat(500), "b");
+        long withList = keyspace.getUsedMemory();
+        listStorage.leftPop("l", 1);
+        assertTrue(keyspace.getUsedMemory() < withList - 500);
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("field", "value");
+        streamStorage.addEntry("st", "1-1", fields);
+
+        keyspace.delete("s");
+        keyspace.delete("l");
+        streamStorage.removeStream("st");
+        assertEquals(0, keyspace.getUsedMemory());
+    }
+
+    @Test
+    @DisplayName("Expired keys release their memory")
+    void testExpiredKeysReleaseMemory() {
+        fill("k", 10, System.currentTimeMillis() - 1);
+        assertTrue(keyspace.getUsedMemory() > 0);
+
+        keyspace.cleanupExpiredKeys();
+
+        assertEquals(0, keyspace.getUsedMemory());
+    }
+
+    // ========== Policy Tests ==========
+
+    @Test
+    @DisplayName("Expired candidates freed while selecting spare the live keys")
+    void testExpiredCandidatesFreeMemory() {
+        fill("expired", 5, System.currentTimeMillis() - 1);
+        fill("live", 5, System.currentTimeMillis() + 60_000);
+        long perKey = keyspace.getUsedMemory() / 10;
+        evictor.setPolicy(Evictor.Policy.VOLATILE_TTL);
+        evictor.setMaxMemory(keyspace.getUsedMemory() - 2 * perKey);
+
+        assertTrue(evictor.freeMemoryIfNeeded());
+        assertEquals(0, evictor.getEvictedKeys());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(stringStorage.exists("live" + i), "live" + i + " survives");
+        }
+    }
+
+    @Test
+    @DisplayName("Memory freed by expired candidates is not reported as OOM")
+    void testOnlyExpiredCandidates() {
+        fill("expired", 5, System.currentTimeMillis() - 1);
+        evictor.setPolicy(Evictor.Policy.ALLKEYS_LRU);
+        evictor.setMaxMemory(keyspace.getUsedMemory() / 2);
+
+        // Nothing is left to sample once the expired keys are gone, yet memory is within the limit
+        assertTrue(evictor.freeMemoryIfNeeded());
+        assertEquals(0, evictor.getEvictedKeys());
+    }
+
+    @Test
+    @DisplayName("allkeys-lru evicts idle keys and keeps recently used ones")
+    void testAllKeysLru() throws InterruptedException {
+        fill("cold", 200, null);
+        Thread.sleep(1100); // The LRU clock counts seconds
+        fill("hot", 20, null);
+        for (int i = 0; i < 20; i++) {
+            stringStorage.get("hot" + i);
+        }
+        evictor.setPolicy(Evictor.Policy.ALLKEYS_LRU);
+        evictor.setMaxMemory(keyspace.getUsedMemory() * 3 / 4);
+
+        assertTrue(evictor.freeMemoryIfNeeded());
+
+        assertTrue(keyspace.getUsedMemory() <= evictor.getMaxMemory());
+        assertTrue(evictor.getEvictedKeys() >= 50);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("x".repeat(100), stringStorage.get("hot" + i), "hot" + i + " survives");
+        }
+    }
+
+    @Test
+    @DisplayName("allkeys-lfu keeps frequently used keys when a scan reads many cold keys after them")
+    void testAllKeysLfu() {
+        evictor.setPolicy(Evictor.Policy.ALLKEYS_LFU);
+        fill("hot", 20, null);
+        for (int read = 0; read < 300; read++) {
+            for (int i = 0; i < 20; i++) {
+                stringStorage.get("hot" + i);
+            }
+        }
+        // A batch job reads each cold key once, after the hot keys' last reads
+        fill("cold", 200, null);
+        for (int i = 0; i < 200; i++) {
+            stringStorage.get("cold" + i);
+        }
+        evictor.setMaxMemory(keyspace.getUsedMemory() / 2);
+
+        assertTrue(evictor.freeMemoryIfNeeded());
+
+        assertTrue(evictor.getEvictedKeys() >= 100);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("x".repeat(100), stringStorage.get("hot" + i), "hot" + i + " survives");
+        }
+    }
+
+    @Test
+    @DisplayName("volatile-lfu evicts only keys with a TTL")
+    void testVolatileLfu() {
+        evictor.setPolicy(Evictor.Policy.VOLATILE_LFU);
+        fill("persistent", 20, null);
+        fill("volatile", 20, System.currentTimeMillis() + 60_000);
+        evictor.setMaxMemory(1);
+
+        assertFalse(evictor.freeMemoryIfNeeded());
+
+        assertEquals(20, keyspace.size(null));
+        assertEquals(0, keyspace.expiresSize());
+    }
+
+    @Test
+    @DisplayName("volatile-ttl evicts the keys closest to expiring, and only keys with a TTL")
+    void testVolatileTtl() {
+        long now = System.currentTimeMillis();
+        fill("persistent", 50, null);
+        fill("soon", 20, now + 10_000);
+        fill("later", 20, now + 3_600_000);
+        evictor.setPolicy(Evictor.Policy.VOLATILE_TTL);
+        evictor.setMaxMemory(keyspace.getUsedMemory() - 10 * (keyspace.getUsedMemory() / 90));
+
+        assertTrue(evictor.freeMemoryIfNeeded());
+
+        assertEquals(50, keyspace.keys().stream().filter(key -> key.startsWith("persistent")).count());
+        // Sampled, so a key expiring later may go first, but rarely
+        long soonEvicted = 20 - keyspace.keys().stream().filter(key -> key.startsWith("soon")).count();
+        long laterEvicted = 20 - keyspace.keys().stream().filter(key -> key.startsWith("later")).count();
+        assertTrue(soonEvicted > 2 * laterEvicted, soonEvicted + " soon, " + laterEvicted + " later evicted");
+    }
+
+    @Test
+    @DisplayName("A volatile policy with no keys with a TTL cannot free memory")
+    void testVolatileWithoutTtlKeys() {
+        fill("persistent", 10, null);
+        evictor.setPolicy(Evictor.Policy.VOLATILE_LRU);
+        evictor.setMaxMemory(1);
+
+        assertFalse(evictor.freeMemoryIfNeeded());
+        assertEquals(10, keyspace.size(null));
+    }
+
+    @Test
+    @DisplayName("allkeys-random evicts until within maxmemory")
+    void testAllKeysRandom() {
+        fill("k", 100, null);
+        evictor.setPolicy(Evictor.Policy.ALLKEYS_RANDOM);
+        evictor.setMaxMemory(keyspace.getUsedMemory() / 2);
+
+        assertTrue(evictor.freeMemoryIfNeeded());
+
+        assertTrue(keyspace.getUsedMemory() <= evictor.getMaxMemory());
+        assertEquals(100 - evictor.getEvictedKeys(), keyspace.size(null));
+    }
+
+    // ========== Command Tests ==========
+
+    @Test
+    @DisplayName("noeviction refuses writes that add data over maxmemory but allows reads and DEL")
+    void testNoEvictionOom() throws IOException {
+        run("SET", "a", "1");
+        assertEquals("+OK\r\n", run("CONFIG", "SET", "maxmemory", "1"));
+
+        assertTrue(run("SET", "b", "2").startsWith("-OOM "));
+        assertTrue(run("RPUSH", "l", "x").startsWith("-OOM "));
+        assertEquals("$1\r\n1\r\n", run("GET", "a"));
+        assertEquals(":1\r\n", run("DEL", "a"));
+        assertEquals("+OK\r\n", run("SET", "b", "2"));
+    }
+
+    @Test
+    @DisplayName("CONFIG SET maxmemory evicts at once and INFO memory reports it")
+    void testConfigAndInfo() throws IOException {
+        fill("k", 100, null);
+        assertEquals("+OK\r\n", run("CONFIG", "SET", "maxmemory-policy", "allkeys-lru"));
+        assertEquals("+OK\r\n", run("CONFIG", "SET", "maxmemory", "10kb"));
+
+        assertTrue(keyspace.getUsedMemory() <= 10 * 1024);
+        assertEquals("*2\r\n$9\r\nmaxmemory\r\n$5\r\n10240\r\n", run("CONFIG", "GET", "maxmemory"));
+        assertEquals("*2\r\n$16\r\nmaxmemory-policy\r\n$11\r\nallkeys-lru\r\n", run("CONFIG", "GET", "maxmemory-policy"));
+        String info = run("INFO", "memory");
+        assertTrue(info.contains("maxmemory:10240\r\n"));
+        assertTrue(info.contains("maxmemory_policy:allkeys-lru\r\n"));
+        assertTrue(run("INFO", "stats").contains("evicted_keys:" + evictor.getEvictedKeys() + "\r\n"));
+        assertTrue(run("CONFIG", "SET", "maxmemory-policy", "most-lru").startsWith("-ERR "));
+    }
+
+    @Test
+    @DisplayName("OBJECT FREQ reports the logarithmic access counter under an LFU policy")
+    void testObjectFreq() throws IOException {
+        run("SET", "k", "v");
+        assertTrue(run("OBJECT", "FREQ", "k").startsWith("-ERR An LFU maxmemory policy is not selected"));
+
+        assertEquals("+OK\r\n", run("CONFIG", "SET", "maxmemory-policy", "allkeys-lfu"));
+        run("SET", "f", "v");
+        // New keys start at LFU_INIT_VAL, and the first access always counts
+        assertEquals(":5\r\n", run("OBJECT", "FREQ", "f"));
+        run("GET", "f");
+        assertEquals(":6\r\n", run("OBJECT", "FREQ", "f"));
+        // Overwriting a key keeps its frequency
+        run("SET", "f", "w");
+        assertEquals(":6\r\n", run("OBJECT", "FREQ", "f"));
+        assertTrue(run("OBJECT", "IDLETIME", "f").startsWith("-ERR An LFU maxmemory policy is selected"));
+        assertEquals("$-1\r\n", run("OBJECT", "FREQ", "missing"));
+    }
+
+    @Test
+    @DisplayName("The LFU counter grows logarithmically with accesses")
+    void testLfuCounterIsLogarithmic() throws IOException {
+        evictor.setPolicy(Evictor.Policy.ALLKEYS_LFU);
+        stringStorage.set("k", "v", null);
+        for (int i = 0; i < 1000; i++) {
+            stringStorage.get("k");
+        }
+
+        // About 18 after 1000 accesses with lfu-log-factor 10, as in Redis' table
+        int frequency = keyspace.peek("k").getFrequency();
+        assertTrue(frequency > 10 && frequency < 40, "frequency " + frequency);
+    }
+
+    @Test
+    @DisplayName("Memory sizes parse with Redis' units")
+    void testParseMemory() {
+        assertEquals(100, Evictor.parseMemory("100"));
+        assertEquals(1000, Evictor.parseMemory("1k"));
+        assertEquals(1024, Evictor.parseMemory("1kb"));
+        assertEquals(100L * 1024 * 1024, Evictor.parseMemory("100MB"));
+        assertEquals(2L * 1024 * 1024 * 1024, Evictor.parseMemory("2gb"));
+        assertThrows(IllegalArgumentException.class, () -> Evictor.parseMemory("lots"));
+        assertThrows(IllegalArgumentException.class, () -> Evictor.parseMemory("-1"));
+    }
+}
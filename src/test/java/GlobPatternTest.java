@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import StorageManager.GlobPattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the glob-style patterns of KEYS and SCAN MATCH.
+ */
+@DisplayName("GlobPattern Tests")
+class GlobPatternTest {
+
+    private static boolean matches(String pattern, String s) {
+        return GlobPattern.compile(pattern).matches(s);
+    }
+
+    // ========== Wildcard Tests ==========
+
+    @Test
+    @DisplayName("Literals match themselves, whole strings only")
+    void testLiterals() {
+        assertTrue(matches("hello", "hello"));
+        assertFalse(matches("hello", "hello!"));
+        assertFalse(matches("hello", "hell"));
+        assertTrue(matches("", ""));
+        assertFalse(matches("", "a"));
+    }
+
+    @Test
+    @DisplayName("'*' matches any run of characters, including none")
+    void testStar() {
+        assertTrue(matches("*", ""));
+        assertTrue(matches("*", "anything"));
+        assertTrue(matches("user:*", "user:"));
+        assertTrue(matches("user:*", "user:42"));
+        assertFalse(matches("user:*", "users"));
+        assertTrue(matches("*:*:name", "a:b:c:name"));
+        assertTrue(matches("a**b", "ab"));
+        assertFalse(matches("*x", "abc"));
+    }
+
+    @Test
+    @DisplayName("'?' matches exactly one character")
+    void testQuestionMark() {
+        assertTrue(matches("h?llo", "hello"));
+        assertFalse(matches("h?llo", "hllo"));
+        assertFalse(matches("h?llo", "heello"));
+    }
+
+    // ========== Set Tests ==========
+
+    @Test
+    @DisplayName("Sets match one character of a list or range, or not of it with '^'")
+    void testSets() {
+        assertTrue(matches("h[ae]llo", "hallo"));
+        assertFalse(matches("h[ae]llo", "hillo"));
+        assertTrue(matches("h[^e]llo", "hallo"));
+        assertFalse(matches("h[^e]llo", "hello"));
+        assertTrue(matches("key[0-9]", "key7"));
+        assertFalse(matches("key[0-9]", "keyx"));
+        assertTrue(matches("key[9-0]", "key7"), "A backwards range covers the same characters");
+        assertTrue(matches("[a-cx-z]", "y"));
+        assertTrue(matches("[-a]", "-"));
+    }
+
+    @Test
+    @DisplayName("Backslash makes the next character literal, inside sets too")
+    void testEscapes() {
+        assertTrue(matches("h\\*llo", "h*llo"));
+        assertFalse(matches("h\\*llo", "hello"));
+        assertTrue(matches("what\\?", "what?"));
+        assertFalse(matches("what\\?", "whats"));
+        assertTrue(matches("[\\]]", "]"));
+        assertTrue(matches("[\\^a]", "^"));
+        assertTrue(matches("end\\", "end\\"), "A trailing backslash is literal");
+    }
+
+    @Test
+    @DisplayName("An unclosed set runs to the end of the pattern, as in Redis")
+    void testUnclosedSet() {
+        assertTrue(matches("a[bc", "ab"));
+        assertFalse(matches("a[bc", "ad"));
+    }
+
+    // ========== Performance Tests ==========
+
+    @Test
+    @DisplayName("Many stars against a long non-matching key take linear-ish time, not exponential")
+    void testPathologicalPattern() {
+        GlobPattern pattern = GlobPattern.compile("a*a*a*a*a*a*a*a*a*a*b");
+        String key = "a".repeat(10_000);
+
+        long start = System.nanoTime();
+        assertFalse(pattern.matches(key));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+}
@@ -0,0 +1,572 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import StorageManager.ExpireCycle;
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RedisObject;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+import StorageManager.WrongTypeException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the unified keyspace.
+ * Tests type checks across the storages and the key-level commands.
+ */
+@DisplayName("Keyspace Tests")
+class KeyspaceTest {
+
+    private Keyspace keyspace;
+    private StringStorage stringStorage;
+    private ListStorage listStorage;
+    private StreamStorage streamStorage;
+    private HandleClient client;
+
+    @BeforeEach
+    void setUp() {
+        keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
+        client = new HandleClient(null, 1, "master", stringStorage, listStorage, streamStorage);
+    }
+
+    private String run(String... command) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        client.handleCommand(Arrays.asList(command), output);
+        return output.toString();
+    }
+
+    // ========== Type Tests ==========
+
+    @Test
+    @DisplayName("Each key has one type, shared by all storages")
+    void testOneTypePerKey() {
+        stringStorage.set("s", "v", null);
+        listStorage.rightPush("l", "a");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("f", "v");
+        streamStorage.addEntry("x", "1-1", fields);
+
+        assertEquals(RedisObject.Type.STRING, keyspace.type("s"));
+        assertEquals(RedisObject.Type.LIST, keyspace.type("l"));
+        assertEquals(RedisObject.Type.STREAM, keyspace.type("x"));
+        assertNull(keyspace.type("missing"));
+        assertEquals(3, keyspace.keys().size());
+        assertEquals(List.of("s"), stringStorage.getAllKeys());
+        assertEquals(1, streamStorage.getStreamCount());
+    }
+
+    @Test
+    @DisplayName("Operations on a key of another type throw, SET replaces any type")
+    void testWrongType() {
+        listStorage.rightPush("l", "a");
+
+        assertThrows(WrongTypeException.class, () -> stringStorage.get("l"));
+        assertThrows(WrongTypeException.class, () -> streamStorage.getRange("l", "-", "+"));
+        assertFalse(stringStorage.exists("l"));
+
+        stringStorage.set("l", "now a string", null);
+        assertEquals("now a string", stringStorage.get("l"));
+        assertThrows(WrongTypeException.class, () -> listStorage.rightPush("l", "b"));
+    }
+
+    @Test
+    @DisplayName("Popping the last element and a rejected first XADD leave no key")
+    void testEmptyValuesRemoved() {
+        listStorage.rightPush("l", "a");
+        listStorage.leftPop("l", 1);
+        assertFalse(keyspace.exists("l"));
+
+        assertThrows(IllegalArgumentException.class, () -> streamStorage.addEntry("x", "0-0", new HashMap<>()));
+        assertFalse(keyspace.exists("x"));
+    }
+
+    @Test
+    @DisplayName("A client handler takes storages over one shared keyspace only")
+    void testOneKeyspacePerHandler() {
+        ListStorage separateLists = new ListStorage(new Keyspace());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new HandleClient(null, 2, "master", stringStorage, separateLists, streamStorage));
+    }
+
+    // ========== Expiry Tests ==========
+
+    @Test
+    @DisplayName("Expiry applies to every type")
+    void testExpiryOnAnyType() throws InterruptedException {
+        listStorage.rightPush("l", "a");
+        assertTrue(keyspace.setExpiry("l", System.currentTimeMillis() + 50));
+        assertNotNull(keyspace.getExpiry("l"));
+
+        Thread.sleep(100);
+        assertFalse(keyspace.exists("l"));
+        assertEquals(0, listStorage.length("l"));
+        assertFalse(keyspace.setExpiry("l", System.currentTimeMillis() + 50));
+    }
+
+    @Test
+    @DisplayName("OBJECT IDLETIME does not count as an access")
+    void testAccessTime() {
+        stringStorage.set("s", "v", null);
+        RedisObject object = keyspace.peek("s");
+        long idle = object.getIdleTime();
+
+        keyspace.peek("s");
+        assertTrue(object.getIdleTime() >= idle);
+        assertTrue(keyspace.lookup("s").getIdleTime() <= 1000, "At most one LRU clock tick since the lookup");
+    }
+
+    // ========== Command Tests ==========
+
+    @Test
+    @DisplayName("Commands against the wrong type reply WRONGTYPE")
+    void testWrongTypeReply() throws IOException {
+        run("RPUSH", "l", "a");
+
+        assertTrue(run("GET", "l").startsWith("-WRONGTYPE"));
+        assertTrue(run("INCR", "l").startsWith("-WRONGTYPE"));
+        assertTrue(run("XRANGE", "l", "-", "+").startsWith("-WRONGTYPE"));
+        run("SET", "s", "v");
+        assertTrue(run("LPUSH", "s", "a").startsWith("-WRONGTYPE"));
+        assertEquals("$1\r\nv\r\n", run("GET", "s"));
+    }
+
+    @Test
+    @DisplayName("DEL and EXISTS work on every type")
+    void testDelAndExists() throws IOException {
+        run("SET", "s", "v");
+        run("RPUSH", "l", "a");
+        run("XADD", "x", "1-1", "f", "v");
+
+        assertEquals(":4\r\n", run("EXISTS", "s", "l", "x", "s", "missing"));
+        assertEquals(":3\r\n", run("DEL", "s", "l", "x", "missing"));
+        assertEquals(":0\r\n", run("EXISTS", "s", "l", "x"));
+        assertEquals("+none\r\n", run("TYPE", "l"));
+    }
+
+    @Test
+    @DisplayName("EXPIRE, TTL and PERSIST work on every type")
+    void testExpireCommands() throws IOException {
+        run("RPUSH", "l", "a");
+
+        assertEquals(":-1\r\n", run("TTL", "l"));
+        assertEquals(":1\r\n", run("EXPIRE", "l", "100"));
+        assertEquals(":100\r\n", run("TTL", "l"));
+        assertEquals(":1\r\n", run("PERSIST", "l"));
+        assertEquals(":0\r\n", run("PERSIST", "l"));
+        assertEquals(":-1\r\n", run("PTTL", "l"));
+        assertEquals(":-2\r\n", run("TTL", "missing"));
+        assertEquals(":0\r\n", run("EXPIRE", "missing", "10"));
+
+        assertEquals(":1\r\n", run("PEXPIRE", "l", "0"));
+        assertEquals(":0\r\n", run("EXISTS", "l"));
+    }
+
+    @Test
+    @DisplayName("EXPIRE refuses timeouts that overflow")
+    void testExpireOverflow() throws IOException {
+        run("SET", "k", "v");
+
+        assertEquals("-ERR invalid expire time in 'expire' command\r\n", run("EXPIRE", "k", "9223372036854775807"));
+        assertEquals("-ERR invalid expire time in 'expire' command\r\n", run("EXPIRE", "k", "9223372036854775"));
+        assertEquals("-ERR invalid expire time in 'pexpire' command\r\n", run("PEXPIRE", "k", "9223372036854775807"));
+        assertEquals(":-1\r\n", run("TTL", "k"));
+        assertEquals(0, keyspace.averageTtl());
+    }
+
+    @Test
+    @DisplayName("OBJECT ENCODING reports the compact encodings")
+    void testObjectEncoding() throws IOException {
+        run("SET", "int", "12345");
+        run("SET", "short", "hello");
+        run("SET", "long", "x".repeat(45));
+        run("RPUSH", "l", "a");
+
+        assertEquals("$3\r\nint\r\n", run("OBJECT", "ENCODING", "int"));
+        assertEquals("$6\r\nembstr\r\n", run("OBJECT", "ENCODING", "short"));
+        assertEquals("$3\r\nraw\r\n", run("OBJECT", "ENCODING", "long"));
+        assertEquals("$8\r\nlistpack\r\n", run("OBJECT", "ENCODING", "l"));
+        assertEquals("$-1\r\n", run("OBJECT", "ENCODING", "missing"));
+        assertEquals(":0\r\n", run("OBJECT", "IDLETIME", "int"));
+    }
+
+    // ========== Active Expiry Tests ==========
+
+    @Test
+    @DisplayName("The expire cycle removes expired keys nobody reads")
+    void testExpireCycleRemovesExpiredKeys() {
+        long past = System.currentTimeMillis() - 1;
+        for (int i = 0; i < 100; i++) {
+            stringStorage.set("gone:" + i, "v", past);
+        }
+        stringStorage.set("later", "v", System.currentTimeMillis() + 60_000);
+        stringStorage.set("forever", "v", null);
+        assertEquals(101, keyspace.expiresSize());
+
+        int expired = new ExpireCycle(keyspace).runCycle();
+
+        assertEquals(100, expired);
+        assertEquals(100, keyspace.getExpiredKeys());
+        assertEquals(1, keyspace.expiresSize());
+        assertEquals("v", stringStorage.get("later"));
+        assertEquals("v", stringStorage.get("forever"));
+    }
+
+    @Test
+    @DisplayName("The sampling expire cycle removes expired keys nobody reads")
+    void testSamplingExpireCycleRemovesExpiredKeys() {
+        long past = System.currentTimeMillis() - 1;
+        for (int i = 0; i < 100; i++) {
+            stringStorage.set("gone:" + i, "v", past);
+        }
+        stringStorage.set("later", "v", System.currentTimeMillis() + 60_000);
+
+        assertEquals(100, new ExpireCycle(keyspace, ExpireCycle.Strategy.SAMPLING).runCycle());
+        assertEquals(1, keyspace.expiresSize());
+    }
+
+    @Test
+    @DisplayName("The timing wheel frees keys across its levels as they come due")
+    void testTimingWheelFreesKeysWhenDue() throws InterruptedException {
+        ExpireCycle cycle = new ExpireCycle(keyspace);
+        long start = System.currentTimeMillis();
+        // 2 ms apart over 800 ms, so the timers start in the first two levels
+        for (int i = 0; i < 400; i++) {
+            stringStorage.set("k:" + i, "v", start + 2L * i);
+        }
+
+        Thread.sleep(400);
+        long now = System.currentTimeMillis();
+        cycle.runCycle();
+        long due = Math.min(400, (now - start) / 2 + 1);
+        assertTrue(keyspace.getExpiredKeys() >= due, "Keys due by then were freed");
+        assertTrue(keyspace.expiresSize() > 0, "Keys not yet due remain");
+
+        Thread.sleep(500);
+        cycle.runCycle();
+        assertEquals(400, keyspace.getExpiredKeys());
+        assertEquals(0, keyspace.expiresSize());
+    }
+
+    @Test
+    @DisplayName("A stale timer leaves a key whose TTL moved")
+    void testTimingWheelStaleTimer() throws InterruptedException {
+        ExpireCycle cycle = new ExpireCycle(keyspace);
+        long now = System.currentTimeMillis();
+        stringStorage.set("extended", "v", now + 20);
+        stringStorage.set("persisted", "v", now + 20);
+        stringStorage.set("overwritten", "v", now + 20);
+        keyspace.setExpiry("extended", now + 60_000);
+        keyspace.removeExpiry("persisted");
+        stringStorage.set("overwritten", "v2", null);
+
+        Thread.sleep(50);
+
+        assertEquals(0, cycle.runCycle());
+        assertEquals(3, keyspace.size(null));
+        assertEquals(1, keyspace.expiresSize());
+    }
+
+    @Test
+    @DisplayName("Rewriting a TTL keeps one timer per key")
+    void testTimingWheelOneTimerPerKey() throws InterruptedException {
+        ExpireCycle cycle = new ExpireCycle(keyspace);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 1000; i++) {
+            stringStorage.set("sliding", "v", now + 60_000 + i);
+            keyspace.setExpiry("rewritten", now + 60_000 + i);
+            stringStorage.set("rewritten", "v", now + 60_000 + i);
+        }
+        assertEquals(2, keyspace.timerCount());
+
+        // A later TTL keeps the earlier timer, which schedules the key again when it fires
+        stringStorage.set("moved", "v", now + 20);
+        for (int i = 1; i <= 1000; i++) {
+            keyspace.setExpiry("moved", now + 40 + i);
+        }
+        assertEquals(3, keyspace.timerCount());
+        Thread.sleep(50);
+        assertEquals(0, cycle.runCycle());
+        assertEquals(3, keyspace.timerCount());
+        Thread.sleep(1000);
+        assertEquals(1, cycle.runCycle());
+        assertNull(keyspace.peek("moved"));
+        assertEquals(2, keyspace.timerCount());
+    }
+
+    @Test
+    @DisplayName("The expires index follows PERSIST, SET and DEL")
+    void testExpiresIndexFollowsWrites() {
+        long later = System.currentTimeMillis() + 60_000;
+        stringStorage.set("a", "v", later);
+        stringStorage.set("b", "v", later);
+        stringStorage.set("c", "v", later);
+        assertEquals(3, keyspace.expiresSize());
+
+        keyspace.removeExpiry("a");
+        stringStorage.set("b", "v", null);
+        keyspace.delete("c");
+
+        assertEquals(0, keyspace.expiresSize());
+        assertEquals(0, new ExpireCycle(keyspace).runCycle());
+        assertEquals(2, keyspace.size(null));
+    }
+
+    @Test
+    @DisplayName("INFO stats reports the expired keys and the cycle")
+    void testInfoStats() throws IOException {
+        stringStorage.set("gone", "v", System.currentTimeMillis() - 1);
+        assertNull(stringStorage.get("gone"));
+
+        String info = run("INFO", "stats");
+
+        assertTrue(info.contains("# Stats\r\n"));
+        assertTrue(info.contains("expired_keys:1\r\n"));
+        assertTrue(info.contains("instantaneous_expired_keys_per_sec:"));
+        assertTrue(info.contains("expired_stale_perc:"));
+        assertTrue(info.contains("expire_cycle_cpu_milliseconds:"));
+        assertFalse(info.contains("role:"));
+        assertTrue(run("INFO").contains("role:master"));
+    }
+
+    // ========== Scan Tests ==========
+
+    // Parses a SCAN reply into the keys it returned, and returns its cursor
+    private static String parseScan(String reply, List<String> keys) {
+        String[] lines = reply.split("\r\n");
+        assertEquals("*2", lines[0]);
+        for (int i = 5; i < lines.length; i += 2) {
+            keys.add(lines[i]);
+        }
+        assertEquals(Integer.parseInt(lines[3].substring(1)), (lines.length - 4) / 2);
+        return lines[2];
+    }
+
+    @Test
+    @DisplayName("KEYS matches glob-style patterns")
+    void testKeysPattern() throws IOException {
+        for (String key : new String[] {"hello", "hallo", "hxllo", "hllo", "heeeello", "h*llo"}) {
+            stringStorage.set(key, "v", null);
+        }
+        listStorage.rightPush("help", "a");
+
+        assertEquals(Set.of("hello", "hallo", "hxllo", "h*llo"), Set.copyOf(keysReply(run("KEYS", "h?llo"))));
+        assertEquals(Set.of("hello", "hallo", "hxllo", "hllo", "heeeello", "h*llo"), Set.copyOf(keysReply(run("KEYS", "h*llo"))));
+        assertEquals(Set.of("hello", "hallo"), Set.copyOf(keysReply(run("KEYS", "h[ae]llo"))));
+        assertEquals(Set.of("hallo", "hxllo", "h*llo"), Set.copyOf(keysReply(run("KEYS", "h[^e]llo"))));
+        assertEquals(Set.of("h*llo"), Set.copyOf(keysReply(run("KEYS", "h\\*llo"))));
+        assertEquals(Set.of("help"), Set.copyOf(keysReply(run("KEYS", "hel[a-p]"))));
+        assertEquals(7, keysReply(run("KEYS", "*")).size());
+        assertEquals("*0\r\n", run("KEYS", "nothing*"));
+    }
+
+    private static List<String> keysReply(String reply) {
+        List<String> keys = new ArrayList<>();
+        String[] lines = reply.split("\r\n");
+        for (int i = 2; i < lines.length; i += 2) {
+            keys.add(lines[i]);
+        }
+        return keys;
+    }
+
+    @Test
+    @DisplayName("SCAN walks every key a few at a time and ends with cursor 0")
+    void testScanFullWalk() throws IOException {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            stringStorage.set("key:" + i, "v", null);
+            expected.add("key:" + i);
+        }
+
+        Set<String> seen = new HashSet<>();
+        String cursor = "0";
+        int calls = 0;
+        do {
+            List<String> keys = new ArrayList<>();
+            cursor = parseScan(run("SCAN", cursor, "COUNT", "7"), keys);
+            // Whole segments at a time, so a call may go a little past COUNT
+            assertTrue(keys.size() >= 7 || cursor.equals("0"), keys.toString());
+            seen.addAll(keys);
+            calls++;
+        } while (!cursor.equals("0"));
+
+        assertEquals(expected, seen);
+        assertTrue(calls > 1000 / 7 / 2, "calls: " + calls);
+    }
+
+    @Test
+    @DisplayName("SCAN returns every key present throughout, even when the table resizes during the walk")
+    void testScanAcrossResize() throws IOException {
+        Set<String> original = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            stringStorage.set("old:" + i, "v", null);
+            original.add("old:" + i);
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<String> keys = new ArrayList<>();
+        String cursor = parseScan(run("SCAN", "0", "COUNT", "10"), keys);
+        seen.addAll(keys);
+        // Grows the table many times over while the walk is under way
+        for (int i = 0; i < 20_000; i++) {
+            stringStorage.set("new:" + i, "v", null);
+        }
+        while (!cursor.equals("0")) {
+            keys.clear();
+            cursor = parseScan(run("SCAN", cursor, "COUNT", "1000"), keys);
+            seen.addAll(keys);
+        }
+
+        assertTrue(seen.containsAll(original));
+    }
+
+    @Test
+    @DisplayName("SCAN cursors hold no state: a cursor can be retried and abandoned walks cost nothing")
+    void testScanCursorIsStateless() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            stringStorage.set("key:" + i, "v", null);
+        }
+        // Walks abandoned after their first call leave nothing behind
+        for (int i = 0; i < 5000; i++) {
+            parseScan(run("SCAN", "0", "COUNT", "1"), new ArrayList<>());
+        }
+
+        List<String> first = new ArrayList<>();
+        String cursor = parseScan(run("SCAN", "0", "COUNT", "10"), first);
+        List<String> retried = new ArrayList<>();
+        assertEquals(cursor, parseScan(run("SCAN", "0", "COUNT", "10"), retried));
+        assertEquals(first, retried);
+
+        List<String> next = new ArrayList<>();
+        String after = parseScan(run("SCAN", cursor, "COUNT", "10"), next);
+        List<String> nextRetried = new ArrayList<>();
+        assertEquals(after, parseScan(run("SCAN", cursor, "COUNT", "10"), nextRetried));
+        assertEquals(next, nextRetried);
+
+        // Any number is a cursor
+        assertTrue(run("SCAN", "999999").startsWith("*2\r\n"));
+    }
+
+    @Test
+    @DisplayName("SCAN filters by MATCH and TYPE, and rejects bad arguments")
+    void testScanOptions() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            stringStorage.set("user:" + i, "v", null);
+            listStorage.rightPush("queue:" + i, "a");
+        }
+
+        List<String> keys = new ArrayList<>();
+        assertEquals("0", parseScan(run("SCAN", "0", "MATCH", "user:1*", "COUNT", "1000"), keys));
+        assertEquals(11, keys.size());
+        keys.clear();
+        assertEquals("0", parseScan(run("SCAN", "0", "type", "list", "count", "1000"), keys));
+        assertEquals(50, keys.size());
+        assertTrue(keys.stream().allMatch(key -> key.startsWith("queue:")));
+        keys.clear();
+        assertEquals("0", parseScan(run("SCAN", "0", "MATCH", "user:*", "TYPE", "list", "COUNT", "1000"), keys));
+        assertTrue(keys.isEmpty());
+
+        assertEquals("-ERR invalid cursor\r\n", run("SCAN", "abc"));
+        assertEquals("-ERR invalid cursor\r\n", run("SCAN", "-1"));
+        assertEquals("-ERR syntax error\r\n", run("SCAN", "0", "COUNT", "0"));
+        assertEquals("-ERR syntax error\r\n", run("SCAN", "0", "LIMIT", "5"));
+        assertEquals("-ERR syntax error\r\n", run("SCAN", "0", "MATCH"));
+        assertEquals("-ERR unknown type name 'hash'\r\n", run("SCAN", "0", "TYPE", "hash"));
+    }
+
+    // ========== Statistics Tests ==========
+
+    @Test
+    @DisplayName("Key counters follow inserts, overwrites, deletes and emptied values")
+    void testKeyCounters() throws IOException {
+        stringStorage.set("s1", "v", null);
+        stringStorage.set("s2", "v", null);
+        listStorage.rightPush("l", "a");
+        streamStorage.addEntry("x", "1-1", Map.of("f", "v"));
+        assertEquals(4, keyspace.keyCount(null));
+        assertEquals(2, keyspace.keyCount(RedisObject.Type.STRING));
+        assertEquals(":4\r\n", run("DBSIZE"));
+
+        run("SET", "l", "now a string");
+        assertEquals(3, keyspace.keyCount(RedisObject.Type.STRING));
+        assertEquals(0, keyspace.keyCount(RedisObject.Type.LIST));
+
+        listStorage.rightPush("q", "a");
+        listStorage.leftPop("q", 1);
+        keyspace.delete("s1");
+        run("DEL", "x");
+        assertEquals(2, keyspace.keyCount(null));
+        assertEquals(0, keyspace.keyCount(RedisObject.Type.STREAM));
+        assertEquals(":2\r\n", run("DBSIZE"));
+    }
+
+    @Test
+    @DisplayName("The counters include an expired key until the expire cycle removes it")
+    void testExpiredKeysInCounts() {
+        stringStorage.set("live", "v", null);
+        stringStorage.set("gone", "v", System.currentTimeMillis() - 1);
+
+        assertEquals(2, keyspace.keyCount(null));
+        assertEquals(2, keyspace.size(null));
+        new ExpireCycle(keyspace).runCycle();
+        assertEquals(1, keyspace.keyCount(null));
+        assertEquals(0, keyspace.expiresSize());
+        assertEquals(1, keyspace.getExpiredKeys());
+    }
+
+    @Test
+    @DisplayName("The average TTL follows EXPIRE, PERSIST, overwrites and deletes")
+    void testAverageTtl() {
+        assertEquals(0, keyspace.averageTtl());
+        long now = System.currentTimeMillis();
+        stringStorage.set("a", "v", now + 10_000);
+        stringStorage.set("b", "v", now + 20_000);
+        assertEquals(15_000, keyspace.averageTtl(), 1_000);
+
+        keyspace.setExpiry("a", now + 40_000);
+        assertEquals(30_000, keyspace.averageTtl(), 1_000);
+
+        keyspace.removeExpiry("b");
+        assertEquals(40_000, keyspace.averageTtl(), 1_000);
+
+        stringStorage.set("c", "v", now + 60_000);
+        stringStorage.set("a", "v", null);
+        assertEquals(60_000, keyspace.averageTtl(), 1_000);
+
+        keyspace.delete("c");
+        assertEquals(0, keyspace.expiresSize());
+        assertEquals(0, keyspace.averageTtl());
+    }
+
+    @Test
+    @DisplayName("INFO keyspace reports the database's keys, expires and average TTL")
+    void testInfoKeyspace() throws IOException {
+        assertEquals("$12\r\n# Keyspace\r\n\r\n", run("INFO", "keyspace"));
+
+        stringStorage.set("a", "v", System.currentTimeMillis() + 100_000);
+        stringStorage.set("b", "v", null);
+        listStorage.rightPush("l", "a");
+        String info = run("INFO", "keyspace");
+
+        assertTrue(info.contains("db0:keys=3,expires=1,avg_ttl="));
+        long averageTtl = Long.parseLong(info.replaceAll("(?s).*avg_ttl=(\\d+).*", "$1"));
+        assertTrue(averageTtl > 90_000 && averageTtl <= 100_000);
+        assertTrue(info.contains("db0_types:string=2,list=1,stream=0\r\n"));
+        assertTrue(run("INFO").contains("# Keyspace\r\ndb0:keys=3"));
+    }
+}
@@ -0,0 +1,166 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import StorageManager.Log;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for Log.
+ * Tests level gating, lazy messages, level parsing and the written line format.
+ */
+@DisplayName("Log Tests")
+class LogTest {
+
+    private ByteArrayOutputStream captured;
+    private Log.Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        assertTrue(Log.flush(1000));
+        previousLevel = Log.getLevel();
+        captured = new ByteArrayOutputStream();
+        Log.setOutput(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Log.flush(1000);
+        Log.setOutput(System.out);
+        Log.setLevel(previousLevel);
+    }
+
+    private String written() {
+        assertTrue(Log.flush(1000));
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    // ========== Level Tests ==========
+
+    @Test
+    @DisplayName("Messages below the level are not written")
+    void testLevelGating() {
+        Log.setLevel(Log.Level.NOTICE);
+
+        Log.debug("debug message");
+        Log.verbose("verbose message");
+        Log.notice("notice message");
+        Log.warning("warning message");
+
+        String output = written();
+        assertFalse(output.contains("debug message"));
+        assertFalse(output.contains("verbose message"));
+        assertTrue(output.contains("notice message"));
+        assertTrue(output.contains("warning message"));
+    }
+
+    @Test
+    @DisplayName("A disabled lazy message is never built")
+    void testSupplierNotCalledWhenDisabled() {
+        AtomicInteger calls = new AtomicInteger();
+        Log.setLevel(Log.Level.WARNING);
+
+        Log.debug(() -> "debug " + calls.incrementAndGet());
+        Log.verbose(() -> "verbose " + calls.incrementAndGet());
+        assertEquals(0, calls.get());
+
+        Log.setLevel(Log.Level.DEBUG);
+        Log.debug(() -> "debug " + calls.incrementAndGet());
+        assertEquals(1, calls.get());
+        assertTrue(written().contains("debug 1"));
+    }
+
+    @Test
+    @DisplayName("Level names parse ignoring case")
+    void testParseLevel() {
+        assertEquals(Log.Level.DEBUG, Log.parseLevel("debug"));
+        assertEquals(Log.Level.VERBOSE, Log.parseLevel("VERBOSE"));
+        assertEquals(Log.Level.NOTICE, Log.parseLevel("Notice"));
+        assertEquals(Log.Level.WARNING, Log.parseLevel("warning"));
+        assertEquals("notice", Log.Level.NOTICE.configName());
+        assertThrows(IllegalArgumentException.class, () -> Log.parseLevel("trace"));
+    }
+
+    @Test
+    @DisplayName("isEnabled follows the configured level")
+    void testIsEnabled() {
+        Log.setLevel(Log.Level.VERBOSE);
+
+        assertFalse(Log.isDebugEnabled());
+        assertFalse(Log.isEnabled(Log.Level.DEBUG));
+        assertTrue(Log.isEnabled(Log.Level.VERBOSE));
+        assertTrue(Log.isEnabled(Log.Level.WARNING));
+    }
+
+    // ========== Output Tests ==========
+
+    @Test
+    @DisplayName("Lines carry the pid, a timestamp and the level marker")
+    void testLineFormat() {
+        Log.setLevel(Log.Level.DEBUG);
+
+        Log.debug("d");
+        Log.verbose("v");
+        Log.notice("n");
+        Log.warning("w");
+
+        String[] lines = written().split("\n");
+        assertEquals(4, lines.length);
+        String pid = String.valueOf(ProcessHandle.current().pid());
+        String[] marks = {".", "-", "*", "#"};
+        String[] messages = {"d", "v", "n", "w"};
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].matches(pid + " \\d{2} \\w{3} \\d{4} \\d{2}:\\d{2}:\\d{2}\\.\\d{3} .*"), lines[i]);
+            assertTrue(lines[i].endsWith(" " + marks[i] + " " + messages[i]), lines[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Messages from one thread keep their order")
+    void testOrdering() {
+        Log.setLevel(Log.Level.NOTICE);
+
+        for (int i = 0; i < 1000; i++) {
+            Log.notice("message " + i);
+        }
+
+        String[] lines = written().split("\n");
+        assertEquals(1000, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].endsWith("* message " + i), lines[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Messages from concurrent threads are all written")
+    void testConcurrentLogging() throws InterruptedException {
+        Log.setLevel(Log.Level.NOTICE);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    Log.notice("thread " + thread + " message " + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String output = written();
+        assertEquals(0, Log.droppedMessages());
+        for (int t = 0; t < threads.length; t++) {
+            assertTrue(output.contains("* thread " + t + " message 499\n"));
+        }
+        assertEquals(threads.length * 500, output.split("\n").length);
+    }
+}
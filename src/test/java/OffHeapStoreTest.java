@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import StorageManager.Keyspace;
+import StorageManager.OffHeapStore;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for string values kept in native memory by an OffHeapStore.
+ */
+@DisplayName("OffHeapStore Tests")
+class OffHeapStoreTest {
+
+    private Keyspace keyspace;
+    private StringStorage storage;
+    private OffHeapStore store;
+
+    @BeforeEach
+    void setUp() {
+        keyspace = new Keyspace();
+        storage = new StringStorage(keyspace);
+        store = new OffHeapStore();
+        storage.useOffHeapStore(store);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    private static byte[] filled(int length, int fill) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) fill);
+        return bytes;
+    }
+
+    // ========== Storage Tests ==========
+
+    @Test
+    @DisplayName("Values of every size class round-trip, and small values stay on the heap")
+    void testRoundTrip() {
+        int[] lengths = {0, 1, OffHeapStore.MIN_VALUE_SIZE - 1, OffHeapStore.MIN_VALUE_SIZE, 100, 4096, 300_000, 1 << 20, (1 << 20) + 1, 3_000_000};
+        for (int i = 0; i < lengths.length; i++) {
+            storage.set("k" + i, filled(lengths[i], 'a' + i), null);
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            assertArrayEquals(filled(lengths[i], 'a' + i), storage.getBytes("k" + i), "length " + lengths[i]);
+        }
+        assertEquals("raw", keyspace.peek("k4").encoding());
+        assertEquals("embstr", keyspace.peek("k1").encoding());
+        assertTrue(store.getAllocatedBytes() >= 3_000_000);
+    }
+
+    @Test
+    @DisplayName("Overwritten and deleted values give their chunks back for reuse")
+    void testChunksAreReused() {
+        for (int round = 0; round < 1000; round++) {
+            storage.set("k" + (round % 10), filled(1000, round), null);
+        }
+        // Ten live 1000-byte values and a few freed ones fit one slab
+        assertEquals(1 << 20, store.getAllocatedBytes());
+        assertArrayEquals(filled(1000, 999), storage.getBytes("k9"));
+
+        storage.set("big", filled(2 << 20, 'b'), null);
+        long withBig = store.getAllocatedBytes();
+        keyspace.delete("big");
+        assertEquals(withBig - (2 << 20), store.getAllocatedBytes());
+        for (int i = 0; i < 10; i++) {
+            keyspace.delete("k" + i);
+        }
+        assertEquals(0, keyspace.getUsedMemory());
+    }
+
+    @Test
+    @DisplayName("Used memory counts the native chunks")
+    void testUsedMemoryCountsNativeMemory() {
+        storage.set("k", filled(10_000, 'x'), null);
+
+        assertTrue(keyspace.getUsedMemory() > 10_000);
+    }
+
+    @Test
+    @DisplayName("INCRBYFLOAT reads an off-heap value and replaces it")
+    void testIncrementByFloat() {
+        storage.set("f", "1." + "0".repeat(80), null);
+
+        assertEquals("2.5", storage.incrementByFloat("f", 1.5));
+        assertEquals("2.5", storage.get("f"));
+    }
+
+    // ========== Concurrency Tests ==========
+
+    @Test
+    @DisplayName("Readers never see a chunk reused by a concurrent overwrite")
+    void testConcurrentReadsAndOverwrites() throws InterruptedException {
+        storage.set("k", filled(500, 0), null);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            int writer = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; running.get(); i++) {
+                    // Sizes of one class, so freed chunks are reused at once
+                    storage.set("k", filled(490 + writer, i), null);
+                }
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    byte[] value = storage.getBytes("k");
+                    for (byte b : value) {
+                        if (b != value[0]) {
+                            failure.set("torn value of length " + value.length);
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,183 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.OutputBufferLimits;
+import StorageManager.OutputBufferLimits.ClientClass;
+import StorageManager.QueuedRespWriter;
+import StorageManager.RESPProtocol;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for per-class client output buffer limits.
+ * Tests the limit configuration and how queued writers enforce it.
+ */
+@DisplayName("Output Buffer Limits Tests")
+class OutputBufferLimitsTest {
+
+    private String savedLimits;
+
+    /**
+     * Writer whose socket never accepts anything, like a client that stopped reading.
+     */
+    private static class StalledWriter extends QueuedRespWriter {
+        int writeRequests = 0;
+        boolean connectionClosed = false;
+
+        StalledWriter(ClientClass clientClass) {
+            setClientClass(clientClass);
+        }
+
+        @Override
+        protected void requestWrite() {
+            writeRequests++;
+        }
+
+        @Override
+        protected void closeConnection() {
+            connectionClosed = true;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        savedLimits = OutputBufferLimits.describe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        String[] parts = savedLimits.split(" ");
+        for (int i = 0; i < parts.length; i += 4) {
+            OutputBufferLimits.set(parts[i], parts[i + 1], parts[i + 2], parts[i + 3]);
+        }
+    }
+
+    // ========== Configuration Tests ==========
+
+    @Test
+    @DisplayName("Defaults match Redis")
+    void testDefaults() {
+        assertEquals("normal 0 0 0 replica 268435456 67108864 60 pubsub 33554432 8388608 60", OutputBufferLimits.describe());
+    }
+
+    @Test
+    @DisplayName("Memory sizes accept units")
+    void testParseMemory() {
+        assertEquals(1024, OutputBufferLimits.parseMemory("1024"));
+        assertEquals(64 * 1024, OutputBufferLimits.parseMemory("64kb"));
+        assertEquals(256L * 1024 * 1024, OutputBufferLimits.parseMemory("256MB"));
+        assertEquals(1024L * 1024 * 1024, OutputBufferLimits.parseMemory("1gb"));
+        assertEquals(1000, OutputBufferLimits.parseMemory("1k"));
+        assertThrows(IllegalArgumentException.class, () -> OutputBufferLimits.parseMemory("lots"));
+    }
+
+    @Test
+    @DisplayName("Limits are set per class")
+    void testSetLimits() {
+        OutputBufferLimits.set("slave", "1mb", "512kb", "10");
+
+        OutputBufferLimits.Limit limit = OutputBufferLimits.get(ClientClass.REPLICA);
+        assertEquals(1024 * 1024, limit.hardLimitBytes);
+        assertEquals(512 * 1024, limit.softLimitBytes);
+        assertEquals(10, limit.softLimitSeconds);
+        assertEquals(0, OutputBufferLimits.get(ClientClass.NORMAL).hardLimitBytes);
+        assertThrows(IllegalArgumentException.class, () -> OutputBufferLimits.set("admin", "0", "0", "0"));
+    }
+
+    // ========== Enforcement Tests ==========
+
+    @Test
+    @DisplayName("Pending bytes include buffered and queued replies")
+    void testPendingBytes() throws IOException {
+        StalledWriter writer = new StalledWriter(ClientClass.NORMAL);
+        writer.writeBulk("hello");
+        assertEquals(11, writer.pendingBytes());
+        assertEquals(0, writer.queuedChunks());
+
+        writer.flush();
+        assertEquals(11, writer.pendingBytes());
+        assertEquals(1, writer.queuedChunks());
+        assertEquals(1, writer.writeRequests);
+    }
+
+    @Test
+    @DisplayName("Normal clients are unlimited by default")
+    void testNormalUnlimited() throws IOException {
+        StalledWriter writer = new StalledWriter(ClientClass.NORMAL);
+        for (int i = 0; i < 100; i++) {
+            writer.writeBulk("x".repeat(10_000));
+            writer.flush();
+        }
+
+        assertFalse(writer.connectionClosed);
+        assertEquals(100 * 10_010, writer.pendingBytes());
+    }
+
+    @Test
+    @DisplayName("Reaching the hard limit disconnects the client")
+    void testHardLimit() throws IOException {
+        OutputBufferLimits.set("replica", "100kb", "0", "0");
+        StalledWriter writer = new StalledWriter(ClientClass.REPLICA);
+        String value = "x".repeat(10_000);
+
+        IOException error = null;
+        for (int i = 0; i < 20 && error == null; i++) {
+            writer.writeBulk(value);
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        assertNotNull(error, "Flushing past the hard limit should fail");
+        assertTrue(writer.connectionClosed);
+        assertTrue(writer.isClosed());
+        assertEquals(0, writer.pendingBytes(), "Queued replies are dropped");
+    }
+
+    @Test
+    @DisplayName("Staying above the soft limit disconnects the client")
+    void testSoftLimit() throws Exception {
+        OutputBufferLimits.set("pubsub", "0", "1kb", "0");
+        StalledWriter writer = new StalledWriter(ClientClass.PUBSUB);
+
+        writer.writeBulk("x".repeat(2000));
+        writer.flush();
+        assertFalse(writer.connectionClosed, "Only the start of the soft limit period is recorded");
+
+        Thread.sleep(5);
+        writer.writeBulk("y");
+        assertThrows(IOException.class, writer::flush);
+        assertTrue(writer.connectionClosed);
+    }
+
+    // ========== CLIENT LIST Tests ==========
+
+    @Test
+    @DisplayName("CLIENT LIST shows the connection's pending output")
+    void testClientList() throws IOException {
+        Keyspace keyspace = new Keyspace();
+        HandleClient client = new HandleClient(null, 42, "master", new StringStorage(keyspace), new ListStorage(keyspace), new StreamStorage(keyspace));
+        String input = "*2\r\n$6\r\nCLIENT\r\n$4\r\nLIST\r\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        client.serve(new ByteArrayInputStream(input.getBytes(RESPProtocol.CHARSET)), output);
+
+        String reply = output.toString(RESPProtocol.CHARSET);
+        assertTrue(reply.startsWith("$"), "CLIENT LIST is a bulk string");
+        assertTrue(reply.contains("id=42 "), reply);
+        assertTrue(reply.contains("class=normal"), reply);
+        assertTrue(reply.contains("omem="), reply);
+    }
+}
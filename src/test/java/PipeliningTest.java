@@ -0,0 +1,136 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RESPProtocol;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for pipelined command execution on a client connection.
+ * Tests that replies of one batch are written together and in order.
+ */
+@DisplayName("Pipelining Tests")
+class PipeliningTest {
+
+    private StringStorage stringStorage;
+    private ListStorage listStorage;
+    private StreamStorage streamStorage;
+    private HandleClient client;
+    private CountingOutputStream socketOutput;
+
+    /**
+     * Records how many writes and flushes reach the socket.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int writes = 0;
+        int flushes = 0;
+
+        @Override
+        public void write(int b) {
+            writes++;
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        Keyspace keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
+        client = new HandleClient(null, 1, "master", stringStorage, listStorage, streamStorage);
+        socketOutput = new CountingOutputStream();
+    }
+
+    private static String encode(String... args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            sb.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    private void serve(String input) throws IOException {
+        client.serve(new ByteArrayInputStream(input.getBytes(RESPProtocol.CHARSET)), socketOutput);
+    }
+
+    // ========== Batching Tests ==========
+
+    @Test
+    @DisplayName("Pipelined commands are answered with a single write")
+    void testBatchFlushedOnce() throws IOException {
+        StringBuilder input = new StringBuilder();
+        // Small enough to arrive in a single read
+        for (int i = 0; i < 300; i++) {
+            input.append(encode("SET", "key" + i, "v" + i));
+        }
+
+        serve(input.toString());
+
+        assertEquals(1, socketOutput.writes, "300 pipelined replies should be sent in one write");
+        assertEquals("+OK\r\n".repeat(300), socketOutput.bytes.toString(RESPProtocol.CHARSET));
+        assertEquals("v299", stringStorage.get("key299"));
+    }
+
+    @Test
+    @DisplayName("Replies keep command order within a batch")
+    void testRepliesInOrder() throws IOException {
+        serve(encode("SET", "counter", "1") + encode("INCR", "counter") + encode("GET", "counter")
+                + encode("RPUSH", "list", "a", "b") + encode("LLEN", "list"));
+
+        assertEquals("+OK\r\n:2\r\n$1\r\n2\r\n:2\r\n:2\r\n", socketOutput.bytes.toString(RESPProtocol.CHARSET));
+    }
+
+    @Test
+    @DisplayName("Large batches are flushed when the buffer fills up")
+    void testLargeBatchFlushedAtThreshold() throws IOException {
+        String value = "x".repeat(1000);
+        StringBuilder input = new StringBuilder();
+        input.append(encode("SET", "big", value));
+        for (int i = 0; i < 500; i++) {
+            input.append(encode("GET", "big"));
+        }
+
+        serve(input.toString());
+
+        String expected = "+OK\r\n" + ("$1000\r\n" + value + "\r\n").repeat(500);
+        assertEquals(expected, socketOutput.bytes.toString(RESPProtocol.CHARSET));
+        assertTrue(socketOutput.writes > 1, "Replies larger than the buffer need more than one write");
+        assertTrue(socketOutput.writes < 50, "Replies should still be written in large chunks");
+    }
+
+    @Test
+    @DisplayName("Handlers do not flush after every command")
+    void testHandleCommandDoesNotFlush() throws IOException {
+        client.handleCommand(Arrays.asList("SET", "a", "1"), socketOutput);
+        client.handleCommand(Arrays.asList("GET", "a"), socketOutput);
+
+        assertEquals(0, socketOutput.flushes);
+        client.flushBatch(socketOutput);
+        assertEquals(1, socketOutput.flushes);
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
+import StorageManager.Keyspace;
 import StorageManager.ListStorage;
 import StorageManager.StreamStorage;
 import StorageManager.StringStorage;
@@ -33,9 +34,10 @@ class RDBTest {
 
     @BeforeEach
     void setUp() {
-        stringStorage = new StringStorage();
-        listStorage = new ListStorage();
-        streamStorage = new StreamStorage();
+        Keyspace keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
     }
 
     // ========== RdbWriter Basic Tests ==========
@@ -0,0 +1,334 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RESPParser;
+import StorageManager.RESPProtocol;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for the incremental byte-oriented RESP parser.
+ * Tests complete and partial frames, pipelining, big arguments and binary payloads.
+ */
+@DisplayName("RESPParser Tests")
+class RESPParserTest {
+
+    private RESPParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new RESPParser(64);
+    }
+
+    private static byte[] encode(String... args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            sb.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return sb.toString().getBytes(RESPProtocol.CHARSET);
+    }
+
+    private void feed(byte[] bytes) throws IOException {
+        feed(parser, bytes);
+    }
+
+    private static void feed(RESPParser target, byte[] bytes) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        while (in.available() > 0) {
+            target.readFrom(in);
+        }
+    }
+
+    private List<String> nextCommand() throws ProtocolException {
+        List<byte[]> args = parser.next();
+        return args == null ? null : RESPProtocol.decodeArguments(args);
+    }
+
+    // ========== Complete Frames ==========
+
+    @Test
+    @DisplayName("Parses a single complete command")
+    void testSingleCommand() throws IOException {
+        feed(encode("SET", "key", "value"));
+
+        assertEquals(Arrays.asList("SET", "key", "value"), nextCommand());
+        assertNull(parser.next());
+        assertFalse(parser.hasPendingInput());
+    }
+
+    @Test
+    @DisplayName("Parses pipelined commands from one read")
+    void testPipelinedCommands() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encode("PING"));
+        out.write(encode("SET", "a", "1"));
+        out.write(encode("GET", "a"));
+        feed(out.toByteArray());
+
+        assertEquals(List.of("PING"), nextCommand());
+        assertEquals(Arrays.asList("SET", "a", "1"), nextCommand());
+        assertEquals(Arrays.asList("GET", "a"), nextCommand());
+        assertNull(parser.next());
+    }
+
+    @Test
+    @DisplayName("Skips lines that are not RESP arrays")
+    void testSkipsNonArrayLines() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("garbage\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.write(encode("PING"));
+        feed(out.toByteArray());
+
+        assertEquals(List.of("PING"), nextCommand());
+    }
+
+    // ========== Partial Frames ==========
+
+    @Test
+    @DisplayName("Handles a command arriving one byte at a time")
+    void testByteByByte() throws IOException {
+        byte[] frame = encode("RPUSH", "list", "element");
+        for (int i = 0; i < frame.length - 1; i++) {
+            feed(new byte[] {frame[i]});
+            assertNull(parser.next(), "Command should be incomplete after " + (i + 1) + " bytes");
+            assertTrue(parser.hasPendingInput());
+        }
+        feed(new byte[] {frame[frame.length - 1]});
+
+        assertEquals(Arrays.asList("RPUSH", "list", "element"), nextCommand());
+    }
+
+    @Test
+    @DisplayName("Handles a command split across reads at every position")
+    void testSplitAtEveryPosition() throws IOException {
+        byte[] frame = encode("XADD", "stream", "1-1", "field", "value");
+        for (int split = 1; split < frame.length; split++) {
+            RESPParser splitParser = new RESPParser(16);
+            feed(splitParser, Arrays.copyOfRange(frame, 0, split));
+            assertNull(splitParser.next());
+            feed(splitParser, Arrays.copyOfRange(frame, split, frame.length));
+            List<byte[]> args = splitParser.next();
+            assertNotNull(args, "Split at " + split);
+            assertEquals(Arrays.asList("XADD", "stream", "1-1", "field", "value"), RESPProtocol.decodeArguments(args));
+        }
+    }
+
+    @Test
+    @DisplayName("Grows the buffer for payloads larger than its capacity")
+    void testLargePayload() throws IOException {
+        String value = "x".repeat(100_000);
+        feed(encode("SET", "big", value));
+
+        List<String> command = nextCommand();
+        assertNotNull(command);
+        assertEquals(value, command.get(2));
+    }
+
+    // ========== Big Arguments ==========
+
+    // Reads in chunks and parses after every read, like a connection does
+    private static List<List<byte[]>> stream(RESPParser target, InputStream in) throws IOException {
+        List<List<byte[]>> commands = new ArrayList<>();
+        while (target.readFrom(in) != -1) {
+            List<byte[]> args;
+            while ((args = target.next()) != null) {
+                commands.add(args);
+            }
+        }
+        return commands;
+    }
+
+    private static byte[] bigCommand(byte[] value, String... trailingArgs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("*" + (3 + trailingArgs.length) + "\r\n$3\r\nSET\r\n$3\r\nbig\r\n$" + value.length + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        for (String arg : trailingArgs) {
+            out.write(("$" + arg.length() + "\r\n" + arg + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] value = new byte[length];
+        new Random(42).nextBytes(value);
+        return value;
+    }
+
+    @Test
+    @DisplayName("A big argument is read straight into an array of its declared size")
+    void testBigArgumentReadDirectly() throws IOException {
+        byte[] value = randomBytes(1_000_000);
+        List<Integer> readSizes = new ArrayList<>();
+        InputStream in = new ByteArrayInputStream(bigCommand(value)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                readSizes.add(len);
+                return super.read(b, off, Math.min(len, 8192));
+            }
+        };
+
+        List<List<byte[]>> commands = stream(new RESPParser(64, 1024), in);
+
+        assertEquals(1, commands.size());
+        assertArrayEquals(value, commands.get(0).get(2));
+        // After the header, reads ask for the rest of the payload instead of growing a buffer
+        assertTrue(readSizes.stream().anyMatch(len -> len > 500_000), readSizes.toString());
+    }
+
+    @Test
+    @DisplayName("Big arguments survive every split and pipelining")
+    void testBigArgumentSplits() throws IOException {
+        byte[] value = randomBytes(5000);
+        ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+        pipeline.write(bigCommand(value, "PX", "100"));
+        pipeline.write(encode("GET", "big"));
+        byte[] bytes = pipeline.toByteArray();
+
+        for (int chunk : new int[] {1, 7, 1000, 4096, bytes.length}) {
+            int chunkSize = chunk;
+            InputStream in = new ByteArrayInputStream(bytes) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, chunkSize));
+                }
+            };
+            List<List<byte[]>> commands = stream(new RESPParser(64, 1024), in);
+
+            assertEquals(2, commands.size(), "chunk " + chunk);
+            assertArrayEquals(value, commands.get(0).get(2), "chunk " + chunk);
+            assertEquals("PX", new String(commands.get(0).get(3), RESPProtocol.CHARSET));
+            assertEquals(Arrays.asList("GET", "big"), RESPProtocol.decodeArguments(commands.get(1)));
+        }
+    }
+
+    @Test
+    @DisplayName("Big arguments are read from channels too")
+    void testBigArgumentFromChannel() throws IOException {
+        byte[] value = randomBytes(600_000);
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bigCommand(value)));
+        RESPParser channelParser = new RESPParser(64, 1024);
+        List<byte[]> args = null;
+        while (args == null && channelParser.readFrom(channel) != -1) {
+            args = channelParser.next();
+        }
+
+        assertNotNull(args);
+        assertArrayEquals(value, args.get(2));
+    }
+
+    @Test
+    @DisplayName("SET stores a big value in the array the parser read it into")
+    void testBigArgumentStoredAsRead() throws IOException {
+        byte[] value = randomBytes(100_000);
+        List<List<byte[]>> commands = stream(new RESPParser(64, 1024), new ByteArrayInputStream(bigCommand(value)));
+        Keyspace keyspace = new Keyspace();
+        StringStorage stringStorage = new StringStorage(keyspace);
+        HandleClient client = new HandleClient(null, 1, "master", stringStorage, new ListStorage(keyspace), new StreamStorage(keyspace));
+
+        client.handleCommand(RESPProtocol.decodeArguments(commands.get(0)), new ByteArrayOutputStream());
+
+        assertSame(commands.get(0).get(2), stringStorage.getBytes("big"));
+    }
+
+    @Test
+    @DisplayName("A big argument without its CRLF is a protocol error")
+    void testBigArgumentLengthMismatch() throws IOException {
+        byte[] bytes = bigCommand(randomBytes(2000));
+        bytes[bytes.length - 2] = 'x';
+
+        RESPParser bigParser = new RESPParser(64, 1024);
+        assertThrows(ProtocolException.class, () -> stream(bigParser, new ByteArrayInputStream(bytes)));
+    }
+
+    // ========== Binary Safety ==========
+
+    @Test
+    @DisplayName("Payloads may contain CRLF and arbitrary bytes")
+    void testBinaryPayload() throws IOException {
+        byte[] value = new byte[256];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) i;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("*3\r\n$3\r\nSET\r\n$3\r\nbin\r\n$256\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        feed(out.toByteArray());
+
+        List<byte[]> args = parser.next();
+        assertNotNull(args);
+        assertArrayEquals(value, args.get(2));
+    }
+
+    @Test
+    @DisplayName("Bulk length is counted in bytes, not chars")
+    void testMultiByteCharacters() throws IOException {
+        byte[] utf8 = "héllo".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("*2\r\n$4\r\nECHO\r\n$" + utf8.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(utf8);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        feed(out.toByteArray());
+
+        List<byte[]> args = parser.next();
+        assertNotNull(args);
+        assertArrayEquals(utf8, args.get(1));
+        // Decoded strings round-trip to the same bytes
+        assertArrayEquals(utf8, RESPProtocol.decodeArguments(args).get(1).getBytes(RESPProtocol.CHARSET));
+    }
+
+    // ========== Protocol Errors ==========
+
+    @Test
+    @DisplayName("Mismatched bulk length is a protocol error")
+    void testBulkLengthMismatch() throws IOException {
+        feed("*1\r\n$3\r\nPINGX\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(ProtocolException.class, () -> parser.next());
+    }
+
+    @Test
+    @DisplayName("Non-numeric length is a protocol error")
+    void testInvalidLength() throws IOException {
+        feed("*x\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(ProtocolException.class, () -> parser.next());
+    }
+
+    @Test
+    @DisplayName("Many commands reuse the buffer without growing unbounded")
+    void testManyCommands() throws IOException {
+        List<List<String>> received = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            feed(encode("SET", "key" + i, "value" + i));
+            List<String> command;
+            while ((command = nextCommand()) != null) {
+                received.add(command);
+            }
+        }
+
+        assertEquals(1000, received.size());
+        assertEquals(Arrays.asList("SET", "key999", "value999"), received.get(999));
+    }
+}
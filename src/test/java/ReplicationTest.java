@@ -2,12 +2,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import StorageManager.Keyspace;
 import StorageManager.ListStorage;
+import StorageManager.QueuedRespWriter;
+import StorageManager.RESPParser;
 import StorageManager.StreamStorage;
 import StorageManager.StringStorage;
 import StorageManager.RESPProtocol;
@@ -29,9 +35,10 @@ class ReplicationTest {
 
     @BeforeEach
     void setUp() {
-        stringStorage = new StringStorage();
-        listStorage = new ListStorage();
-        streamStorage = new StreamStorage();
+        Keyspace keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
         masterClient = new HandleClient(null, 1, "master", stringStorage, listStorage, streamStorage);
         outputStream = new ByteArrayOutputStream();
     }
@@ -196,6 +203,24 @@ class ReplicationTest {
         assertEquals("11", stringStorage.get("counter"));
     }
 
+    @Test
+    @DisplayName("DECR, INCRBY, DECRBY and INCRBYFLOAT reply with the new value")
+    void testIncrFamilyCommands() throws IOException {
+        masterClient.handleCommand(Arrays.asList("DECR", "counter"), outputStream);
+        masterClient.handleCommand(Arrays.asList("INCRBY", "counter", "11"), outputStream);
+        masterClient.handleCommand(Arrays.asList("DECRBY", "counter", "5"), outputStream);
+        masterClient.handleCommand(Arrays.asList("INCRBYFLOAT", "counter", "0.5"), outputStream);
+        assertEquals(":-1\r\n:10\r\n:5\r\n$3\r\n5.5\r\n", outputStream.toString());
+
+        outputStream.reset();
+        masterClient.handleCommand(Arrays.asList("INCR", "counter"), outputStream);
+        masterClient.handleCommand(Arrays.asList("INCRBY", "counter", "x"), outputStream);
+        masterClient.handleCommand(Arrays.asList("INCRBYFLOAT", "counter", "x"), outputStream);
+        assertEquals("-ERR value is not an integer or out of range\r\n"
+            + "-ERR value is not an integer or out of range\r\n"
+            + "-ERR value is not a valid float\r\n", outputStream.toString());
+    }
+
     @Test
     @DisplayName("Multiple commands propagate in order")
     void testMultipleCommandsPropagation() throws IOException {
@@ -214,6 +239,40 @@ class ReplicationTest {
         assertEquals(1, listStorage.length("list1"));
     }
 
+    @Test
+    @DisplayName("INCRBYFLOAT reaches replicas as a SET of its result keeping the TTL")
+    void testIncrByFloatPropagatesSet() throws IOException {
+        ReplicaLink link = new ReplicaLink();
+        masterClient.handleCommand(Arrays.asList("PSYNC", "?", "-1"), link);
+        int resyncLength = link.received.size();
+        try {
+            masterClient.handleCommand(Arrays.asList("INCRBYFLOAT", "f", "10.5"), outputStream);
+            masterClient.handleCommand(Arrays.asList("INCRBYFLOAT", "f", "abc"), outputStream);
+            link.flush();
+        } finally {
+            link.disconnect();
+        }
+
+        String propagated = link.received.toString(StandardCharsets.ISO_8859_1).substring(resyncLength);
+        assertEquals("*4\r\n$3\r\nSET\r\n$1\r\nf\r\n$4\r\n10.5\r\n$7\r\nKEEPTTL\r\n", propagated);
+    }
+
+    @Test
+    @DisplayName("SET KEEPTTL keeps the key's expiry")
+    void testSetKeepTtl() throws IOException {
+        masterClient.handleCommand(Arrays.asList("SET", "key1", "value1", "PX", "10000"), outputStream);
+        Long expiryTime = stringStorage.getExpiryTime("key1");
+        masterClient.handleCommand(Arrays.asList("SET", "key1", "value2", "KEEPTTL"), outputStream);
+
+        assertEquals("value2", stringStorage.get("key1"));
+        assertEquals(expiryTime, stringStorage.getExpiryTime("key1"));
+
+        outputStream.reset();
+        masterClient.handleCommand(Arrays.asList("SET", "key1", "value3", "PX", "100", "KEEPTTL"), outputStream);
+        assertTrue(outputStream.toString().startsWith("-ERR syntax error"));
+        assertEquals("value2", stringStorage.get("key1"));
+    }
+
     // ========== Replica Client Simulation Tests ==========
 
     @Test
@@ -249,6 +308,69 @@ class ReplicationTest {
         assertEquals(3, listStorage.length("mylist"));
     }
 
+    // ========== Eviction Propagation Tests ==========
+
+    /**
+     * A replica's link as the master sees it, collecting what is sent on it.
+     */
+    private static class ReplicaLink extends QueuedRespWriter {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        protected void requestWrite() throws IOException {
+            writeTo(received);
+        }
+
+        @Override
+        protected void closeConnection() {
+        }
+    }
+
+    @Test
+    @DisplayName("Keys the master evicts are deleted on the replica")
+    void testEvictionPropagatesDel() throws IOException {
+        Keyspace replicaKeyspace = new Keyspace();
+        StringStorage replicaStrings = new StringStorage(replicaKeyspace);
+        HandleClient replicaClient = new HandleClient(null, 2, "slave", replicaStrings,
+            new ListStorage(replicaKeyspace), new StreamStorage(replicaKeyspace));
+        ReplicaLink link = new ReplicaLink();
+        masterClient.handleCommand(Arrays.asList("PSYNC", "?", "-1"), link);
+        // Only what follows the full resync is replayed
+        int resyncLength = link.received.size();
+        try {
+            masterClient.handleCommand(Arrays.asList("CONFIG", "SET", "maxmemory-policy", "allkeys-lru"), outputStream);
+            masterClient.handleCommand(Arrays.asList("CONFIG", "SET", "maxmemory", "20000"), outputStream);
+            String value = "v".repeat(1000);
+            for (int i = 0; i < 100; i++) {
+                masterClient.handleCommand(Arrays.asList("SET", "key:" + i, value), outputStream);
+            }
+            link.flush();
+
+            byte[] stream = link.received.toByteArray();
+            RESPParser parser = new RESPParser();
+            ByteArrayInputStream in = new ByteArrayInputStream(stream, resyncLength, stream.length - resyncLength);
+            while (parser.readFrom(in) > 0) {
+                for (List<byte[]> args = parser.next(); args != null; args = parser.next()) {
+                    List<String> command = new ArrayList<>();
+                    for (byte[] arg : args) {
+                        command.add(new String(arg, StandardCharsets.ISO_8859_1));
+                    }
+                    replicaClient.handleCommand(command, new ByteArrayOutputStream());
+                }
+            }
+        } finally {
+            // A closed link is dropped from the replicas at the next propagation
+            link.disconnect();
+        }
+
+        Keyspace masterKeyspace = stringStorage.keyspace();
+        assertTrue(masterKeyspace.evictor().getEvictedKeys() > 0);
+        assertEquals(masterKeyspace.keyCount(null), replicaKeyspace.keyCount(null));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(masterKeyspace.exists("key:" + i), replicaKeyspace.exists("key:" + i), "key:" + i);
+        }
+    }
+
     // ========== RESPProtocol Tests ==========
 
     @Test
@@ -0,0 +1,184 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RESPProtocol;
+import StorageManager.RespWriter;
+import StorageManager.StreamEntry;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for RESP3 support.
+ * Tests the RESP3 reply types and the replies of a connection that switched protocols with HELLO.
+ */
+@DisplayName("RESP3 Tests")
+class Resp3Test {
+
+    private ByteArrayOutputStream output;
+    private RespWriter writer;
+    private HandleClient client;
+
+    @BeforeEach
+    void setUp() {
+        output = new ByteArrayOutputStream();
+        writer = new RespWriter(output);
+        Keyspace keyspace = new Keyspace();
+        client = new HandleClient(null, 7, "master", new StringStorage(keyspace), new ListStorage(keyspace), new StreamStorage(keyspace));
+    }
+
+    private String written() throws IOException {
+        writer.flush();
+        String reply = output.toString(RESPProtocol.CHARSET);
+        output.reset();
+        return reply;
+    }
+
+    private String run(String... command) throws IOException {
+        client.handleCommand(Arrays.asList(command), writer);
+        return written();
+    }
+
+    // ========== Reply Type Tests ==========
+
+    @Test
+    @DisplayName("RESP3 types match the RESPProtocol formatting")
+    void testResp3Types() throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("dir", "/tmp");
+        map.put("dbfilename", "dump.rdb");
+        List<String> members = Arrays.asList("a", "b");
+        writer.setProtocolVersion(RESPProtocol.RESP3);
+
+        writer.writeMap(map);
+        writer.writeSet(members);
+        writer.writeDouble(3.5);
+        writer.writeNull();
+        writer.writePush(Arrays.asList("invalidate", "key"));
+        writer.writeAttribute(map);
+
+        assertEquals(RESPProtocol.formatMap(map) + RESPProtocol.formatSet(members) + RESPProtocol.formatDouble(3.5)
+                + RESPProtocol.RESP3_NULL + RESPProtocol.formatPush(Arrays.asList("invalidate", "key"))
+                + RESPProtocol.formatAttribute(map), written());
+    }
+
+    @Test
+    @DisplayName("RESP2 connections get the flat equivalents")
+    void testResp2Fallbacks() throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("dir", "/tmp");
+
+        writer.writeMap(map);
+        writer.writeSet(Arrays.asList("a"));
+        writer.writeDouble(1.5);
+        writer.writeNull();
+        writer.writePush(Arrays.asList("message"));
+        writer.writeAttribute(map);
+
+        assertEquals("*2\r\n$3\r\ndir\r\n$4\r\n/tmp\r\n*1\r\n$1\r\na\r\n$3\r\n1.5\r\n$-1\r\n*1\r\n$7\r\nmessage\r\n", written());
+    }
+
+    @Test
+    @DisplayName("Doubles use the Redis text form")
+    void testDoubleFormatting() {
+        assertEquals(",10\r\n", RESPProtocol.formatDouble(10.0));
+        assertEquals(",-2.25\r\n", RESPProtocol.formatDouble(-2.25));
+        assertEquals(",inf\r\n", RESPProtocol.formatDouble(Double.POSITIVE_INFINITY));
+        assertEquals(",-inf\r\n", RESPProtocol.formatDouble(Double.NEGATIVE_INFINITY));
+        assertEquals(",nan\r\n", RESPProtocol.formatDouble(Double.NaN));
+    }
+
+    // ========== HELLO Tests ==========
+
+    @Test
+    @DisplayName("HELLO 3 switches the connection and replies with a map")
+    void testHello3() throws IOException {
+        String reply = run("HELLO", "3");
+
+        assertTrue(reply.startsWith("%7\r\n$6\r\nserver\r\n$5\r\nredis\r\n"), reply);
+        assertTrue(reply.contains("$5\r\nproto\r\n:3\r\n"), reply);
+        assertTrue(reply.contains("$2\r\nid\r\n:7\r\n"), reply);
+        assertEquals(RESPProtocol.RESP3, writer.getProtocolVersion());
+        assertEquals("_\r\n", run("GET", "missing"));
+    }
+
+    @Test
+    @DisplayName("HELLO without a version keeps RESP2")
+    void testHelloWithoutVersion() throws IOException {
+        String reply = run("HELLO");
+
+        assertTrue(reply.startsWith("*14\r\n"), reply);
+        assertTrue(reply.contains("$5\r\nproto\r\n:2\r\n"), reply);
+        assertEquals("$-1\r\n", run("GET", "missing"));
+    }
+
+    @Test
+    @DisplayName("HELLO rejects unsupported versions and options")
+    void testHelloErrors() throws IOException {
+        assertEquals("-NOPROTO unsupported protocol version\r\n", run("HELLO", "4"));
+        assertTrue(run("HELLO", "three").startsWith("-ERR"));
+        assertTrue(run("HELLO", "3", "AUTH", "default", "secret").startsWith("-ERR"));
+        assertEquals(RESPProtocol.RESP2, writer.getProtocolVersion());
+    }
+
+    @Test
+    @DisplayName("HELLO SETNAME names the connection in CLIENT LIST")
+    void testHelloSetname() throws IOException {
+        String input = "*4\r\n$5\r\nHELLO\r\n$1\r\n3\r\n$7\r\nSETNAME\r\n$8\r\nworker-1\r\n"
+                + "*2\r\n$6\r\nCLIENT\r\n$4\r\nLIST\r\n";
+
+        client.serve(new ByteArrayInputStream(input.getBytes(RESPProtocol.CHARSET)), output);
+
+        String reply = output.toString(RESPProtocol.CHARSET);
+        assertTrue(reply.contains("id=7 "), reply);
+        assertTrue(reply.contains(" name=worker-1 resp=3 "), reply);
+    }
+
+    // ========== Command Reply Tests ==========
+
+    @Test
+    @DisplayName("CONFIG GET and INFO return maps after HELLO 3")
+    void testConfigAndInfoMaps() throws IOException {
+        String flat = run("CONFIG", "GET", "dir");
+        run("HELLO", "3");
+        String map = run("CONFIG", "GET", "dir");
+
+        assertTrue(flat.startsWith("*2\r\n$3\r\ndir\r\n"), flat);
+        assertTrue(map.startsWith("%1\r\n$3\r\ndir\r\n"), map);
+        assertTrue(run("INFO", "replication").startsWith("%3\r\n$4\r\nrole\r\n$6\r\nmaster\r\n"));
+    }
+
+    @Test
+    @DisplayName("XRANGE and XREAD return field and stream maps after HELLO 3")
+    void testStreamMaps() throws IOException {
+        run("XADD", "sensor", "1-1", "temperature", "25");
+        run("HELLO", "3");
+
+        assertEquals("*1\r\n*2\r\n$3\r\n1-1\r\n%1\r\n$11\r\ntemperature\r\n$2\r\n25\r\n", run("XRANGE", "sensor", "-", "+"));
+        assertEquals("%1\r\n$6\r\nsensor\r\n*1\r\n*2\r\n$3\r\n1-1\r\n%1\r\n$11\r\ntemperature\r\n$2\r\n25\r\n",
+                run("XREAD", "streams", "sensor", "0-0"));
+    }
+
+    @Test
+    @DisplayName("RESP2 stream replies are unchanged")
+    void testStreamResp2() throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("temperature", "25");
+        List<StreamEntry> entries = Arrays.asList(new StreamEntry("1-1", fields));
+        run("XADD", "sensor", "1-1", "temperature", "25");
+
+        assertEquals(RESPProtocol.formatStreamEntryArray(entries), run("XRANGE", "sensor", "-", "+"));
+    }
+}
@@ -0,0 +1,217 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import StorageManager.Keyspace;
+import StorageManager.ListStorage;
+import StorageManager.RESPProtocol;
+import StorageManager.RespWriter;
+import StorageManager.StreamEntry;
+import StorageManager.StreamStorage;
+import StorageManager.StringStorage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test suite for RespWriter reply encoding.
+ * Tests that every reply type matches the String-based RESPProtocol formatting.
+ */
+@DisplayName("RespWriter Tests")
+class RespWriterTest {
+
+    private ByteArrayOutputStream output;
+    private RespWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        output = new ByteArrayOutputStream();
+        writer = new RespWriter(output);
+    }
+
+    private String written() throws IOException {
+        writer.flush();
+        return output.toString(RESPProtocol.CHARSET);
+    }
+
+    // ========== Simple Reply Tests ==========
+
+    @Test
+    @DisplayName("Precomputed replies")
+    void testPrecomputedReplies() throws IOException {
+        writer.writeOk();
+        writer.writePong();
+        writer.writeNull();
+        writer.writeEmptyArray();
+
+        assertEquals(RESPProtocol.OK_RESPONSE + RESPProtocol.PONG_RESPONSE
+                + RESPProtocol.NULL_BULK_STRING + RESPProtocol.EMPTY_ARRAY, written());
+    }
+
+    @Test
+    @DisplayName("Simple strings and errors")
+    void testSimpleStringAndError() throws IOException {
+        writer.writeSimpleString("QUEUED");
+        writer.writeError("ERR something failed");
+
+        assertEquals(RESPProtocol.formatSimpleString("QUEUED") + RESPProtocol.formatError("ERR something failed"), written());
+    }
+
+    @Test
+    @DisplayName("Integers inside and outside the precomputed range")
+    void testIntegers() throws IOException {
+        long[] values = {0, 1, 42, 255, 256, 1000, -1, -12345, Long.MAX_VALUE, Long.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        for (long value : values) {
+            writer.writeInteger(value);
+            expected.append(RESPProtocol.formatInteger(value));
+        }
+
+        assertEquals(expected.toString(), written());
+    }
+
+    // ========== Bulk String Tests ==========
+
+    @Test
+    @DisplayName("Bulk strings from Strings and byte arrays")
+    void testBulkStrings() throws IOException {
+        writer.writeBulk("hello");
+        writer.writeBulk("");
+        writer.writeBulk("hello".getBytes(RESPProtocol.CHARSET));
+        writer.writeBulk((String) null);
+        writer.writeBulk((byte[]) null);
+
+        assertEquals("$5\r\nhello\r\n$0\r\n\r\n$5\r\nhello\r\n$-1\r\n$-1\r\n", written());
+    }
+
+    @Test
+    @DisplayName("Bulk strings keep every byte value")
+    void testBinaryBulkString() throws IOException {
+        byte[] value = new byte[256];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) i;
+        }
+        writer.writeBulk(value);
+        writer.writeBulk(new String(value, RESPProtocol.CHARSET));
+        writer.flush();
+
+        byte[] bytes = output.toByteArray();
+        byte[] header = "$256\r\n".getBytes(RESPProtocol.CHARSET);
+        int second = header.length + value.length + 2;
+        assertArrayEquals(value, Arrays.copyOfRange(bytes, header.length, header.length + value.length));
+        assertArrayEquals(value, Arrays.copyOfRange(bytes, second + header.length, second + header.length + value.length));
+    }
+
+    @Test
+    @DisplayName("Values larger than the buffer are written whole and in order")
+    void testLargeBulkString() throws IOException {
+        String large = "x".repeat(RespWriter.BUFFER_SIZE * 2 + 17);
+        writer.writeInteger(7);
+        writer.writeBulk(large);
+        writer.writeBulk(large.getBytes(RESPProtocol.CHARSET));
+        writer.writeInteger(8);
+
+        String bulk = RESPProtocol.formatBulkString(large);
+        assertEquals(":7\r\n" + bulk + bulk + ":8\r\n", written());
+    }
+
+    // ========== Aggregate Tests ==========
+
+    @Test
+    @DisplayName("String arrays and key-value arrays")
+    void testArrays() throws IOException {
+        List<String> values = Arrays.asList("a", "bb", "ccc");
+        writer.writeStringArray(values);
+        writer.writeStringArray(Collections.emptyList());
+        writer.writeKeyValueArray("list", "item");
+
+        assertEquals(RESPProtocol.formatStringArray(values) + RESPProtocol.EMPTY_ARRAY
+                + RESPProtocol.formatKeyValueArray("list", "item"), written());
+    }
+
+    @Test
+    @DisplayName("Array headers above the precomputed range")
+    void testLargeArrayHeader() throws IOException {
+        writer.writeArrayHeader(31);
+        writer.writeArrayHeader(32);
+        writer.writeArrayHeader(100000);
+
+        assertEquals("*31\r\n*32\r\n*100000\r\n", written());
+    }
+
+    @Test
+    @DisplayName("Stream entries and XREAD replies")
+    void testStreamReplies() throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("temperature", "25");
+        fields.put("humidity", "60");
+        List<StreamEntry> entries = Arrays.asList(new StreamEntry("1-1", fields), new StreamEntry("1-2", fields));
+        Map<String, List<StreamEntry>> results = new LinkedHashMap<>();
+        results.put("empty", Collections.emptyList());
+        results.put("sensor", entries);
+
+        writer.writeStreamEntries(entries);
+        writer.writeXreadResponse(results);
+
+        assertEquals(RESPProtocol.formatStreamEntryArray(entries) + RESPProtocol.formatXreadMultiResponse(results), written());
+    }
+
+    // ========== Buffering Tests ==========
+
+    @Test
+    @DisplayName("Replies stay buffered until drained or flushed")
+    void testBuffering() throws IOException {
+        writer.writeOk();
+        assertEquals(0, output.size());
+        assertEquals(5, writer.bufferedBytes());
+
+        writer.drain();
+        assertEquals("+OK\r\n", output.toString(RESPProtocol.CHARSET));
+        assertEquals(0, writer.bufferedBytes());
+    }
+
+    @Test
+    @DisplayName("A writer can be reused after flushing")
+    void testReuseAfterFlush() throws IOException {
+        writer.writeInteger(1);
+        writer.flush();
+        writer.writeInteger(2);
+
+        assertEquals(":1\r\n:2\r\n", written());
+    }
+
+    // ========== Command Reply Tests ==========
+
+    @Test
+    @DisplayName("EXEC replies are written straight after the array header")
+    void testExecReplies() throws IOException {
+        Keyspace keyspace = new Keyspace();
+        HandleClient client = new HandleClient(null, 1, "master", new StringStorage(keyspace), new ListStorage(keyspace), new StreamStorage(keyspace));
+        client.handleCommand(Arrays.asList("MULTI"), writer);
+        client.handleCommand(Arrays.asList("SET", "counter", "5"), writer);
+        client.handleCommand(Arrays.asList("INCR", "counter"), writer);
+        client.handleCommand(Arrays.asList("GET", "counter"), writer);
+        client.handleCommand(Arrays.asList("EXEC"), writer);
+
+        assertEquals("+OK\r\n+QUEUED\r\n+QUEUED\r\n+QUEUED\r\n*3\r\n+OK\r\n:6\r\n$1\r\n6\r\n", written());
+    }
+
+    @Test
+    @DisplayName("BLPOP inside EXEC replies null instead of blocking")
+    void testBlpopInsideExec() throws IOException {
+        Keyspace keyspace = new Keyspace();
+        HandleClient client = new HandleClient(null, 1, "master", new StringStorage(keyspace), new ListStorage(keyspace), new StreamStorage(keyspace));
+        client.handleCommand(Arrays.asList("MULTI"), writer);
+        client.handleCommand(Arrays.asList("BLPOP", "missing", "0"), writer);
+        client.handleCommand(Arrays.asList("EXEC"), writer);
+
+        assertEquals("+OK\r\n+QUEUED\r\n*1\r\n$-1\r\n", written());
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import StorageManager.StreamStorage;
@@ -481,6 +482,37 @@ class StreamStorageTest {
         assertEquals(threadCount * entriesPerThread, storage.length("stream1"));
     }
 
+    @Test
+    @DisplayName("A rejected first XADD never loses a concurrent valid one")
+    void testRejectedFirstXaddRace() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Map<String, String> fields = new HashMap<>();
+        fields.put("field", "value");
+        try {
+            for (int i = 0; i < 2000; i++) {
+                String key = "stream" + i;
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> rejected = executor.submit(() -> {
+                    start.await();
+                    assertThrows(IllegalArgumentException.class, () -> storage.addEntry(key, "0-0", fields));
+                    return null;
+                });
+                Future<String> added = executor.submit(() -> {
+                    start.await();
+                    return storage.addEntry(key, "*", fields);
+                });
+                start.countDown();
+                rejected.get(10, TimeUnit.SECONDS);
+                String id = added.get(10, TimeUnit.SECONDS);
+
+                assertEquals(1, storage.length(key), key);
+                assertEquals(id, storage.getLastEntryId(key), key);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     @DisplayName("Concurrent reads and writes are thread-safe")
     void testConcurrentReadsAndWrites() throws InterruptedException {
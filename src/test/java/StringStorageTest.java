@@ -11,6 +11,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import StorageManager.RESPProtocol;
 import StorageManager.StringStorage;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -221,8 +222,8 @@ class StringStorageTest {
     }
 
     @Test
-    @DisplayName("SIZE excludes expired keys")
-    void testSizeExcludesExpiredKeys() throws InterruptedException {
+    @DisplayName("SIZE counts an expired key until it is removed")
+    void testSizeCountsExpiredKeysUntilRemoved() throws InterruptedException {
         storage.set("key1", "value1", null);
         storage.set("key2", "value2", System.currentTimeMillis() + 50);
 
@@ -230,7 +231,9 @@ class StringStorageTest {
 
         Thread.sleep(100);
 
-        // key2 should be expired and not counted
+        // key2 has expired, but nothing has removed it yet
+        assertEquals(2, storage.size());
+        assertNull(storage.get("key2"));
         assertEquals(1, storage.size());
     }
 
@@ -292,6 +295,20 @@ class StringStorageTest {
         assertNull(storage.getExpiryTime("key1"));
     }
 
+    @Test
+    @DisplayName("setKeepTtl replaces the value and keeps the TTL")
+    void testSetKeepTtl() {
+        long expiryTime = System.currentTimeMillis() + 10000;
+        storage.set("key1", "value1", expiryTime);
+        storage.setKeepTtl("key1", "value2".getBytes(RESPProtocol.CHARSET));
+        storage.setKeepTtl("key2", "value3".getBytes(RESPProtocol.CHARSET));
+
+        assertEquals("value2", storage.get("key1"));
+        assertEquals(expiryTime, storage.getExpiryTime("key1"));
+        assertEquals("value3", storage.get("key2"));
+        assertNull(storage.getExpiryTime("key2"));
+    }
+
     @Test
     @DisplayName("setExpiry sets expiry on existing key")
     void testSetExpiry() throws InterruptedException {
@@ -382,6 +399,99 @@ class StringStorageTest {
         assertEquals("value", storage.get(key));
     }
 
+    // ========== INTEGER Tests ==========
+
+    @Test
+    @DisplayName("Canonical integers are stored as integers, anything else as bytes")
+    void testIntegerEncoding() {
+        storage.set("int", "-9223372036854775808", null);
+        storage.set("zero-padded", "007", null);
+        storage.set("overflow", "9223372036854775808", null);
+        storage.set("text", "12a", null);
+
+        assertEquals("int", storage.keyspace().peek("int").encoding());
+        assertEquals("embstr", storage.keyspace().peek("zero-padded").encoding());
+        assertEquals("embstr", storage.keyspace().peek("overflow").encoding());
+        assertEquals("embstr", storage.keyspace().peek("text").encoding());
+        assertEquals("-9223372036854775808", storage.get("int"));
+        assertEquals("007", storage.get("zero-padded"));
+    }
+
+    @Test
+    @DisplayName("incrementBy creates missing keys and keeps the expiry")
+    void testIncrementBy() {
+        assertEquals(5, storage.incrementBy("counter", 5));
+        assertEquals(2, storage.incrementBy("counter", -3));
+
+        long expiry = System.currentTimeMillis() + 10_000;
+        storage.set("ttl", "10", expiry);
+        assertEquals(11, storage.incrementBy("ttl", 1));
+        assertEquals(expiry, storage.getExpiryTime("ttl"));
+        assertEquals("11", storage.get("ttl"));
+    }
+
+    @Test
+    @DisplayName("incrementBy rejects non-integers and overflow")
+    void testIncrementByErrors() {
+        storage.set("text", "abc", null);
+        storage.set("max", String.valueOf(Long.MAX_VALUE), null);
+
+        assertThrows(NumberFormatException.class, () -> storage.incrementBy("text", 1));
+        assertThrows(ArithmeticException.class, () -> storage.incrementBy("max", 1));
+        assertEquals(String.valueOf(Long.MAX_VALUE), storage.get("max"));
+    }
+
+    @Test
+    @DisplayName("incrementByFloat formats like Redis")
+    void testIncrementByFloat() {
+        storage.set("f", "10.50", null);
+        assertEquals("10.6", storage.incrementByFloat("f", 0.1));
+        assertEquals("5000", storage.incrementByFloat("f", 4989.4));
+        assertEquals("int", storage.keyspace().peek("f").encoding());
+        assertEquals("0.0001", storage.incrementByFloat("new", 1e-4));
+
+        storage.set("text", "abc", null);
+        assertThrows(NumberFormatException.class, () -> storage.incrementByFloat("text", 1));
+        assertThrows(ArithmeticException.class, () -> storage.incrementByFloat("f", Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    @DisplayName("Increments charge the change in the value's size")
+    void testIncrementChargesMemory() {
+        storage.set("f", "1", null);
+        storage.incrementByFloat("f", 0.25);
+        StringStorage expected = new StringStorage();
+        expected.set("f", "1.25", null);
+        assertEquals(expected.keyspace().getUsedMemory(), storage.keyspace().getUsedMemory());
+
+        storage.incrementByFloat("f", 0.75);
+        storage.incrementBy("f", 40);
+        expected.set("f", "42", null);
+        assertEquals(expected.keyspace().getUsedMemory(), storage.keyspace().getUsedMemory());
+    }
+
+    @Test
+    @DisplayName("Concurrent increments are not lost")
+    void testConcurrentIncrements() throws InterruptedException {
+        int threadCount = 8;
+        int incrementsPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < incrementsPerThread; i++) {
+                    storage.incrementBy("hot", 1);
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(String.valueOf(threadCount * incrementsPerThread), storage.get("hot"));
+    }
+
     // ========== CONCURRENCY Tests ==========
 
     @Test
@@ -1,6 +1,7 @@
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import StorageManager.Keyspace;
 import StorageManager.ListStorage;
 import StorageManager.StreamStorage;
 import StorageManager.StringStorage;
@@ -24,9 +25,10 @@ class TransactionTest {
 
     @BeforeEach
     void setUp() {
-        stringStorage = new StringStorage();
-        listStorage = new ListStorage();
-        streamStorage = new StreamStorage();
+        Keyspace keyspace = new Keyspace();
+        stringStorage = new StringStorage(keyspace);
+        listStorage = new ListStorage(keyspace);
+        streamStorage = new StreamStorage(keyspace);
         // Create a mock socket or test client
         client = new HandleClient(null, 1, "master",
                                 stringStorage, listStorage, streamStorage);
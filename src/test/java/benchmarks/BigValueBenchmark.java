@@ -0,0 +1,161 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.sun.management.ThreadMXBean;
+
+import StorageManager.RESPParser;
+import StorageManager.RESPProtocol;
+import StorageManager.StringStorage;
+
+/**
+ * Peak heap and throughput of receiving SET commands with 1 MB, 16 MB and 256 MB values.
+ * Each request is streamed to the parser in 64 KB reads, like a socket delivers
+ * it, then decoded and stored, the way HandleClient.serve does. "streamed" uses
+ * the parser's default big-argument threshold, "buffered" disables it so the
+ * value is accumulated in the connection buffer and copied out, as before.
+ *
+ * Heap is reported two ways, since a pool's peak mostly shows how much garbage
+ * the collector let pile up: the bytes allocated per request, which counts
+ * every copy of the value, and the heap still live after a GC at the end, with
+ * the last connection's parser alive and two stored values. Run with a heap
+ * large enough for the buffered 256 MB case, e.g. -Xmx3g.
+ *
+ * Usage:
+ *   java -Xmx3g -cp target/classes:target/test-classes benchmarks.BigValueBenchmark [sizes in MB...]
+ */
+public class BigValueBenchmark {
+
+    private static final int READ_SIZE = 64 * 1024;
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int[] sizesMb = args.length > 0 ? new int[args.length] : new int[] {1, 16, 256};
+        for (int i = 0; i < args.length; i++) {
+            sizesMb[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%-10s %-10s %-10s %-22s %-14s %-12s%n", "value", "parser", "requests", "allocated/request (MB)", "retained (MB)", "MB/sec");
+        for (int sizeMb : sizesMb) {
+            int size = sizeMb * 1024 * 1024;
+            int requests = Math.max(2, 256 / sizeMb);
+            for (String mode : new String[] {"buffered", "streamed"}) {
+                int threshold = mode.equals("streamed") ? RESPParser.DEFAULT_BIG_ARG_THRESHOLD : Integer.MAX_VALUE;
+                run(size, 1, threshold); // Warm-up
+                double[] result = run(size, requests, threshold);
+                System.out.printf("%-10s %-10s %-10d %-22.1f %-14.1f %-12.0f%n", sizeMb + " MB", mode, requests, result[0], result[1], result[2]);
+            }
+        }
+    }
+
+    // Returns {MB allocated per request, MB live after a final GC, payload MB per second}
+    private static double[] run(int size, int requests, int threshold) throws IOException {
+        StringStorage storage = new StringStorage();
+        System.gc();
+        long baseline = heapUsed();
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+
+        long start = System.nanoTime();
+        RESPParser parser = null;
+        for (int i = 0; i < requests; i++) {
+            // A new connection per request, so every one starts from a small buffer
+            parser = new RESPParser(16 * 1024, threshold);
+            InputStream in = new SetRequestStream("big:" + (i % 2), size);
+            List<byte[]> args = null;
+            while (args == null && parser.readFrom(in) != -1) {
+                args = parser.next();
+            }
+            List<String> command = RESPProtocol.decodeArguments(args);
+            storage.set(command.get(1), command.get(2), null);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.gc();
+        long retained = heapUsed() - baseline;
+        Reference.reachabilityFence(parser);
+        Reference.reachabilityFence(storage);
+        return new double[] {allocated / (1024.0 * 1024.0) / requests, retained / (1024.0 * 1024.0),
+            (double) size * requests / (1024 * 1024) / seconds};
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * "SET key <size bytes>" in RESP, generated on the fly and returned at most
+     * READ_SIZE bytes per read so the request itself takes no heap.
+     */
+    private static class SetRequestStream extends InputStream {
+        private static final byte[] PATTERN = new byte[READ_SIZE + 26];
+
+        static {
+            for (int i = 0; i < PATTERN.length; i++) {
+                PATTERN[i] = (byte) ('a' + i % 26);
+            }
+        }
+
+        private final byte[] header;
+        private final long total;
+        private long position = 0;
+
+        SetRequestStream(String key, int size) {
+            this.header = ("*3\r\n$3\r\nSET\r\n$" + key.length() + "\r\n" + key + "\r\n$" + size + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+            this.total = header.length + (long) size + 2;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= total) {
+                return -1;
+            }
+            int count = (int) Math.min(Math.min(len, READ_SIZE), total - position);
+            int copied = 0;
+            long payloadEnd = total - 2;
+            while (copied < count) {
+                long index = position + copied;
+                int chunk;
+                if (index < header.length) {
+                    chunk = (int) Math.min(count - copied, header.length - index);
+                    System.arraycopy(header, (int) index, b, off + copied, chunk);
+                } else if (index < payloadEnd) {
+                    // The payload repeats the alphabet, copied from a block that holds any read
+                    int phase = (int) ((index - header.length) % 26);
+                    chunk = (int) Math.min(count - copied, payloadEnd - index);
+                    System.arraycopy(PATTERN, phase, b, off + copied, chunk);
+                } else {
+                    b[off + copied] = index == payloadEnd ? (byte) '\r' : (byte) '\n';
+                    chunk = 1;
+                }
+                copied += chunk;
+            }
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection-count scaling benchmark.
+ * Opens N concurrent client connections against an already running server, each
+ * doing SET/GET round trips, and reports aggregate throughput for every N.
+ * Start the server once per --io-mode (thread, virtual, nio) and compare the tables.
+ *
+ * Usage:
+ *   java -cp target/test-classes benchmarks.ConnectionScalingBenchmark [host] [port] [seconds] [connections...]
+ */
+public class ConnectionScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        List<Integer> connectionCounts = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            connectionCounts.add(Integer.parseInt(args[i]));
+        }
+        if (connectionCounts.isEmpty()) {
+            connectionCounts = List.of(10, 100, 1000, 5000);
+        }
+
+        System.out.printf("%-12s %-14s %-14s %-12s%n", "connections", "connect (ms)", "ops/sec", "avg (us)");
+        for (int connections : connectionCounts) {
+            runRound(host, port, connections, seconds);
+        }
+    }
+
+    private static void runRound(String host, int port, int connections, int seconds) throws Exception {
+        AtomicLong operations = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch finished = new CountDownLatch(connections);
+        List<Thread> clients = new ArrayList<>();
+
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            final int clientIndex = i;
+            // Virtual threads on the load generator side so the client itself is not the bottleneck
+            clients.add(Thread.startVirtualThread(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    socket.setTcpNoDelay(true);
+                    connected.countDown();
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                    byte[] set = command("SET", "bench:" + clientIndex, "value-" + clientIndex);
+                    byte[] get = command("GET", "bench:" + clientIndex);
+                    while (running.get()) {
+                        out.write(set);
+                        out.flush();
+                        readReply(in);
+                        out.write(get);
+                        out.flush();
+                        readReply(in);
+                        operations.addAndGet(2);
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                } finally {
+                    finished.countDown();
+                }
+            }));
+        }
+        connected.await();
+        long connectMs = (System.nanoTime() - connectStart) / 1_000_000;
+
+        long before = operations.get();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long ops = operations.get() - before;
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        running.set(false);
+        finished.await();
+
+        double opsPerSecond = ops / elapsedSeconds;
+        double avgMicros = ops == 0 ? 0 : connections * elapsedSeconds * 1e6 / ops;
+        System.out.printf("%-12d %-14d %-14.0f %-12.1f%s%n", connections, connectMs, opsPerSecond, avgMicros,
+                failures.get() > 0 ? "  (" + failures.get() + " failed connections)" : "");
+    }
+
+    static byte[] command(String... args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            sb.append('$').append(bytes.length).append("\r\n").append(arg).append("\r\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Reads one simple-string, error, integer or bulk-string reply
+    static void readReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new IOException("Connection closed");
+        }
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b == '-') {
+                negative = true;
+            } else if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read(); // \n
+        if (type == '$' && !negative) {
+            in.skipNBytes(value + 2);
+        }
+    }
+}
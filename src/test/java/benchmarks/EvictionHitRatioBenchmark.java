@@ -0,0 +1,144 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+
+import StorageManager.Evictor;
+import StorageManager.Keyspace;
+import StorageManager.StringStorage;
+
+/**
+ * Cache hit ratio of the eviction policies on a Zipfian trace with scan
+ * traffic. A cache-aside client reads keys drawn from a Zipf distribution
+ * (exponent ZIPF_EXPONENT over UNIVERSE keys) and stores each key it misses;
+ * maxmemory holds CACHE_PERCENT of the keys. Every SCAN_INTERVAL_MS a batch
+ * job reads SCAN_KEYS keys from the cold tail once each, through the same
+ * cache, which is what pushes the hot set out under LRU.
+ *
+ * The trace is replayed at RATE requests per second in real time, since the
+ * LRU clock counts seconds and the LFU decay counts minutes, just as a
+ * server would see it. Every policy replays the same trace. The hit ratio
+ * counts the Zipfian reads after the first quarter of the run, once the
+ * cache is full.
+ *
+ * Usage:
+ *   java -cp target/classes:target/test-classes benchmarks.EvictionHitRatioBenchmark [seconds [policy ...]]
+ */
+public class EvictionHitRatioBenchmark {
+
+    private static final int UNIVERSE = 100_000;
+    private static final double ZIPF_EXPONENT = 0.99;
+    private static final int CACHE_PERCENT = 10;
+    private static final int RATE = 50_000;
+    private static final long SCAN_INTERVAL_MS = 3_000;
+    private static final int SCAN_KEYS = 20_000;
+    private static final long SEED = 42;
+    private static final String VALUE = "x".repeat(100);
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String[] policies = args.length > 1
+            ? java.util.Arrays.copyOfRange(args, 1, args.length)
+            : new String[] {"allkeys-lru", "allkeys-lfu", "allkeys-random"};
+
+        double[] cdf = zipfCdf(UNIVERSE, ZIPF_EXPONENT);
+        System.out.printf("%,d keys, Zipf %.2f, cache %d%%, %,d req/s, %,d-key scan every %d ms, %d s per policy%n",
+            UNIVERSE, ZIPF_EXPONENT, CACHE_PERCENT, RATE, SCAN_KEYS, SCAN_INTERVAL_MS, seconds);
+        System.out.printf("%-16s %-10s %-10s %s%n", "policy", "hit %", "hot hit %", "evicted");
+        for (String policy : policies) {
+            run(Evictor.Policy.parse(policy), cdf, seconds);
+        }
+    }
+
+    private static void run(Evictor.Policy policy, double[] cdf, int seconds) throws InterruptedException {
+        Keyspace keyspace = new Keyspace();
+        StringStorage storage = new StringStorage(keyspace);
+        Evictor evictor = keyspace.evictor();
+        evictor.setPolicy(policy);
+        storage.set(key(0), VALUE, null);
+        evictor.setMaxMemory(keyspace.getUsedMemory() * UNIVERSE * CACHE_PERCENT / 100);
+        keyspace.delete(key(0));
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        long requests = (long) RATE * seconds;
+        long warmUp = requests / 4;
+        long requestsPerScan = RATE * SCAN_INTERVAL_MS / 1000;
+        int scanStart = UNIVERSE / 2;
+        long reads = 0;
+        long hits = 0;
+        // The 1% most popular keys
+        int hotRanks = UNIVERSE / 100;
+        long hotReads = 0;
+        long hotHits = 0;
+        long start = System.nanoTime();
+        for (long request = 0; request < requests; request++) {
+            if (request % requestsPerScan == requestsPerScan - 1) {
+                for (int i = 0; i < SCAN_KEYS; i++) {
+                    read(storage, evictor, key(scanStart + i));
+                }
+                scanStart = UNIVERSE / 2 + (scanStart + SCAN_KEYS - UNIVERSE / 2) % (UNIVERSE / 2);
+            }
+            int rank = rank(cdf, random.nextDouble());
+            boolean hit = read(storage, evictor, key(rank));
+            if (request >= warmUp) {
+                reads++;
+                hits += hit ? 1 : 0;
+                if (rank < hotRanks) {
+                    hotReads++;
+                    hotHits += hit ? 1 : 0;
+                }
+            }
+            // Keep to RATE, in steps of a millisecond
+            if (request % (RATE / 1000) == 0) {
+                long aheadNanos = request * 1_000_000_000L / RATE - (System.nanoTime() - start);
+                if (aheadNanos > 1_000_000) {
+                    Thread.sleep(aheadNanos / 1_000_000);
+                }
+            }
+        }
+        System.out.printf("%-16s %-10.2f %-10.2f %d%n", policy.configName(), 100.0 * hits / reads,
+            100.0 * hotHits / hotReads, evictor.getEvictedKeys());
+    }
+
+    // A cache-aside read: GET, and on a miss make room and SET, as the server does for a denyoom command
+    private static boolean read(StringStorage storage, Evictor evictor, String key) {
+        if (storage.get(key) != null) {
+            return true;
+        }
+        evictor.freeMemoryIfNeeded();
+        storage.set(key, VALUE, null);
+        return false;
+    }
+
+    // Scrambled, so the hash tables' order is not the popularity order
+    private static String key(int rank) {
+        return "key:" + Integer.toHexString(rank * 0x9E3779B1);
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    // The first rank whose cumulative probability reaches u
+    private static int rank(double[] cdf, double u) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import StorageManager.ExpireCycle;
+import StorageManager.Keyspace;
+import StorageManager.StringStorage;
+
+/**
+ * Active expiry of many keys with varied TTLs: the timing wheel against
+ * Redis-style sampling. With the expire cycle running as in the server,
+ * stores the keys with TTLs spread evenly over TTL_SPREAD_MS and reports
+ * once a second until they are all gone:
+ *
+ *   overdue     - keys already expired but still stored
+ *   overdue MB  - the memory they hold, at the heap per key measured after storing
+ *   cycle ms    - time spent in expire cycles so far
+ *
+ * Sampling checks keys in index order and stops when a sample is mostly
+ * unexpired, so with keys expiring all over the index it falls behind; the
+ * wheel visits each key once, when it comes due.
+ *
+ * Usage:
+ *   java -Xmx4g -cp target/classes:target/test-classes benchmarks.ExpiryBenchmark [keys [TIMING_WHEEL|SAMPLING]]
+ * 10M keys take about -Xmx8g; run one strategy at a time.
+ */
+public class ExpiryBenchmark {
+
+    private static final long TTL_MIN_MS = 10_000;
+    private static final long TTL_SPREAD_MS = 20_000;
+    private static final byte[] VALUE = new byte[100];
+
+    public static void main(String[] args) throws InterruptedException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ExpireCycle.Strategy[] strategies = args.length > 1
+            ? new ExpireCycle.Strategy[] {ExpireCycle.Strategy.valueOf(args[1])}
+            : ExpireCycle.Strategy.values();
+        for (ExpireCycle.Strategy strategy : strategies) {
+            run(strategy, keys);
+        }
+    }
+
+    private static void run(ExpireCycle.Strategy strategy, int keys) throws InterruptedException {
+        System.gc();
+        long heapBefore = heapUsed();
+        Keyspace keyspace = new Keyspace();
+        StringStorage storage = new StringStorage(keyspace);
+        ExpireCycle cycle = new ExpireCycle(keyspace, strategy);
+        cycle.start();
+
+        long start = System.currentTimeMillis();
+        long[] expiries = new long[keys];
+        for (int i = 0; i < keys; i++) {
+            expiries[i] = System.currentTimeMillis() + TTL_MIN_MS + ThreadLocalRandom.current().nextLong(TTL_SPREAD_MS);
+            // Scrambled, so the hash tables' order is not the order the keys were stored in
+            storage.set("key:" + Integer.toHexString(i * 0x9E3779B1), VALUE.clone(), expiries[i]);
+        }
+        Arrays.sort(expiries);
+        System.gc();
+        double bytesPerKey = (double) (heapUsed() - heapBefore) / (keys - keyspace.getExpiredKeys());
+
+        System.out.printf("%n%s, %,d keys stored in %d ms, %.0f bytes/key%n", strategy, keys,
+            System.currentTimeMillis() - start, bytesPerKey);
+        System.out.printf("%-8s %-12s %-12s %-12s %s%n", "time s", "due", "overdue", "overdue MB", "cycle ms");
+        while (keyspace.getExpiredKeys() < keys) {
+            Thread.sleep(1_000);
+            long now = System.currentTimeMillis();
+            // Keys with an expiry time at or before now
+            int due = upperBound(expiries, now);
+            long overdue = due - keyspace.getExpiredKeys();
+            System.out.printf("%-8d %-12d %-12d %-12.1f %d%n", (now - start) / 1000, due, overdue,
+                overdue * bytesPerKey / (1024 * 1024), cycle.getCpuMillis());
+        }
+    }
+
+    private static int upperBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+}
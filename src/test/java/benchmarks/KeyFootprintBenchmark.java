@@ -0,0 +1,137 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import StorageManager.Keyspace;
+import StorageManager.RESPProtocol;
+import StorageManager.RedisObject;
+import StorageManager.StringStorage;
+
+/**
+ * Heap footprint of the keyspace per million 20-byte keys with 100-byte
+ * values, measured as the heap still live after a GC once the keys are
+ * stored, minus the heap live before. Compares how the values and keys could
+ * be held:
+ *
+ *   string values   - values as Strings, as the keyspace held them before
+ *   byte[] values   - values as the raw bytes, as StringStorage holds them now
+ *   byte-string keys - also keys as a byte[] wrapper with a cached hash
+ *
+ * Arguments are decoded as ISO-8859-1, so keys are Latin-1 Strings whose
+ * backing array is already one byte per character; the byte-string key row
+ * shows what a separate key class would (not) save on top.
+ *
+ * Usage:
+ *   java -Xmx2g -cp target/classes:target/test-classes benchmarks.KeyFootprintBenchmark [keys]
+ */
+public class KeyFootprintBenchmark {
+
+    private static final int KEY_SIZE = 20;
+    private static final int VALUE_SIZE = 100;
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.printf("%-18s %-16s %-18s %s%n", "layout", "bytes/key", "MB per million", "vs string values");
+        double baseline = 0;
+        for (String layout : new String[] {"string values", "byte[] values", "byte-string keys"}) {
+            measure(layout, keys / 10); // Warm-up
+            double perKey = measure(layout, keys);
+            if (baseline == 0) {
+                baseline = perKey;
+            }
+            System.out.printf("%-18s %-16.1f %-18.1f %+.1f%n", layout, perKey, perKey * 1_000_000 / (1024 * 1024), perKey - baseline);
+        }
+    }
+
+    // Returns the live heap per stored key, in bytes
+    private static double measure(String layout, int keys) {
+        System.gc();
+        long before = heapUsed();
+
+        Object store;
+        switch (layout) {
+            case "string values": {
+                Keyspace keyspace = new Keyspace();
+                for (int i = 0; i < keys; i++) {
+                    keyspace.put(key(i), new RedisObject(RedisObject.Type.STRING, value(i)));
+                }
+                store = keyspace;
+                break;
+            }
+            case "byte[] values": {
+                StringStorage storage = new StringStorage();
+                for (int i = 0; i < keys; i++) {
+                    storage.set(key(i), value(i), null);
+                }
+                store = storage;
+                break;
+            }
+            default: {
+                Map<ByteKey, RedisObject> dict = new ConcurrentHashMap<>();
+                for (int i = 0; i < keys; i++) {
+                    dict.put(new ByteKey(key(i).getBytes(RESPProtocol.CHARSET)),
+                        new RedisObject(RedisObject.Type.STRING, value(i).getBytes(RESPProtocol.CHARSET)));
+                }
+                store = dict;
+            }
+        }
+
+        System.gc();
+        long retained = heapUsed() - before;
+        Reference.reachabilityFence(store);
+        return (double) retained / keys;
+    }
+
+    private static String key(int i) {
+        String digits = Integer.toString(i);
+        return "key:" + "0".repeat(KEY_SIZE - 4 - digits.length()) + digits;
+    }
+
+    private static String value(int i) {
+        char[] value = new char[VALUE_SIZE];
+        for (int j = 0; j < VALUE_SIZE; j++) {
+            value[j] = (char) ('a' + (i + j) % 26);
+        }
+        return new String(value);
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * A key as raw bytes with its hash computed once.
+     */
+    private static final class ByteKey {
+        final byte[] bytes;
+        final int hash;
+
+        ByteKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ByteKey key && hash == key.hash && Arrays.equals(bytes, key.bytes);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GET/SET throughput of the server with logging at debug and at warning.
+ * Starts a server process per log level with its log redirected to a file,
+ * drives it with pipelined SET/GET from several connections, and prints the
+ * throughput and the size of the log each run produced.
+ *
+ * Usage:
+ *   java -cp target/test-classes benchmarks.LoggingBenchmark [server classpath] [port] [seconds] [connections] [io-mode]
+ */
+public class LoggingBenchmark {
+
+    private static final int PIPELINE = 16;
+
+    public static void main(String[] args) throws Exception {
+        String serverClasspath = args.length > 0 ? args[0] : "target/classes";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6390;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        String ioMode = args.length > 4 ? args[4] : "thread";
+
+        System.out.printf("%-10s %-14s %-12s %-14s%n", "loglevel", "ops/sec", "avg (us)", "log (bytes)");
+        for (String level : new String[] {"warning", "debug", "warning", "debug"}) {
+            File log = File.createTempFile("logging-benchmark-" + level, ".log");
+            log.deleteOnExit();
+            Process server = startServer(serverClasspath, port, ioMode, level, log);
+            try {
+                awaitServer(port);
+                // One short round first so both levels are measured with a warmed-up JIT
+                measure(port, connections, 1);
+                double[] result = measure(port, connections, seconds);
+                System.out.printf("%-10s %-14.0f %-12.1f %-14d%n", level, result[0], result[1], log.length());
+            } finally {
+                server.destroy();
+                server.waitFor();
+            }
+        }
+    }
+
+    private static Process startServer(String classpath, int port, String ioMode, String level, File log) throws IOException {
+        // The server runs on this benchmark's JVM, with the same options (e.g. heap size)
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", classpath, "Main", "--port", String.valueOf(port),
+                "--io-mode", ioMode, "--loglevel", level));
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(log)
+            .start();
+    }
+
+    private static void awaitServer(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try (Socket socket = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Server did not start on port " + port, e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    // Returns {operations per second, average latency of a pipelined batch in microseconds}
+    private static double[] measure(int port, int connections, int seconds) throws Exception {
+        AtomicLong operations = new AtomicLong();
+        AtomicLong batches = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch finished = new CountDownLatch(connections);
+
+        for (int i = 0; i < connections; i++) {
+            final int clientIndex = i;
+            Thread.startVirtualThread(() -> {
+                try (Socket socket = new Socket("localhost", port)) {
+                    socket.setTcpNoDelay(true);
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                    byte[] set = ConnectionScalingBenchmark.command("SET", "bench:log:" + clientIndex, "value-" + clientIndex);
+                    byte[] get = ConnectionScalingBenchmark.command("GET", "bench:log:" + clientIndex);
+                    while (running.get()) {
+                        for (int j = 0; j < PIPELINE / 2; j++) {
+                            out.write(set);
+                            out.write(get);
+                        }
+                        out.flush();
+                        for (int j = 0; j < PIPELINE; j++) {
+                            ConnectionScalingBenchmark.readReply(in);
+                        }
+                        operations.addAndGet(PIPELINE);
+                        batches.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Client " + clientIndex + " failed: " + e.getMessage());
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        long before = operations.get();
+        long batchesBefore = batches.get();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long ops = operations.get() - before;
+        long completedBatches = batches.get() - batchesBefore;
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        running.set(false);
+        finished.await();
+
+        double avgMicros = completedBatches == 0 ? 0 : connections * elapsedSeconds * 1e6 / completedBatches;
+        return new double[] {ops / elapsedSeconds, avgMicros};
+    }
+}
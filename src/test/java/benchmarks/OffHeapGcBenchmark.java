@@ -0,0 +1,140 @@
+package benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import StorageManager.Keyspace;
+import StorageManager.OffHeapStore;
+import StorageManager.StringStorage;
+
+/**
+ * GC pauses with a large data set of string values, kept on the heap or in
+ * an OffHeapStore. Stores GIGABYTES of VALUE_SIZE-byte values, then for the
+ * given time overwrites random keys with new values and reads others, as a
+ * cache under churn, and reports the pauses of that phase:
+ *
+ *   gc pauses   - stop-the-world pauses the collectors report
+ *   hiccups     - how late a thread sleeping 1 ms woke up, which covers
+ *                 every safepoint, not only the collectors'
+ *
+ * Run each engine in its own JVM, as they need different heap sizes. The
+ * native memory of the off-heap engine counts against -XX:MaxDirectMemorySize,
+ * which defaults to -Xmx:
+ *   java -XX:+UseG1GC -Xmx4g -cp target/classes:target/test-classes benchmarks.OffHeapGcBenchmark heap 2 30
+ *   java -XX:+UseG1GC -Xmx1g -XX:MaxDirectMemorySize=4g -cp target/classes:target/test-classes benchmarks.OffHeapGcBenchmark offheap 2 30
+ */
+public class OffHeapGcBenchmark {
+
+    private static final int VALUE_SIZE = 1024;
+    private static final int WRITERS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        String engine = args.length > 0 ? args[0] : "offheap";
+        double gigabytes = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int keys = (int) (gigabytes * (1L << 30) / VALUE_SIZE);
+
+        Keyspace keyspace = new Keyspace();
+        StringStorage storage = new StringStorage(keyspace);
+        if ("offheap".equals(engine)) {
+            storage.useOffHeapStore(new OffHeapStore());
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < keys; i++) {
+            storage.set(key(i), value(i), null);
+        }
+        System.gc();
+        long heapUsed = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        OffHeapStore store = storage.offHeapStore();
+        System.out.printf("%s: %,d keys of %d bytes stored in %d ms; heap used %,d MB, native %,d MB%n", engine, keys,
+            VALUE_SIZE, System.currentTimeMillis() - start, heapUsed >> 20,
+            store != null ? store.getAllocatedBytes() >> 20 : 0);
+
+        List<Double> gcPauses = Collections.synchronizedList(new ArrayList<>());
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                // The concurrent collectors' time is not a pause
+                if (!info.getGcName().contains("Concurrent")) {
+                    gcPauses.add((double) info.getGcInfo().getDuration());
+                }
+            }, null, null);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int i = random.nextInt(keys);
+                    storage.set(key(i), value(random.nextInt()), null);
+                    storage.getBytes(key(random.nextInt(keys)));
+                    operations.add(2);
+                }
+            }));
+        }
+        List<Double> hiccups = new ArrayList<>();
+        Thread sleeper = new Thread(() -> {
+            while (running.get()) {
+                long before = System.nanoTime();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                hiccups.add(Math.max(0, (System.nanoTime() - before) / 1e6 - 1));
+            }
+        });
+        threads.add(sleeper);
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("%,d operations/s over %d s%n", operations.sum() / seconds, seconds);
+        System.out.printf("%-10s %-8s %-10s %-8s %-8s %-8s %s%n", "", "count", "total ms", "p50", "p99", "p99.9", "max");
+        report("gc pauses", new ArrayList<>(gcPauses));
+        report("hiccups", hiccups);
+    }
+
+    private static void report(String name, List<Double> millis) {
+        Collections.sort(millis);
+        double total = millis.stream().mapToDouble(Double::doubleValue).sum();
+        System.out.printf("%-10s %-8d %-10.0f %-8.1f %-8.1f %-8.1f %.1f%n", name, millis.size(), total,
+            percentile(millis, 0.5), percentile(millis, 0.99), percentile(millis, 0.999),
+            millis.isEmpty() ? 0 : millis.get(millis.size() - 1));
+    }
+
+    private static double percentile(List<Double> sorted, double fraction) {
+        return sorted.isEmpty() ? 0 : sorted.get((int) Math.min(sorted.size() - 1, Math.floor(sorted.size() * fraction)));
+    }
+
+    private static String key(int i) {
+        return "key:" + i;
+    }
+
+    private static byte[] value(int seed) {
+        byte[] value = new byte[VALUE_SIZE];
+        value[0] = (byte) seed;
+        value[VALUE_SIZE - 1] = 'v';
+        return value;
+    }
+}
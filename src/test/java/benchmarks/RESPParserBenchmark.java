@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import StorageManager.RESPParser;
+import StorageManager.RESPProtocol;
+
+/**
+ * Compares the line-based RESPProtocol.parseRESPArray with the byte-oriented RESPParser.
+ * Each invocation parses one batch: 100 pipelined small SET/GET commands, or a single 1 MB SET.
+ *
+ * Usage:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/classpath.txt) org.openjdk.jmh.Main RESPParserBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RESPParserBenchmark {
+
+    @Param({"small-set-get", "1mb-set"})
+    public String workload;
+
+    private byte[] batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (workload.equals("1mb-set")) {
+            out.write(encode("SET", "big-key", "v".repeat(1024 * 1024)));
+        } else {
+            for (int i = 0; i < 50; i++) {
+                out.write(encode("SET", "key:" + i, "value-" + i));
+                out.write(encode("GET", "key:" + i));
+            }
+        }
+        batch = out.toByteArray();
+    }
+
+    @Benchmark
+    public void lineReaderParser(Blackhole blackhole) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(batch)));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("*")) {
+                blackhole.consume(RESPProtocol.parseRESPArray(reader, line));
+            }
+        }
+    }
+
+    @Benchmark
+    public void byteBufferParser(Blackhole blackhole) throws IOException {
+        RESPParser parser = new RESPParser();
+        ByteArrayInputStream in = new ByteArrayInputStream(batch);
+        while (parser.readFrom(in) > 0) {
+            List<byte[]> args;
+            while ((args = parser.next()) != null) {
+                blackhole.consume(args);
+            }
+        }
+    }
+
+    private static byte[] encode(String... args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            sb.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return sb.toString().getBytes(RESPProtocol.CHARSET);
+    }
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import StorageManager.StringStorage;
+
+/**
+ * StringStorage.get and set with and without TTLs, against the layout it
+ * replaced: values in one map and expiry times in a second one, so a read
+ * of a key with a TTL took two hash lookups and a write two updates.
+ * Now the expiry is a primitive field of the key's entry.
+ *
+ * Usage:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/classpath.txt) org.openjdk.jmh.Main StringStorageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringStorageBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    @Param({"false", "true"})
+    public boolean ttl;
+
+    private final StringStorage storage = new StringStorage();
+    private final TwoMapStringStorage twoMapStorage = new TwoMapStringStorage();
+    private final String[] keys = new String[KEYS];
+    private Long expiry;
+
+    @Setup
+    public void setUp() {
+        // Far enough in the future that nothing expires during the run
+        expiry = ttl ? System.currentTimeMillis() + 3_600_000 : null;
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            storage.set(keys[i], "value-" + i, expiry);
+            twoMapStorage.set(keys[i], "value-" + i, expiry);
+        }
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+
+    // The reads return the value's length, so both layouts touch the value as a GET reply would
+    @Benchmark
+    public int get() {
+        return storage.getBytes(randomKey()).length;
+    }
+
+    @Benchmark
+    public void set() {
+        storage.set(randomKey(), "new-value", expiry);
+    }
+
+    @Benchmark
+    public int getTwoMaps() {
+        return twoMapStorage.get(randomKey()).length();
+    }
+
+    @Benchmark
+    public void setTwoMaps() {
+        twoMapStorage.set(randomKey(), "new-value", expiry);
+    }
+
+    /**
+     * The replaced layout, as StringStorage implemented it.
+     */
+    private static final class TwoMapStringStorage {
+        private final Map<String, String> storage = new ConcurrentHashMap<>();
+        private final Map<String, Long> expiryTimes = new ConcurrentHashMap<>();
+
+        void set(String key, String value, Long expiryTimeMs) {
+            storage.put(key, value);
+            if (expiryTimeMs != null) {
+                expiryTimes.put(key, expiryTimeMs);
+            } else {
+                expiryTimes.remove(key);
+            }
+        }
+
+        String get(String key) {
+            Long expiryTime = expiryTimes.get(key);
+            if (expiryTime != null && System.currentTimeMillis() >= expiryTime) {
+                storage.remove(key);
+                expiryTimes.remove(key);
+                return null;
+            }
+            return storage.get(key);
+        }
+    }
+}
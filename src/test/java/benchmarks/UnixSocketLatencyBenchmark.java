@@ -0,0 +1,97 @@
+package benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Round-trip latency of TCP loopback against a Unix domain socket.
+ * Sends PING and GET one at a time over each transport of an already running
+ * server and prints the latency percentiles. Start the server with both a port
+ * and --unixsocket, e.g. ./server.sh --port 6379 --unixsocket /tmp/redis.sock
+ *
+ * Usage:
+ *   java -cp target/test-classes benchmarks.UnixSocketLatencyBenchmark [host] [port] [unixsocket] [requests]
+ */
+public class UnixSocketLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        String unixSocket = args.length > 2 ? args[2] : "/tmp/redis.sock";
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+
+        SocketAddress tcp = new InetSocketAddress(host, port);
+        SocketAddress uds = UnixDomainSocketAddress.of(unixSocket);
+
+        // Warm up both paths (JIT on the server and here) before measuring
+        measure(tcp, ConnectionScalingBenchmark.command("PING"), requests / 10);
+        measure(uds, ConnectionScalingBenchmark.command("PING"), requests / 10);
+        try (SocketChannel channel = open(tcp)) {
+            Channels.newOutputStream(channel).write(ConnectionScalingBenchmark.command("SET", "bench:latency", "x".repeat(64)));
+            ConnectionScalingBenchmark.readReply(new BufferedInputStream(Channels.newInputStream(channel)));
+        }
+
+        System.out.printf("%-10s %-8s %-10s %-10s %-10s %-10s %-12s%n", "transport", "command", "avg (us)", "p50 (us)", "p99 (us)", "p99.9 (us)", "ops/sec");
+        for (String command : new String[] {"PING", "GET"}) {
+            byte[] request = command.equals("PING")
+                ? ConnectionScalingBenchmark.command("PING")
+                : ConnectionScalingBenchmark.command("GET", "bench:latency");
+            report("tcp", command, measure(tcp, request, requests));
+            report("unix", command, measure(uds, request, requests));
+        }
+    }
+
+    private static SocketChannel open(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(address);
+            return channel;
+        }
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return channel;
+    }
+
+    // Returns the latency of every round trip in nanoseconds
+    private static long[] measure(SocketAddress address, byte[] request, int requests) throws IOException {
+        long[] latencies = new long[requests];
+        try (SocketChannel channel = open(address)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                out.write(request);
+                ConnectionScalingBenchmark.readReply(in);
+                latencies[i] = System.nanoTime() - start;
+            }
+        }
+        return latencies;
+    }
+
+    private static void report(String transport, String command, long[] latencies) {
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double avgMicros = total / 1000.0 / latencies.length;
+        System.out.printf("%-10s %-8s %-10.1f %-10.1f %-10.1f %-10.1f %-12.0f%n", transport, command, avgMicros,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999), latencies.length / (total / 1e9));
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1000.0;
+    }
+}